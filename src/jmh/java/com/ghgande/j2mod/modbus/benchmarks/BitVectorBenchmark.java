@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures setting, reading and converting the bits of a full coil request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitVectorBenchmark {
+
+    private static final int SIZE = 1968;
+
+    private BitVector vector;
+    private boolean[] values;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        values = new boolean[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = random.nextBoolean();
+        }
+        vector = new BitVector(SIZE);
+        bytes = new byte[vector.byteSize()];
+        random.nextBytes(bytes);
+    }
+
+    @Benchmark
+    public BitVector setBits() {
+        for (int i = 0; i < SIZE; i++) {
+            vector.setBit(i, values[i]);
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public int getBits() {
+        int set = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (vector.getBit(i)) {
+                set++;
+            }
+        }
+        return set;
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        return vector.getBytes();
+    }
+
+    @Benchmark
+    public BitVector createBitVector() {
+        return BitVector.createBitVector(bytes, SIZE);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.util.CRC16;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the slicing-by-8 <tt>CRC16</tt> with the two table, byte at a time
+ * calculation that <tt>ModbusUtil.calculateCRC</tt> used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRCBenchmark {
+
+    @Param({"8", "64", "256"})
+    private int length;
+
+    private byte[] data;
+    private ByteBuffer direct;
+    private int[] legacyHi;
+    private int[] legacyLo;
+
+    @Setup
+    public void setup() {
+        data = new byte[length];
+        new Random(42).nextBytes(data);
+        direct = ByteBuffer.allocateDirect(length);
+        direct.put(data).flip();
+
+        // Rebuild the tables of the original implementation
+        legacyHi = new int[256];
+        legacyLo = new int[256];
+        for (int n = 0; n < 256; n++) {
+            int crc = CRC16.update(0, n);
+            legacyHi[n] = crc & 0xFF;
+            legacyLo[n] = crc >>> 8;
+        }
+    }
+
+    @Benchmark
+    public int[] legacy() {
+        int[] crc = {0xFF, 0xFF};
+        for (int i = 0; i < length && i < data.length; i++) {
+            int uIndex = crc[0] ^ (0xFF & data[i]);
+            crc[0] = crc[1] ^ legacyHi[uIndex];
+            crc[1] = legacyLo[uIndex];
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int[] calculateCRC() {
+        return ModbusUtil.calculateCRC(data, 0, length);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return CRC16.calculate(data, 0, length);
+    }
+
+    @Benchmark
+    public int crc16Incremental() {
+        int crc = CRC16.INITIAL_VALUE;
+        for (int i = 0; i < length; i++) {
+            crc = CRC16.update(crc, data[i]);
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int crc16DirectBuffer() {
+        direct.rewind();
+        return CRC16.update(CRC16.INITIAL_VALUE, direct);
+    }
+}
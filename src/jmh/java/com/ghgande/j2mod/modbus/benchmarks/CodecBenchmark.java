@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding requests the way the slave transports do
+ * (<tt>createModbusRequest</tt> followed by <tt>readFrom</tt>) and encoding
+ * the responses that carry the most data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final int MAX_REGISTERS = 125;
+    private static final int WRITE_REGISTERS = 123;
+    private static final int MAX_COILS = 1968;
+
+    private byte[] readRegistersFrame;
+    private byte[] writeRegistersFrame;
+    private byte[] writeCoilsFrame;
+    private BytesInputStream input;
+    private BytesOutputStream output;
+    private ReadMultipleRegistersResponse registersResponse;
+    private ReadInputRegistersResponse inputRegistersResponse;
+    private ReadCoilsResponse coilsResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        Register[] registers = new Register[MAX_REGISTERS];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = new SimpleRegister(i * 3);
+        }
+        BitVector coils = new BitVector(MAX_COILS);
+        for (int i = 0; i < coils.size(); i += 3) {
+            coils.setBit(i, true);
+        }
+
+        readRegistersFrame = encode(new ReadMultipleRegistersRequest(0, MAX_REGISTERS));
+        writeRegistersFrame = encode(new WriteMultipleRegistersRequest(0, Arrays.copyOf(registers, WRITE_REGISTERS)));
+        writeCoilsFrame = encode(new WriteMultipleCoilsRequest(0, coils));
+
+        input = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+        output = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+
+        registersResponse = new ReadMultipleRegistersResponse(registers);
+        inputRegistersResponse = new ReadInputRegistersResponse(registers);
+        coilsResponse = new ReadCoilsResponse(coils.size());
+        for (int i = 0; i < coils.size(); i++) {
+            coilsResponse.setCoilStatus(i, coils.getBit(i));
+        }
+    }
+
+    private static byte[] encode(ModbusRequest request) throws IOException {
+        request.setUnitID(1);
+        BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        request.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private ModbusRequest decode(byte[] frame) throws IOException {
+        input.reset(frame);
+        ModbusRequest request = ModbusRequest.createModbusRequest(frame[7] & 0xFF);
+        request.readFrom(input);
+        return request;
+    }
+
+    private int encode(ModbusResponse response) throws IOException {
+        output.reset();
+        response.writeData(output);
+        return output.size();
+    }
+
+    @Benchmark
+    public ModbusRequest decodeReadMultipleRegisters() throws IOException {
+        return decode(readRegistersFrame);
+    }
+
+    @Benchmark
+    public ModbusRequest decodeWriteMultipleRegisters() throws IOException {
+        return decode(writeRegistersFrame);
+    }
+
+    @Benchmark
+    public ModbusRequest decodeWriteMultipleCoils() throws IOException {
+        return decode(writeCoilsFrame);
+    }
+
+    @Benchmark
+    public int encodeReadMultipleRegisters() throws IOException {
+        return encode(registersResponse);
+    }
+
+    @Benchmark
+    public int encodeReadInputRegisters() throws IOException {
+        return encode(inputRegistersResponse);
+    }
+
+    @Benchmark
+    public int encodeReadCoils() throws IOException {
+        return encode(coilsResponse);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.procimg.PrimitiveProcessImage;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures several slave threads reading blocks of holding registers while
+ * another thread keeps writing to them, comparing the synchronized objects of
+ * <tt>SimpleProcessImage</tt> with the lock-free <tt>PrimitiveProcessImage</tt>.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedProcessImageBenchmark {
+
+    private static final int REGISTERS = 1000;
+    private static final int COUNT = 125;
+
+    private SimpleProcessImage simpleImage;
+    private PrimitiveProcessImage primitiveImage;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final short[] values = new short[COUNT];
+        int ref;
+
+        int nextRef() {
+            ref += COUNT;
+            if (ref + COUNT > REGISTERS) {
+                ref = 0;
+            }
+            return ref;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        simpleImage = new SimpleProcessImage();
+        primitiveImage = new PrimitiveProcessImage(0, 0, 0, REGISTERS);
+        for (int i = 0; i < REGISTERS; i++) {
+            simpleImage.addRegister(new SimpleRegister(i));
+            primitiveImage.setRegisterValue(i, i);
+        }
+    }
+
+    @Benchmark
+    @Group("simple")
+    @GroupThreads(3)
+    public short[] simpleRead(ThreadState state) {
+        Register[] registers = simpleImage.getRegisterRange(state.nextRef(), COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            state.values[i] = registers[i].toShort();
+        }
+        return state.values;
+    }
+
+    @Benchmark
+    @Group("simple")
+    @GroupThreads(1)
+    public void simpleWrite(ThreadState state) {
+        Register[] registers = simpleImage.getRegisterRange(state.nextRef(), 2);
+        registers[0].setValue(state.ref);
+        registers[1].setValue(state.ref);
+    }
+
+    @Benchmark
+    @Group("primitive")
+    @GroupThreads(3)
+    public short[] primitiveRead(ThreadState state) {
+        primitiveImage.readRegisters(state.nextRef(), COUNT, state.values, 0);
+        return state.values;
+    }
+
+    @Benchmark
+    @Group("primitive")
+    @GroupThreads(1)
+    public void primitiveWrite(ThreadState state) {
+        state.values[0] = (short)state.ref;
+        state.values[1] = (short)state.ref;
+        primitiveImage.writeRegisters(state.nextRef(), 2, state.values, 0);
+    }
+}
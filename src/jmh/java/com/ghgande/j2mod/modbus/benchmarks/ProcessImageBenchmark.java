@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.procimg.PrimitiveProcessImage;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a block of holding registers from a process image, the
+ * lookup the slave does for every read request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+    private static final int REGISTERS = 1000;
+
+    @Param({"1", "16", "125"})
+    private int count;
+
+    private SimpleProcessImage simpleImage;
+    private PrimitiveProcessImage primitiveImage;
+    private short[] values;
+    private int ref;
+
+    @Setup
+    public void setup() {
+        simpleImage = new SimpleProcessImage();
+        primitiveImage = new PrimitiveProcessImage(0, 0, 0, REGISTERS);
+        for (int i = 0; i < REGISTERS; i++) {
+            simpleImage.addRegister(new SimpleRegister(i));
+            primitiveImage.setRegisterValue(i, i);
+        }
+        values = new short[count];
+    }
+
+    private int nextRef() {
+        ref += count;
+        if (ref + count > REGISTERS) {
+            ref = 0;
+        }
+        return ref;
+    }
+
+    @Benchmark
+    public Register[] simpleGetRegisterRange() {
+        return simpleImage.getRegisterRange(nextRef(), count);
+    }
+
+    @Benchmark
+    public Register[] primitiveGetRegisterRange() {
+        return primitiveImage.getRegisterRange(nextRef(), count);
+    }
+
+    @Benchmark
+    public short[] primitiveReadRegisters() {
+        primitiveImage.readRegisters(nextRef(), count, values, 0);
+        return values;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmarks;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete read of holding registers from a <tt>ModbusTCPMaster</tt>
+ * to a <tt>ModbusTCPListener</tt> over the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TCPRoundTripBenchmark {
+
+    private static final int UNIT_ID = 1;
+    private static final int REGISTERS = 125;
+
+    @Param({"5502"})
+    private int port;
+
+    @Param({"1", "125"})
+    private int count;
+
+    private ModbusSlave slave;
+    private ModbusTCPMaster master;
+
+    @Setup
+    public void setup() throws Exception {
+        SimpleProcessImage image = new SimpleProcessImage(UNIT_ID);
+        for (int i = 0; i < REGISTERS; i++) {
+            image.addRegister(new SimpleRegister(i));
+        }
+        slave = ModbusSlaveFactory.createTCPSlave(InetAddress.getLoopbackAddress(), port, 5, false);
+        slave.addProcessImage(UNIT_ID, image);
+        slave.open();
+
+        master = new ModbusTCPMaster(InetAddress.getLoopbackAddress().getHostAddress(), port);
+        master.connect();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (slave != null) {
+            ModbusSlaveFactory.close(slave);
+        }
+    }
+
+    @Benchmark
+    public Register[] readMultipleRegisters() throws Exception {
+        return master.readMultipleRegisters(UNIT_ID, 0, count);
+    }
+}
@@ -236,6 +236,13 @@ public interface Modbus {
      */
     int NEGATIVE_ACKNOWLEDGEMENT = 7;
 
+    /**
+     * Defines the Modbus slave exception type <tt>Gateway path unavailable</tt>.
+     * This exception code indicates that a Modbus gateway could not allocate
+     * a path to the target, usually because the path is overloaded.
+     */
+    int GATEWAY_PATH_UNAVAILABLE = 10;
+
     /**
      * Defines the Modbus slave exception type <tt>Gateway target failed to
      * respond</tt>.  This exception code indicates that a Modbus gateway
@@ -30,6 +30,7 @@ public class ModbusIOException extends ModbusException {
      */
     private static final long serialVersionUID = 1L;
     private boolean eof = false;
+    private boolean timeout = false;
 
     /**
      * Constructs a new <tt>ModbusIOException</tt> instance.
@@ -116,4 +117,24 @@ public class ModbusIOException extends ModbusException {
     public void setEOF(boolean b) {
         eof = b;
     }
+
+    /**
+     * Tests if this <tt>ModbusIOException</tt> was caused by a response not
+     * arriving before the timeout.
+     *
+     * @return true if timed out, false otherwise.
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the flag that determines whether this <tt>ModbusIOException</tt> was
+     * caused by a response not arriving before the timeout.
+     *
+     * @param b true if timed out, false otherwise.
+     */
+    public void setTimeout(boolean b) {
+        timeout = b;
+    }
 }
@@ -17,18 +17,28 @@ package com.ghgande.j2mod.modbus.facade;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
 import com.ghgande.j2mod.modbus.msg.*;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.util.VirtualThreads;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * Modbus/TCP Master facade - common methods for all the facade implementations
  * The emphasis is in making callas to Modbus devices as simple as possible
  * for the most common Function Codes.
  * This class makes sure that no NPE is raised and that the methods are thread-safe.
+ * Calls on one master are serialised by a <tt>ReentrantLock</tt>, as they share
+ * its transaction.
  *
  * @author Steve O'Hara (4NG)
  * @version 2.0 (March 2016)
@@ -37,6 +47,16 @@ public abstract class AbstractModbusMaster {
 
     private static final int DEFAULT_UNIT_ID = 1;
 
+    /**
+     * Lock held whilst the master is used. It is a <tt>ReentrantLock</tt> rather
+     * than a monitor so that a virtual thread blocked on the network does not pin
+     * its carrier thread.
+     * <p>
+     * The master's methods no longer synchronize on the master itself, so callers
+     * that used <tt>synchronized (master)</tt> to run several requests without
+     * another thread's requests in between must hold this lock instead.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
     protected ModbusTransaction transaction;
     private ReadCoilsRequest readCoilsRequest;
     private ReadInputDiscretesRequest readInputDiscretesRequest;
@@ -48,14 +68,28 @@ public abstract class AbstractModbusMaster {
     private WriteMultipleRegistersRequest writeMultipleRegistersRequest;
     private MaskWriteRegisterRequest maskWriteRegisterRequest;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    protected int retries = Modbus.DEFAULT_RETRIES;
+    private final Object asyncLock = new Object();
+    private ExecutorService asyncExecutor;
+    private boolean useVirtualThreads;
+    private ModbusMetrics metrics;
 
     /**
      * Sets the transaction to use
      *
      * @param transaction Transaction to use
      */
-    protected synchronized void setTransaction(ModbusTransaction transaction) {
-        this.transaction = transaction;
+    protected void setTransaction(ModbusTransaction transaction) {
+        lock.lock();
+        try {
+            this.transaction = transaction;
+            if (transaction != null) {
+                transaction.setMetrics(metrics);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -86,19 +120,25 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readCoils(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readCoilsRequest == null) {
-            readCoilsRequest = new ReadCoilsRequest();
+    public BitVector readCoils(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readCoilsRequest == null) {
+                readCoilsRequest = new ReadCoilsRequest();
+            }
+            readCoilsRequest.setUnitID(unitId);
+            readCoilsRequest.setReference(ref);
+            readCoilsRequest.setBitCount(count);
+            transaction.setRequest(readCoilsRequest);
+            transaction.execute();
+            BitVector bv = ((ReadCoilsResponse) getAndCheckResponse()).getCoils();
+            bv.forceSize(count);
+            return bv;
+        }
+        finally {
+            lock.unlock();
         }
-        readCoilsRequest.setUnitID(unitId);
-        readCoilsRequest.setReference(ref);
-        readCoilsRequest.setBitCount(count);
-        transaction.setRequest(readCoilsRequest);
-        transaction.execute();
-        BitVector bv = ((ReadCoilsResponse) getAndCheckResponse()).getCoils();
-        bv.forceSize(count);
-        return bv;
     }
 
     /**
@@ -113,17 +153,23 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized boolean writeCoil(int unitId, int ref, boolean state) throws ModbusException {
-        checkTransaction();
-        if (writeCoilRequest == null) {
-            writeCoilRequest = new WriteCoilRequest();
+    public boolean writeCoil(int unitId, int ref, boolean state) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeCoilRequest == null) {
+                writeCoilRequest = new WriteCoilRequest();
+            }
+            writeCoilRequest.setUnitID(unitId);
+            writeCoilRequest.setReference(ref);
+            writeCoilRequest.setCoil(state);
+            transaction.setRequest(writeCoilRequest);
+            transaction.execute();
+            return ((WriteCoilResponse) getAndCheckResponse()).getCoil();
+        }
+        finally {
+            lock.unlock();
         }
-        writeCoilRequest.setUnitID(unitId);
-        writeCoilRequest.setReference(ref);
-        writeCoilRequest.setCoil(state);
-        transaction.setRequest(writeCoilRequest);
-        transaction.execute();
-        return ((WriteCoilResponse) getAndCheckResponse()).getCoil();
     }
 
     /**
@@ -139,16 +185,22 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeMultipleCoils(int unitId, int ref, BitVector coils) throws ModbusException {
-        checkTransaction();
-        if (writeMultipleCoilsRequest == null) {
-            writeMultipleCoilsRequest = new WriteMultipleCoilsRequest();
+    public void writeMultipleCoils(int unitId, int ref, BitVector coils) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeMultipleCoilsRequest == null) {
+                writeMultipleCoilsRequest = new WriteMultipleCoilsRequest();
+            }
+            writeMultipleCoilsRequest.setUnitID(unitId);
+            writeMultipleCoilsRequest.setReference(ref);
+            writeMultipleCoilsRequest.setCoils(coils);
+            transaction.setRequest(writeMultipleCoilsRequest);
+            transaction.execute();
+        }
+        finally {
+            lock.unlock();
         }
-        writeMultipleCoilsRequest.setUnitID(unitId);
-        writeMultipleCoilsRequest.setReference(ref);
-        writeMultipleCoilsRequest.setCoils(coils);
-        transaction.setRequest(writeMultipleCoilsRequest);
-        transaction.execute();
     }
 
     /**
@@ -167,19 +219,25 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readInputDiscretes(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readInputDiscretesRequest == null) {
-            readInputDiscretesRequest = new ReadInputDiscretesRequest();
+    public BitVector readInputDiscretes(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readInputDiscretesRequest == null) {
+                readInputDiscretesRequest = new ReadInputDiscretesRequest();
+            }
+            readInputDiscretesRequest.setUnitID(unitId);
+            readInputDiscretesRequest.setReference(ref);
+            readInputDiscretesRequest.setBitCount(count);
+            transaction.setRequest(readInputDiscretesRequest);
+            transaction.execute();
+            BitVector bv = ((ReadInputDiscretesResponse)getAndCheckResponse()).getDiscretes();
+            bv.forceSize(count);
+            return bv;
+        }
+        finally {
+            lock.unlock();
         }
-        readInputDiscretesRequest.setUnitID(unitId);
-        readInputDiscretesRequest.setReference(ref);
-        readInputDiscretesRequest.setBitCount(count);
-        transaction.setRequest(readInputDiscretesRequest);
-        transaction.execute();
-        BitVector bv = ((ReadInputDiscretesResponse)getAndCheckResponse()).getDiscretes();
-        bv.forceSize(count);
-        return bv;
     }
 
     /**
@@ -197,17 +255,88 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized InputRegister[] readInputRegisters(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readInputRegistersRequest == null) {
-            readInputRegistersRequest = new ReadInputRegistersRequest();
+    public InputRegister[] readInputRegisters(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadInputRegisters(unitId, ref, count).getRegisters();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of input registers from the slave into an array of
+     * values, without creating an <tt>InputRegister</tt> for each of them.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of input registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputRegisters(int unitId, int ref, int count, short[] values, int offset) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadInputRegisters(unitId, ref, count).getRegisterValues(values, offset);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of input registers from the slave into an array of
+     * unsigned values, without creating an <tt>InputRegister</tt> for each of them.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of input registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputRegisters(int unitId, int ref, int count, int[] values, int offset) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadInputRegisters(unitId, ref, count).getRegisterValues(values, offset);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of input registers from the slave into a buffer,
+     * two bytes per register, high byte first.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     * @param buffer the buffer to put the register values into.
+     *
+     * @return the number of input registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputRegisters(int unitId, int ref, int count, ByteBuffer buffer) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadInputRegisters(unitId, ref, count).getRegisterData(buffer);
+        }
+        finally {
+            lock.unlock();
         }
-        readInputRegistersRequest.setUnitID(unitId);
-        readInputRegistersRequest.setReference(ref);
-        readInputRegistersRequest.setWordCount(count);
-        transaction.setRequest(readInputRegistersRequest);
-        transaction.execute();
-        return ((ReadInputRegistersResponse) getAndCheckResponse()).getRegisters();
     }
 
     /**
@@ -225,17 +354,88 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized Register[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readMultipleRegistersRequest == null) {
-            readMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+    public Register[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadMultipleRegisters(unitId, ref, count).getRegisters();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of registers from the slave into an array of
+     * values, without creating a <tt>Register</tt> for each of them.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readMultipleRegisters(int unitId, int ref, int count, short[] values, int offset) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadMultipleRegisters(unitId, ref, count).getRegisterValues(values, offset);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of registers from the slave into an array of
+     * unsigned values, without creating a <tt>Register</tt> for each of them.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readMultipleRegisters(int unitId, int ref, int count, int[] values, int offset) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadMultipleRegisters(unitId, ref, count).getRegisterValues(values, offset);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of registers from the slave into a buffer,
+     * two bytes per register, high byte first.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     * @param buffer the buffer to put the register values into.
+     *
+     * @return the number of registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readMultipleRegisters(int unitId, int ref, int count, ByteBuffer buffer) throws ModbusException {
+        lock.lock();
+        try {
+            return executeReadMultipleRegisters(unitId, ref, count).getRegisterData(buffer);
+        }
+        finally {
+            lock.unlock();
         }
-        readMultipleRegistersRequest.setUnitID(unitId);
-        readMultipleRegistersRequest.setReference(ref);
-        readMultipleRegistersRequest.setWordCount(count);
-        transaction.setRequest(readMultipleRegistersRequest);
-        transaction.execute();
-        return ((ReadMultipleRegistersResponse) getAndCheckResponse()).getRegisters();
     }
 
     /**
@@ -251,17 +451,23 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized int writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
-        checkTransaction();
-        if (writeSingleRegisterRequest == null) {
-            writeSingleRegisterRequest = new WriteSingleRegisterRequest();
+    public int writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeSingleRegisterRequest == null) {
+                writeSingleRegisterRequest = new WriteSingleRegisterRequest();
+            }
+            writeSingleRegisterRequest.setUnitID(unitId);
+            writeSingleRegisterRequest.setReference(ref);
+            writeSingleRegisterRequest.setRegister(register);
+            transaction.setRequest(writeSingleRegisterRequest);
+            transaction.execute();
+            return ((WriteSingleRegisterResponse) getAndCheckResponse()).getRegisterValue();
+        }
+        finally {
+            lock.unlock();
         }
-        writeSingleRegisterRequest.setUnitID(unitId);
-        writeSingleRegisterRequest.setReference(ref);
-        writeSingleRegisterRequest.setRegister(register);
-        transaction.setRequest(writeSingleRegisterRequest);
-        transaction.execute();
-        return ((WriteSingleRegisterResponse) getAndCheckResponse()).getRegisterValue();
     }
 
     /**
@@ -277,17 +483,23 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized int writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
-        checkTransaction();
-        if (writeMultipleRegistersRequest == null) {
-            writeMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+    public int writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeMultipleRegistersRequest == null) {
+                writeMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+            }
+            writeMultipleRegistersRequest.setUnitID(unitId);
+            writeMultipleRegistersRequest.setReference(ref);
+            writeMultipleRegistersRequest.setRegisters(registers);
+            transaction.setRequest(writeMultipleRegistersRequest);
+            transaction.execute();
+            return ((WriteMultipleRegistersResponse) transaction.getResponse()).getWordCount();
+        }
+        finally {
+            lock.unlock();
         }
-        writeMultipleRegistersRequest.setUnitID(unitId);
-        writeMultipleRegistersRequest.setReference(ref);
-        writeMultipleRegistersRequest.setRegisters(registers);
-        transaction.setRequest(writeMultipleRegistersRequest);
-        transaction.execute();
-        return ((WriteMultipleRegistersResponse) transaction.getResponse()).getWordCount();
     }
 
     /**
@@ -303,22 +515,28 @@ public abstract class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized boolean maskWriteRegister(int unitId, int ref, int andMask, int orMask) throws ModbusException {
-        checkTransaction();
-        if (maskWriteRegisterRequest == null) {
-            maskWriteRegisterRequest = new MaskWriteRegisterRequest();
-        }
-        maskWriteRegisterRequest.setUnitID(unitId);
-        maskWriteRegisterRequest.setReference(ref);
-        maskWriteRegisterRequest.setAndMask(andMask);
-        maskWriteRegisterRequest.setOrMask(orMask);
-        transaction.setRequest(maskWriteRegisterRequest);
-        transaction.execute();
+    public boolean maskWriteRegister(int unitId, int ref, int andMask, int orMask) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (maskWriteRegisterRequest == null) {
+                maskWriteRegisterRequest = new MaskWriteRegisterRequest();
+            }
+            maskWriteRegisterRequest.setUnitID(unitId);
+            maskWriteRegisterRequest.setReference(ref);
+            maskWriteRegisterRequest.setAndMask(andMask);
+            maskWriteRegisterRequest.setOrMask(orMask);
+            transaction.setRequest(maskWriteRegisterRequest);
+            transaction.execute();
 
-        MaskWriteRegisterResponse response = (MaskWriteRegisterResponse) getAndCheckResponse();
-        return response.getReference() == maskWriteRegisterRequest.getReference() &&
-               response.getAndMask() == maskWriteRegisterRequest.getAndMask() &&
-               response.getOrMask() == maskWriteRegisterRequest.getOrMask();
+            MaskWriteRegisterResponse response = (MaskWriteRegisterResponse) getAndCheckResponse();
+            return response.getReference() == maskWriteRegisterRequest.getReference() &&
+                   response.getAndMask() == maskWriteRegisterRequest.getAndMask() &&
+                   response.getOrMask() == maskWriteRegisterRequest.getOrMask();
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -408,6 +626,24 @@ public abstract class AbstractModbusMaster {
         return readInputRegisters(DEFAULT_UNIT_ID, ref, count);
     }
 
+    /**
+     * Reads a given number of input registers from the slave into an array of
+     * values, without creating an <tt>InputRegister</tt> for each of them.
+     *
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of input registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputRegisters(int ref, int count, short[] values, int offset) throws ModbusException {
+        return readInputRegisters(DEFAULT_UNIT_ID, ref, count, values, offset);
+    }
+
     /**
      * Reads a given number of registers from the slave.
      *
@@ -426,6 +662,24 @@ public abstract class AbstractModbusMaster {
         return readMultipleRegisters(DEFAULT_UNIT_ID, ref, count);
     }
 
+    /**
+     * Reads a given number of registers from the slave into an array of
+     * values, without creating a <tt>Register</tt> for each of them.
+     *
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     * @param values the array to copy the register values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of registers received from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readMultipleRegisters(int ref, int count, short[] values, int offset) throws ModbusException {
+        return readMultipleRegisters(DEFAULT_UNIT_ID, ref, count, values, offset);
+    }
+
     /**
      * Writes a single register to the slave.
      *
@@ -474,6 +728,400 @@ public abstract class AbstractModbusMaster {
         return maskWriteRegister(DEFAULT_UNIT_ID, ref, andMask, orMask);
     }
 
+    /**
+     * Reads a given number of coil states from the slave without blocking the caller.
+     *
+     * Note that the number of bits in the bit vector will be
+     * forced to the number originally requested.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start reading from.
+     * @param count  the number of coil states to be read.
+     *
+     * @return a future that completes with a <tt>BitVector</tt> holding the
+     * received coil states, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<BitVector> readCoilsAsync(int unitId, int ref, final int count) {
+        ReadCoilsRequest request = new ReadCoilsRequest(ref, count);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, BitVector>() {
+            @Override
+            public BitVector apply(ModbusResponse response) {
+                BitVector bv = ((ReadCoilsResponse) response).getCoils();
+                bv.forceSize(count);
+                return bv;
+            }
+        });
+    }
+
+    /**
+     * Writes a coil state to the slave without blocking the caller.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to be written.
+     * @param state  the coil state to be written.
+     *
+     * @return a future that completes with the state of the coil as returned
+     * from the slave, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Boolean> writeCoilAsync(int unitId, int ref, boolean state) {
+        WriteCoilRequest request = new WriteCoilRequest(ref, state);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Boolean>() {
+            @Override
+            public Boolean apply(ModbusResponse response) {
+                return ((WriteCoilResponse) response).getCoil();
+            }
+        });
+    }
+
+    /**
+     * Writes a given number of coil states to the slave without blocking the caller.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start writing to.
+     * @param coils  a <tt>BitVector</tt> which holds the coil states to be written.
+     *
+     * @return a future that completes when the slave has acknowledged the write,
+     * or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Void> writeMultipleCoilsAsync(int unitId, int ref, BitVector coils) {
+        WriteMultipleCoilsRequest request = new WriteMultipleCoilsRequest(ref, coils);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Void>() {
+            @Override
+            public Void apply(ModbusResponse response) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Reads a given number of input discrete states from the slave without blocking the caller.
+     *
+     * Note that the number of bits in the bit vector will be
+     * forced to the number originally requested.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input discrete to start reading from.
+     * @param count  the number of input discrete states to be read.
+     *
+     * @return a future that completes with a <tt>BitVector</tt> holding the
+     * received input discrete states, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<BitVector> readInputDiscretesAsync(int unitId, int ref, final int count) {
+        ReadInputDiscretesRequest request = new ReadInputDiscretesRequest(ref, count);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, BitVector>() {
+            @Override
+            public BitVector apply(ModbusResponse response) {
+                BitVector bv = ((ReadInputDiscretesResponse) response).getDiscretes();
+                bv.forceSize(count);
+                return bv;
+            }
+        });
+    }
+
+    /**
+     * Reads a given number of input registers from the slave without blocking the caller.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     *
+     * @return a future that completes with the received input registers,
+     * or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<InputRegister[]> readInputRegistersAsync(int unitId, int ref, int count) {
+        ReadInputRegistersRequest request = new ReadInputRegistersRequest(ref, count);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, InputRegister[]>() {
+            @Override
+            public InputRegister[] apply(ModbusResponse response) {
+                return ((ReadInputRegistersResponse) response).getRegisters();
+            }
+        });
+    }
+
+    /**
+     * Reads a given number of registers from the slave without blocking the caller.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     *
+     * @return a future that completes with the received registers,
+     * or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Register[]> readMultipleRegistersAsync(int unitId, int ref, int count) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(ref, count);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Register[]>() {
+            @Override
+            public Register[] apply(ModbusResponse response) {
+                return ((ReadMultipleRegistersResponse) response).getRegisters();
+            }
+        });
+    }
+
+    /**
+     * Writes a single register to the slave without blocking the caller.
+     *
+     * @param unitId   the slave unit id.
+     * @param ref      the offset of the register to be written.
+     * @param register a <tt>Register</tt> holding the value of the register
+     *                 to be written.
+     *
+     * @return a future that completes with the value of the register as returned
+     * from the slave, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Integer> writeSingleRegisterAsync(int unitId, int ref, Register register) {
+        WriteSingleRegisterRequest request = new WriteSingleRegisterRequest(ref, register);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Integer>() {
+            @Override
+            public Integer apply(ModbusResponse response) {
+                return ((WriteSingleRegisterResponse) response).getRegisterValue();
+            }
+        });
+    }
+
+    /**
+     * Writes a number of registers to the slave without blocking the caller.
+     *
+     * @param unitId    the slave unit id.
+     * @param ref       the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *                  the registers to be written.
+     *
+     * @return a future that completes with the number of registers that have
+     * been written, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Integer> writeMultipleRegistersAsync(int unitId, int ref, Register[] registers) {
+        WriteMultipleRegistersRequest request = new WriteMultipleRegistersRequest(ref, registers);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Integer>() {
+            @Override
+            public Integer apply(ModbusResponse response) {
+                return ((WriteMultipleRegistersResponse) response).getWordCount();
+            }
+        });
+    }
+
+    /**
+     * Mask write a single register to the slave without blocking the caller.
+     *
+     * @param unitId    the slave unit id.
+     * @param ref       the offset of the register to start writing to.
+     * @param andMask   AND mask.
+     * @param orMask    OR mask.
+     *
+     * @return a future that completes with true if the response data equals the
+     * request data, or with a <tt>ModbusException</tt>.
+     */
+    public CompletableFuture<Boolean> maskWriteRegisterAsync(int unitId, final int ref, final int andMask, final int orMask) {
+        MaskWriteRegisterRequest request = new MaskWriteRegisterRequest(ref, andMask, orMask);
+        request.setUnitID(unitId);
+        return executeAsync(request, new Function<ModbusResponse, Boolean>() {
+            @Override
+            public Boolean apply(ModbusResponse response) {
+                MaskWriteRegisterResponse res = (MaskWriteRegisterResponse) response;
+                return res.getReference() == ref && res.getAndMask() == andMask && res.getOrMask() == orMask;
+            }
+        });
+    }
+
+    /**
+     * Sends the request without blocking the caller and converts the response
+     * using the given function. Exception responses from the slave complete the
+     * future with a <tt>ModbusSlaveException</tt>.
+     *
+     * @param request   Request to send
+     * @param converter Function to extract the result from the response
+     * @param <T>       Type of the result
+     *
+     * @return Future holding the result
+     */
+    private <T> CompletableFuture<T> executeAsync(ModbusRequest request, final Function<ModbusResponse, T> converter) {
+        return executeAsync(request).thenApply(new Function<ModbusResponse, T>() {
+            @Override
+            public T apply(ModbusResponse response) {
+                if (response instanceof ExceptionResponse) {
+                    throw new CompletionException(new ModbusSlaveException(((ExceptionResponse) response).getExceptionCode()));
+                }
+                return converter.apply(response);
+            }
+        });
+    }
+
+    /**
+     * Sends the request without blocking the caller.
+     * <p>
+     * The default implementation runs the request on a thread owned by this
+     * master, a new virtual thread per request if {@link #setUseVirtualThreads(boolean)}
+     * is set, otherwise a single platform thread. Either way the requests of one
+     * master are serialised, as they share its transaction, and executed one after
+     * the other with its timeouts and retries. Implementations that can have many
+     * requests in flight, such as a pipelined <tt>ModbusTCPMaster</tt>, override
+     * this method.
+     *
+     * @param request Request to send
+     *
+     * @return Future that completes with the response or a <tt>ModbusException</tt>
+     */
+    protected CompletableFuture<ModbusResponse> executeAsync(final ModbusRequest request) {
+        final CompletableFuture<ModbusResponse> result = new CompletableFuture<ModbusResponse>();
+        try {
+            getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.complete(execute(request));
+                    }
+                    catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            result.completeExceptionally(new ModbusException("Cannot queue request - %s", e.getMessage()));
+        }
+        return result;
+    }
+
+    /**
+     * Sends a read input registers request using the cached request object
+     *
+     * @param unitId Slave unit id
+     * @param ref    Offset of the first input register
+     * @param count  Number of input registers
+     * @return Response from the slave
+     * @throws ModbusException If the transaction fails
+     */
+    private ReadInputRegistersResponse executeReadInputRegisters(int unitId, int ref, int count) throws ModbusException {
+        checkTransaction();
+        if (readInputRegistersRequest == null) {
+            readInputRegistersRequest = new ReadInputRegistersRequest();
+        }
+        readInputRegistersRequest.setUnitID(unitId);
+        readInputRegistersRequest.setReference(ref);
+        readInputRegistersRequest.setWordCount(count);
+        transaction.setRequest(readInputRegistersRequest);
+        transaction.execute();
+        return (ReadInputRegistersResponse) getAndCheckResponse();
+    }
+
+    /**
+     * Sends a read multiple registers request using the cached request object
+     *
+     * @param unitId Slave unit id
+     * @param ref    Offset of the first register
+     * @param count  Number of registers
+     * @return Response from the slave
+     * @throws ModbusException If the transaction fails
+     */
+    private ReadMultipleRegistersResponse executeReadMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
+        checkTransaction();
+        if (readMultipleRegistersRequest == null) {
+            readMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+        }
+        readMultipleRegistersRequest.setUnitID(unitId);
+        readMultipleRegistersRequest.setReference(ref);
+        readMultipleRegistersRequest.setWordCount(count);
+        transaction.setRequest(readMultipleRegistersRequest);
+        transaction.execute();
+        return (ReadMultipleRegistersResponse) getAndCheckResponse();
+    }
+
+    /**
+     * Executes the request on the master's transaction
+     *
+     * @param request Request to send
+     *
+     * @return Response from the slave
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    private ModbusResponse execute(ModbusRequest request) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            transaction.setRequest(request);
+            transaction.execute();
+            return getAndCheckResponse();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the executor used to run asynchronous requests, creating it if necessary.
+     * With virtual threads each request gets its own thread, which parks rather than
+     * pins its carrier whilst it waits for the master. Otherwise a single platform
+     * thread, only kept alive while there is work to do, runs the requests in turn.
+     *
+     * @return Executor
+     */
+    private Executor getAsyncExecutor() {
+        synchronized (asyncLock) {
+            if (asyncExecutor == null) {
+                final String name = String.format("Modbus %s Async", getClass().getSimpleName());
+                if (useVirtualThreads) {
+                    asyncExecutor = VirtualThreads.newThreadPerTaskExecutor(name);
+                }
+                else {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    executor.allowCoreThreadTimeOut(true);
+                    asyncExecutor = executor;
+                }
+            }
+            return asyncExecutor;
+        }
+    }
+
+    /**
+     * Returns true if asynchronous requests are run on virtual threads
+     *
+     * @return True if using virtual threads
+     */
+    public boolean isUseVirtualThreads() {
+        synchronized (asyncLock) {
+            return useVirtualThreads;
+        }
+    }
+
+    /**
+     * Sets whether asynchronous requests should be run on virtual threads, one
+     * per request, rather than on a single platform thread. This makes polling a
+     * large number of devices with one master each much cheaper.
+     * <p>
+     * Virtual threads need JDK 21 or later, on older runtimes platform threads
+     * are used. Any requests already queued are run by the previous executor.
+     *
+     * @param useVirtualThreads True to use virtual threads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        synchronized (asyncLock) {
+            if (this.useVirtualThreads != useVirtualThreads) {
+                this.useVirtualThreads = useVirtualThreads;
+                if (asyncExecutor != null) {
+                    asyncExecutor.shutdown();
+                    asyncExecutor = null;
+                }
+            }
+        }
+    }
+
     /**
      * Reads the response from the transaction
      * If there is no response, then it throws an error
@@ -525,9 +1173,50 @@ public abstract class AbstractModbusMaster {
      *
      * @param retries the amount of retries as <tt>int</tt>.
      */
-    public synchronized void setRetries(int retries) {
-        if (transaction != null) {
-            transaction.setRetries(retries);
+    public void setRetries(int retries) {
+        lock.lock();
+        try {
+            this.retries = retries;
+            if (transaction != null) {
+                transaction.setRetries(retries);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the metrics that every request made by this master is reported to
+     *
+     * @return Metrics or null if not reporting
+     */
+    public ModbusMetrics getMetrics() {
+        lock.lock();
+        try {
+            return metrics;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the metrics that every request made by this master is reported to,
+     * e.g. a <tt>ModbusStatistics</tt> that has been registered with JMX
+     *
+     * @param metrics Metrics to use or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        lock.lock();
+        try {
+            this.metrics = metrics;
+            if (transaction != null) {
+                transaction.setMetrics(metrics);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -537,9 +1226,15 @@ public abstract class AbstractModbusMaster {
      *
      * @param b true if checking validity, false otherwise.
      */
-    public synchronized void setCheckingValidity(boolean b) {
-        if (transaction != null) {
-            transaction.setCheckingValidity(b);
+    public void setCheckingValidity(boolean b) {
+        lock.lock();
+        try {
+            if (transaction != null) {
+                transaction.setCheckingValidity(b);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+
+/**
+ * Receives the values read by a <tt>PollingPlan</tt>. Override the methods
+ * of interest.
+ * <p>
+ * The methods are called on the polling thread, so they should return quickly.
+ */
+public abstract class AbstractPollingListener {
+
+    /**
+     * Called with the values of each point that has been read. The values
+     * belong to the whole block that was read and the array is reused, so only
+     * <tt>point.getCount()</tt> values from the offset belong to the point and
+     * they must be copied if they are needed after the call. Bits are 1 or 0.
+     *
+     * @param point  Point that was read
+     * @param values Unsigned register values or bits of the block
+     * @param offset Index in <tt>values</tt> of the first value of the point
+     */
+    public void pointRead(PollingPoint point, int[] values, int offset) {
+    }
+
+    /**
+     * Called when the request for a block fails. None of its points are
+     * passed to <tt>pointRead</tt>.
+     *
+     * @param block Block that could not be read
+     * @param e     Cause of the failure
+     */
+    public void blockFailed(PollingBlock block, ModbusException e) {
+    }
+
+    /**
+     * Called after all the blocks of a scheduled group have been read
+     *
+     * @param group Group that was polled
+     */
+    public void cycleCompleted(PollingGroup group) {
+    }
+}
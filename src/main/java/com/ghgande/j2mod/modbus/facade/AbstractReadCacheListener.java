@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+/**
+ * Receives changes to the values of a range subscribed to with
+ * <tt>ModbusReadCache.subscribe</tt>.
+ * <p>
+ * The method is called on the thread whose read fetched the new values, so it
+ * should return quickly.
+ */
+public abstract class AbstractReadCacheListener {
+
+    /**
+     * Called when a read from the slave returns values of the range that
+     * differ from those last seen, including the first time they are read.
+     * The array belongs to the listener. Bits are 1 or 0, and any values of the
+     * range that have not been read yet are -1.
+     *
+     * @param point  Range that changed
+     * @param values Values of the whole range
+     */
+    public abstract void valuesChanged(PollingPoint point, int[] values);
+}
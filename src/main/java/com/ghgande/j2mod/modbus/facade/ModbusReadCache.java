@@ -0,0 +1,522 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the values read through a master.
+ * <p>
+ * A range that is read again within the time to live is returned from memory
+ * without a request to the slave. Threads that read the same range while a
+ * request for it is in progress wait for that request instead of sending their
+ * own, so each range has at most one request in flight. A time to live of zero
+ * keeps the collapsing of concurrent reads without caching anything.
+ * <p>
+ * Writes made through the cache remove the cached ranges they overlap, whether
+ * or not the write succeeds. Writes made directly through the master are not
+ * seen by the cache, use <tt>invalidate</tt> after them.
+ * <p>
+ * Listeners can subscribe to a range to be told when a read returns values
+ * for it that are different from those last seen.
+ * <pre>
+ *     ModbusReadCache cache = new ModbusReadCache(master, 200, TimeUnit.MILLISECONDS);
+ *     int[] values = cache.readMultipleRegisters(1, 0, 10);
+ * </pre>
+ * An entry is kept for each distinct range read until it is invalidated or
+ * read again after it has expired.
+ */
+public class ModbusReadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusReadCache.class);
+
+    /**
+     * Values of a range, or the read in progress that will provide them
+     */
+    private static class Entry {
+        final CompletableFuture<int[]> future = new CompletableFuture<int[]>();
+        volatile long expires;
+    }
+
+    /**
+     * Listener and the values it was last told about
+     */
+    private static class Subscription {
+        final PollingPoint point;
+        final AbstractReadCacheListener listener;
+        final int[] values;
+
+        Subscription(PollingPoint point, AbstractReadCacheListener listener) {
+            this.point = point;
+            this.listener = listener;
+            values = new int[point.getCount()];
+            Arrays.fill(values, -1);
+        }
+    }
+
+    private final AbstractModbusMaster master;
+    private final long ttlNanos;
+    private final ConcurrentMap<PollingPoint, Entry> entries = new ConcurrentHashMap<PollingPoint, Entry>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * Creates a cache
+     *
+     * @param master Master to read and write with
+     * @param ttl    How long values are served from the cache
+     * @param unit   Unit of the time to live
+     */
+    public ModbusReadCache(AbstractModbusMaster master, long ttl, TimeUnit unit) {
+        if (master == null) {
+            throw new IllegalArgumentException("Master must be specified");
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.master = master;
+        ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the master the cache reads with
+     *
+     * @return Master
+     */
+    public AbstractModbusMaster getMaster() {
+        return master;
+    }
+
+    /**
+     * Returns how long values are served from the cache
+     *
+     * @param unit Unit to return the time in
+     * @return Time to live
+     */
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads a given number of coil states
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start reading from.
+     * @param count  the number of coil states to be read.
+     *
+     * @return a <tt>BitVector</tt> holding the coil states.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public BitVector readCoils(int unitId, int ref, int count) throws ModbusException {
+        return toBitVector(read(new PollingPoint(null, unitId, PollingPointType.COIL, ref, count)));
+    }
+
+    /**
+     * Reads a given number of input discrete states
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input discrete to start reading from.
+     * @param count  the number of input discrete states to be read.
+     *
+     * @return a <tt>BitVector</tt> holding the input discrete states.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public BitVector readInputDiscretes(int unitId, int ref, int count) throws ModbusException {
+        return toBitVector(read(new PollingPoint(null, unitId, PollingPointType.DISCRETE_INPUT, ref, count)));
+    }
+
+    /**
+     * Reads a given number of input registers
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     *
+     * @return the unsigned values of the registers.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int[] readInputRegisters(int unitId, int ref, int count) throws ModbusException {
+        return read(unitId, PollingPointType.INPUT_REGISTER, ref, count);
+    }
+
+    /**
+     * Reads a given number of holding registers
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     *
+     * @return the unsigned values of the registers.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
+        return read(unitId, PollingPointType.HOLDING_REGISTER, ref, count);
+    }
+
+    /**
+     * Reads a range of any table
+     *
+     * @param unitId the slave unit id.
+     * @param type   the table to read.
+     * @param ref    the offset of the first register or bit.
+     * @param count  the number of registers or bits to be read.
+     *
+     * @return the unsigned values of the registers, or 1 or 0 for bits.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int[] read(int unitId, PollingPointType type, int ref, int count) throws ModbusException {
+        return read(new PollingPoint(null, unitId, type, ref, count)).clone();
+    }
+
+    /**
+     * Writes a coil state and invalidates the cached coils it overlaps
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to be written.
+     * @param state  the coil state to be written.
+     *
+     * @return the state of the coil as returned from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public boolean writeCoil(int unitId, int ref, boolean state) throws ModbusException {
+        try {
+            return master.writeCoil(unitId, ref, state);
+        }
+        finally {
+            invalidate(unitId, PollingPointType.COIL, ref, 1);
+        }
+    }
+
+    /**
+     * Writes a number of coil states and invalidates the cached coils they overlap
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start writing to.
+     * @param coils  a <tt>BitVector</tt> which holds the coil states to be written.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public void writeMultipleCoils(int unitId, int ref, BitVector coils) throws ModbusException {
+        try {
+            master.writeMultipleCoils(unitId, ref, coils);
+        }
+        finally {
+            invalidate(unitId, PollingPointType.COIL, ref, coils.size());
+        }
+    }
+
+    /**
+     * Writes a single register and invalidates the cached registers it overlaps
+     *
+     * @param unitId   the slave unit id.
+     * @param ref      the offset of the register to be written.
+     * @param register a <tt>Register</tt> holding the value of the register
+     *                 to be written.
+     *
+     * @return the value of the register as returned from the slave.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
+        try {
+            return master.writeSingleRegister(unitId, ref, register);
+        }
+        finally {
+            invalidate(unitId, PollingPointType.HOLDING_REGISTER, ref, 1);
+        }
+    }
+
+    /**
+     * Writes a number of registers and invalidates the cached registers they overlap
+     *
+     * @param unitId    the slave unit id.
+     * @param ref       the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *                  the registers to be written.
+     *
+     * @return the number of registers that have been written.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
+        try {
+            return master.writeMultipleRegisters(unitId, ref, registers);
+        }
+        finally {
+            invalidate(unitId, PollingPointType.HOLDING_REGISTER, ref, registers.length);
+        }
+    }
+
+    /**
+     * Mask writes a single register and invalidates the cached registers it overlaps
+     *
+     * @param unitId  the slave unit id.
+     * @param ref     the offset of the register to write to.
+     * @param andMask AND mask.
+     * @param orMask  OR mask.
+     *
+     * @return true if the response data equals the request data, false otherwise.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public boolean maskWriteRegister(int unitId, int ref, int andMask, int orMask) throws ModbusException {
+        try {
+            return master.maskWriteRegister(unitId, ref, andMask, orMask);
+        }
+        finally {
+            invalidate(unitId, PollingPointType.HOLDING_REGISTER, ref, 1);
+        }
+    }
+
+    /**
+     * Removes the cached ranges of a table that overlap the given range, so
+     * that they are read from the slave next time
+     *
+     * @param unitId Unit ID
+     * @param type   Table
+     * @param ref    Address of the first register or bit
+     * @param count  Number of registers or bits
+     */
+    public void invalidate(int unitId, PollingPointType type, int ref, int count) {
+        for (PollingPoint key : entries.keySet()) {
+            if (overlaps(key, unitId, type, ref, count)) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes everything from the cache
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Subscribes a listener to changes in the values of a range. The range
+     * does not have to match the ranges that are read, the listener is told
+     * about changes to any part of it.
+     *
+     * @param point    Range to watch
+     * @param listener Listener to call
+     */
+    public void subscribe(PollingPoint point, AbstractReadCacheListener listener) {
+        if (point == null || listener == null) {
+            throw new IllegalArgumentException("Point and listener must be specified");
+        }
+        subscriptions.add(new Subscription(point, listener));
+    }
+
+    /**
+     * Removes a subscription
+     *
+     * @param point    Range that was subscribed to
+     * @param listener Listener that was subscribed
+     * @return True if the subscription was found
+     */
+    public boolean unsubscribe(PollingPoint point, AbstractReadCacheListener listener) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.point.equals(point) && subscription.listener == listener) {
+                return subscriptions.remove(subscription);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of reads served from the cache
+     *
+     * @return Number of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of reads that were sent to the slave
+     *
+     * @return Number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of reads that waited for the same read already in progress
+     *
+     * @return Number of collapsed reads
+     */
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    /**
+     * Returns the values of a range from the cache, from a read in progress or
+     * from the slave. The array is shared and must not be changed.
+     *
+     * @param key Range to read
+     * @return Values
+     * @throws ModbusException If the read fails
+     */
+    private int[] read(PollingPoint key) throws ModbusException {
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.future.isDone()) {
+                    collapsed.increment();
+                    return await(entry);
+                }
+                if (System.nanoTime() - entry.expires < 0) {
+                    hits.increment();
+                    return entry.future.getNow(null);
+                }
+            }
+            Entry fresh = new Entry();
+            if (entry == null ? entries.putIfAbsent(key, fresh) == null : entries.replace(key, entry, fresh)) {
+                misses.increment();
+                return fetch(key, fresh);
+            }
+        }
+    }
+
+    /**
+     * Reads a range from the slave for everyone waiting on the entry
+     *
+     * @param key   Range to read
+     * @param entry Entry to complete
+     * @return Values
+     * @throws ModbusException If the read fails
+     */
+    private int[] fetch(PollingPoint key, Entry entry) throws ModbusException {
+        int[] values = new int[key.getCount()];
+        try {
+            PollingPlan.read(master, key.getUnitId(), key.getType(), key.getAddress(), key.getCount(), values);
+        }
+        catch (ModbusException | RuntimeException e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        entry.expires = System.nanoTime() + ttlNanos;
+        entry.future.complete(values);
+        notifySubscribers(key, values);
+        return values;
+    }
+
+    /**
+     * Waits for a read in progress
+     *
+     * @param entry Entry of the read
+     * @return Values
+     * @throws ModbusException If the read failed
+     */
+    private static int[] await(Entry entry) throws ModbusException {
+        try {
+            return entry.future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for a read in progress");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ModbusException) {
+                throw (ModbusException)e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new ModbusException("Read failed - %s", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Tells the subscribers of ranges overlapping a read about any values that have changed
+     *
+     * @param key    Range that was read
+     * @param values Values read
+     */
+    private void notifySubscribers(PollingPoint key, int[] values) {
+        for (Subscription subscription : subscriptions) {
+            PollingPoint point = subscription.point;
+            if (!overlaps(point, key.getUnitId(), key.getType(), key.getAddress(), key.getCount())) {
+                continue;
+            }
+            int[] changed = null;
+            synchronized (subscription) {
+                int from = Math.max(point.getAddress(), key.getAddress());
+                int to = Math.min(point.getEnd(), key.getEnd());
+                for (int address = from; address < to; address++) {
+                    int value = values[address - key.getAddress()];
+                    if (subscription.values[address - point.getAddress()] != value) {
+                        subscription.values[address - point.getAddress()] = value;
+                        changed = subscription.values;
+                    }
+                }
+                if (changed != null) {
+                    changed = changed.clone();
+                }
+            }
+            if (changed != null) {
+                try {
+                    subscription.listener.valuesChanged(point, changed);
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Cache listener for {} failed - {}", point, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static boolean overlaps(PollingPoint point, int unitId, PollingPointType type, int ref, int count) {
+        return point.getUnitId() == unitId && point.getType() == type && point.getAddress() < ref + count && ref < point.getEnd();
+    }
+
+    private static BitVector toBitVector(int[] values) {
+        BitVector bits = new BitVector(values.length);
+        for (int i = 0; i < values.length; i++) {
+            bits.setBit(i, values[i] != 0);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,776 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransaction;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.net.AbstractSerialConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class that shares one serial multi-drop bus between many threads.
+ * <p>
+ * The scheduler owns the serial port and a single thread that sends the
+ * requests. Requests can be submitted from any thread and are sent in order of
+ * priority, then deadline. A request that is still waiting when its deadline
+ * passes is failed with a timeout rather than being sent.
+ * <p>
+ * Each slave on the bus can be given its own response timeout. A slave that
+ * fails to respond is backed off for a time that doubles with each consecutive
+ * failure, up to a maximum, so that a dead slave does not hold up the rest of
+ * the bus. Requests for a slave that is backed off wait until the back off ends,
+ * or fail straight away if their deadline is sooner. A slave whose average
+ * response time is more than half its timeout is treated as slow and its
+ * requests are only sent when no request of the same priority is ready for a
+ * faster slave. To stop requests for slow slaves or with a low priority from
+ * waiting forever, a request is treated as one priority higher for each aging
+ * interval it has been waiting.
+ * <p>
+ * The proportion of time that the bus is busy is available from
+ * {@link #getUtilization()}.
+ */
+public class ModbusSerialBusScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusSerialBusScheduler.class);
+
+    /**
+     * Default time a request can wait to be sent (=<tt>10000</tt>ms)
+     */
+    public static final int DEFAULT_DEADLINE = 10000;
+
+    /**
+     * Default time a slave is backed off after its first failure (=<tt>250</tt>ms)
+     */
+    public static final int DEFAULT_MIN_BACKOFF = 250;
+
+    /**
+     * Default maximum time a slave is backed off (=<tt>30000</tt>ms)
+     */
+    public static final int DEFAULT_MAX_BACKOFF = 30000;
+
+    /**
+     * Default time a request waits before it is treated as one priority higher (=<tt>1000</tt>ms)
+     */
+    public static final int DEFAULT_AGING_INTERVAL = 1000;
+
+    private static final Comparator<Job> ORDER = new Comparator<Job>() {
+        @Override
+        public int compare(Job a, Job b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            if (a.deadline != b.deadline) {
+                return a.deadline - b.deadline < 0 ? -1 : 1;
+            }
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final AbstractSerialConnection connection;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<Integer, Slave> slaves = new HashMap<Integer, Slave>();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private volatile long utilizationStart = System.nanoTime();
+    private long sequence;
+    private int timeout;
+    private int transDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
+    private int minBackoff = DEFAULT_MIN_BACKOFF;
+    private int maxBackoff = DEFAULT_MAX_BACKOFF;
+    private int agingInterval = DEFAULT_AGING_INTERVAL;
+    private volatile boolean running;
+    private ModbusMetrics metrics;
+    private ModbusSerialTransaction transaction;
+    private int currentTimeout = -1;
+    private Thread worker;
+
+    /**
+     * Constructs a scheduler that uses the serial port, timeout and delay between
+     * frames of the master. The master must not be used to send requests itself
+     * whilst the scheduler is open.
+     *
+     * @param master Master whose serial port will be used
+     */
+    public ModbusSerialBusScheduler(ModbusSerialMaster master) {
+        this(master.getConnection(), master.getTimeout());
+        transDelayMS = master.getTransDelay();
+    }
+
+    /**
+     * Constructs a scheduler on the given connection
+     *
+     * @param connection Connection to the serial port
+     * @param timeout    Default time to wait for a response in milliseconds
+     */
+    public ModbusSerialBusScheduler(AbstractSerialConnection connection, int timeout) {
+        this.connection = connection;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the connection to the serial port
+     *
+     * @return Connection
+     */
+    public AbstractSerialConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the time to wait for a response from a slave without its own timeout
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time to wait for a response from a slave without its own timeout
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the time to wait for a response from the slave
+     *
+     * @param unitId Unit ID of the slave
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout(int unitId) {
+        lock.lock();
+        try {
+            Slave slave = slaves.get(unitId);
+            return slave == null || slave.timeout <= 0 ? timeout : slave.timeout;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the time to wait for a response from the slave
+     *
+     * @param unitId  Unit ID of the slave
+     * @param timeout Timeout in milliseconds, 0 to use the default timeout
+     */
+    public void setTimeout(int unitId, int timeout) {
+        lock.lock();
+        try {
+            getSlave(unitId).timeout = timeout;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets a fixed delay between frames. If 0, the delay of 3.5 characters is
+     * calculated from the baud rate. This must be set before the scheduler is opened.
+     *
+     * @param transDelayMS Delay in milliseconds
+     */
+    public void setTransDelayMS(int transDelayMS) {
+        this.transDelayMS = transDelayMS;
+    }
+
+    /**
+     * Sets the range of times that a slave is backed off after it fails to respond.
+     * The first failure backs the slave off for the minimum time and each further
+     * consecutive failure doubles it up to the maximum.
+     *
+     * @param minBackoff Time after the first failure in milliseconds
+     * @param maxBackoff Maximum time in milliseconds
+     */
+    public void setBackoff(int minBackoff, int maxBackoff) {
+        if (minBackoff < 0 || maxBackoff < minBackoff) {
+            throw new IllegalArgumentException(String.format("Invalid back off range %d to %d", minBackoff, maxBackoff));
+        }
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Sets the time a request waits before it is treated as one priority higher
+     *
+     * @param agingInterval Time in milliseconds
+     */
+    public void setAgingInterval(int agingInterval) {
+        if (agingInterval < 1) {
+            throw new IllegalArgumentException("Aging interval must be at least 1");
+        }
+        lock.lock();
+        try {
+            this.agingInterval = agingInterval;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the metrics that the requests are reported to. This must be set before
+     * the scheduler is opened.
+     *
+     * @param metrics Metrics or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns true if the slave is currently backed off
+     *
+     * @param unitId Unit ID of the slave
+     * @return True if backed off
+     */
+    public boolean isBackedOff(int unitId) {
+        lock.lock();
+        try {
+            Slave slave = slaves.get(unitId);
+            return slave != null && slave.backoffUntil - System.nanoTime() > 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the average time the slave has taken to respond
+     *
+     * @param unitId Unit ID of the slave
+     * @return Average response time in milliseconds, 0 if it has not responded yet
+     */
+    public double getAverageResponseTime(int unitId) {
+        lock.lock();
+        try {
+            Slave slave = slaves.get(unitId);
+            return slave == null ? 0 : slave.averageNanos / 1000000.0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent
+     *
+     * @return Number of requests
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Slave slave : slaves.values()) {
+                count += slave.queue.size();
+            }
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the proportion of time that the bus has been busy sending requests
+     * and waiting for responses since the scheduler was opened or the utilization
+     * was last reset
+     *
+     * @return Utilization between 0 and 1
+     */
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - utilizationStart;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double)busyNanos.get() / elapsed);
+    }
+
+    /**
+     * Starts measuring the utilization again from now
+     */
+    public void resetUtilization() {
+        busyNanos.set(0);
+        utilizationStart = System.nanoTime();
+    }
+
+    /**
+     * Returns true if the scheduler is open
+     *
+     * @return True if open
+     */
+    public boolean isOpen() {
+        return running;
+    }
+
+    /**
+     * Opens the serial port and starts the thread that sends the requests
+     *
+     * @throws ModbusException If the port cannot be opened
+     */
+    public synchronized void open() throws ModbusException {
+        if (!running) {
+            openConnection();
+            resetUtilization();
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serviceRequests();
+                }
+            }, String.format("Modbus Serial Bus Scheduler [%s]", connection.getPortName()));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the thread, fails any waiting requests and closes the serial port. A
+     * request that is being sent is interrupted and the port is only closed once the
+     * thread has finished with it.
+     */
+    public synchronized void close() {
+        if (running) {
+            running = false;
+            List<Job> failed = new ArrayList<Job>();
+            lock.lock();
+            try {
+                for (Slave slave : slaves.values()) {
+                    failed.addAll(slave.queue);
+                    slave.queue.clear();
+                }
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+            for (Job job : failed) {
+                job.future.completeExceptionally(new ModbusIOException("Scheduler closed"));
+            }
+            // A completion running on the scheduler thread has already finished with the port
+            if (Thread.currentThread() != worker) {
+                worker.interrupt();
+                boolean interrupted = false;
+                while (worker.isAlive()) {
+                    try {
+                        worker.join();
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            closeConnection();
+        }
+    }
+
+    /**
+     * Submits a request with normal priority and the default deadline
+     *
+     * @param request Request to send
+     * @return Future that is completed with the response or a <tt>ModbusIOException</tt>
+     */
+    public CompletableFuture<ModbusResponse> submit(ModbusRequest request) {
+        return submit(request, 0, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * Submits a request to be sent on the bus. Requests with a higher priority are
+     * sent first and those with the same priority in order of their deadlines.
+     * Exception responses from the slave complete the future as a response.
+     *
+     * @param request  Request to send
+     * @param priority Priority, higher values are sent first
+     * @param deadline Time in milliseconds within which the request must be sent
+     * @return Future that is completed with the response or a <tt>ModbusIOException</tt>
+     */
+    public CompletableFuture<ModbusResponse> submit(ModbusRequest request, int priority, int deadline) {
+        long now = System.nanoTime();
+        Job job = new Job(request, priority, now, now + deadline * 1000000L);
+        lock.lock();
+        try {
+            if (running) {
+                job.sequence = sequence++;
+                getSlave(request.getUnitID()).queue.add(job);
+                changed.signal();
+                return job.future;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        job.future.completeExceptionally(new ModbusIOException("Scheduler is not open"));
+        return job.future;
+    }
+
+    /**
+     * Submits a request and waits for the response
+     *
+     * @param request Request to send
+     * @return Response from the slave
+     * @throws ModbusException If the slave returned an exception or did not respond
+     */
+    public ModbusResponse execute(ModbusRequest request) throws ModbusException {
+        try {
+            ModbusResponse response = submit(request).get();
+            if (response instanceof ExceptionResponse) {
+                throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
+            }
+            return response;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for response");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ModbusException) {
+                throw (ModbusException)e.getCause();
+            }
+            throw new ModbusIOException("Failed to execute request - %s", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Sends a request to the slave and returns its response. Exception responses
+     * from the slave are returned rather than thrown. This is only called by the
+     * scheduler thread.
+     *
+     * @param request Request to send
+     * @param timeout Time to wait for the response in milliseconds
+     * @return Response from the slave
+     * @throws ModbusException If the slave did not answer
+     */
+    protected ModbusResponse transmit(ModbusRequest request, int timeout) throws ModbusException {
+        if (timeout != currentTimeout) {
+            connection.setTimeout(timeout);
+            currentTimeout = timeout;
+        }
+        transaction.setRequest(request);
+        try {
+            transaction.execute();
+        }
+        catch (ModbusSlaveException e) {
+            logger.debug("Unit {} returned exception {}", request.getUnitID(), e.getType());
+        }
+        return transaction.getResponse();
+    }
+
+    /**
+     * Opens the serial port and creates the transaction used to talk to the slaves
+     *
+     * @throws ModbusException If the port cannot be opened
+     */
+    protected void openConnection() throws ModbusException {
+        try {
+            if (!connection.isOpen()) {
+                connection.open();
+            }
+        }
+        catch (Exception e) {
+            throw new ModbusException("Cannot open serial port %s - %s", connection.getPortName(), e.getMessage());
+        }
+        transaction = (ModbusSerialTransaction)connection.getModbusTransport().createTransaction();
+        transaction.setTransDelayMS(transDelayMS);
+        transaction.setRetries(1);
+        transaction.setMetrics(metrics);
+        currentTimeout = -1;
+    }
+
+    /**
+     * Closes the serial port
+     */
+    protected void closeConnection() {
+        if (connection.isOpen()) {
+            connection.close();
+        }
+        transaction = null;
+    }
+
+    /**
+     * Returns the state of a slave, creating it if necessary. The lock must be held.
+     *
+     * @param unitId Unit ID of the slave
+     * @return Slave
+     */
+    private Slave getSlave(int unitId) {
+        Slave slave = slaves.get(unitId);
+        if (slave == null) {
+            slave = new Slave(unitId);
+            slaves.put(unitId, slave);
+        }
+        return slave;
+    }
+
+    /**
+     * Takes the next request to send, waiting until there is one. Requests that
+     * can no longer be sent before their deadline are failed.
+     *
+     * @return Next request or null if the scheduler has been closed
+     */
+    private Job next() {
+        List<Job> expired = new ArrayList<Job>();
+        lock.lock();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                Job best = null;
+                Slave bestSlave = null;
+                boolean bestSlow = false;
+                long wake = Long.MAX_VALUE;
+                for (Slave slave : slaves.values()) {
+                    boolean backedOff = slave.backoffUntil - now > 0;
+                    long sendBy = backedOff ? slave.backoffUntil : now;
+                    boolean slow = !backedOff && slave.isSlow(slave.timeout <= 0 ? timeout : slave.timeout);
+
+                    // Every request is compared on its aged priority, not just the head
+                    // of each slave, so old requests cannot be starved by newer ones
+                    // of a higher priority to the same slave
+                    for (Iterator<Job> iterator = slave.queue.iterator(); iterator.hasNext(); ) {
+                        Job job = iterator.next();
+                        if (job.deadline - sendBy <= 0) {
+                            iterator.remove();
+                            job.backedOff = backedOff;
+                            expired.add(job);
+                        }
+                        else {
+                            wake = Math.min(wake, job.deadline - now);
+                            if (!backedOff && (best == null || isBefore(job, slow, best, bestSlow, now))) {
+                                best = job;
+                                bestSlave = slave;
+                                bestSlow = slow;
+                            }
+                        }
+                    }
+                    if (backedOff && !slave.queue.isEmpty()) {
+                        wake = Math.min(wake, slave.backoffUntil - now);
+                    }
+                }
+                if (best != null) {
+                    bestSlave.queue.remove(best);
+                    return best;
+                }
+                if (!expired.isEmpty()) {
+                    return null;
+                }
+                if (wake == Long.MAX_VALUE) {
+                    changed.awaitUninterruptibly();
+                }
+                else {
+                    try {
+                        changed.awaitNanos(wake);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+        finally {
+            lock.unlock();
+            for (Job job : expired) {
+                ModbusIOException timeoutException = job.backedOff ?
+                        new ModbusIOException("Unit %d is not responding", job.request.getUnitID()) :
+                        new ModbusIOException("Deadline passed before request for unit %d could be sent", job.request.getUnitID());
+                timeoutException.setTimeout(true);
+                job.future.completeExceptionally(timeoutException);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a request should be sent before another. Priority, raised
+     * by the time each request has waited, comes first, then requests for slow
+     * slaves go after those for other slaves, then the deadline. The lock must be held.
+     *
+     * @param job       Request
+     * @param slow      True if the slave of the request is slow
+     * @param other     Other request
+     * @param otherSlow True if the slave of the other request is slow
+     * @param now       Current time
+     * @return True if the request goes first
+     */
+    private boolean isBefore(Job job, boolean slow, Job other, boolean otherSlow, long now) {
+        long priority = agedPriority(job, now);
+        long otherPriority = agedPriority(other, now);
+        if (priority != otherPriority) {
+            return priority > otherPriority;
+        }
+        if (slow != otherSlow) {
+            return otherSlow;
+        }
+        return ORDER.compare(job, other) < 0;
+    }
+
+    /**
+     * Returns the priority of a request raised by one for each aging interval it has waited
+     *
+     * @param job Request
+     * @param now Current time
+     * @return Priority
+     */
+    private long agedPriority(Job job, long now) {
+        return job.priority + (now - job.queued) / (agingInterval * 1000000L);
+    }
+
+    /**
+     * Sends the requests until the scheduler is closed
+     */
+    private void serviceRequests() {
+        logger.debug("Serial bus scheduler {} started", connection.getPortName());
+        while (running) {
+            Job job = next();
+            if (job != null) {
+                execute(job);
+            }
+        }
+        logger.debug("Serial bus scheduler {} stopped", connection.getPortName());
+    }
+
+    /**
+     * Sends a request and updates the state of its slave from the outcome
+     *
+     * @param job Request to send
+     */
+    private void execute(Job job) {
+        int unitId = job.request.getUnitID();
+        int slaveTimeout = getTimeout(unitId);
+        long start = System.nanoTime();
+        ModbusResponse response = null;
+        Exception failure = null;
+        try {
+            response = transmit(job.request, slaveTimeout);
+        }
+        catch (Exception e) {
+            failure = e;
+        }
+        long elapsed = System.nanoTime() - start;
+        busyNanos.addAndGet(elapsed);
+        lock.lock();
+        try {
+            Slave slave = getSlave(unitId);
+            if (failure == null) {
+                slave.responded(elapsed);
+            }
+            else {
+                slave.failed(System.nanoTime(), minBackoff, maxBackoff);
+                logger.debug("Unit {} failed {} times in a row, backing off - {}", unitId, slave.failures, failure.getMessage());
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (failure == null) {
+            job.future.complete(response);
+        }
+        else if (failure instanceof ModbusException) {
+            job.future.completeExceptionally(failure);
+        }
+        else {
+            logger.error("Unexpected error on serial bus {}", connection.getPortName(), failure);
+            job.future.completeExceptionally(new ModbusIOException("Failed to send request - %s", failure.getMessage()));
+        }
+    }
+
+    /**
+     * State of a slave on the bus
+     */
+    private static class Slave {
+        final int unitId;
+        final List<Job> queue = new ArrayList<Job>();
+        int timeout;
+        int failures;
+        long backoffUntil;
+        double averageNanos;
+
+        Slave(int unitId) {
+            this.unitId = unitId;
+        }
+
+        /**
+         * Records a response, clearing any back off
+         *
+         * @param nanos Time taken to respond
+         */
+        void responded(long nanos) {
+            failures = 0;
+            backoffUntil = System.nanoTime();
+            averageNanos = averageNanos == 0 ? nanos : averageNanos * 0.8 + nanos * 0.2;
+        }
+
+        /**
+         * Records a failure and backs the slave off
+         *
+         * @param now        Current time
+         * @param minBackoff Back off after the first failure in milliseconds
+         * @param maxBackoff Maximum back off in milliseconds
+         */
+        void failed(long now, int minBackoff, int maxBackoff) {
+            failures++;
+            long backoff = Math.min((long)maxBackoff, (long)minBackoff << Math.min(failures - 1, 20));
+            backoffUntil = now + backoff * 1000000L;
+        }
+
+        /**
+         * Returns true if the slave takes more than half its timeout to respond
+         *
+         * @param timeout Timeout of the slave in milliseconds
+         * @return True if slow
+         */
+        boolean isSlow(int timeout) {
+            return timeout > 0 && averageNanos > timeout * 500000L;
+        }
+    }
+
+    /**
+     * A request waiting to be sent
+     */
+    private static class Job {
+        final ModbusRequest request;
+        final int priority;
+        final long queued;
+        final long deadline;
+        final CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+        long sequence;
+        boolean backedOff;
+
+        Job(ModbusRequest request, int priority, long queued, long deadline) {
+            this.request = request;
+            this.priority = priority;
+            this.queued = queued;
+            this.deadline = deadline;
+        }
+    }
+}
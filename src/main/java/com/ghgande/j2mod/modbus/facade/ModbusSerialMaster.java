@@ -83,18 +83,33 @@ public class ModbusSerialMaster extends AbstractModbusMaster {
         return connection;
     }
 
+    /**
+     * Returns the transmission delay used between frames
+     *
+     * @return Delay in milliseconds, 0 if calculated from the baud rate
+     */
+    public int getTransDelay() {
+        return transDelay;
+    }
+
     /**
      * Connects this <tt>ModbusSerialMaster</tt> with the slave.
      *
      * @throws Exception if the connection cannot be established.
      */
     @Override
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isOpen()) {
-            connection.open();
-            transaction = connection.getModbusTransport().createTransaction();
-            ((ModbusSerialTransaction) transaction).setTransDelayMS(transDelay);
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (connection != null && !connection.isOpen()) {
+                connection.open();
+                transaction = connection.getModbusTransport().createTransaction();
+                ((ModbusSerialTransaction) transaction).setTransDelayMS(transDelay);
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -102,19 +117,31 @@ public class ModbusSerialMaster extends AbstractModbusMaster {
      * Disconnects this <tt>ModbusSerialMaster</tt> from the slave.
      */
     @Override
-    public synchronized void disconnect() {
-        if (connection != null && connection.isOpen()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (connection != null && connection.isOpen()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized void setTimeout(int timeout) {
-        super.setTimeout(timeout);
-        if (connection != null) {
-            connection.setTimeout(timeout);
+    public void setTimeout(int timeout) {
+        lock.lock();
+        try {
+            super.setTimeout(timeout);
+            if (connection != null) {
+                connection.setTimeout(timeout);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
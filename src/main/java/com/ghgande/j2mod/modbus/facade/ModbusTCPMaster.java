@@ -17,13 +17,17 @@ package com.ghgande.j2mod.modbus.facade;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.io.ModbusTCPPipeline;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
 
 import java.net.InetAddress;
 import java.net.Proxy;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Modbus/TCP Master facade.
@@ -179,12 +183,18 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
      * @throws Exception if the connection cannot be established.
      */
     @Override
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isConnected()) {
-            connection.connect(useRtuOverTcp);
-            transaction = connection.getModbusTransport().createTransaction();
-            ((ModbusTCPTransaction)transaction).setReconnecting(reconnecting);
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (connection != null && !connection.isConnected()) {
+                connection.connect(useRtuOverTcp);
+                transaction = connection.getModbusTransport().createTransaction();
+                ((ModbusTCPTransaction)transaction).setReconnecting(reconnecting);
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -192,11 +202,17 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
     @Override
-    public synchronized void disconnect() {
-        if (connection != null && connection.isConnected()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (connection != null && connection.isConnected()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -207,8 +223,14 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
      * @return true if a new connection should be established for each
      * transaction, false otherwise.
      */
-    public synchronized boolean isReconnecting() {
-        return reconnecting;
+    public boolean isReconnecting() {
+        lock.lock();
+        try {
+            return reconnecting;
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -218,18 +240,65 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
      * @param b true if a new connection should be established for each
      *          transaction, false otherwise.
      */
-    public synchronized void setReconnecting(boolean b) {
-        reconnecting = b;
-        if (transaction != null) {
-            ((ModbusTCPTransaction)transaction).setReconnecting(b);
+    public void setReconnecting(boolean b) {
+        lock.lock();
+        try {
+            reconnecting = b;
+            if (transaction != null) {
+                ((ModbusTCPTransaction)transaction).setReconnecting(b);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of transactions that can be in flight on the connection
+     *
+     * @return Window size, 0 if pipelining is disabled
+     */
+    public int getPipelineWindow() {
+        return connection.getPipelineWindow();
+    }
+
+    /**
+     * Sets the number of transactions that can be in flight on the connection at
+     * the same time. When greater than 0, the asynchronous methods send requests
+     * without waiting for earlier responses. This must be set before connecting.
+     *
+     * @param window Number of transactions allowed in flight, 0 to disable pipelining
+     */
+    public void setPipelineWindow(int window) {
+        lock.lock();
+        try {
+            connection.setPipelineWindow(window);
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized void setTimeout(int timeout) {
-        super.setTimeout(timeout);
-        if (connection != null) {
-            connection.setTimeout(timeout);
+    protected CompletableFuture<ModbusResponse> executeAsync(ModbusRequest request) {
+        ModbusTCPPipeline pipeline = connection.getPipeline();
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.executeAsync(request, connection.getTimeout(), retries);
+        }
+        return super.executeAsync(request);
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        lock.lock();
+        try {
+            super.setTimeout(timeout);
+            if (connection != null) {
+                connection.setTimeout(timeout);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -84,11 +84,17 @@ public class ModbusUDPMaster extends AbstractModbusMaster {
      * @throws Exception if the connection cannot be established.
      */
     @Override
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isConnected()) {
-            connection.connect();
-            transaction = connection.getModbusTransport().createTransaction();
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (connection != null && !connection.isConnected()) {
+                connection.connect();
+                transaction = connection.getModbusTransport().createTransaction();
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -96,19 +102,31 @@ public class ModbusUDPMaster extends AbstractModbusMaster {
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
     @Override
-    public synchronized void disconnect() {
-        if (connection != null && connection.isConnected()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (connection != null && connection.isConnected()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized void setTimeout(int timeout) {
-        super.setTimeout(timeout);
-        if (connection != null) {
-            connection.setTimeout(timeout);
+    public void setTimeout(int timeout) {
+        lock.lock();
+        try {
+            super.setTimeout(timeout);
+            if (connection != null) {
+                connection.setTimeout(timeout);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single read request of a <tt>PollingPlan</tt> and the points that it covers
+ */
+public class PollingBlock {
+
+    private final int unitId;
+    private final PollingPointType type;
+    private final int address;
+    private final int count;
+    private final List<PollingPoint> points;
+
+    PollingBlock(int unitId, PollingPointType type, int address, int count, List<PollingPoint> points) {
+        this.unitId = unitId;
+        this.type = type;
+        this.address = address;
+        this.count = count;
+        this.points = Collections.unmodifiableList(points);
+    }
+
+    /**
+     * Returns the unit ID to read from
+     *
+     * @return Unit ID
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Returns the table to read
+     *
+     * @return Point type
+     */
+    public PollingPointType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the first address read
+     *
+     * @return Address
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of registers or bits read
+     *
+     * @return Count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the points covered by the read, in address order
+     *
+     * @return Points
+     */
+    public List<PollingPoint> getPoints() {
+        return points;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s unit %d %d-%d (%d points)", type, unitId, address, address + count - 1, points.size());
+    }
+}
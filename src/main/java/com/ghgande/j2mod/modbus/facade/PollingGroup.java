@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of points polled together at the same rate by a <tt>PollingScheduler</tt>
+ */
+public class PollingGroup {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingGroup.class);
+
+    private final String name;
+    private final PollingPlan plan;
+    private final long periodNanos;
+    private final AbstractPollingListener listener;
+    private volatile long cycleCount;
+    private volatile long failedRequestCount;
+    private volatile long lastCycleNanos;
+    private ScheduledFuture<?> future;
+
+    PollingGroup(String name, PollingPlan plan, long period, TimeUnit unit, AbstractPollingListener listener) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Polling period must be greater than 0");
+        }
+        this.name = name;
+        this.plan = plan;
+        this.periodNanos = unit.toNanos(period);
+        this.listener = listener;
+    }
+
+    /**
+     * Reads all the blocks of the group once
+     *
+     * @param master Master to read with
+     */
+    void poll(AbstractModbusMaster master) {
+        long start = System.nanoTime();
+        try {
+            failedRequestCount += plan.execute(master, listener);
+            cycleCount++;
+            lastCycleNanos = System.nanoTime() - start;
+            if (lastCycleNanos > periodNanos) {
+                logger.debug("Polling group {} took {} ms, longer than its period of {} ms", name, TimeUnit.NANOSECONDS.toMillis(lastCycleNanos), TimeUnit.NANOSECONDS.toMillis(periodNanos));
+            }
+            listener.cycleCompleted(this);
+        }
+        catch (RuntimeException e) {
+            // An exception would stop the group being scheduled again
+            logger.error("Polling group {} failed", name, e);
+        }
+    }
+
+    /**
+     * Returns the name of the group
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the requests the group is read with
+     *
+     * @return Polling plan
+     */
+    public PollingPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns how often the group is read
+     *
+     * @param unit Unit to return the period in
+     * @return Period
+     */
+    public long getPeriod(TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of times the group has been read
+     *
+     * @return Number of cycles
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Returns the number of block reads that have failed
+     *
+     * @return Number of failed requests
+     */
+    public long getFailedRequestCount() {
+        return failedRequestCount;
+    }
+
+    /**
+     * Returns how long the last cycle took
+     *
+     * @param unit Unit to return the time in
+     * @return Time taken
+     */
+    public long getLastCycleTime(TimeUnit unit) {
+        return unit.convert(lastCycleNanos, TimeUnit.NANOSECONDS);
+    }
+
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    ScheduledFuture<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s every %d ms - %s", name, TimeUnit.NANOSECONDS.toMillis(periodNanos), plan);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.util.BitVector;
+
+import java.util.*;
+
+/**
+ * Merges a set of points into the fewest read requests that cover them.
+ * <p>
+ * Points are grouped by unit ID and table, sorted by address and merged into
+ * a block while the block stays within the limit of one request (125 registers
+ * or 2000 bits) and the unread gap between the points is no more than the
+ * maximum gap. Reading a gap costs a few bytes per register, which is far
+ * less than a round trip, but some devices return an illegal address exception
+ * if any address in the request is not mapped, so the gap should be 0 for
+ * those devices.
+ */
+public class PollingPlan {
+
+    private final List<PollingBlock> blocks;
+    private final int pointCount;
+
+    /**
+     * Creates a plan that only merges adjacent or overlapping points
+     *
+     * @param points Points to read
+     */
+    public PollingPlan(Collection<PollingPoint> points) {
+        this(points, 0);
+    }
+
+    /**
+     * Creates a plan
+     *
+     * @param points Points to read
+     * @param maxGap Largest number of unwanted registers or bits to read between two points of a block
+     */
+    public PollingPlan(Collection<PollingPoint> points, int maxGap) {
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("Maximum gap cannot be negative");
+        }
+
+        // Sort so that the points of each unit and table are together in address order
+        List<PollingPoint> sorted = new ArrayList<PollingPoint>(new LinkedHashSet<PollingPoint>(points));
+        Collections.sort(sorted, new Comparator<PollingPoint>() {
+            @Override
+            public int compare(PollingPoint a, PollingPoint b) {
+                if (a.getUnitId() != b.getUnitId()) {
+                    return a.getUnitId() < b.getUnitId() ? -1 : 1;
+                }
+                if (a.getType() != b.getType()) {
+                    return a.getType().compareTo(b.getType());
+                }
+                if (a.getAddress() != b.getAddress()) {
+                    return a.getAddress() < b.getAddress() ? -1 : 1;
+                }
+                return a.getCount() < b.getCount() ? -1 : a.getCount() == b.getCount() ? 0 : 1;
+            }
+        });
+
+        List<PollingBlock> newBlocks = new ArrayList<PollingBlock>();
+        List<PollingPoint> blockPoints = new ArrayList<PollingPoint>();
+        PollingPoint first = null;
+        int end = 0;
+        for (PollingPoint point : sorted) {
+            boolean fits = first != null &&
+                    point.getUnitId() == first.getUnitId() &&
+                    point.getType() == first.getType() &&
+                    point.getAddress() - end <= maxGap &&
+                    Math.max(end, point.getEnd()) - first.getAddress() <= point.getType().getMaxCount();
+            if (!fits) {
+                if (first != null) {
+                    newBlocks.add(new PollingBlock(first.getUnitId(), first.getType(), first.getAddress(), end - first.getAddress(), blockPoints));
+                    blockPoints = new ArrayList<PollingPoint>();
+                }
+                first = point;
+                end = point.getEnd();
+            }
+            blockPoints.add(point);
+            end = Math.max(end, point.getEnd());
+        }
+        if (first != null) {
+            newBlocks.add(new PollingBlock(first.getUnitId(), first.getType(), first.getAddress(), end - first.getAddress(), blockPoints));
+        }
+        blocks = Collections.unmodifiableList(newBlocks);
+        pointCount = sorted.size();
+    }
+
+    /**
+     * Returns the read requests of the plan
+     *
+     * @return Blocks in unit, table and address order
+     */
+    public List<PollingBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the number of distinct points in the plan
+     *
+     * @return Number of points
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Reads every block of the plan and passes the values of each point to the listener
+     *
+     * @param master   Master to read with
+     * @param listener Listener to receive the values
+     * @return Number of blocks that could not be read
+     */
+    public int execute(AbstractModbusMaster master, AbstractPollingListener listener) {
+        int failures = 0;
+        int[] values = null;
+        for (PollingBlock block : blocks) {
+            if (values == null || values.length < block.getCount()) {
+                values = new int[block.getType().getMaxCount()];
+            }
+            try {
+                read(master, block, values);
+            }
+            catch (ModbusException e) {
+                failures++;
+                listener.blockFailed(block, e);
+                continue;
+            }
+            for (PollingPoint point : block.getPoints()) {
+                listener.pointRead(point, values, point.getAddress() - block.getAddress());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Reads a block into an array of values
+     *
+     * @param master Master to read with
+     * @param block  Block to read
+     * @param values Array to read into
+     * @throws ModbusException If the read fails
+     */
+    private static void read(AbstractModbusMaster master, PollingBlock block, int[] values) throws ModbusException {
+        read(master, block.getUnitId(), block.getType(), block.getAddress(), block.getCount(), values);
+    }
+
+    /**
+     * Reads a range of registers or bits into an array of values. Bits are 1 or 0.
+     *
+     * @param master  Master to read with
+     * @param unitId  Unit ID
+     * @param type    Table to read
+     * @param address Address of the first register or bit
+     * @param count   Number of registers or bits
+     * @param values  Array to read into
+     * @throws ModbusException If the read fails
+     */
+    static void read(AbstractModbusMaster master, int unitId, PollingPointType type, int address, int count, int[] values) throws ModbusException {
+        BitVector bits;
+        switch (type) {
+            case HOLDING_REGISTER:
+                master.readMultipleRegisters(unitId, address, count, values, 0);
+                return;
+            case INPUT_REGISTER:
+                master.readInputRegisters(unitId, address, count, values, 0);
+                return;
+            case COIL:
+                bits = master.readCoils(unitId, address, count);
+                break;
+            default:
+                bits = master.readInputDiscretes(unitId, address, count);
+                break;
+        }
+        for (int i = 0; i < count; i++) {
+            values[i] = bits.getBit(i) ? 1 : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d points in %d requests", pointCount, blocks.size());
+    }
+}
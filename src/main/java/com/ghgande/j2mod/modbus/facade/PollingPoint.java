@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+/**
+ * A value to poll, e.g. a tag, made of one or more consecutive registers or
+ * bits of a unit.
+ */
+public class PollingPoint {
+
+    private final String name;
+    private final int unitId;
+    private final PollingPointType type;
+    private final int address;
+    private final int count;
+
+    /**
+     * Creates a point of a single register or bit
+     *
+     * @param unitId  Unit ID
+     * @param type    Table the point is in
+     * @param address Address of the register or bit
+     */
+    public PollingPoint(int unitId, PollingPointType type, int address) {
+        this(null, unitId, type, address, 1);
+    }
+
+    /**
+     * Creates a point
+     *
+     * @param name    Name of the point, may be null
+     * @param unitId  Unit ID
+     * @param type    Table the point is in
+     * @param address Address of the first register or bit
+     * @param count   Number of registers or bits, e.g. 2 for a 32 bit value
+     */
+    public PollingPoint(String name, int unitId, PollingPointType type, int address, int count) {
+        if (type == null) {
+            throw new IllegalArgumentException("Point type must be specified");
+        }
+        if (address < 0 || address > 0xFFFF) {
+            throw new IllegalArgumentException(String.format("Address %d is outside the range 0-65535", address));
+        }
+        if (count < 1 || count > type.getMaxCount() || address + count > 0x10000) {
+            throw new IllegalArgumentException(String.format("Count %d at address %d is not valid for %s", count, address, type));
+        }
+        this.name = name;
+        this.unitId = unitId;
+        this.type = type;
+        this.address = address;
+        this.count = count;
+    }
+
+    /**
+     * Returns the name of the point
+     *
+     * @return Name or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the unit ID of the point
+     *
+     * @return Unit ID
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Returns the table the point is in
+     *
+     * @return Point type
+     */
+    public PollingPointType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the address of the first register or bit
+     *
+     * @return Address
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of registers or bits
+     *
+     * @return Count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the address after the last register or bit of the point
+     *
+     * @return End address (exclusive)
+     */
+    public int getEnd() {
+        return address + count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PollingPoint that = (PollingPoint)o;
+        return unitId == that.unitId && type == that.type && address == that.address && count == that.count &&
+                (name == null ? that.name == null : name.equals(that.name));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + unitId;
+        result = 31 * result + type.hashCode();
+        result = 31 * result + address;
+        result = 31 * result + count;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%s unit %d %d-%d", name == null ? "" : name + " ", type, unitId, address, getEnd() - 1);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+
+/**
+ * The data tables that a <tt>PollingPoint</tt> can be read from, with the
+ * function code used to read them and the most that one request can return.
+ */
+public enum PollingPointType {
+
+    COIL(Modbus.READ_COILS, 2000),
+    DISCRETE_INPUT(Modbus.READ_INPUT_DISCRETES, 2000),
+    HOLDING_REGISTER(Modbus.READ_MULTIPLE_REGISTERS, 125),
+    INPUT_REGISTER(Modbus.READ_INPUT_REGISTERS, 125);
+
+    private final int functionCode;
+    private final int maxCount;
+
+    PollingPointType(int functionCode, int maxCount) {
+        this.functionCode = functionCode;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * Returns the function code used to read this type
+     *
+     * @return Function code
+     */
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    /**
+     * Returns the largest number of bits or registers one request can read
+     *
+     * @return Maximum count
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Returns true if the type holds bits rather than registers
+     *
+     * @return True for coils and discrete inputs
+     */
+    public boolean isBit() {
+        return this == COIL || this == DISCRETE_INPUT;
+    }
+}
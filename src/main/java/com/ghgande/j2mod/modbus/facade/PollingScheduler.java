@@ -0,0 +1,185 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls groups of points through a master, each group at its own rate.
+ * <p>
+ * The points of each group are merged into as few requests as possible by a
+ * <tt>PollingPlan</tt>. All the groups share one polling thread because the
+ * master can only run one transaction at a time. A group that takes longer
+ * than its period is read again as soon as it completes.
+ * <pre>
+ *     PollingScheduler scheduler = new PollingScheduler(master, 8);
+ *     scheduler.addGroup("fast", fastPoints, 100, TimeUnit.MILLISECONDS, listener);
+ *     scheduler.addGroup("slow", slowPoints, 5, TimeUnit.SECONDS, listener);
+ *     scheduler.start();
+ * </pre>
+ */
+public class PollingScheduler {
+
+    private final AbstractModbusMaster master;
+    private final int maxGap;
+    private final List<PollingGroup> groups = new ArrayList<PollingGroup>();
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Creates a scheduler that only merges adjacent or overlapping points
+     *
+     * @param master Master to poll with
+     */
+    public PollingScheduler(AbstractModbusMaster master) {
+        this(master, 0);
+    }
+
+    /**
+     * Creates a scheduler
+     *
+     * @param master Master to poll with
+     * @param maxGap Largest number of unwanted registers or bits to read between two points of a request
+     */
+    public PollingScheduler(AbstractModbusMaster master, int maxGap) {
+        if (master == null) {
+            throw new IllegalArgumentException("Master must be specified");
+        }
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("Maximum gap cannot be negative");
+        }
+        this.master = master;
+        this.maxGap = maxGap;
+    }
+
+    /**
+     * Adds a group of points to poll. If the scheduler is running the group is
+     * polled straight away.
+     *
+     * @param name     Name of the group
+     * @param points   Points to read
+     * @param period   How often to read the points
+     * @param unit     Unit of the period
+     * @param listener Listener to receive the values
+     * @return Group
+     */
+    public synchronized PollingGroup addGroup(String name, Collection<PollingPoint> points, long period, TimeUnit unit, AbstractPollingListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must be specified");
+        }
+        PollingGroup group = new PollingGroup(name, new PollingPlan(points, maxGap), period, unit, listener);
+        groups.add(group);
+        if (executor != null) {
+            schedule(group);
+        }
+        return group;
+    }
+
+    /**
+     * Stops polling a group and removes it
+     *
+     * @param group Group to remove
+     * @return True if the group was removed
+     */
+    public synchronized boolean removeGroup(PollingGroup group) {
+        if (!groups.remove(group)) {
+            return false;
+        }
+        if (group.getFuture() != null) {
+            group.getFuture().cancel(false);
+            group.setFuture(null);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the groups of the scheduler
+     *
+     * @return Groups
+     */
+    public synchronized List<PollingGroup> getGroups() {
+        return Collections.unmodifiableList(new ArrayList<PollingGroup>(groups));
+    }
+
+    /**
+     * Returns the number of requests needed to read every group once
+     *
+     * @return Number of requests
+     */
+    public synchronized int getRequestCount() {
+        int count = 0;
+        for (PollingGroup group : groups) {
+            count += group.getPlan().getBlocks().size();
+        }
+        return count;
+    }
+
+    /**
+     * Starts polling all the groups
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Modbus Polling Scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            for (PollingGroup group : groups) {
+                schedule(group);
+            }
+        }
+    }
+
+    /**
+     * Stops polling. A cycle that is in progress is allowed to complete.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            for (PollingGroup group : groups) {
+                group.setFuture(null);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the scheduler is polling
+     *
+     * @return True if started
+     */
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    private void schedule(final PollingGroup group) {
+        group.setFuture(executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                group.poll(master);
+            }
+        }, 0, group.getPeriodNanos(), TimeUnit.NANOSECONDS));
+    }
+}
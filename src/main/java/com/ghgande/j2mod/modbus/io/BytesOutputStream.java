@@ -15,6 +15,8 @@
  */
 package com.ghgande.j2mod.modbus.io;
 
+import com.ghgande.j2mod.modbus.util.CRC16;
+
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -70,6 +72,33 @@ public class BytesOutputStream extends FastByteArrayOutputStream implements Data
         count = 0;
     }
 
+    /**
+     * Appends the Modbus RTU CRC of all the bytes written so far, low byte first
+     *
+     * @throws IOException if the CRC cannot be written
+     */
+    void writeCRC() throws IOException {
+        int crc = CRC16.calculate(buf, 0, count);
+        write(crc & 0xFF);
+        write(crc >>> 8);
+    }
+
+    /**
+     * Overwrites two bytes that have already been written with a big-endian
+     * <tt>short</tt>, e.g. to fill in a length field once the rest of a frame
+     * has been written.
+     *
+     * @param pos position of the first byte to overwrite.
+     * @param v   the value to write.
+     */
+    public void writeShortAt(int pos, int v) {
+        if (pos < 0 || pos + 2 > count) {
+            throw new IndexOutOfBoundsException("Position " + pos + " is outside the " + count + " bytes written");
+        }
+        buf[pos] = (byte)(v >> 8);
+        buf[pos + 1] = (byte)v;
+    }
+
     @Override
     public void writeBoolean(boolean v) throws IOException {
         dataOutputStream.writeBoolean(v);
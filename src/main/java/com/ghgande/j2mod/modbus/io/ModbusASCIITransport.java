@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 /**
  * Class that implements the Modbus/ASCII transport
@@ -100,7 +101,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                 //2. Read to FRAME_END
                 synchronized (inBuffer) {
                     byteInputOutputStream.reset();
-                    while ((in = readAsciiByte()) != FRAME_END) {
+                    while ((in = readFrameByte()) != FRAME_END) {
                         if (in == -1) {
                             throw new IOException(I_O_EXCEPTION_SERIAL_PORT_TIMEOUT);
                         }
@@ -108,6 +109,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                     }
                     //check LRC
                     if (inBuffer[byteInputOutputStream.size() - 1] != calculateLRC(inBuffer, 0, byteInputOutputStream.size(), 1)) {
+                        reportChecksumError(inBuffer, byteInputOutputStream.size());
                         continue;
                     }
                     byteInputStream.reset(inBuffer, byteInputOutputStream.size());
@@ -151,7 +153,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                 //2. Read to FRAME_END
                 synchronized (inBuffer) {
                     byteInputOutputStream.reset();
-                    while ((in = readAsciiByte()) != FRAME_END) {
+                    while ((in = readFrameByte()) != FRAME_END) {
                         if (in == -1) {
                             throw new IOException(I_O_EXCEPTION_SERIAL_PORT_TIMEOUT);
                         }
@@ -163,6 +165,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                     }
                     //check LRC
                     if (inBuffer[len - 1] != calculateLRC(inBuffer, 0, len, 1)) {
+                        reportChecksumError(inBuffer, len);
                         continue;
                     }
 
@@ -187,7 +190,26 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
         }
         catch (Exception ex) {
             logger.debug(ex.getMessage());
-            throw new ModbusIOException("I/O exception - failed to read");
+            ModbusIOException readException = new ModbusIOException("I/O exception - failed to read");
+            readException.setTimeout(ex instanceof InterruptedIOException);
+            throw readException;
+        }
+    }
+
+    /**
+     * Reads a byte from inside a frame. Running out of time here means the frame
+     * was cut short rather than the slave not answering.
+     *
+     * @return Byte value, FRAME_START or FRAME_END
+     *
+     * @throws IOException If the byte cannot be read
+     */
+    private int readFrameByte() throws IOException {
+        try {
+            return readAsciiByte();
+        }
+        catch (InterruptedIOException e) {
+            throw new IOException("Truncated frame - " + e.getMessage());
         }
     }
 
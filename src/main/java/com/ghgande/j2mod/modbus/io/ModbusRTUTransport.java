@@ -21,11 +21,13 @@ import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.util.CRC16;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 /**
  * Class that implements the ModbusRTU transport flavor.
@@ -55,11 +57,25 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      */
     private void readRequestData(int byteCount, BytesOutputStream out) throws IOException {
         byteCount += 2;
-        byte[] inpBuf = new byte[byteCount];
+        byte[] inpBuf = scratchBuffer(byteCount);
         readBytes(inpBuf, byteCount);
         out.write(inpBuf, 0, byteCount);
     }
 
+    /**
+     * Wraps a read failure with a new message, keeping it an <tt>InterruptedIOException</tt>
+     * if it was a timeout
+     *
+     * @param e       Failure
+     * @param message New message
+     * @return Exception to throw
+     */
+    private static IOException rewrap(IOException e, String message) {
+        IOException wrapped = e instanceof InterruptedIOException ? new InterruptedIOException(message) : new IOException(message);
+        wrapped.initCause(e);
+        return wrapped;
+    }
+
     /**
      * getRequest - Read a request, after the unit and function code
      *
@@ -68,7 +84,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      */
     private void getRequest(int function, BytesOutputStream out) throws IOException {
         int byteCount;
-        byte[] inpBuf = new byte[256];
+        byte[] inpBuf = scratchBuffer(256);
         try {
             if ((function & 0x80) == 0) {
                 switch (function) {
@@ -128,7 +144,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
             }
         }
         catch (IOException e) {
-            throw new IOException("getResponse serial port exception");
+            throw rewrap(e, "getResponse serial port exception");
         }
     }
 
@@ -140,7 +156,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      * @throws IOException If data cannot be read from the port
      */
     private void getResponse(int function, BytesOutputStream out) throws IOException {
-        byte[] inpBuf = new byte[256];
+        byte[] inpBuf = scratchBuffer(256);
         try {
             if ((function & 0x80) == 0) {
                 switch (function) {
@@ -234,7 +250,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
             }
         }
         catch (IOException e) {
-            throw new IOException(String.format("getResponse serial port exception - %s", e.getMessage()));
+            throw rewrap(e, String.format("getResponse serial port exception - %s", e.getMessage()));
         }
     }
 
@@ -257,13 +273,12 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 msg.setHeadless();
                 msg.writeTo(byteOutputStream);
                 len = byteOutputStream.size();
-                int[] crc = ModbusUtil.calculateCRC(byteOutputStream.getBuffer(), 0, len);
-                byteOutputStream.writeByte(crc[0]);
-                byteOutputStream.writeByte(crc[1]);
+                byteOutputStream.writeCRC();
                 // write message
-                writeBytes(byteOutputStream.getBuffer(), byteOutputStream.size());
+                byte[] frame = byteOutputStream.getBuffer();
+                writeBytes(frame, byteOutputStream.size());
                 if (logger.isDebugEnabled()) {
-                    logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
+                    logger.debug("Sent: {}", ModbusUtil.toHex(frame, 0, byteOutputStream.size()));
                 }
                 // clears out the echoed message
                 // for RS485
@@ -271,7 +286,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                     readEcho(len + 2);
                 }
                 lastRequest = new byte[len];
-                System.arraycopy(byteOutputStream.getBuffer(), 0, lastRequest, 0, len);
+                System.arraycopy(frame, 0, lastRequest, 0, len);
             }
         }
         catch (IOException ex) {
@@ -318,12 +333,14 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputStream.reset(inBuffer, dlength);
 
                         // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] || ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
+                        if (!CRC16.check(inBuffer, 0, dlength + 2)) {
                             if (logger.isDebugEnabled()) {
-                                logger.debug("CRC should be {}, {}", Integer.toHexString(crc[0]), Integer.toHexString(crc[1]));
+                                int crc = CRC16.calculate(inBuffer, 0, dlength); // does not include CRC
+                                logger.debug("CRC should be {}, {}", Integer.toHexString(crc & 0xFF), Integer.toHexString(crc >>> 8));
                             }
 
+                            reportChecksumError(inBuffer, dlength);
+
                             // Drain the input in case the frame was misread and more
                             // was to follow.
                             clearInput();
@@ -348,7 +365,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                                 if (logger.isDebugEnabled()) {
                                     logger.debug("Waiting for {} microsec", getMaxCharDelay());
                                 }
-                                bytesAvailable = spinUntilBytesAvailable(getMaxCharDelay());
+                                bytesAvailable = waitUntilBytesAvailable(getMaxCharDelay());
                             }
 
                             if (bytesAvailable) {
@@ -368,7 +385,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         if (logger.isDebugEnabled()) {
                             logger.debug("Waiting for {} microsec", getCharIntervalMicro(2));
                         }
-                        if (spinUntilBytesAvailable(getCharIntervalMicro(2))) {
+                        if (waitUntilBytesAvailable(getCharIntervalMicro(2))) {
                             // Discard the message
                             if (logger.isDebugEnabled()) {
                                 logger.debug("Discarding message (More than 1.5t between characters!) - {}", ModbusUtil.toHex(byteInputOutputStream.getBuffer(), 0, byteInputOutputStream.size()));
@@ -417,7 +434,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 // 1. read to function code, create request and read function
                 // specific bytes
                 synchronized (byteInputStream) {
-                    int uid = readByte();
+                    int uid = readFirstByte();
 
                     if (uid != -1) {
                         int fc = readByte();
@@ -445,9 +462,12 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputStream.reset(inBuffer, dlength);
 
                         // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] || ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            logger.debug("CRC should be {}, {}", crc[0], crc[1]);
+                        if (!CRC16.check(inBuffer, 0, dlength + 2)) {
+                            if (logger.isDebugEnabled()) {
+                                int crc = CRC16.calculate(inBuffer, 0, dlength); // does not include CRC
+                                logger.debug("CRC should be {}, {}", crc & 0xFF, crc >>> 8);
+                            }
+                            reportChecksumError(inBuffer, dlength);
                             throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
                         }
                     }
@@ -465,7 +485,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         }
         catch (IOException ex) {
             // FIXME: This printout is wrong when reading response from other slave
-            throw new ModbusIOException("I/O exception - failed to read response for request [%s] - %s", ModbusUtil.toHex(lastRequest), ex.getMessage());
+            ModbusIOException readException = new ModbusIOException("I/O exception - failed to read response for request [%s] - %s", ModbusUtil.toHex(lastRequest), ex.getMessage());
+            readException.setTimeout(ex instanceof InterruptedIOException);
+            throw readException;
         }
     }
 }
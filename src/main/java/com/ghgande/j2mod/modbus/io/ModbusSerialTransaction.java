@@ -125,6 +125,10 @@ public class ModbusSerialTransaction extends ModbusTransaction {
         //   while holding the lock on the IO object
         int tries = 0;
         boolean finished = false;
+        long startNanos = System.nanoTime();
+        if (transport instanceof ModbusSerialTransport) {
+            ((ModbusSerialTransport)transport).setMetrics(metrics);
+        }
         do {
             try {
                 // Wait between adjacent requests
@@ -140,12 +144,21 @@ public class ModbusSerialTransaction extends ModbusTransaction {
             }
             catch (ModbusIOException e) {
                 if (++tries >= retries) {
+                    reportFailure(e, false);
                     throw e;
                 }
+                reportFailure(e, true);
                 ModbusUtil.sleep(getRandomSleepTime(tries));
                 logger.debug("Execute try {} error: {}", tries, e.getMessage());
             }
+            finally {
+
+                // The gap between frames is measured from the end of the last exchange
+                // on the bus, whether or not it succeeded
+                lastTransactionTimestamp = System.nanoTime();
+            }
         } while (!finished);
+        reportResponse(startNanos);
 
         //4. deal with exceptions
         if (response instanceof ExceptionResponse) {
@@ -156,9 +169,6 @@ public class ModbusSerialTransaction extends ModbusTransaction {
         if (isCheckingValidity()) {
             checkValidity();
         }
-
-        // Set the last transaction timestamp
-        lastTransactionTimestamp = System.nanoTime();
     }
 
 }
@@ -18,6 +18,7 @@ package com.ghgande.j2mod.modbus.io;
 import com.fazecast.jSerialComm.SerialPort;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
@@ -28,9 +29,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Abstract base class for serial <tt>ModbusTransport</tt>
@@ -62,7 +65,13 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     private static final String COMM_PORT_IS_NOT_VALID_OR_NOT_OPEN = "Comm port is not valid or not open";
     private AbstractSerialConnection commPort;
     boolean echo = false;     // require RS-485 echo processing
+    private final byte[] singleByte = new byte[1];
+    private final byte[] asciiBuffer = new byte[2 * Modbus.MAX_MESSAGE_LENGTH + 8];
+    private int asciiPosition;
+    private int asciiLimit;
+    private byte[] scratchBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH + 2];
     private final Set<AbstractSerialTransportListener> listeners = Collections.synchronizedSet(new HashSet<AbstractSerialTransportListener>());
+    private volatile ModbusMetrics metrics;
 
     /**
      * Creates a new transaction suitable for the serial port
@@ -117,17 +126,15 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
             double delayNanoSeconds = delay % 1000000;
             try {
 
-                // For delays less than a millisecond, we need to chew CPU cycles unfortunately
+                // For delays less than a millisecond, park the thread until the end time
                 // There are some fiddle factors here to allow for some oddities in the hardware
 
                 if (delayMilliSeconds == 0.0) {
-                    int priority = Thread.currentThread().getPriority();
-                    Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
                     long end = startTime + ((int) (delayNanoSeconds * 1.3));
-                    while (System.nanoTime() < end) {
-                        // noop
+                    long remaining;
+                    while ((remaining = end - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
                     }
-                    Thread.currentThread().setPriority(priority);
                 }
                 else {
                     Thread.sleep((int) (delayMilliSeconds * 1.7), (int) (delayNanoSeconds * 1.5));
@@ -215,6 +222,37 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected abstract ModbusResponse readResponseIn() throws ModbusIOException;
 
+    /**
+     * Returns the metrics that checksum errors are reported to
+     *
+     * @return Metrics or null if not set
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics that checksum errors are reported to
+     *
+     * @param metrics Metrics to use or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports a received frame that failed its CRC or LRC check
+     *
+     * @param frame  Frame received
+     * @param length Number of bytes received
+     */
+    void reportChecksumError(byte[] frame, int length) {
+        ModbusMetrics current = metrics;
+        if (current != null) {
+            current.crcError(length > 0 ? frame[0] & 0xFF : 0, length > 1 ? frame[1] & 0xFF : 0);
+        }
+    }
+
     /**
      * Adds a listener to the transport to be called when an event occurs
      *
@@ -377,10 +415,16 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException if a I/O error occurred.
      */
     protected void readEcho(int len) throws IOException {
-        byte[] echoBuf = new byte[len];
-        int echoLen = commPort.readBytes(echoBuf, len);
-        if (logger.isDebugEnabled()) {
-            logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
+        // Anything already read ahead by the ASCII decoder comes first
+        int echoLen = Math.min(len, asciiLimit - asciiPosition);
+        asciiPosition += echoLen;
+        if (echoLen < len) {
+            byte[] echoBuf = scratchBuffer(len - echoLen);
+            int count = Math.max(0, commPort.readBytes(echoBuf, len - echoLen));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, count));
+            }
+            echoLen += count;
         }
         if (echoLen != len) {
             logger.debug("Error: Transmit echo not received");
@@ -392,6 +436,34 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         return commPort.bytesAvailable();
     }
 
+    /**
+     * Reads the first byte of a frame from the comms port. Unlike {@link #readByte()},
+     * nothing arriving within the timeout is reported as an <tt>InterruptedIOException</tt>
+     * so that it can be told apart from a broken frame or port.
+     *
+     * @return Value of the byte
+     *
+     * @throws InterruptedIOException If nothing is received before the timeout
+     * @throws IOException            If it cannot read
+     */
+    protected int readFirstByte() throws IOException {
+        if (commPort != null && commPort.isOpen()) {
+            int cnt = commPort.readBytes(singleByte, 1);
+            if (cnt == 0) {
+                throw new InterruptedIOException(CANNOT_READ_FROM_SERIAL_PORT);
+            }
+            else if (cnt != 1) {
+                throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
+            }
+            else {
+                return singleByte[0] & 0xff;
+            }
+        }
+        else {
+            throw new IOException(COMM_PORT_IS_NOT_VALID_OR_NOT_OPEN);
+        }
+    }
+
     /**
      * Reads a byte from the comms port
      *
@@ -401,13 +473,12 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected int readByte() throws IOException {
         if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
+            int cnt = commPort.readBytes(singleByte, 1);
             if (cnt != 1) {
                 throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
             }
             else {
-                return buffer[0] & 0xff;
+                return singleByte[0] & 0xff;
             }
         }
         else {
@@ -462,33 +533,22 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     int readAsciiByte() throws IOException {
         if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
-            if (cnt != 1) {
-                throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
-            }
-            else if (buffer[0] == ':') {
+            byte firstValue = nextAsciiChar();
+            if (firstValue == ':') {
                 return FRAME_START;
             }
-            else if (buffer[0] == '\r' || buffer[0] == '\n') {
+            else if (firstValue == '\r' || firstValue == '\n') {
                 return FRAME_END;
             }
             else {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("Read From buffer: {} ({})", buffer[0], String.format("%02X", buffer[0]));
+                    logger.debug("Read From buffer: {} ({})", firstValue, String.format("%02X", firstValue));
                 }
-                byte firstValue = buffer[0];
-                cnt = commPort.readBytes(buffer, 1);
-                if (cnt != 1) {
-                    throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
-                }
-                else {
-                    int combinedValue = (Character.digit(firstValue, 16) << 4) + Character.digit(buffer[0], 16);
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Returning combined value of: {}", String.format("%02X", combinedValue));
-                    }
-                    return combinedValue;
+                int combinedValue = (Character.digit(firstValue, 16) << 4) + Character.digit(nextAsciiChar(), 16);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Returning combined value of: {}", String.format("%02X", combinedValue));
                 }
+                return combinedValue;
             }
         }
         else {
@@ -561,19 +621,60 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         }
     }
 
+    /**
+     * Returns the next ASCII character received. Whatever the port has available
+     * is read in one go into a buffer, so that a frame is usually decoded from
+     * memory rather than with a call to the port for every character.
+     *
+     * @return Next character
+     * @throws InterruptedIOException If nothing is received before the timeout
+     * @throws IOException            If it cannot read
+     */
+    private byte nextAsciiChar() throws IOException {
+        if (asciiPosition == asciiLimit) {
+            int len = Math.min(Math.max(1, commPort.bytesAvailable()), asciiBuffer.length);
+            asciiPosition = 0;
+            int cnt = commPort.readBytes(asciiBuffer, len);
+            asciiLimit = Math.max(0, cnt);
+            if (cnt == 0) {
+                throw new InterruptedIOException(CANNOT_READ_FROM_SERIAL_PORT);
+            }
+            else if (cnt < 0) {
+                throw new IOException(CANNOT_READ_FROM_SERIAL_PORT);
+            }
+        }
+        return asciiBuffer[asciiPosition++];
+    }
+
+    /**
+     * Returns a reusable buffer of at least the given size
+     *
+     * @param len Minimum size
+     * @return Buffer
+     */
+    byte[] scratchBuffer(int len) {
+        if (scratchBuffer.length < len) {
+            scratchBuffer = new byte[len];
+        }
+        return scratchBuffer;
+    }
+
     /**
      * clearInput - Clear the input if characters are found in the input stream.
      *
      * @throws IOException If a problem with the port
      */
     void clearInput() throws IOException {
-        if (commPort.bytesAvailable() > 0) {
-            int len = commPort.bytesAvailable();
-            byte[] buf = new byte[len];
+        asciiPosition = asciiLimit = 0;
+        int remaining = commPort.bytesAvailable();
+        while (remaining > 0) {
+            int len = Math.min(remaining, Modbus.MAX_MESSAGE_LENGTH);
+            byte[] buf = scratchBuffer(len);
             readBytes(buf, len);
             if (logger.isDebugEnabled()) {
                 logger.debug("Clear input: {}", ModbusUtil.toHex(buf, 0, len));
             }
+            remaining -= len;
         }
     }
 
@@ -681,20 +782,12 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     }
 
     /**
-     * Spins until the timeout or the condition is met.
-     * This method will repeatedly poll the available bytes, so it should not have any side effects.
+     * Waits for data to be available to read, without spinning the CPU
      *
-     * @param waitTimeMicroSec The time to wait for the condition to be true in microseconds
-     * @return true if the condition ended the spin, false if the tim
+     * @param waitTimeMicroSec Maximum time to wait
+     * @return true if data is available
      */
-    boolean spinUntilBytesAvailable(long waitTimeMicroSec) {
-        long start = System.nanoTime();
-        while (availableBytes() < 1) {
-            long delta = System.nanoTime() - start;
-            if (delta > waitTimeMicroSec * 1000) {
-                return false;
-            }
-        }
-        return true;
+    boolean waitUntilBytesAvailable(long waitTimeMicroSec) {
+        return availableBytes() > 0 || commPort.waitForBytesAvailable(waitTimeMicroSec);
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusMessageImpl;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class that encodes and decodes complete Modbus/TCP (MBAP) frames held in
+ * memory, for use by the non-blocking transports that cannot read directly
+ * from a stream.
+ * <p>
+ * Each instance keeps its own buffers so it is not thread safe, an instance
+ * should be used by one thread at a time.
+ */
+public class ModbusTCPCodec {
+
+    /**
+     * Length of the MBAP header that precedes the unit ID
+     */
+    public static final int HEADER_LENGTH = 6;
+
+    /**
+     * Largest frame that can be decoded, including the MBAP header
+     */
+    public static final int MAX_FRAME_LENGTH = Modbus.MAX_MESSAGE_LENGTH + HEADER_LENGTH;
+
+    private final BytesInputStream byteInputStream = new BytesInputStream(MAX_FRAME_LENGTH);
+    private final BytesOutputStream byteOutputStream = new BytesOutputStream(MAX_FRAME_LENGTH);
+
+    /**
+     * Returns the total length of the frame that starts at the given offset,
+     * or -1 if not enough of the header is available to tell
+     *
+     * @param buffer    Buffer holding the start of the frame
+     * @param offset    Offset of the frame in the buffer
+     * @param available Number of bytes available from the offset
+     *
+     * @return Length of the frame including the MBAP header or -1
+     *
+     * @throws ModbusIOException If the header declares an impossible length
+     */
+    public static int getFrameLength(byte[] buffer, int offset, int available) throws ModbusIOException {
+        if (available < HEADER_LENGTH) {
+            return -1;
+        }
+        int count = ModbusUtil.registerToShort(buffer, offset + 4) & 0xFFFF;
+        if (count < 2 || count + HEADER_LENGTH > MAX_FRAME_LENGTH) {
+            throw new ModbusIOException("Invalid MBAP length %d", count);
+        }
+        return count + HEADER_LENGTH;
+    }
+
+    /**
+     * Writes the data of the message, i.e. everything after the function code,
+     * straight into the output without creating an intermediate array
+     *
+     * @param msg Message to write
+     * @param out Output to write to
+     *
+     * @throws IOException If the data cannot be written
+     */
+    static void writeData(ModbusMessage msg, BytesOutputStream out) throws IOException {
+        if (msg instanceof ModbusMessageImpl) {
+            ((ModbusMessageImpl)msg).writeData(out);
+        }
+        else {
+            byte[] message = msg.getMessage();
+            if (message != null && message.length > 0) {
+                out.write(message);
+            }
+        }
+    }
+
+    /**
+     * Encodes the message as a complete frame including the MBAP header
+     * <p>
+     * The message data is written straight into the frame buffer, the only
+     * allocation is the returned frame.
+     *
+     * @param msg Message to encode
+     *
+     * @return Frame ready to be written to the wire
+     *
+     * @throws ModbusIOException If the message cannot be encoded
+     */
+    public byte[] encode(ModbusMessage msg) throws ModbusIOException {
+        writeFrame(msg);
+        return byteOutputStream.toByteArray();
+    }
+
+    /**
+     * Encodes the message as a complete frame including the MBAP header and
+     * puts it into the buffer at its current position, without any allocation
+     *
+     * @param msg  Message to encode
+     * @param dest Buffer to put the frame into
+     *
+     * @throws ModbusIOException If the message cannot be encoded
+     */
+    public void encode(ModbusMessage msg, ByteBuffer dest) throws ModbusIOException {
+        writeFrame(msg);
+        dest.put(byteOutputStream.getBuffer(), 0, byteOutputStream.size());
+    }
+
+    /**
+     * Writes the message as a complete frame into the frame buffer
+     *
+     * @param msg Message to write
+     *
+     * @throws ModbusIOException If the message cannot be encoded
+     */
+    private void writeFrame(ModbusMessage msg) throws ModbusIOException {
+        try {
+            byteOutputStream.reset();
+            byteOutputStream.writeShort(msg.getTransactionID());
+            byteOutputStream.writeShort(msg.getProtocolID());
+            byteOutputStream.writeShort(0);
+            byteOutputStream.writeByte(msg.getUnitID());
+            byteOutputStream.writeByte(msg.getFunctionCode());
+            writeData(msg, byteOutputStream);
+            byteOutputStream.writeShortAt(4, byteOutputStream.size() - HEADER_LENGTH);
+        }
+        catch (IOException ex) {
+            throw new ModbusIOException("Failed to encode message - %s", ex.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a response from a complete frame
+     *
+     * @param buffer Buffer holding the frame starting at offset 0
+     * @param length Length of the frame including the MBAP header
+     *
+     * @return Response
+     *
+     * @throws ModbusIOException If the frame cannot be decoded
+     */
+    public ModbusResponse decodeResponse(byte[] buffer, int length) throws ModbusIOException {
+        try {
+            byteInputStream.reset(buffer, length);
+            byteInputStream.skip(7);
+            int function = byteInputStream.readUnsignedByte();
+            ModbusResponse response = ModbusResponse.createModbusResponse(function);
+            byteInputStream.reset();
+            response.readFrom(byteInputStream);
+            return response;
+        }
+        catch (IOException ex) {
+            throw new ModbusIOException("Failed to decode response - %s", ex.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a request from a complete frame
+     *
+     * @param buffer Buffer holding the frame starting at offset 0
+     * @param length Length of the frame including the MBAP header
+     *
+     * @return Request
+     *
+     * @throws ModbusIOException If the frame cannot be decoded
+     */
+    public ModbusRequest decodeRequest(byte[] buffer, int length) throws ModbusIOException {
+        try {
+            byteInputStream.reset(buffer, length);
+            byteInputStream.skip(7);
+            int function = byteInputStream.readUnsignedByte();
+            ModbusRequest request = ModbusRequest.createModbusRequest(function);
+            request.setHeadless(false);
+            byteInputStream.reset();
+            request.readFrom(byteInputStream);
+            return request;
+        }
+        catch (IOException ex) {
+            throw new ModbusIOException("Failed to decode request - %s", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that allows many transactions to be in flight at the same time on a
+ * single <tt>TCPMasterConnection</tt>.
+ * <p>
+ * Requests are written to the socket as soon as a slot in the window is free,
+ * otherwise they wait in a backlog, and a dedicated reader thread matches each
+ * response back to its caller using the MBAP transaction ID. Requests that were
+ * held in the backlog are written by a writer thread owned by the pipeline so that
+ * neither the reader nor the timer ever blocks on the socket. The transport socket
+ * has no read timeout while the pipeline is running, request timeouts and retries
+ * are driven by a timer owned by the pipeline so that no thread is blocked waiting
+ * for an individual response.
+ * <p>
+ * Pipelining relies on the MBAP header so it cannot be used with RTU over TCP.
+ */
+public class ModbusTCPPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTCPPipeline.class);
+
+    private final TCPMasterConnection connection;
+    private final ModbusTCPTransport transport;
+    private final int windowSize;
+    private final Semaphore window;
+    private final Map<Integer, PendingRequest> pending = new ConcurrentHashMap<Integer, PendingRequest>();
+    private final Queue<PendingRequest> backlog = new ConcurrentLinkedQueue<PendingRequest>();
+    private final AtomicInteger nextTransactionID = new AtomicInteger(Modbus.DEFAULT_TRANSACTION_ID);
+    private final Object writeLock = new Object();
+    private volatile boolean running = false;
+    private volatile long lastResponseTimestamp = System.nanoTime();
+    private volatile ScheduledThreadPoolExecutor timer;
+    private volatile ExecutorService writer;
+    private Thread reader;
+
+    /**
+     * Constructs a pipeline over the transport of an open connection
+     *
+     * @param connection Connection that owns the transport
+     * @param transport  Transport to read and write messages with
+     * @param windowSize Maximum number of requests in flight at any one time
+     */
+    public ModbusTCPPipeline(TCPMasterConnection connection, ModbusTCPTransport transport, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        if (transport instanceof ModbusRTUTCPTransport) {
+            throw new IllegalArgumentException("Pipelining is not supported for RTU over TCP");
+        }
+        this.connection = connection;
+        this.transport = transport;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Creates a factory for the daemon threads of the pipeline
+     *
+     * @param name Name of the threads
+     * @return Thread factory
+     */
+    private ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, String.format("%s %s:%d", name, connection.getAddress(), connection.getPort()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Starts the reader thread that dispatches responses to waiting callers
+     * together with the timer and writer threads of the pipeline
+     */
+    public synchronized void start() {
+        if (!running) {
+            ScheduledThreadPoolExecutor newTimer = new ScheduledThreadPoolExecutor(1, createThreadFactory("Modbus TCP Pipeline Timer"));
+            newTimer.setRemoveOnCancelPolicy(true);
+            timer = newTimer;
+            writer = Executors.newSingleThreadExecutor(createThreadFactory("Modbus TCP Pipeline Writer"));
+            running = true;
+            transport.setTimeout(0);
+            reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readResponses();
+                }
+            }, String.format("Modbus TCP Pipeline %s:%d", connection.getAddress(), connection.getPort()));
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Stops the pipeline, fails any requests that are still in flight or
+     * waiting to be sent and shuts down the timer and writer threads. The caller
+     * is responsible for closing the underlying transport which will release the
+     * reader thread.
+     */
+    public void close() {
+        running = false;
+        failAll(new ModbusIOException("Connection closed"));
+        ScheduledThreadPoolExecutor oldTimer = timer;
+        if (oldTimer != null) {
+            oldTimer.shutdownNow();
+        }
+        ExecutorService oldWriter = writer;
+        if (oldWriter != null) {
+            oldWriter.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns true if the reader thread is running
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the maximum number of requests that can be in flight
+     *
+     * @return Window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Returns the number of requests currently awaiting a response
+     *
+     * @return Number of requests in flight
+     */
+    public int getInFlightCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of requests waiting for a free slot in the window
+     *
+     * @return Number of requests waiting to be sent
+     */
+    public int getBacklogCount() {
+        return backlog.size();
+    }
+
+    /**
+     * Sends the request and waits for the matching response. The request is
+     * given a transaction ID that is unique amongst those currently in flight.
+     *
+     * @param request Request to send
+     * @param timeout Time in milliseconds to wait for the response, including any time waiting for a slot
+     *
+     * @return Response from the slave
+     *
+     * @throws ModbusIOException If the request could not be sent, the connection failed or no response arrived in time
+     */
+    public ModbusResponse execute(ModbusRequest request, int timeout) throws ModbusIOException {
+        try {
+            return executeAsync(request, timeout, 1).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for response");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ModbusIOException) {
+                throw (ModbusIOException)e.getCause();
+            }
+            throw new ModbusIOException("Failed to read response - %s", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Sends the request without blocking the caller. If the window is full the
+     * request is held in the backlog until a slot becomes free. Each attempt is
+     * given the full timeout and failed attempts are re-sent with a new transaction
+     * ID after a random delay until the number of tries is exhausted.
+     *
+     * @param request Request to send
+     * @param timeout Time in milliseconds to wait for each response
+     * @param tries   Maximum number of times to send the request
+     *
+     * @return Future that is completed with the response or a <tt>ModbusIOException</tt>
+     */
+    public CompletableFuture<ModbusResponse> executeAsync(final ModbusRequest request, final int timeout, final int tries) {
+        final CompletableFuture<ModbusResponse> result = new CompletableFuture<ModbusResponse>();
+        attempt(request, timeout, Math.max(tries, 1), 1, result);
+        return result;
+    }
+
+    /**
+     * Makes a single attempt at sending the request, chaining a retry onto failure
+     *
+     * @param request Request to send
+     * @param timeout Time in milliseconds to wait for the response
+     * @param tries   Maximum number of attempts
+     * @param count   Number of this attempt
+     * @param result  Future to complete with the final outcome
+     */
+    private void attempt(final ModbusRequest request, final int timeout, final int tries, final int count, final CompletableFuture<ModbusResponse> result) {
+        submit(request, timeout).whenComplete(new BiConsumer<ModbusResponse, Throwable>() {
+            @Override
+            public void accept(ModbusResponse response, Throwable ex) {
+                if (ex == null) {
+                    result.complete(response);
+                }
+                else if (count >= tries || !running) {
+                    if (tries > 1) {
+                        result.completeExceptionally(new ModbusIOException("Executing transaction %s failed (tried %d times) %s", request.getHexMessage(), count, ex.getMessage()));
+                    }
+                    else {
+                        result.completeExceptionally(ex);
+                    }
+                }
+                else {
+                    long sleepTime = (Modbus.RETRY_SLEEP_TIME / 2) + (long) (ThreadLocalRandom.current().nextDouble() * Modbus.RETRY_SLEEP_TIME * count);
+                    logger.debug("Failed transaction Request: {} (try: {}) - retrying after {} milliseconds", request.getHexMessage(), count, sleepTime);
+                    try {
+                        timer.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                attempt(request, timeout, tries, count + 1, result);
+                            }
+                        }, sleepTime, TimeUnit.MILLISECONDS);
+                    }
+                    catch (RejectedExecutionException e) {
+                        result.completeExceptionally(ex);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the request for sending and arms its timeout
+     *
+     * @param request Request to send
+     * @param timeout Time in milliseconds to wait for the response
+     *
+     * @return Future that will be completed by the reader or the timer
+     */
+    private CompletableFuture<ModbusResponse> submit(ModbusRequest request, int timeout) {
+        final PendingRequest entry = new PendingRequest(request);
+        if (!running) {
+            entry.future.completeExceptionally(new ModbusIOException("Pipeline is not running"));
+            return entry.future;
+        }
+        try {
+            entry.timeoutTask = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire(entry);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            entry.future.completeExceptionally(new ModbusIOException("Pipeline is not running"));
+            return entry.future;
+        }
+
+        if (window.tryAcquire()) {
+            send(entry);
+        }
+        else {
+            backlog.add(entry);
+
+            // A slot may have been given back between the two calls
+            if (window.tryAcquire()) {
+                releaseSlot();
+            }
+        }
+        return entry.future;
+    }
+
+    /**
+     * Writes the request to the socket. The caller must own a slot in the window.
+     * This is only called by the thread submitting the request or by the writer.
+     *
+     * @param entry Request to write
+     */
+    private void send(PendingRequest entry) {
+        if (entry.future.isDone()) {
+            releaseSlot();
+            return;
+        }
+        ModbusIOException failure = null;
+        synchronized (writeLock) {
+            entry.transactionID = allocateTransactionID(entry);
+            entry.request.setTransactionID(entry.transactionID);
+            entry.timestamp = System.nanoTime();
+            try {
+                transport.writeRequest(entry.request);
+            }
+            catch (ModbusIOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            if (pending.remove(entry.transactionID, entry)) {
+                window.release();
+            }
+            entry.complete(null, failure);
+            connection.close();
+        }
+        else if (entry.future.isDone() && pending.remove(entry.transactionID, entry)) {
+
+            // Timed out whilst being written
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Gives a slot in the window to the next request in the backlog or back to
+     * the window. The request is written by the writer thread so this never blocks.
+     */
+    private void releaseSlot() {
+        PendingRequest next;
+        while ((next = backlog.poll()) != null) {
+            if (!next.future.isDone()) {
+                final PendingRequest entry = next;
+                try {
+                    writer.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            send(entry);
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    window.release();
+                    entry.complete(null, new ModbusIOException("Pipeline is not running"));
+                }
+                return;
+            }
+        }
+        window.release();
+    }
+
+    /**
+     * Fails a request that has run out of time. If nothing at all has been read
+     * since the request was sent then the link is considered stalled and the
+     * connection is closed, as a separate task of the timer, so that it can be
+     * re-opened.
+     *
+     * @param entry Request that has timed out
+     */
+    private void expire(PendingRequest entry) {
+        boolean stalled = false;
+        if (!backlog.remove(entry) && pending.remove(entry.transactionID, entry)) {
+            stalled = running && lastResponseTimestamp - entry.timestamp < 0;
+            releaseSlot();
+        }
+        ModbusIOException timeoutException = new ModbusIOException("Timeout waiting for response to transaction %d", entry.transactionID);
+        timeoutException.setTimeout(true);
+        entry.complete(null, timeoutException);
+        if (stalled) {
+            logger.debug("No response received since transaction {} was sent - closing connection", entry.transactionID);
+            try {
+                timer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.close();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                logger.debug("Pipeline already closed");
+            }
+        }
+    }
+
+    /**
+     * Finds a transaction ID that is not in use and registers the entry against it
+     *
+     * @param entry Entry to register
+     *
+     * @return Transaction ID
+     */
+    private int allocateTransactionID(PendingRequest entry) {
+        while (true) {
+            int id = nextTransactionID.getAndIncrement();
+            if (id >= Modbus.MAX_TRANSACTION_ID) {
+                nextTransactionID.set(Modbus.DEFAULT_TRANSACTION_ID);
+                id = nextTransactionID.getAndIncrement();
+            }
+            if (pending.putIfAbsent(id, entry) == null) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Reads responses from the transport until the pipeline is stopped or
+     * the connection fails
+     */
+    private void readResponses() {
+        logger.debug("Pipeline reader started for {}:{}", connection.getAddress(), connection.getPort());
+        while (running) {
+            try {
+                ModbusResponse response = transport.readResponse();
+                lastResponseTimestamp = System.nanoTime();
+                PendingRequest entry = pending.remove(response.getTransactionID());
+                if (entry == null) {
+                    logger.debug("Discarding response for unknown or expired transaction ID {}", response.getTransactionID());
+                }
+                else {
+                    releaseSlot();
+                    entry.complete(response, null);
+                }
+            }
+            catch (ModbusIOException ex) {
+                if (running) {
+                    logger.debug("Pipeline reader failed for {}:{} - {}", connection.getAddress(), connection.getPort(), ex.getMessage());
+                    running = false;
+                    connection.close();
+                }
+            }
+        }
+        logger.debug("Pipeline reader stopped for {}:{}", connection.getAddress(), connection.getPort());
+    }
+
+    /**
+     * Fails every request that is in flight or in the backlog
+     *
+     * @param ex Exception to fail them with
+     */
+    private void failAll(ModbusIOException ex) {
+        PendingRequest entry;
+        while ((entry = backlog.poll()) != null) {
+            entry.complete(null, ex);
+        }
+        for (Integer id : pending.keySet()) {
+            entry = pending.remove(id);
+            if (entry != null) {
+                window.release();
+                entry.complete(null, ex);
+            }
+        }
+    }
+
+    /**
+     * A request that is waiting to be sent or waiting for its response
+     */
+    private static class PendingRequest {
+        final ModbusRequest request;
+        final CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+        volatile int transactionID = -1;
+        volatile long timestamp;
+        volatile ScheduledFuture<?> timeoutTask;
+
+        PendingRequest(ModbusRequest request) {
+            this.request = request;
+        }
+
+        /**
+         * Completes the future and disarms the timeout
+         *
+         * @param response Response or null if failed
+         * @param ex       Failure or null if successful
+         */
+        void complete(ModbusResponse response, Throwable ex) {
+            ScheduledFuture<?> task = timeoutTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            if (ex == null) {
+                future.complete(response);
+            }
+            else {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing a <tt>ModbusTransaction</tt> that is sent through the
+ * <tt>ModbusTCPPipeline</tt> of a pipelined <tt>TCPMasterConnection</tt>.
+ * <p>
+ * Unlike <tt>ModbusTCPTransaction</tt>, execution does not lock the connection
+ * so many threads, each with their own transaction, can share one socket and have
+ * their requests in flight at the same time. The reconnecting flag is ignored
+ * because the connection is shared.
+ */
+public class ModbusTCPPipelinedTransaction extends ModbusTCPTransaction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTCPPipelinedTransaction.class);
+
+    /**
+     * Constructs a new <tt>ModbusTCPPipelinedTransaction</tt> instance with a given
+     * <tt>TCPMasterConnection</tt> to be used for transactions.
+     *
+     * @param con a pipelined <tt>TCPMasterConnection</tt> instance.
+     */
+    public ModbusTCPPipelinedTransaction(TCPMasterConnection con) {
+        super(con);
+    }
+
+    /**
+     * Constructs a new <tt>ModbusTCPPipelinedTransaction</tt> instance with a given
+     * <tt>TCPMasterConnection</tt> and <tt>ModbusRequest</tt>.
+     *
+     * @param con     a pipelined <tt>TCPMasterConnection</tt> instance.
+     * @param request a <tt>ModbusRequest</tt> instance.
+     */
+    public ModbusTCPPipelinedTransaction(TCPMasterConnection con, ModbusRequest request) {
+        super(con);
+        setRequest(request);
+    }
+
+    @Override
+    public void execute() throws ModbusException {
+
+        if (request == null || connection == null) {
+            throw new ModbusException("Invalid request or connection");
+        }
+
+        int retryCounter = 0;
+        int retryLimit = (retries > 0 ? retries : Modbus.DEFAULT_RETRIES);
+        long startNanos = System.nanoTime();
+
+        while (true) {
+            ModbusTCPPipeline pipeline = getPipeline();
+            try {
+                response = pipeline.execute(request, connection.getTimeout());
+                reportResponse(startNanos);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read response: {} (try: {}) response transaction ID = {} from {}:{}", response.getHexMessage(), retryCounter, response.getTransactionID(), connection.getAddress(), connection.getPort());
+                }
+
+                // The slave may have returned an exception -- check for that.
+                if (response instanceof ExceptionResponse) {
+                    throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
+                }
+                if (isCheckingValidity()) {
+                    checkValidity();
+                }
+                return;
+            }
+            catch (ModbusIOException ex) {
+                retryCounter++;
+                if (retryCounter >= retryLimit) {
+                    reportFailure(ex, false);
+                    throw new ModbusIOException("Executing transaction %s failed (tried %d times) %s", request.getHexMessage(), retryLimit, ex.getMessage());
+                }
+                reportFailure(ex, true);
+                long sleepTime = getRandomSleepTime(retryCounter);
+                logger.debug("Failed transaction Request: {} (try: {}) - retrying after {} milliseconds", request.getHexMessage(), retryCounter, sleepTime);
+                ModbusUtil.sleep(sleepTime);
+            }
+        }
+    }
+
+    /**
+     * Returns the running pipeline of the connection, connecting first if necessary
+     *
+     * @return Pipeline to send the request through
+     *
+     * @throws ModbusException If the connection cannot be opened or is not pipelined
+     */
+    private ModbusTCPPipeline getPipeline() throws ModbusException {
+        synchronized (connection) {
+            if (!connection.isConnected()) {
+                try {
+                    logger.debug("Connecting to: {}:{}", connection.getAddress(), connection.getPort());
+                    connection.connect();
+                    transport = connection.getModbusTransport();
+                }
+                catch (Exception ex) {
+                    reportFailure(null, false);
+                    throw new ModbusIOException("Connection failed for %s:%d %s", connection.getAddress().toString(), connection.getPort(), ex.getMessage());
+                }
+            }
+            ModbusTCPPipeline pipeline = connection.getPipeline();
+            if (pipeline == null) {
+                throw new ModbusException("Connection to %s:%d is not pipelined", connection.getAddress().toString(), connection.getPort());
+            }
+            return pipeline;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnectionPool;
+
+import java.net.InetAddress;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class implementing a <tt>ModbusTransaction</tt> that borrows a connection
+ * from a <tt>TCPMasterConnectionPool</tt> for each execution and gives it back
+ * afterwards.
+ * <p>
+ * Many threads, each with their own transaction, can share a pool and run
+ * transactions to the same slave at the same time, up to the connection limit
+ * of the pool. The connection is kept open between executions without tying
+ * it to the transaction. A connection is only returned to the pool if the
+ * transaction completed, otherwise it is closed.
+ */
+public class ModbusTCPPooledTransaction extends ModbusTCPTransaction {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TCPMasterConnectionPool pool;
+    private final InetAddress address;
+    private final int port;
+
+    /**
+     * Constructs a new <tt>ModbusTCPPooledTransaction</tt> instance for a slave
+     *
+     * @param pool    Pool to borrow connections from
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     */
+    public ModbusTCPPooledTransaction(TCPMasterConnectionPool pool, InetAddress address, int port) {
+        if (pool == null || address == null) {
+            throw new IllegalArgumentException("Pool and address must be specified");
+        }
+        this.pool = pool;
+        this.address = address;
+        this.port = port;
+        reconnecting = false;
+    }
+
+    /**
+     * Constructs a new <tt>ModbusTCPPooledTransaction</tt> instance for a slave
+     * with a given <tt>ModbusRequest</tt>.
+     *
+     * @param pool    Pool to borrow connections from
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @param request a <tt>ModbusRequest</tt> instance.
+     */
+    public ModbusTCPPooledTransaction(TCPMasterConnectionPool pool, InetAddress address, int port, ModbusRequest request) {
+        this(pool, address, port);
+        setRequest(request);
+    }
+
+    /**
+     * Returns the pool the transaction borrows connections from
+     *
+     * @return Pool
+     */
+    public TCPMasterConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Borrows a connection and executes the transaction on it. A
+     * <tt>ReentrantLock</tt> rather than a monitor guards the transaction so
+     * that a virtual thread blocked on the pool or the socket does not pin its
+     * carrier thread.
+     *
+     * @throws ModbusException If the transaction fails
+     */
+    @Override
+    public void execute() throws ModbusException {
+        lock.lock();
+        try {
+            executePooled();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Borrows a connection, runs the transaction and gives the connection back
+     * or closes it. The lock must be held.
+     *
+     * @throws ModbusException If the transaction fails
+     */
+    private void executePooled() throws ModbusException {
+        if (request == null) {
+            throw new ModbusException("Invalid request");
+        }
+        TCPMasterConnection borrowed;
+        try {
+            borrowed = pool.borrow(address, port);
+        }
+        catch (ModbusIOException ex) {
+            reportFailure(ex, false);
+            throw ex;
+        }
+        boolean completed = false;
+        connection = borrowed;
+        transport = borrowed.getModbusTransport();
+        try {
+            super.execute();
+            completed = true;
+        }
+        catch (ModbusSlaveException ex) {
+            completed = true;
+            throw ex;
+        }
+        finally {
+            connection = null;
+            transport = null;
+            if (completed) {
+                pool.release(borrowed);
+            }
+            else {
+                pool.invalidate(borrowed);
+            }
+        }
+    }
+}
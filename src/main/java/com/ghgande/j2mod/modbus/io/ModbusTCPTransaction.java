@@ -26,6 +26,8 @@ import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Class implementing the <tt>ModbusTransaction</tt> interface.
  *
@@ -38,7 +40,8 @@ public class ModbusTCPTransaction extends ModbusTransaction {
     private static final Logger logger = LoggerFactory.getLogger(ModbusTCPTransaction.class);
 
     // instance attributes and associations
-    private TCPMasterConnection connection;
+    private final ReentrantLock lock = new ReentrantLock();
+    protected TCPMasterConnection connection;
     protected boolean reconnecting = Modbus.DEFAULT_RECONNECTING;
 
     /**
@@ -107,8 +110,31 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         reconnecting = b;
     }
 
+    /**
+     * Executes the transaction. A <tt>ReentrantLock</tt> rather than a monitor
+     * guards the connection so that a virtual thread blocked on the socket does
+     * not pin its carrier thread.
+     *
+     * @throws ModbusException If the transaction fails
+     */
     @Override
-    public synchronized void execute() throws ModbusException {
+    public void execute() throws ModbusException {
+        lock.lock();
+        try {
+            executeTransaction();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the request and reads the response, retrying as necessary. The lock
+     * must be held.
+     *
+     * @throws ModbusException If the transaction fails
+     */
+    private void executeTransaction() throws ModbusException {
 
         if (request == null || connection == null) {
             throw new ModbusException("Invalid request or connection");
@@ -119,6 +145,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         int retryCounter = 0;
         int retryLimit = (retries > 0 ? retries : Modbus.DEFAULT_RETRIES);
         boolean keepTrying = true;
+        long startNanos = System.nanoTime();
 
         // While we haven't exhausted all the retry attempts
         while (keepTrying) {
@@ -131,6 +158,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
                     transport = connection.getModbusTransport();
                 }
                 catch (Exception ex) {
+                    reportFailure(null, false);
                     throw new ModbusIOException("Connection failed for %s:%d %s", connection.getAddress().toString(), connection.getPort(), ex.getMessage());
                 }
             }
@@ -155,6 +183,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
 
                 // The slave may have returned an exception -- check for that.
                 if (response instanceof ExceptionResponse) {
+                    reportResponse(startNanos);
                     throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
                 }
 
@@ -168,6 +197,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
                         throw new ModbusIOException("Executing transaction failed (tried %d times)", retryLimit);
                     }
                     keepTrying = true;
+                    reportFailure(null, true);
                     long sleepTime = getRandomSleepTime(retryCounter);
                     if (response == null) {
                         logger.debug("Failed to get any response (try: {}) - retrying after {} milliseconds", retryCounter, sleepTime);
@@ -183,9 +213,11 @@ public class ModbusTCPTransaction extends ModbusTransaction {
                 // Up the retry counter and check if we are exhausted
                 retryCounter++;
                 if (retryCounter >= retryLimit) {
+                    reportFailure(ex, false);
                     throw new ModbusIOException("Executing transaction %s failed (tried %d times) %s", request.getHexMessage(), retryLimit, ex.getMessage());
                 }
                 else {
+                    reportFailure(ex, true);
                     long sleepTime = getRandomSleepTime(retryCounter);
                     logger.debug("Failed transaction Request: {} (try: {}) - retrying after {} milliseconds", request.getHexMessage(), retryCounter, sleepTime);
                     ModbusUtil.sleep(sleepTime);
@@ -202,6 +234,8 @@ public class ModbusTCPTransaction extends ModbusTransaction {
             }
         }
 
+        reportResponse(startNanos);
+
         // Close the connection if it isn't supposed to stick around.
         if (isReconnecting()) {
             connection.close();
@@ -30,6 +30,7 @@ import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that implements the Modbus transport flavor.
@@ -52,6 +53,10 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
     private boolean headless = false; // Some TCP implementations are.
     private long lastActivityTimestamp;  // System.nanoTime() of last transportation
 
+    // Guards the input buffer. A lock is used rather than a monitor so that a
+    // virtual thread blocked reading the socket does not pin its carrier thread
+    private final ReentrantLock readLock = new ReentrantLock();
+
     /**
      * Default constructor
      */
@@ -158,6 +163,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
             master.setPort(socket.getPort());
             master.setModbusTransport(this);
         }
+        if (master.isPipelined()) {
+            return new ModbusTCPPipelinedTransaction(master);
+        }
         return new ModbusTCPTransaction(master);
     }
 
@@ -179,7 +187,8 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         try {
             byteInputStream.reset();
 
-            synchronized (byteInputStream) {
+            readLock.lock();
+            try {
                 byte[] buffer = byteInputStream.getBuffer();
 
                 if (!headless) {
@@ -236,6 +245,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     }
                 }
             }
+            finally {
+                readLock.unlock();
+            }
             return req;
         }
         catch (EOFException eoex) {
@@ -259,7 +271,8 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         try {
             ModbusResponse response;
 
-            synchronized (byteInputStream) {
+            readLock.lock();
+            try {
                 // use same buffer
                 byte[] buffer = byteInputStream.getBuffer();
                 logger.debug("Reading response...");
@@ -314,6 +327,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     dataInputStream.readShort();
                 }
             }
+            finally {
+                readLock.unlock();
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("Successfully read: {}", response.getHexMessage());
             }
@@ -323,7 +339,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
             throw new ModbusIOException("Premature end of stream (Message truncated) - %s", ex1.getMessage());
         }
         catch (SocketTimeoutException ex2) {
-            throw new ModbusIOException("Socket timeout reading response - %s", ex2.getMessage());
+            ModbusIOException timeoutException = new ModbusIOException("Socket timeout reading response - %s", ex2.getMessage());
+            timeoutException.setTimeout(true);
+            throw timeoutException;
         }
         catch (Exception ex3) {
             throw new ModbusIOException("General exception - failed to read - %s", ex3.getMessage());
@@ -377,32 +395,30 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
             if (logger.isDebugEnabled()) {
                 logger.debug("Sending: {}", msg.getHexMessage());
             }
-            byte[] message = msg.getMessage();
-
+            // Write the message data straight into the frame buffer and fill in
+            // the MBAP length afterwards, so no intermediate arrays are needed
             byteOutputStream.reset();
             if (!headless) {
                 byteOutputStream.writeShort(msg.getTransactionID());
                 byteOutputStream.writeShort(msg.getProtocolID());
-                byteOutputStream.writeShort((message != null ? message.length : 0) + 2);
+                byteOutputStream.writeShort(0);
             }
             byteOutputStream.writeByte(msg.getUnitID());
             byteOutputStream.writeByte(msg.getFunctionCode());
-            if (message != null && message.length > 0) {
-                byteOutputStream.write(message);
+            ModbusTCPCodec.writeData(msg, byteOutputStream);
+            if (!headless) {
+                byteOutputStream.writeShortAt(4, byteOutputStream.size() - 6);
             }
 
             // Add CRC for RTU over TCP
             if (useRtuOverTcp) {
-                int len = byteOutputStream.size();
-                int[] crc = ModbusUtil.calculateCRC(byteOutputStream.getBuffer(), 0, len);
-                byteOutputStream.writeByte(crc[0]);
-                byteOutputStream.writeByte(crc[1]);
+                byteOutputStream.writeCRC();
             }
 
-            dataOutputStream.write(byteOutputStream.toByteArray());
+            byteOutputStream.writeTo(dataOutputStream);
             dataOutputStream.flush();
             if (logger.isDebugEnabled()) {
-                logger.debug("Successfully sent: {}", ModbusUtil.toHex(byteOutputStream.toByteArray()));
+                logger.debug("Successfully sent: {}", ModbusUtil.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
             }
             // write more sophisticated exception handling
         }
@@ -18,6 +18,8 @@ package com.ghgande.j2mod.modbus.io;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 
@@ -41,6 +43,7 @@ public abstract class ModbusTransaction {
     protected ModbusResponse response;
     boolean validityCheck = Modbus.DEFAULT_VALIDITYCHECK;
     int retries = Modbus.DEFAULT_RETRIES;
+    protected ModbusMetrics metrics;
     private final Random random = new Random(System.nanoTime());
     static int transactionID = Modbus.DEFAULT_TRANSACTION_ID;
 
@@ -126,6 +129,58 @@ public abstract class ModbusTransaction {
         validityCheck = b;
     }
 
+    /**
+     * Returns the metrics that the outcome of each execution is reported to
+     *
+     * @return Metrics or null if not reporting
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics that the outcome of each execution is reported to
+     *
+     * @param metrics Metrics to use or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the response that has just been received for the request
+     *
+     * @param startNanos Time the request was first sent, from <tt>System.nanoTime()</tt>
+     */
+    void reportResponse(long startNanos) {
+        if (metrics != null && response != null) {
+            metrics.requestCompleted(request.getUnitID(), request.getFunctionCode(), System.nanoTime() - startNanos);
+            if (response instanceof ExceptionResponse) {
+                metrics.exceptionResponse(request.getUnitID(), request.getFunctionCode(), ((ExceptionResponse)response).getExceptionCode());
+            }
+        }
+    }
+
+    /**
+     * Reports an attempt at the request that failed
+     *
+     * @param ex       Cause of the failure, may be null if the response was invalid
+     * @param retrying True if the request will be sent again, false if giving up
+     */
+    void reportFailure(ModbusIOException ex, boolean retrying) {
+        if (metrics != null) {
+            if (ex != null && ex.isTimeout()) {
+                metrics.timeout(request.getUnitID(), request.getFunctionCode());
+            }
+            if (retrying) {
+                metrics.retry(request.getUnitID(), request.getFunctionCode());
+            }
+            else {
+                metrics.requestFailed(request.getUnitID(), request.getFunctionCode());
+            }
+        }
+    }
+
     /**
      * getTransactionID -- get the next transaction ID to use.
      * @return next transaction ID to use
@@ -27,6 +27,8 @@ import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Class implementing the <tt>ModbusTransaction</tt>
  * interface for the UDP transport mechanism.
@@ -40,6 +42,7 @@ public class ModbusUDPTransaction extends ModbusTransaction {
     private static final Logger logger = LoggerFactory.getLogger(ModbusUDPTransaction.class);
 
     //instance attributes and associations
+    private final ReentrantLock lock = new ReentrantLock();
     private AbstractUDPTerminal terminal;
 
     /**
@@ -118,20 +121,27 @@ public class ModbusUDPTransaction extends ModbusTransaction {
         //3. Retry transaction retries times, in case of
         //I/O Exception problems.
         int retryCount = 0;
+        long startNanos = System.nanoTime();
         while (retryCount <= retries) {
             try {
                 //3. write request, and read response,
                 //   while holding the lock on the IO object
-                synchronized (this) {
+                lock.lock();
+                try {
                     //write request message
                     transport.writeRequest(request);
                     //read response message
                     response = transport.readResponse();
+                    reportResponse(startNanos);
                     break;
                 }
+                finally {
+                    lock.unlock();
+                }
             }
             catch (ModbusIOException ex) {
                 retryCount++;
+                reportFailure(ex, retryCount <= retries);
                 if (retryCount > retries) {
                     logger.error("Cannot send UDP message", ex);
                 }
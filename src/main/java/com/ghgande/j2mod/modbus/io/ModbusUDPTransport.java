@@ -27,7 +27,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that implements the Modbus UDP transport flavor.
@@ -44,6 +46,8 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
     private final AbstractUDPTerminal terminal;
     private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
     private final BytesInputStream byteInputStream = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private final ReentrantLock inputLock = new ReentrantLock();
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -89,15 +93,20 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
     @Override
     public ModbusRequest readRequest(AbstractModbusListener listener) throws ModbusIOException {
         try {
+            byte[] message = terminal.receiveMessage();
             ModbusRequest req;
-            synchronized (byteInputStream) {
-                byteInputStream.reset(terminal.receiveMessage());
+            inputLock.lock();
+            try {
+                byteInputStream.reset(message);
                 byteInputStream.skip(7);
                 int functionCode = byteInputStream.readUnsignedByte();
                 byteInputStream.reset();
                 req = ModbusRequest.createModbusRequest(functionCode);
                 req.readFrom(byteInputStream);
             }
+            finally {
+                inputLock.unlock();
+            }
             return req;
         }
         catch (Exception ex) {
@@ -109,19 +118,26 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
     public ModbusResponse readResponse() throws ModbusIOException {
 
         try {
+            byte[] message = terminal.receiveMessage();
             ModbusResponse res;
-            synchronized (byteInputStream) {
-                byteInputStream.reset(terminal.receiveMessage());
+            inputLock.lock();
+            try {
+                byteInputStream.reset(message);
                 byteInputStream.skip(7);
                 int functionCode = byteInputStream.readUnsignedByte();
                 byteInputStream.reset();
                 res = ModbusResponse.createModbusResponse(functionCode);
                 res.readFrom(byteInputStream);
             }
+            finally {
+                inputLock.unlock();
+            }
             return res;
         }
         catch (InterruptedIOException ioex) {
-            throw new ModbusIOException("Socket was interrupted", ioex);
+            ModbusIOException timeoutException = new ModbusIOException("Socket was interrupted", ioex);
+            timeoutException.setTimeout(ioex instanceof SocketTimeoutException);
+            throw timeoutException;
         }
         catch (Exception ex) {
             logger.debug("I/O exception while reading modbus response.", ex);
@@ -136,14 +152,18 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
      */
     private void writeMessage(ModbusMessage msg) throws ModbusIOException {
         try {
-            synchronized (byteOutputStream) {
+            byte[] data;
+            outputLock.lock();
+            try {
                 int len = msg.getOutputLength();
                 byteOutputStream.reset();
                 msg.writeTo(byteOutputStream);
-                byte[] data = byteOutputStream.getBuffer();
-                data = Arrays.copyOf(data, len);
-                terminal.sendMessage(data);
+                data = Arrays.copyOf(byteOutputStream.getBuffer(), len);
+            }
+            finally {
+                outputLock.unlock();
             }
+            terminal.sendMessage(data);
         }
         catch (Exception ex) {
             throw new ModbusIOException("I/O exception - failed to write", ex);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.metrics;
+
+/**
+ * Receives the outcome of every request handled by a master transaction or a
+ * slave listener.
+ * <p>
+ * Implementations are called on the thread doing the I/O, often while it holds
+ * the transport lock, so they must be thread safe and return quickly.
+ * <tt>ModbusStatistics</tt> is the implementation provided with the library.
+ */
+public interface ModbusMetrics {
+
+    /**
+     * Called when a response has been received (master) or sent (slave) for a
+     * request, including exception responses
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     * @param latencyNanos Time taken in nanoseconds, including any retries
+     */
+    void requestCompleted(int unitId, int functionCode, long latencyNanos);
+
+    /**
+     * Called when the response to a request is a Modbus exception response
+     *
+     * @param unitId        Unit ID of the request
+     * @param functionCode  Function code of the request
+     * @param exceptionCode Exception code returned
+     */
+    void exceptionResponse(int unitId, int functionCode, int exceptionCode);
+
+    /**
+     * Called each time a master sends a request again
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     */
+    void retry(int unitId, int functionCode);
+
+    /**
+     * Called each time a master gives up waiting for a response
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     */
+    void timeout(int unitId, int functionCode);
+
+    /**
+     * Called when a received serial frame fails its CRC (RTU) or LRC (ASCII) check
+     *
+     * @param unitId       Unit ID read from the frame
+     * @param functionCode Function code read from the frame
+     */
+    void crcError(int unitId, int functionCode);
+
+    /**
+     * Called when a master has exhausted its retries without getting a response
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     */
+    void requestFailed(int unitId, int functionCode);
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <tt>ModbusMetrics</tt> implementation that keeps request counts and latency
+ * histograms in total, per unit ID and per function code.
+ * <p>
+ * One instance can be shared by any number of masters and listeners. It can be
+ * published to the platform MBean server with <tt>registerMBean</tt>, which
+ * needs nothing beyond the JDK, e.g.
+ * <pre>
+ *     ModbusStatistics statistics = new ModbusStatistics();
+ *     master.setMetrics(statistics);
+ *     statistics.registerMBean("Master", "plant-1");
+ * </pre>
+ */
+public class ModbusStatistics implements ModbusMetrics, ModbusStatisticsMXBean {
+
+    /**
+     * Domain of the object names that statistics are registered under
+     */
+    public static final String JMX_DOMAIN = "com.ghgande.j2mod";
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusStatistics.class);
+
+    private final RequestStatistics total = new RequestStatistics();
+    private final ConcurrentMap<Integer, RequestStatistics> units = new ConcurrentHashMap<Integer, RequestStatistics>();
+    private final ConcurrentMap<Integer, RequestStatistics> functionCodes = new ConcurrentHashMap<Integer, RequestStatistics>();
+    private ObjectName objectName;
+
+    private static RequestStatistics get(ConcurrentMap<Integer, RequestStatistics> map, int key) {
+        RequestStatistics statistics = map.get(key);
+        if (statistics == null) {
+            statistics = new RequestStatistics();
+            RequestStatistics existing = map.putIfAbsent(key, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public void requestCompleted(int unitId, int functionCode, long latencyNanos) {
+        total.recordRequest(latencyNanos);
+        get(units, unitId).recordRequest(latencyNanos);
+        get(functionCodes, functionCode).recordRequest(latencyNanos);
+    }
+
+    @Override
+    public void exceptionResponse(int unitId, int functionCode, int exceptionCode) {
+        total.recordExceptionResponse();
+        get(units, unitId).recordExceptionResponse();
+        get(functionCodes, functionCode).recordExceptionResponse();
+    }
+
+    @Override
+    public void retry(int unitId, int functionCode) {
+        total.recordRetry();
+        get(units, unitId).recordRetry();
+        get(functionCodes, functionCode).recordRetry();
+    }
+
+    @Override
+    public void timeout(int unitId, int functionCode) {
+        total.recordTimeout();
+        get(units, unitId).recordTimeout();
+        get(functionCodes, functionCode).recordTimeout();
+    }
+
+    @Override
+    public void crcError(int unitId, int functionCode) {
+        total.recordCrcError();
+        get(units, unitId).recordCrcError();
+        get(functionCodes, functionCode).recordCrcError();
+    }
+
+    @Override
+    public void requestFailed(int unitId, int functionCode) {
+        total.recordFailure();
+        get(units, unitId).recordFailure();
+        get(functionCodes, functionCode).recordFailure();
+    }
+
+    @Override
+    public RequestStatistics getTotal() {
+        return total;
+    }
+
+    @Override
+    public Map<Integer, RequestStatistics> getUnits() {
+        return Collections.unmodifiableMap(new TreeMap<Integer, RequestStatistics>(units));
+    }
+
+    @Override
+    public Map<Integer, RequestStatistics> getFunctionCodes() {
+        return Collections.unmodifiableMap(new TreeMap<Integer, RequestStatistics>(functionCodes));
+    }
+
+    /**
+     * Returns the statistics for a unit ID
+     *
+     * @param unitId Unit ID
+     * @return Statistics, or null if nothing has been recorded for the unit
+     */
+    public RequestStatistics getUnit(int unitId) {
+        return units.get(unitId);
+    }
+
+    /**
+     * Returns the statistics for a function code
+     *
+     * @param functionCode Function code
+     * @return Statistics, or null if nothing has been recorded for the function code
+     */
+    public RequestStatistics getFunctionCode(int functionCode) {
+        return functionCodes.get(functionCode);
+    }
+
+    @Override
+    public int[] getSlowestUnits() {
+        final Map<Integer, Long> latencies = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, RequestStatistics> entry : units.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().getLatency99thPercentileMicros());
+        }
+        List<Integer> unitIds = new ArrayList<Integer>(latencies.keySet());
+        Collections.sort(unitIds, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return latencies.get(b).compareTo(latencies.get(a));
+            }
+        });
+        int[] slowest = new int[unitIds.size()];
+        for (int i = 0; i < slowest.length; i++) {
+            slowest[i] = unitIds.get(i);
+        }
+        return slowest;
+    }
+
+    @Override
+    public void reset() {
+        total.reset();
+        units.clear();
+        functionCodes.clear();
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server under
+     * <tt>com.ghgande.j2mod:type=&lt;type&gt;,name=&lt;name&gt;</tt>
+     *
+     * @param type Type of the owner, e.g. Master or Slave
+     * @param name Name that identifies the owner
+     * @return Name that the statistics were registered under
+     * @throws JMException If the statistics cannot be registered
+     */
+    public synchronized ObjectName registerMBean(String type, String name) throws JMException {
+        unregisterMBean();
+        ObjectName newName = new ObjectName(String.format("%s:type=%s,name=%s", JMX_DOMAIN, ObjectName.quote(type), ObjectName.quote(name)));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+        objectName = newName;
+        return objectName;
+    }
+
+    /**
+     * Removes these statistics from the platform MBean server if they were registered
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+            catch (JMException e) {
+                logger.warn("Cannot unregister {} - {}", objectName, e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Returns the name these statistics are registered under
+     *
+     * @return Object name or null if not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+        return total.toString();
+    }
+}
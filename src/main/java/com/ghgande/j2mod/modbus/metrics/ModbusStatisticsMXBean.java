@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a <tt>ModbusStatistics</tt>
+ */
+public interface ModbusStatisticsMXBean {
+
+    /**
+     * Returns the statistics for all requests
+     *
+     * @return Overall statistics
+     */
+    RequestStatistics getTotal();
+
+    /**
+     * Returns the statistics for each unit ID that has been seen
+     *
+     * @return Statistics keyed by unit ID
+     */
+    Map<Integer, RequestStatistics> getUnits();
+
+    /**
+     * Returns the statistics for each function code that has been seen
+     *
+     * @return Statistics keyed by function code
+     */
+    Map<Integer, RequestStatistics> getFunctionCodes();
+
+    /**
+     * Returns the unit IDs ordered by their 99th percentile latency, slowest first
+     *
+     * @return Unit IDs
+     */
+    int[] getSlowestUnits();
+
+    /**
+     * Clears all the statistics
+     */
+    void reset();
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram for a group of requests, e.g. all the
+ * requests to one unit ID.
+ * <p>
+ * The getters read the live values, so an instance can be published as part
+ * of a <tt>ModbusStatisticsMXBean</tt> and polled.
+ */
+public class RequestStatistics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder exceptionResponses = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder crcErrors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    void recordRequest(long latencyNanos) {
+        requests.increment();
+        latencies.record(latencyNanos);
+    }
+
+    void recordExceptionResponse() {
+        exceptionResponses.increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    void recordCrcError() {
+        crcErrors.increment();
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Returns the number of requests that got a response
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of responses that were Modbus exceptions
+     *
+     * @return Number of exception responses
+     */
+    public long getExceptionResponseCount() {
+        return exceptionResponses.sum();
+    }
+
+    /**
+     * Returns the number of times a request was sent again
+     *
+     * @return Number of retries
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the number of times a response did not arrive in time
+     *
+     * @return Number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Returns the number of frames received with a bad CRC or LRC
+     *
+     * @return Number of checksum errors
+     */
+    public long getCrcErrorCount() {
+        return crcErrors.sum();
+    }
+
+    /**
+     * Returns the number of requests that failed after all their retries
+     *
+     * @return Number of failed requests
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the mean latency
+     *
+     * @return Mean latency in microseconds
+     */
+    public double getMeanLatencyMicros() {
+        return latencies.getMean() / 1000;
+    }
+
+    /**
+     * Returns the median latency
+     *
+     * @return Median latency in microseconds
+     */
+    public long getMedianLatencyMicros() {
+        return getLatencyMicros(50);
+    }
+
+    /**
+     * Returns the latency that 99% of requests were within
+     *
+     * @return 99th percentile latency in microseconds
+     */
+    public long getLatency99thPercentileMicros() {
+        return getLatencyMicros(99);
+    }
+
+    /**
+     * Returns the latency that 99.9% of requests were within
+     *
+     * @return 99.9th percentile latency in microseconds
+     */
+    public long getLatency999thPercentileMicros() {
+        return getLatencyMicros(99.9);
+    }
+
+    /**
+     * Returns the longest latency
+     *
+     * @return Maximum latency in microseconds
+     */
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMax());
+    }
+
+    /**
+     * Returns the latency that the given percentage of requests were within
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in microseconds
+     */
+    public long getLatencyMicros(double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(percentile));
+    }
+
+    /**
+     * Clears all the counters and latencies
+     */
+    public void reset() {
+        requests.reset();
+        exceptionResponses.reset();
+        retries.reset();
+        timeouts.reset();
+        crcErrors.reset();
+        failures.reset();
+        latencies.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d exceptions=%d retries=%d timeouts=%d crcErrors=%d failures=%d latency(us) mean=%.1f p50=%d p99=%d max=%d",
+                getRequestCount(), getExceptionResponseCount(), getRetryCount(), getTimeoutCount(), getCrcErrorCount(), getFailureCount(),
+                getMeanLatencyMicros(), getMedianLatencyMicros(), getLatency99thPercentileMicros(), getMaxLatencyMicros());
+    }
+}
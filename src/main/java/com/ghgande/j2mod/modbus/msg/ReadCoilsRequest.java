@@ -19,7 +19,9 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.procimg.DigitalOut;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.PrimitiveProcessImage;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.util.BitVector;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -85,6 +87,21 @@ public class ReadCoilsRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = listener.getProcessImage(getUnitID());
 
+        // Copy the packed bits from the image if it allows it
+        if (procimg instanceof PrimitiveProcessImage) {
+            response = getResponse();
+            BitVector coils = ((ReadCoilsResponse)response).getCoils();
+            try {
+                byte[] packed = new byte[coils.byteSize()];
+                ((PrimitiveProcessImage)procimg).readCoils(getReference(), getBitCount(), packed, 0);
+                coils.setBytes(packed);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            return response;
+        }
+
         // 2. get input discretes range
         try {
             douts = procimg.getDigitalOutRange(getReference(), getBitCount());
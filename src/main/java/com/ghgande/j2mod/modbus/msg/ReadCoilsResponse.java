@@ -142,9 +142,8 @@ public class ReadCoilsResponse extends ModbusResponse {
 
     @Override
     public void writeData(DataOutput output) throws IOException {
-        byte[] result = getMessage();
-
-        output.write(result);
+        output.writeByte(coils.byteSize());
+        output.write(coils.getBytes(), 0, coils.byteSize());
     }
 
     @Override
@@ -19,7 +19,9 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.procimg.DigitalIn;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.PrimitiveProcessImage;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.util.BitVector;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -86,6 +88,22 @@ public class ReadInputDiscretesRequest extends ModbusRequest {
 
         // 1. get process image
         ProcessImage procimg = listener.getProcessImage(getUnitID());
+
+        // Copy the packed bits from the image if it allows it
+        if (procimg instanceof PrimitiveProcessImage) {
+            response = (ReadInputDiscretesResponse)getResponse();
+            BitVector discretes = response.getDiscretes();
+            try {
+                byte[] packed = new byte[discretes.byteSize()];
+                ((PrimitiveProcessImage)procimg).readDiscreteInputs(getReference(), getBitCount(), packed, 0);
+                discretes.setBytes(packed);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            return response;
+        }
+
         // 2. get input discretes range
         try {
             dins = procimg.getDigitalInRange(getReference(), getBitCount());
@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SnapshotProcessImage;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -84,6 +85,19 @@ public class ReadInputRegistersRequest extends ModbusRequest {
 
         // 1. get process image
         ProcessImage procimg = listener.getProcessImage(getUnitID());
+
+        // Copy a consistent snapshot of the values straight into the response if the image allows it
+        if (procimg instanceof SnapshotProcessImage) {
+            response = getResponse();
+            try {
+                ((SnapshotProcessImage)procimg).readInputRegisters(getReference(), getWordCount(), response.prepareRegisterData(getWordCount()), 0);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            return response;
+        }
+
         // 2. get input registers range
         try {
             inpregs = procimg.getInputRegisterRange(getReference(), getWordCount());
@@ -22,6 +22,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -38,6 +39,7 @@ public class ReadInputRegistersResponse extends ModbusResponse {
     // instance attributes
     private int byteCount;
     private InputRegister[] registers;
+    private byte[] registerData;
 
     /**
      * Constructs a new <tt>ReadInputRegistersResponse</tt> instance.
@@ -109,7 +111,7 @@ public class ReadInputRegistersResponse extends ModbusResponse {
             throw new IndexOutOfBoundsException(index + " >= " + getWordCount());
         }
 
-        return registers[index];
+        return registers()[index];
     }
 
     /**
@@ -124,6 +126,10 @@ public class ReadInputRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        byte[] data = registerData;
+        if (data != null && index >= 0 && index < getWordCount()) {
+            return ((data[index * 2] & 0xff) << 8) | (data[index * 2 + 1] & 0xff);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
@@ -133,11 +139,91 @@ public class ReadInputRegistersResponse extends ModbusResponse {
      * @return a <tt>InputRegister[]</tt> instance.
      */
     public synchronized InputRegister[] getRegisters() {
-        InputRegister[] dest = new InputRegister[registers.length];
-        System.arraycopy(registers, 0, dest, 0, dest.length);
+        InputRegister[] regs = registers();
+        InputRegister[] dest = new InputRegister[regs.length];
+        System.arraycopy(regs, 0, dest, 0, dest.length);
         return dest;
     }
 
+    /**
+     * Copies the values of the registers read into the given array, without
+     * creating a <tt>InputRegister</tt> for each of them.
+     *
+     * @param values the array to copy the values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of values copied.
+     *
+     * @throws IndexOutOfBoundsException if the array is too small.
+     */
+    public synchronized int getRegisterValues(short[] values, int offset) {
+        int count = getWordCount();
+        checkBounds(values.length, offset, count);
+        byte[] data = registerData;
+        for (int k = 0; k < count; k++) {
+            values[offset + k] = data != null ? (short)(((data[k * 2] & 0xff) << 8) | (data[k * 2 + 1] & 0xff)) : (short)registers[k].getValue();
+        }
+        return count;
+    }
+
+    /**
+     * Copies the values of the registers read into the given array as unsigned
+     * shorts, without creating a <tt>InputRegister</tt> for each of them.
+     *
+     * @param values the array to copy the values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of values copied.
+     *
+     * @throws IndexOutOfBoundsException if the array is too small.
+     */
+    public synchronized int getRegisterValues(int[] values, int offset) {
+        int count = getWordCount();
+        checkBounds(values.length, offset, count);
+        byte[] data = registerData;
+        for (int k = 0; k < count; k++) {
+            values[offset + k] = data != null ? ((data[k * 2] & 0xff) << 8) | (data[k * 2 + 1] & 0xff) : registers[k].toUnsignedShort();
+        }
+        return count;
+    }
+
+    /**
+     * Puts the values of the registers read into the buffer as they appear in
+     * the message, two bytes per register, high byte first.
+     *
+     * @param buffer the buffer to put the values into.
+     *
+     * @return the number of registers put into the buffer.
+     *
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room.
+     */
+    public synchronized int getRegisterData(ByteBuffer buffer) {
+        int count = getWordCount();
+        byte[] data = registerData;
+        if (data != null) {
+            buffer.put(data, 0, count * 2);
+        }
+        else {
+            for (int k = 0; k < count; k++) {
+                buffer.putShort((short)registers[k].getValue());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that <tt>count</tt> values fit into an array from <tt>offset</tt>
+     *
+     * @param length Length of the array
+     * @param offset Position of the first value
+     * @param count  Number of values
+     */
+    private static void checkBounds(int length, int offset, int count) {
+        if (offset < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException(String.format("Cannot copy %d values to offset %d of an array of length %d", count, offset, length));
+        }
+    }
+
     /**
      * Sets the entire block of registers for this response
      * @param registers Array of registers
@@ -146,14 +232,55 @@ public class ReadInputRegistersResponse extends ModbusResponse {
         setDataLength(registers == null ? 0 : (registers.length * 2 + 1));
         this.registers = registers == null ? null : Arrays.copyOf(registers, registers.length);
         byteCount = registers == null ? 0 : (registers.length * 2);
+        registerData = null;
+    }
+
+    /**
+     * Sets the number of registers in the response and returns a buffer for their
+     * values, high byte first. This lets the slave copy the values straight from a
+     * <tt>PrimitiveProcessImage</tt> without creating register objects.
+     *
+     * @param count Number of registers
+     * @return Buffer of <tt>count * 2</tt> bytes to fill
+     */
+    synchronized byte[] prepareRegisterData(int count) {
+        byteCount = count * 2;
+        setDataLength(byteCount + 1);
+        registers = null;
+        if (registerData == null || registerData.length != byteCount) {
+            registerData = new byte[byteCount];
+        }
+        return registerData;
+    }
+
+    /**
+     * Returns the registers, creating them from the raw values if necessary
+     *
+     * @return Array of registers
+     */
+    private synchronized InputRegister[] registers() {
+        if (registers == null && registerData != null) {
+            InputRegister[] regs = new InputRegister[getWordCount()];
+            for (int k = 0; k < regs.length; k++) {
+                regs[k] = new SimpleInputRegister(registerData[k * 2], registerData[k * 2 + 1]);
+            }
+            registers = regs;
+            registerData = null;
+        }
+        return registers;
     }
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
+        byte[] data = registerData;
+        if (data != null) {
+            dout.write(data, 0, byteCount);
+            return;
+        }
         for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+            dout.writeShort(registers[k].getValue());
         }
     }
 
@@ -161,25 +288,31 @@ public class ReadInputRegistersResponse extends ModbusResponse {
     public void readData(DataInput din) throws IOException {
         byteCount = din.readUnsignedByte();
 
-        InputRegister[] inputRegisters = new InputRegister[getWordCount()];
-        for (int k = 0; k < getWordCount(); k++) {
-            inputRegisters[k] = new SimpleInputRegister(din.readByte(), din.readByte());
-        }
-        registers = inputRegisters;
+        // Keep the raw values, the registers are only created if asked for
+        registers = null;
+        registerData = new byte[getWordCount() * 2];
+        din.readFully(registerData);
 
         setDataLength(byteCount);
     }
 
     @Override
     public byte[] getMessage() {
+        byte[] data = registerData;
+        if (data != null) {
+            byte[] result = new byte[byteCount + 1];
+            result[0] = (byte)byteCount;
+            System.arraycopy(data, 0, result, 1, byteCount);
+            return result;
+        }
         byte[] result = new byte[registers.length * 2 + 1];
         result[0] = (byte)(registers.length * 2);
 
         for (int i = 0; i < registers.length; i++) {
-            byte[] value = registers[i].toBytes();
+            int value = registers[i].getValue();
 
-            result[1 + i * 2] = value[0];
-            result[2 + i * 2] = value[1];
+            result[1 + i * 2] = (byte)(value >> 8);
+            result[2 + i * 2] = (byte)value;
         }
         return result;
     }
@@ -22,6 +22,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -39,6 +40,7 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
     // instance attributes
     private int byteCount;
     private Register[] registers;
+    private byte[] registerData;
 
     /**
      * Constructs a new <tt>ReadMultipleRegistersResponse</tt> instance.
@@ -94,7 +96,7 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public Register getRegister(int index) {
-        if (registers == null) {
+        if (registers == null && registerData == null) {
             throw new IndexOutOfBoundsException("No registers defined!");
         }
 
@@ -106,7 +108,7 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
             throw new IndexOutOfBoundsException(index + " > " + getWordCount());
         }
 
-        return registers[index];
+        return registers()[index];
     }
 
     /**
@@ -121,6 +123,10 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        byte[] data = registerData;
+        if (data != null && index >= 0 && index < getWordCount()) {
+            return ((data[index * 2] & 0xff) << 8) | (data[index * 2 + 1] & 0xff);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
@@ -130,11 +136,91 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
      * @return a <tt>Register[]</tt> instance.
      */
     public synchronized Register[] getRegisters() {
-        Register[] dest = new Register[registers.length];
-        System.arraycopy(registers, 0, dest, 0, dest.length);
+        Register[] regs = registers();
+        Register[] dest = new Register[regs.length];
+        System.arraycopy(regs, 0, dest, 0, dest.length);
         return dest;
     }
 
+    /**
+     * Copies the values of the registers read into the given array, without
+     * creating a <tt>Register</tt> for each of them.
+     *
+     * @param values the array to copy the values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of values copied.
+     *
+     * @throws IndexOutOfBoundsException if the array is too small.
+     */
+    public synchronized int getRegisterValues(short[] values, int offset) {
+        int count = getWordCount();
+        checkBounds(values.length, offset, count);
+        byte[] data = registerData;
+        for (int k = 0; k < count; k++) {
+            values[offset + k] = data != null ? (short)(((data[k * 2] & 0xff) << 8) | (data[k * 2 + 1] & 0xff)) : (short)registers[k].getValue();
+        }
+        return count;
+    }
+
+    /**
+     * Copies the values of the registers read into the given array as unsigned
+     * shorts, without creating a <tt>Register</tt> for each of them.
+     *
+     * @param values the array to copy the values into.
+     * @param offset the position in the array of the first value.
+     *
+     * @return the number of values copied.
+     *
+     * @throws IndexOutOfBoundsException if the array is too small.
+     */
+    public synchronized int getRegisterValues(int[] values, int offset) {
+        int count = getWordCount();
+        checkBounds(values.length, offset, count);
+        byte[] data = registerData;
+        for (int k = 0; k < count; k++) {
+            values[offset + k] = data != null ? ((data[k * 2] & 0xff) << 8) | (data[k * 2 + 1] & 0xff) : registers[k].toUnsignedShort();
+        }
+        return count;
+    }
+
+    /**
+     * Puts the values of the registers read into the buffer as they appear in
+     * the message, two bytes per register, high byte first.
+     *
+     * @param buffer the buffer to put the values into.
+     *
+     * @return the number of registers put into the buffer.
+     *
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room.
+     */
+    public synchronized int getRegisterData(ByteBuffer buffer) {
+        int count = getWordCount();
+        byte[] data = registerData;
+        if (data != null) {
+            buffer.put(data, 0, count * 2);
+        }
+        else {
+            for (int k = 0; k < count; k++) {
+                buffer.putShort((short)registers[k].getValue());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that <tt>count</tt> values fit into an array from <tt>offset</tt>
+     *
+     * @param length Length of the array
+     * @param offset Position of the first value
+     * @param count  Number of values
+     */
+    private static void checkBounds(int length, int offset, int count) {
+        if (offset < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException(String.format("Cannot copy %d values to offset %d of an array of length %d", count, offset, length));
+        }
+    }
+
     /**
      * Sets the entire block of registers for this response
      * @param registers Array of registers to use
@@ -143,14 +229,55 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
         byteCount = registers == null ? 0 : registers.length * 2;
         this.registers = registers == null ? null : Arrays.copyOf(registers, registers.length);
         setDataLength(byteCount + 1);
+        registerData = null;
+    }
+
+    /**
+     * Sets the number of registers in the response and returns a buffer for their
+     * values, high byte first. This lets the slave copy the values straight from a
+     * <tt>PrimitiveProcessImage</tt> without creating register objects.
+     *
+     * @param count Number of registers
+     * @return Buffer of <tt>count * 2</tt> bytes to fill
+     */
+    synchronized byte[] prepareRegisterData(int count) {
+        byteCount = count * 2;
+        setDataLength(byteCount + 1);
+        registers = null;
+        if (registerData == null || registerData.length != byteCount) {
+            registerData = new byte[byteCount];
+        }
+        return registerData;
+    }
+
+    /**
+     * Returns the registers, creating them from the raw values if necessary
+     *
+     * @return Array of registers
+     */
+    private synchronized Register[] registers() {
+        if (registers == null && registerData != null) {
+            Register[] regs = new Register[getWordCount()];
+            for (int k = 0; k < regs.length; k++) {
+                regs[k] = new SimpleRegister(registerData[k * 2], registerData[k * 2 + 1]);
+            }
+            registers = regs;
+            registerData = null;
+        }
+        return registers;
     }
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
+        byte[] data = registerData;
+        if (data != null) {
+            dout.write(data, 0, byteCount);
+            return;
+        }
         for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+            dout.writeShort(registers[k].getValue());
         }
     }
 
@@ -158,11 +285,10 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
     public void readData(DataInput din) throws IOException {
         byteCount = din.readUnsignedByte();
 
-        registers = new Register[getWordCount()];
-
-        for (int k = 0; k < getWordCount(); k++) {
-            registers[k] = new SimpleRegister(din.readByte(), din.readByte());
-        }
+        // Keep the raw values, the registers are only created if asked for
+        registers = null;
+        registerData = new byte[getWordCount() * 2];
+        din.readFully(registerData);
 
         setDataLength(byteCount + 1);
     }
@@ -176,11 +302,17 @@ public class ReadMultipleRegistersResponse extends ModbusResponse {
         int offset = 0;
         result[offset++] = (byte)byteCount;
 
+        byte[] raw = registerData;
+        if (raw != null) {
+            System.arraycopy(raw, 0, result, offset, byteCount);
+            return result;
+        }
+
         for (Register register : registers) {
-            byte[] data = register.toBytes();
+            int value = register.getValue();
 
-            result[offset++] = data[0];
-            result[offset++] = data[1];
+            result[offset++] = (byte)(value >> 8);
+            result[offset++] = (byte)value;
         }
         return result;
     }
@@ -110,6 +110,24 @@ public class ReadWriteMultipleRequest extends ModbusRequest {
 
         // 2. get input registers range
         try {
+            if (procimg instanceof SnapshotProcessImage) {
+                // Commit the write as one change and read a consistent snapshot back
+                SnapshotProcessImage image = (SnapshotProcessImage)procimg;
+                short[] values = new short[Math.max(getWriteWordCount(), getReadWordCount())];
+                for (int i = 0; i < getWriteWordCount(); i++) {
+                    values[i] = getRegister(i).toShort();
+                }
+                image.writeRegisters(getWriteReference(), getWriteWordCount(), values, 0);
+                image.readRegisters(getReadReference(), getReadWordCount(), values, 0);
+                readRegs = new InputRegister[getReadWordCount()];
+                for (int i = 0; i < readRegs.length; i++) {
+                    readRegs[i] = new SimpleInputRegister(values[i] & 0xFFFF);
+                }
+                response = (ReadWriteMultipleResponse)getResponse();
+                response.setRegisters(readRegs);
+                return response;
+            }
+
             // First the write
             writeRegs = procimg.getRegisterRange(getWriteReference(), getWriteWordCount());
             for (int i = 0; i < writeRegs.length; i++) {
@@ -312,7 +330,15 @@ public class ReadWriteMultipleRequest extends ModbusRequest {
      */
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(readReference);
+        dout.writeShort(readCount);
+        dout.writeShort(writeReference);
+        dout.writeShort(writeCount);
+        dout.writeByte(writeCount * 2);
+
+        for (int i = 0; i < writeCount; i++) {
+            dout.writeShort(getRegister(i).getValue());
+        }
     }
 
     /**
@@ -364,11 +390,10 @@ public class ReadWriteMultipleRequest extends ModbusRequest {
 
         int offset = 9;
         for (int i = 0; i < writeCount; i++) {
-            Register reg = getRegister(i);
-            byte[] bytes = reg.toBytes();
+            int value = getRegister(i).getValue();
 
-            results[offset++] = bytes[0];
-            results[offset++] = bytes[1];
+            results[offset++] = (byte)(value >> 8);
+            results[offset++] = (byte)value;
         }
         return results;
     }
@@ -19,6 +19,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.procimg.DigitalOut;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.PrimitiveProcessImage;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import com.ghgande.j2mod.modbus.util.BitVector;
 
@@ -112,10 +113,15 @@ public class WriteMultipleCoilsRequest extends ModbusRequest {
         ProcessImage procimg = listener.getProcessImage(getUnitID());
         // 2. get coil range
         try {
-            douts = procimg.getDigitalOutRange(reference, coils.size());
-            // 3. set coils
-            for (int i = 0; i < douts.length; i++) {
-                douts[i].set(coils.getBit(i));
+            if (procimg instanceof PrimitiveProcessImage) {
+                ((PrimitiveProcessImage)procimg).writeCoils(reference, coils.size(), coils.getBytes(), 0);
+            }
+            else {
+                douts = procimg.getDigitalOutRange(reference, coils.size());
+                // 3. set coils
+                for (int i = 0; i < douts.length; i++) {
+                    douts[i].set(coils.getBit(i));
+                }
             }
         }
         catch (IllegalAddressException iaex) {
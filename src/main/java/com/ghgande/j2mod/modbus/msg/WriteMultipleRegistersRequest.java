@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SnapshotProcessImage;
 import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 
 import java.io.DataInput;
@@ -102,10 +103,20 @@ public class WriteMultipleRegistersRequest extends ModbusRequest {
             ProcessImage procimg = listener.getProcessImage(getUnitID());
             // 2. get registers
             try {
-                regs = procimg.getRegisterRange(getReference(), getWordCount());
-                // 3. set Register values
-                for (int i = 0; i < regs.length; i++) {
-                    regs[i].setValue(this.getRegister(i).getValue());
+                if (procimg instanceof SnapshotProcessImage) {
+                    // Commit all the values as one change so readers never see part of them
+                    short[] values = new short[getWordCount()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = getRegister(i).toShort();
+                    }
+                    ((SnapshotProcessImage)procimg).writeRegisters(getReference(), values.length, values, 0);
+                }
+                else {
+                    regs = procimg.getRegisterRange(getReference(), getWordCount());
+                    // 3. set Register values
+                    for (int i = 0; i < regs.length; i++) {
+                        regs[i].setValue(this.getRegister(i).getValue());
+                    }
                 }
             }
             catch (IllegalAddressException iaex) {
@@ -264,7 +275,30 @@ public class WriteMultipleRegistersRequest extends ModbusRequest {
 
     @Override
     public void writeData(DataOutput output) throws IOException {
-        output.write(getMessage());
+        int registerCount = registers != null ? registers.length : 0;
+
+        output.writeShort(reference);
+        output.writeShort(registerCount);
+        output.writeByte(registerCount * 2);
+
+        if (nonWordDataHandler == null) {
+            for (int i = 0; i < registerCount; i++) {
+                output.writeShort(registers[i].getValue());
+            }
+        }
+        else {
+            nonWordDataHandler.prepareData(reference, registerCount);
+            byte[] bytes = nonWordDataHandler.getData();
+            int nonWordBytes = bytes != null ? Math.min(bytes.length, registerCount * 2) : 0;
+            if (nonWordBytes > 0) {
+                output.write(bytes, 0, nonWordBytes);
+            }
+
+            // Pad the frame out to the register count as getMessage() does
+            for (int i = nonWordBytes; i < registerCount * 2; i++) {
+                output.writeByte(0);
+            }
+        }
     }
 
     @Override
@@ -311,9 +345,9 @@ public class WriteMultipleRegistersRequest extends ModbusRequest {
 
         if (nonWordDataHandler == null) {
             for (int i = 0; i < registerCount; i++) {
-                byte[] bytes = registers[i].toBytes();
-                result[offset++] = bytes[0];
-                result[offset++] = bytes[1];
+                int value = registers[i].getValue();
+                result[offset++] = (byte)(value >> 8);
+                result[offset++] = (byte)value;
             }
         }
         else {
@@ -19,10 +19,13 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusRTUTransport;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse.AuxiliaryMessageTypes;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.slave.ModbusGateway;
 import com.ghgande.j2mod.modbus.slave.ModbusSlave;
 import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
 import org.slf4j.Logger;
@@ -45,6 +48,8 @@ public abstract class AbstractModbusListener implements Runnable {
     protected String error;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
     protected String threadName;
+    protected volatile ModbusMetrics metrics;
+    private volatile ModbusSlave slave;
 
     /**
      * Stop the listener thread for this <tt>ModbusListener</tt> instance.
@@ -156,17 +161,19 @@ public abstract class AbstractModbusListener implements Runnable {
         if (request == null) {
             throw new ModbusIOException("Request for transport %s is invalid (null)", transport.getClass().getSimpleName());
         }
-        ModbusResponse response;
+        handleRequest(transport, request);
+    }
 
-        // Test if Process image exists for this Unit ID
-        ProcessImage spi = getProcessImage(request.getUnitID());
-        if (spi == null) {
-            response = request.createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-            response.setAuxiliaryType(ModbusResponse.AuxiliaryMessageTypes.UNIT_ID_MISSMATCH);
-        }
-        else {
-            response = request.createResponse(this);
-        }
+    /**
+     * Processes a request that has already been read and sends back the response
+     *
+     * @param transport Transport to write the response to
+     * @param request   Request to process
+     * @throws ModbusIOException If there is an issue with the transport or transmission
+     */
+    void handleRequest(AbstractModbusTransport transport, ModbusRequest request) throws ModbusIOException {
+        long startNanos = System.nanoTime();
+        ModbusResponse response = processRequest(request);
 
         if (logger.isDebugEnabled()) {
             logger.debug("Request:{}", request.getHexMessage());
@@ -181,6 +188,58 @@ public abstract class AbstractModbusListener implements Runnable {
 
         // Write the response
         transport.writeResponse(response);
+        reportResponse(request, response, startNanos);
+    }
+
+    /**
+     * Reports a response to the metrics, unless it was for another unit
+     *
+     * @param request    Request received
+     * @param response   Response sent back
+     * @param startNanos Time the request was received, from <tt>System.nanoTime()</tt>
+     */
+    void reportResponse(ModbusRequest request, ModbusResponse response, long startNanos) {
+        ModbusMetrics current = metrics;
+        if (current != null && response.getAuxiliaryType() != AuxiliaryMessageTypes.UNIT_ID_MISSMATCH) {
+            current.requestCompleted(request.getUnitID(), request.getFunctionCode(), System.nanoTime() - startNanos);
+            if (response instanceof ExceptionResponse) {
+                current.exceptionResponse(request.getUnitID(), request.getFunctionCode(), ((ExceptionResponse)response).getExceptionCode());
+            }
+        }
+    }
+
+    /**
+     * Creates the response to a request using the process image of its unit ID,
+     * or by forwarding it if the unit ID is routed through the gateway of the
+     * slave. If there is no process image for the unit ID, an illegal address exception
+     * response is returned, marked as a unit ID mismatch.
+     *
+     * @param request Request to process
+     * @return Response to send back
+     */
+    ModbusResponse processRequest(ModbusRequest request) {
+        ModbusResponse response;
+
+        // Requests for unit IDs routed through a gateway are forwarded
+        ModbusSlave slave = getSlave();
+        ModbusGateway gateway = slave == null ? null : slave.getGateway();
+        if (gateway != null) {
+            response = gateway.forward(request);
+            if (response != null) {
+                return response;
+            }
+        }
+
+        // Test if Process image exists for this Unit ID
+        ProcessImage spi = getProcessImage(request.getUnitID());
+        if (spi == null) {
+            response = request.createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            response.setAuxiliaryType(ModbusResponse.AuxiliaryMessageTypes.UNIT_ID_MISSMATCH);
+        }
+        else {
+            response = request.createResponse(this);
+        }
+        return response;
     }
 
     /**
@@ -190,13 +249,46 @@ public abstract class AbstractModbusListener implements Runnable {
      * @return Process image associated with this listener and Unit ID
      */
     public ProcessImage getProcessImage(int unitId) {
-        ModbusSlave slave = ModbusSlaveFactory.getSlave(this);
+        ModbusSlave slave = getSlave();
         if (slave != null) {
             return slave.getProcessImage(unitId);
         }
         return null;
     }
 
+    /**
+     * Returns the slave that this listener serves. It is looked up once and then
+     * remembered so that handling a request does not search the running slaves.
+     *
+     * @return Slave or null if the listener does not belong to a running slave
+     */
+    private ModbusSlave getSlave() {
+        ModbusSlave current = slave;
+        if (current == null) {
+            current = ModbusSlaveFactory.getSlave(this);
+            slave = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the metrics that handled requests are reported to
+     *
+     * @return Metrics or null if not reporting
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics that handled requests are reported to
+     *
+     * @param metrics Metrics to use or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Gets the name of the thread used by the listener
      *
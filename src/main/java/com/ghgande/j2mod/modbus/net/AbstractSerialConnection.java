@@ -5,6 +5,7 @@ import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Interface that represents a public abstract serial port connection
@@ -14,6 +15,11 @@ import java.util.Set;
  */
 public abstract class AbstractSerialConnection {
 
+    /**
+     * Interval between checks for data when polling the port
+     */
+    private static final long POLL_INTERVAL_NANOS = 100000L;
+
     /**
      * Parity values
      */
@@ -95,6 +101,28 @@ public abstract class AbstractSerialConnection {
      */
     public abstract int bytesAvailable();
 
+    /**
+     * Waits for at least one byte to be available to read.
+     * <p>
+     * This implementation polls {@link #bytesAvailable()}, parking the thread
+     * between checks rather than spinning. Connections that are told when data
+     * arrives should override it to wait for the notification instead.
+     *
+     * @param timeoutMicros maximum time to wait in microseconds
+     * @return true if there is data to read
+     */
+    public boolean waitForBytesAvailable(long timeoutMicros) {
+        long deadline = System.nanoTime() + timeoutMicros * 1000L;
+        while (bytesAvailable() < 1) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(remaining, POLL_INTERVAL_NANOS));
+        }
+        return true;
+    }
+
     /**
      * Close the port and clean up associated elements
      */
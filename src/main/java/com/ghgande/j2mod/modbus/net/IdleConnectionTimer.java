@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel that closes TCP slave connections once they have been idle
+ * for longer than a maximum time.
+ * <p>
+ * One timer is shared by all the connections of a listener so that watching for
+ * idle connections costs a single thread however many clients are connected.
+ * Each connection sits in the bucket of the wheel matching its idle deadline.
+ * When the bucket comes round, the last activity of the connection is checked
+ * again and it is either closed or moved on to the bucket of its new deadline,
+ * so activity on a connection costs nothing until its deadline is reached.
+ */
+final class IdleConnectionTimer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdleConnectionTimer.class);
+    private static final int WHEEL_SIZE = 64;
+    private static final long nanosPerSecond = 1000L * 1000L * 1000L;
+
+    private final int maxIdleSeconds;
+    private final long maxIdleNanos;
+    private final long tickNanos;
+    private final Queue<Watch> added = new ConcurrentLinkedQueue<Watch>();
+    private final AtomicInteger watchCount = new AtomicInteger();
+    private final Thread thread;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Watch>[] wheel = new ArrayDeque[WHEEL_SIZE];
+    private int cursor;
+    private volatile boolean running;
+
+    /**
+     * Creates a timer, the timer thread is not started until {@link #start()} is called
+     *
+     * @param name           Name of the timer thread
+     * @param maxIdleSeconds Maximum time a connection can be idle
+     */
+    IdleConnectionTimer(String name, int maxIdleSeconds) {
+        if (maxIdleSeconds < 1) {
+            throw new IllegalArgumentException("maxIdleSeconds must be > 0: " + maxIdleSeconds);
+        }
+        this.maxIdleSeconds = maxIdleSeconds;
+        maxIdleNanos = maxIdleSeconds * nanosPerSecond;
+
+        // Aim for a resolution of an eighth of the idle time, between 100ms and 1s
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100L, Math.min(1000L, maxIdleSeconds * 1000L / 8)));
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<Watch>();
+        }
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the timer thread
+     */
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the timer thread, the connections being watched are left open
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Starts watching a connection
+     *
+     * @param connection Connection to watch
+     * @return Watch that must be cancelled when the connection is finished with
+     */
+    Watch watch(TCPSlaveConnection connection) {
+        Watch watch = new Watch(connection);
+        watchCount.incrementAndGet();
+        added.add(watch);
+        return watch;
+    }
+
+    /**
+     * Returns the number of connections being watched
+     *
+     * @return Number of connections
+     */
+    int getWatchCount() {
+        return watchCount.get();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime() + tickNanos;
+        while (running) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            long now = System.nanoTime();
+
+            // Swap the bucket out so that scheduled watches do not land in it
+            ArrayDeque<Watch> bucket = wheel[cursor];
+            wheel[cursor] = new ArrayDeque<Watch>();
+
+            Watch watch;
+            while ((watch = added.poll()) != null) {
+                if (!watch.cancelled.get()) {
+                    schedule(watch, now);
+                }
+            }
+            for (Watch w : bucket) {
+                if (w.cancelled.get()) {
+                    continue;
+                }
+                if (w.rounds > 0) {
+                    w.rounds--;
+                    wheel[cursor].add(w);
+                }
+                else if (now - w.connection.getLastActivityTimestamp() > maxIdleNanos) {
+                    logger.warn("Watchdog expired: {}, limit: {}", (now - w.connection.getLastActivityTimestamp()) / nanosPerSecond, maxIdleSeconds);
+
+                    // Socket.close() will cause read operation to fail
+                    w.cancel();
+                    w.connection.close();
+                }
+                else {
+                    schedule(w, now);
+                }
+            }
+            cursor = (cursor + 1) % WHEEL_SIZE;
+            nextTick += tickNanos;
+        }
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i].clear();
+        }
+        added.clear();
+    }
+
+    /**
+     * Places the watch in the bucket for the idle deadline of its connection
+     *
+     * @param watch Watch to schedule
+     * @param now   Current time in nanoseconds
+     */
+    private void schedule(Watch watch, long now) {
+        long remaining = watch.connection.getLastActivityTimestamp() + maxIdleNanos - now;
+        long ticks = Math.max(1, (remaining + tickNanos - 1) / tickNanos);
+        long offset = ticks % WHEEL_SIZE == 0 ? WHEEL_SIZE : ticks % WHEEL_SIZE;
+        watch.rounds = (ticks - offset) / WHEEL_SIZE;
+        wheel[(int)((cursor + offset) % WHEEL_SIZE)].add(watch);
+    }
+
+    /**
+     * A connection being watched
+     */
+    final class Watch {
+        private final TCPSlaveConnection connection;
+        private long rounds;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Watch(TCPSlaveConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Stops watching the connection
+         */
+        void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                watchCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that implements a non-blocking Modbus/TCP listener.
+ * <p>
+ * A single selector thread accepts connections and frames MBAP requests from
+ * the socket buffers. Complete requests are handed to a fixed pool of worker
+ * threads that create the responses from the process image. A connection only
+ * occupies a worker while it has a request being processed, so thousands of
+ * mostly idle clients can share a handful of threads. Requests from the same
+ * connection are processed one at a time and answered in order.
+ * <p>
+ * This listener only supports the standard MBAP framing, not RTU over TCP.
+ */
+public class ModbusNIOTCPListener extends AbstractModbusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusNIOTCPListener.class);
+
+    /**
+     * Number of requests that can be waiting for a worker on one connection
+     * before the listener stops reading from it (=<tt>16</tt>)
+     */
+    private static final int MAX_QUEUED_REQUESTS = 16;
+
+    /**
+     * Interval at which idle connections are checked (=<tt>1000</tt>ms)
+     */
+    private static final int SWEEP_INTERVAL = 1000;
+
+    private final int poolSize;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Queue<Connection> dirty = new ConcurrentLinkedQueue<Connection>();
+    private final ThreadLocal<ModbusTCPCodec> codecs = new ThreadLocal<ModbusTCPCodec>() {
+        @Override
+        protected ModbusTCPCodec initialValue() {
+            return new ModbusTCPCodec();
+        }
+    };
+    private volatile Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread listener;
+    private int maxIdleSeconds = 0;
+
+    /**
+     * Constructs a listener on the wildcard address (0.0.0.0)
+     *
+     * @param poolSize Number of worker threads used to process requests
+     */
+    public ModbusNIOTCPListener(int poolSize) {
+        this(poolSize, null);
+    }
+
+    /**
+     * Constructs a listener on the given address
+     *
+     * @param poolSize Number of worker threads used to process requests
+     * @param addr     Interface to listen on, null for all interfaces
+     */
+    public ModbusNIOTCPListener(int poolSize, InetAddress addr) {
+        this.poolSize = Math.max(1, poolSize);
+        if (addr == null) {
+            try {
+                addr = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+            }
+            catch (UnknownHostException ex) {
+                // Can't happen -- size is fixed.
+            }
+        }
+        address = addr;
+    }
+
+    /**
+     * Sets a maximum time a connection can be idle, i.e. has no input/output,
+     * before it is closed. This option is disabled by default (maxIdleSeconds == 0)
+     *
+     * @param maxIdleSeconds 0 to disable, or a positive number to set it.
+     */
+    public void setMaxIdleSeconds(int maxIdleSeconds) {
+        if (maxIdleSeconds < 0) {
+            throw new IllegalArgumentException("maxIdleSeconds must be >= 0: " + maxIdleSeconds);
+        }
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    /**
+     * Returns the number of open client connections
+     *
+     * @return Number of connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void setAddress(InetAddress addr) {
+        if (addr != null) {
+            super.setAddress(addr);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        // Set a suitable thread name
+        if (threadName == null || threadName.isEmpty()) {
+            threadName = String.format("Modbus NIO TCP Listener [port:%d]", port);
+        }
+        Thread.currentThread().setName(threadName);
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(address, port), 100);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            logger.debug("Listening to {} (Port {})", serverChannel, port);
+        }
+
+        // Catch any fatal errors and set the listening flag to false to indicate an error
+        catch (Exception e) {
+            error = String.format("Cannot start TCP listener on port %d - %s", port, e.getMessage());
+            closeQuietly();
+            listening = false;
+            return;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, String.format("%s Handler %d", threadName, threadCount.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        listener = Thread.currentThread();
+        listening = true;
+        long nextSweep = System.nanoTime();
+        try {
+            while (listening) {
+                selector.select(SWEEP_INTERVAL);
+
+                Connection connection;
+                while ((connection = dirty.poll()) != null) {
+                    connection.updateInterest();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    else {
+                        ((Connection)key.attachment()).handle(key);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (maxIdleSeconds > 0 && now - nextSweep >= 0) {
+                    for (Connection conn : connections) {
+                        long nanosIdle = now - conn.lastActivityTimestamp;
+                        if (nanosIdle > maxIdleSeconds * 1000000000L) {
+                            logger.warn("Watchdog expired: {}, limit: {}", nanosIdle / 1000000000L, maxIdleSeconds);
+                            conn.close();
+                        }
+                    }
+                    nextSweep = now + SWEEP_INTERVAL * 1000000L;
+                }
+            }
+        }
+        catch (IOException e) {
+            error = String.format("Problem running listener - %s", e.getMessage());
+        }
+        finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            closeQuietly();
+            workers.shutdown();
+        }
+    }
+
+    @Override
+    public void stop() {
+        listening = false;
+        try {
+            Selector sel = selector;
+            if (sel != null) {
+                sel.wakeup();
+            }
+            if (listener != null) {
+                listener.join();
+            }
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+        catch (Exception ex) {
+            logger.error("Error while stopping ModbusNIOTCPListener", ex);
+        }
+    }
+
+    /**
+     * Accepts a new connection and registers it for reading
+     */
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            logger.debug("Making new connection {}", channel);
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+        catch (IOException e) {
+            logger.debug("Cannot accept connection - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the selector and the server channel, ignoring any errors
+     */
+    private void closeQuietly() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Error closing listener", e);
+        }
+    }
+
+    /**
+     * Decodes the request, creates the response and encodes it ready for writing
+     *
+     * @param frame MBAP frame of the request
+     * @return MBAP frame of the response
+     * @throws ModbusIOException If the request cannot be decoded
+     */
+    private byte[] process(byte[] frame) throws ModbusIOException {
+        ModbusTCPCodec codec = codecs.get();
+        long startNanos = System.nanoTime();
+        ModbusRequest request = codec.decodeRequest(frame, frame.length);
+        ModbusResponse response = processRequest(request);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request:{}", request.getHexMessage());
+            logger.debug("Response:{}", response.getHexMessage());
+        }
+        byte[] encoded = codec.encode(response);
+        reportResponse(request, response, startNanos);
+        return encoded;
+    }
+
+    /**
+     * State of a single client connection
+     */
+    private class Connection implements Runnable {
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(ModbusTCPCodec.MAX_FRAME_LENGTH * 2);
+        final Queue<byte[]> requests = new ConcurrentLinkedQueue<byte[]>();
+        final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<ByteBuffer>();
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        volatile long lastActivityTimestamp = System.nanoTime();
+        volatile boolean closed = false;
+        SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Handles a ready key on the selector thread
+         *
+         * @param key Selected key
+         */
+        void handle(SelectionKey key) {
+            try {
+                if (key.isReadable()) {
+                    read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write();
+                }
+            }
+            catch (IOException e) {
+                logger.debug("Connection {} failed - {}", channel, e.getMessage());
+                close();
+            }
+            catch (ModbusIOException e) {
+                logger.debug("Invalid request on {} - {}", channel, e.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * Reads what is available and queues any complete requests
+         *
+         * @throws IOException       If the read fails or the client has gone
+         * @throws ModbusIOException If the client sends an invalid header
+         */
+        private void read() throws IOException, ModbusIOException {
+            if (channel.read(readBuffer) < 0) {
+                throw new IOException("Connection closed by client");
+            }
+            lastActivityTimestamp = System.nanoTime();
+            byte[] buffer = readBuffer.array();
+            int length;
+            while ((length = ModbusTCPCodec.getFrameLength(buffer, 0, readBuffer.position())) > 0 && readBuffer.position() >= length) {
+                requests.add(Arrays.copyOf(buffer, length));
+                readBuffer.flip();
+                readBuffer.position(length);
+                readBuffer.compact();
+            }
+            if (!requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                }
+                catch (RejectedExecutionException e) {
+                    close();
+                    return;
+                }
+            }
+            updateInterest();
+        }
+
+        /**
+         * Writes as many responses as the socket will take
+         *
+         * @throws IOException If the write fails
+         */
+        private void write() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = responses.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                responses.poll();
+            }
+            lastActivityTimestamp = System.nanoTime();
+            updateInterest();
+        }
+
+        /**
+         * Sets the interest of the key from the state of the queues. Reading is
+         * paused whilst the client has too many requests waiting.
+         */
+        void updateInterest() {
+            if (key != null && key.isValid()) {
+                int ops = requests.size() < MAX_QUEUED_REQUESTS ? SelectionKey.OP_READ : 0;
+                if (!responses.isEmpty()) {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Processes the queued requests of this connection on a worker thread
+         */
+        @Override
+        public void run() {
+            while (!closed) {
+                byte[] frame = requests.poll();
+                if (frame == null) {
+                    scheduled.set(false);
+
+                    // Another request may have arrived after the poll
+                    if (requests.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        break;
+                    }
+                    continue;
+                }
+                try {
+                    responses.add(ByteBuffer.wrap(process(frame)));
+                }
+                catch (ModbusIOException e) {
+                    logger.debug("Cannot process request on {} - {}", channel, e.getMessage());
+                }
+                catch (Exception e) {
+                    logger.error("Unexpected error processing request on {}", channel, e);
+                }
+                dirty.add(this);
+                Selector sel = selector;
+                if (sel != null) {
+                    sel.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Closes the connection
+         */
+        void close() {
+            closed = true;
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.debug("Error closing connection", e);
+            }
+        }
+    }
+}
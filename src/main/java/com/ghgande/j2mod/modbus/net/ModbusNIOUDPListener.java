@@ -0,0 +1,334 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that implements a Modbus/UDP listener on a <tt>DatagramChannel</tt>.
+ * <p>
+ * The listener thread receives datagrams into a fixed pool of direct buffers
+ * and hands them to a pool of worker threads that create the responses from
+ * the process image. Each request carries the address it came from, so the
+ * response is sent back to the client that asked for it even when several
+ * clients use the same transaction ID. When every buffer is in use the
+ * listener stops receiving and further datagrams wait in the socket receive
+ * buffer, the size of which can be set to absorb bursts.
+ */
+public class ModbusNIOUDPListener extends AbstractModbusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusNIOUDPListener.class);
+
+    /**
+     * Default size of the socket receive buffer (=<tt>65536</tt> bytes)
+     */
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 65536;
+
+    /**
+     * Number of receive buffers allocated for each worker thread (=<tt>4</tt>)
+     */
+    private static final int BUFFERS_PER_WORKER = 4;
+
+    private final int poolSize;
+    private final ThreadLocal<Worker> workerState = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private int receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+    private volatile DatagramChannel channel;
+    private BlockingQueue<ByteBuffer> buffers;
+    private ExecutorService workers;
+    private Thread listener;
+
+    /**
+     * Constructs a listener on the wildcard address (0.0.0.0)
+     *
+     * @param poolSize Number of worker threads used to process requests
+     */
+    public ModbusNIOUDPListener(int poolSize) {
+        this(poolSize, null);
+    }
+
+    /**
+     * Constructs a listener on the given address
+     *
+     * @param poolSize Number of worker threads used to process requests
+     * @param addr     Interface to listen on, null for all interfaces
+     */
+    public ModbusNIOUDPListener(int poolSize, InetAddress addr) {
+        this.poolSize = Math.max(1, poolSize);
+        if (addr == null) {
+            try {
+                addr = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+            }
+            catch (UnknownHostException ex) {
+                // Can't happen -- size is fixed.
+            }
+        }
+        address = addr;
+    }
+
+    /**
+     * Returns the size requested for the socket receive buffer
+     *
+     * @return Size in bytes
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets the size of the socket receive buffer. The operating system may
+     * limit the size actually used. This must be set before the listener is
+     * started.
+     *
+     * @param receiveBufferSize Size in bytes
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if (receiveBufferSize <= 0) {
+            throw new IllegalArgumentException("receiveBufferSize must be > 0: " + receiveBufferSize);
+        }
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Returns the number of requests that have been answered
+     *
+     * @return Number of requests
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of datagrams that were dropped because they were
+     * not valid Modbus/UDP requests
+     *
+     * @return Number of datagrams
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void setAddress(InetAddress addr) {
+        if (addr != null) {
+            super.setAddress(addr);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        // Set a suitable thread name
+        if (threadName == null || threadName.isEmpty()) {
+            threadName = String.format("Modbus NIO UDP Listener [port:%d]", port);
+        }
+        Thread.currentThread().setName(threadName);
+
+        try {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.bind(new InetSocketAddress(address, port));
+            logger.debug("Listening to {} (Port {}) with a receive buffer of {} bytes", channel, port, channel.getOption(StandardSocketOptions.SO_RCVBUF));
+        }
+
+        // Catch any fatal errors and set the listening flag to false to indicate an error
+        catch (Exception e) {
+            error = String.format("Cannot start UDP listener on port %d - %s", port, e.getMessage());
+            closeQuietly();
+            listening = false;
+            return;
+        }
+
+        buffers = new ArrayBlockingQueue<ByteBuffer>(poolSize * BUFFERS_PER_WORKER);
+        for (int i = 0; i < poolSize * BUFFERS_PER_WORKER; i++) {
+            buffers.add(ByteBuffer.allocateDirect(ModbusTCPCodec.MAX_FRAME_LENGTH));
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, String.format("%s Handler %d", threadName, threadCount.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        listener = Thread.currentThread();
+        listening = true;
+        try {
+            while (listening) {
+                ByteBuffer buffer = buffers.take();
+                SocketAddress client;
+                try {
+                    buffer.clear();
+                    client = channel.receive(buffer);
+                }
+                catch (IOException e) {
+                    buffers.add(buffer);
+                    throw e;
+                }
+                buffer.flip();
+                try {
+                    workers.execute(new Request(buffer, client));
+                }
+                catch (RejectedExecutionException e) {
+                    buffers.add(buffer);
+                }
+            }
+        }
+        catch (ClosedChannelException e) {
+            logger.debug("UDP listener on port {} closed", port);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            error = String.format("Problem running listener - %s", e.getMessage());
+        }
+        finally {
+            listening = false;
+            closeQuietly();
+            workers.shutdown();
+        }
+    }
+
+    @Override
+    public void stop() {
+        listening = false;
+        try {
+            closeQuietly();
+            if (listener != null) {
+                listener.interrupt();
+                listener.join(timeout);
+                if (listener.isAlive()) {
+                    logger.warn("ModbusNIOUDPListener thread did not stop within {}ms", timeout);
+                }
+            }
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+        catch (Exception ex) {
+            logger.error("Error while stopping ModbusNIOUDPListener", ex);
+        }
+    }
+
+    /**
+     * Closes the channel, ignoring any errors
+     */
+    private void closeQuietly() {
+        try {
+            DatagramChannel ch = channel;
+            if (ch != null) {
+                ch.close();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Error closing listener", e);
+        }
+    }
+
+    /**
+     * Buffers used by a worker thread to decode a request and send its response
+     */
+    private static class Worker {
+        final ModbusTCPCodec codec = new ModbusTCPCodec();
+        final byte[] frame = new byte[ModbusTCPCodec.MAX_FRAME_LENGTH];
+        final ByteBuffer response = ByteBuffer.allocateDirect(ModbusTCPCodec.MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * A datagram waiting to be processed along with the client it came from
+     */
+    private class Request implements Runnable {
+        private final ByteBuffer buffer;
+        private final SocketAddress client;
+
+        Request(ByteBuffer buffer, SocketAddress client) {
+            this.buffer = buffer;
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            Worker worker = workerState.get();
+            int length = buffer.remaining();
+            buffer.get(worker.frame, 0, length);
+
+            // The datagram has been copied so the buffer can be received into again
+            buffers.add(buffer);
+            try {
+                int frameLength = ModbusTCPCodec.getFrameLength(worker.frame, 0, length);
+                if (frameLength < 0 || frameLength > length) {
+                    throw new ModbusIOException("Datagram of %d bytes does not hold a complete frame", length);
+                }
+                long startNanos = System.nanoTime();
+                ModbusRequest request = worker.codec.decodeRequest(worker.frame, frameLength);
+                ModbusResponse response = processRequest(request);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Request from {}:{}", client, request.getHexMessage());
+                    logger.debug("Response:{}", response.getHexMessage());
+                }
+                worker.response.clear();
+                worker.codec.encode(response, worker.response);
+                worker.response.flip();
+                channel.send(worker.response, client);
+                requestCount.incrementAndGet();
+                reportResponse(request, response, startNanos);
+            }
+            catch (ModbusIOException e) {
+                droppedCount.incrementAndGet();
+                logger.debug("Invalid request from {} - {}", client, e.getMessage());
+            }
+            catch (IOException e) {
+                if (listening) {
+                    logger.debug("Cannot send response to {} - {}", client, e.getMessage());
+                }
+            }
+            catch (Exception e) {
+                logger.error("Unexpected error processing request from {}", client, e);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.ghgande.j2mod.modbus.net;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusSerialTransport;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
 import com.ghgande.j2mod.modbus.util.SerialParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +67,14 @@ public class ModbusSerialListener extends AbstractModbusListener {
         }
     }
 
+    @Override
+    public void setMetrics(ModbusMetrics metrics) {
+        super.setMetrics(metrics);
+        if (serialCon != null && serialCon.getModbusTransport() instanceof ModbusSerialTransport) {
+            ((ModbusSerialTransport)serialCon.getModbusTransport()).setMetrics(metrics);
+        }
+    }
+
     @Override
     public void run() {
 
@@ -88,6 +97,9 @@ public class ModbusSerialListener extends AbstractModbusListener {
         listening = true;
         try {
             AbstractModbusTransport transport = serialCon.getModbusTransport();
+            if (transport instanceof ModbusSerialTransport) {
+                ((ModbusSerialTransport)transport).setMetrics(metrics);
+            }
             while (listening) {
                 safeHandleRequest(transport);
             }
@@ -16,11 +16,14 @@
 package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.util.ThreadPool;
+import com.ghgande.j2mod.modbus.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Class that implements a ModbusTCPListener.
@@ -38,10 +41,16 @@ public class ModbusTCPListener extends AbstractModbusListener {
     private static final Logger logger = LoggerFactory.getLogger(ModbusTCPListener.class);
 
     private ServerSocket serverSocket = null;
-    private final ThreadPool threadPool;
+    private final int poolSize;
+    private final int queueCapacity;
+    private volatile ThreadPool threadPool;
     private Thread listener;
     private final boolean useRtuOverTcp;
     private int maxIdleSeconds;
+    private boolean useVirtualThreads;
+    private volatile ExecutorService virtualThreadExecutor;
+    private ExecutorService executorService;
+    private volatile IdleConnectionTimer idleTimer;
 
     /**
      * Constructs a ModbusTCPListener instance.<br>
@@ -63,7 +72,22 @@ public class ModbusTCPListener extends AbstractModbusListener {
      * @param useRtuOverTcp True if the RTU protocol should be used over TCP
      */
     public ModbusTCPListener(int poolsize, InetAddress addr, boolean useRtuOverTcp) {
-        threadPool = new ThreadPool(poolsize);
+        this(poolsize, ThreadPool.DEFAULT_QUEUE_CAPACITY, addr, useRtuOverTcp);
+    }
+
+    /**
+     * Constructs a ModbusTCPListener instance.<br>
+     *
+     * @param poolsize      the size of the <tt>ThreadPool</tt> used to handle incoming
+     *                      requests.
+     * @param queueCapacity the number of connections that can wait for a free thread
+     *                      before new connections are rejected and closed.
+     * @param addr          the interface to use for listening.
+     * @param useRtuOverTcp True if the RTU protocol should be used over TCP
+     */
+    public ModbusTCPListener(int poolsize, int queueCapacity, InetAddress addr, boolean useRtuOverTcp) {
+        poolSize = poolsize;
+        this.queueCapacity = queueCapacity;
         address = addr;
         this.useRtuOverTcp = useRtuOverTcp;
         maxIdleSeconds = 0;
@@ -93,7 +117,8 @@ public class ModbusTCPListener extends AbstractModbusListener {
      * @param useRtuOverTcp True if the RTU protocol should be used over TCP
      */
     public ModbusTCPListener(int poolsize, boolean useRtuOverTcp) {
-        threadPool = new ThreadPool(poolsize);
+        poolSize = poolsize;
+        queueCapacity = ThreadPool.DEFAULT_QUEUE_CAPACITY;
         try {
             address = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
         }
@@ -120,6 +145,9 @@ public class ModbusTCPListener extends AbstractModbusListener {
      * <code>maxIdleSeconds</code> of total silence.
      * This option is disabled by default (maxIdleSeconds == 0)
      * 
+     * All the connections are watched by a single timer thread owned by the
+     * listener, so this does not add a thread per connection.
+     * 
      * @param maxIdleSeconds    0 to disable watchdog, or a positive number to set it.
      */
     public void setMaxIdleSeconds(int maxIdleSeconds) {
@@ -129,6 +157,64 @@ public class ModbusTCPListener extends AbstractModbusListener {
         this.maxIdleSeconds = maxIdleSeconds;
     }
 
+    /**
+     * Returns the pool of threads handling the connections, which can be used
+     * to monitor the number of active, queued and rejected connections. The pool
+     * is only created when the listener starts without an executor or virtual
+     * threads.
+     *
+     * @return Thread pool or null if the listener does not use one
+     */
+    public ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    /**
+     * Returns the executor set by {@link #setExecutorService(ExecutorService)}
+     *
+     * @return Executor or null if the listener's own threads are used
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Sets an executor to handle the connections instead of the listener's own
+     * <tt>ThreadPool</tt>. If the executor rejects a connection, the connection
+     * is closed. The executor is owned by the caller and is not shut down when
+     * the listener stops. This must be set before the listener is started.
+     *
+     * @param executorService Executor to use or null to use the listener's own threads
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Returns true if each connection is handled on its own virtual thread
+     *
+     * @return True if using virtual threads
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Sets whether each connection should be handled on its own virtual thread
+     * instead of a thread from the <tt>ThreadPool</tt>. This removes the limit the
+     * pool size places on the number of concurrent clients without the cost of a
+     * platform thread per client.
+     * <p>
+     * Virtual threads need JDK 21 or later, on older runtimes each connection is
+     * given its own platform thread instead. This must be set before the listener
+     * is started.
+     *
+     * @param useVirtualThreads True to use virtual threads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     @Override
     public void setTimeout(int timeout) {
         super.setTimeout(timeout);
@@ -151,6 +237,18 @@ public class ModbusTCPListener extends AbstractModbusListener {
         }
         Thread.currentThread().setName(threadName);
 
+        // The pool size only matters if the listener handles connections with its own threads
+        if (executorService == null && !useVirtualThreads && threadPool == null) {
+            try {
+                threadPool = new ThreadPool(poolSize, queueCapacity);
+            }
+            catch (IllegalArgumentException e) {
+                error = String.format("Cannot start TCP listener on port %d - %s", port, e.getMessage());
+                listening = false;
+                return;
+            }
+        }
+
         try {
             /*
              * A server socket is opened with a connectivity queue of a size
@@ -176,8 +274,22 @@ public class ModbusTCPListener extends AbstractModbusListener {
         listening = true;
         try {
 
+            // One timer watches every connection for inactivity
+            if (maxIdleSeconds > 0) {
+                idleTimer = new IdleConnectionTimer(String.format("%s Idle Timer", threadName), maxIdleSeconds);
+                idleTimer.start();
+            }
+
             // Initialise the message handling pool
-            threadPool.initPool(threadName);
+            if (executorService != null) {
+                logger.debug("Handling connections with {}", executorService);
+            }
+            else if (useVirtualThreads) {
+                virtualThreadExecutor = VirtualThreads.newThreadPerTaskExecutor(String.format("%s Handler", threadName));
+            }
+            else {
+                threadPool.initPool(threadName);
+            }
 
             // Infinite loop, taking care of resources in case of a lot of
             // parallel logins
@@ -193,7 +305,7 @@ public class ModbusTCPListener extends AbstractModbusListener {
                 if (listening) {
                     TCPSlaveConnection slave = new TCPSlaveConnection(incoming, useRtuOverTcp);
                     slave.setTimeout(timeout);
-                    threadPool.execute(new TCPConnectionHandler(this, slave, maxIdleSeconds));
+                    dispatch(slave);
                 }
                 else {
                     incoming.close();
@@ -204,7 +316,7 @@ public class ModbusTCPListener extends AbstractModbusListener {
             error = String.format("Problem starting listener - %s", e.getMessage());
         }
         finally {
-            threadPool.close();
+            closeHandlers();
         }
     }
 
@@ -218,13 +330,59 @@ public class ModbusTCPListener extends AbstractModbusListener {
             if (listener != null) {
                 listener.join();
             }
-            if (threadPool != null) {
-                threadPool.close();
-            }
+            closeHandlers();
         }
         catch (Exception ex) {
             logger.error("Error while stopping ModbusTCPListener", ex);
         }
     }
 
+    /**
+     * Passes the connection to a thread to be handled. If there is no room for
+     * it, the connection is closed straight away so that the client can retry
+     * rather than wait for a thread that may not become free before it times out.
+     *
+     * @param slave New connection
+     */
+    private void dispatch(TCPSlaveConnection slave) {
+        TCPConnectionHandler handler = new TCPConnectionHandler(this, slave, idleTimer);
+        try {
+            ExecutorService executor = executorService != null ? executorService : virtualThreadExecutor;
+            ThreadPool pool = threadPool;
+            if (executor != null) {
+                executor.execute(handler);
+            }
+            else if (pool != null) {
+                pool.execute(handler);
+            }
+            else {
+                throw new RejectedExecutionException("No threads to handle the connection");
+            }
+        }
+        catch (RejectedExecutionException e) {
+            logger.warn("Rejected connection from {}:{} - {}", slave.getAddress(), slave.getPort(), e.getMessage());
+            handler.close();
+        }
+    }
+
+    /**
+     * Shuts down the threads handling the connections
+     */
+    private void closeHandlers() {
+        IdleConnectionTimer timer = idleTimer;
+        if (timer != null) {
+            idleTimer = null;
+            timer.stop();
+        }
+        ThreadPool pool = threadPool;
+        if (pool != null) {
+            pool.close();
+        }
+        ExecutorService executor = virtualThreadExecutor;
+        if (executor != null) {
+            virtualThreadExecutor = null;
+            executor.shutdownNow();
+        }
+    }
+
 }
@@ -17,11 +17,15 @@ package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Class that implements a ModbusUDPListener.<br>
@@ -35,6 +39,8 @@ public class ModbusUDPListener extends AbstractModbusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusUDPListener.class);
     private UDPSlaveTerminal terminal;
+    private boolean useVirtualThreads;
+    private volatile ExecutorService virtualThreadExecutor;
 
     /**
      * Create a new <tt>ModbusUDPListener</tt> instance listening to the given
@@ -60,6 +66,30 @@ public class ModbusUDPListener extends AbstractModbusListener {
         }
     }
 
+    /**
+     * Returns true if each request is processed on its own virtual thread
+     *
+     * @return True if using virtual threads
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Sets whether each request should be processed on its own virtual thread so
+     * that a slow process image does not hold up requests from other clients.
+     * The requests are still read by the listener thread.
+     * <p>
+     * Virtual threads need JDK 21 or later, on older runtimes each request is
+     * given its own platform thread instead. This must be set before the listener
+     * is started.
+     *
+     * @param useVirtualThreads True to use virtual threads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     @Override
     public void setTimeout(int timeout) {
         super.setTimeout(timeout);
@@ -102,9 +132,18 @@ public class ModbusUDPListener extends AbstractModbusListener {
         }
 
         listening = true;
+        if (useVirtualThreads) {
+            virtualThreadExecutor = VirtualThreads.newThreadPerTaskExecutor(String.format("%s Handler", threadName));
+        }
         try {
             while (listening) {
-                handleRequest(transport, this);
+                ExecutorService executor = virtualThreadExecutor;
+                if (executor == null) {
+                    handleRequest(transport, this);
+                }
+                else {
+                    dispatchRequest(executor, transport, transport.readRequest(this));
+                }
             }
         }
         catch (ModbusIOException ex1) {
@@ -113,6 +152,7 @@ public class ModbusUDPListener extends AbstractModbusListener {
             }
         }
         finally {
+            shutdownExecutor();
             try {
                 terminal.deactivate();
                 transport.close();
@@ -127,5 +167,43 @@ public class ModbusUDPListener extends AbstractModbusListener {
     public void stop() {
         terminal.deactivate();
         listening = false;
+        shutdownExecutor();
+    }
+
+    /**
+     * Processes the request and sends the response on a thread from the executor
+     *
+     * @param executor  Executor to run the request on
+     * @param transport Transport to send the response with
+     * @param request   Request to process
+     */
+    private void dispatchRequest(ExecutorService executor, final ModbusUDPTransport transport, final ModbusRequest request) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handleRequest(transport, request);
+                    }
+                    catch (ModbusIOException e) {
+                        logger.debug("Cannot send response - {}", e.getMessage());
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            logger.debug("Request dropped, listener is stopping");
+        }
+    }
+
+    /**
+     * Shuts down the threads processing the requests
+     */
+    private void shutdownExecutor() {
+        ExecutorService executor = virtualThreadExecutor;
+        if (executor != null) {
+            virtualThreadExecutor = null;
+            executor.shutdownNow();
+        }
     }
 }
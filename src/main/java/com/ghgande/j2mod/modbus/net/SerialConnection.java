@@ -48,11 +48,19 @@ public class SerialConnection extends AbstractSerialConnection {
     public static final int CONNECT_RETRY_DELAY = 100;
     public static final int CONNECT_RETRIES = 3;
 
+    /**
+     * Size of the buffer holding received bytes when the connection is event driven
+     */
+    public static final int INPUT_BUFFER_SIZE = 16 * Modbus.MAX_MESSAGE_LENGTH;
+
     private SerialParameters parameters;
     private ModbusSerialTransport transport;
-    private SerialPort serialPort;
+    private volatile SerialPort serialPort;
     private InputStream inputStream;
     private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private volatile int readTimeout = Modbus.DEFAULT_TIMEOUT;
+    private SerialRingBuffer inputBuffer;
+    private byte[] eventReadBuffer;
 
     /**
      * Default constructor
@@ -140,12 +148,19 @@ public class SerialConnection extends AbstractSerialConnection {
             throw new IOException(String.format("Port [%s] cannot be opened after [%d] attempts - valid ports are: [%s]", parameters.getPortName(), attempts, portList));
         }
         inputStream = serialPort.getInputStream();
+        if (inputBuffer != null) {
+            inputBuffer.clear();
+        }
         
         if (!reopen) {
+            if (parameters.isEventDriven()) {
+                inputBuffer = new SerialRingBuffer(INPUT_BUFFER_SIZE);
+                eventReadBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
+            }
 	        serialPort.addDataListener(new SerialPortDataListener() {
 	            @Override
 	            public int getListeningEvents() {
-	                return SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+	                return SerialPort.LISTENING_EVENT_PORT_DISCONNECTED | (inputBuffer != null ? SerialPort.LISTENING_EVENT_DATA_AVAILABLE : 0);
 	            }
 	
 	            @Override
@@ -154,11 +169,33 @@ public class SerialConnection extends AbstractSerialConnection {
 	                    serialPort.closePort();
 	                	transport.notifyListenersDisconnected();
 	                }
+	                else if (event.getEventType() == SerialPort.LISTENING_EVENT_DATA_AVAILABLE) {
+	                    readAvailableBytes();
+	                }
 	            }
 	        });
         }
     }
 
+    /**
+     * Reads everything the port has received into the input buffer, called
+     * from the event thread of the port when data arrives
+     */
+    private void readAvailableBytes() {
+        SerialPort port = serialPort;
+        if (port == null) {
+            return;
+        }
+        int available;
+        while ((available = port.bytesAvailable()) > 0) {
+            int count = port.readBytes(eventReadBuffer, Math.min(available, eventReadBuffer.length));
+            if (count <= 0) {
+                break;
+            }
+            inputBuffer.write(eventReadBuffer, 0, count);
+        }
+    }
+
     /**
      * Applies the serial parameters to the actual hardware
      */
@@ -190,6 +227,9 @@ public class SerialConnection extends AbstractSerialConnection {
                 serialPort.closePort();
             }
         }
+        if (inputBuffer != null) {
+            inputBuffer.close();
+        }
         serialPort = null;
     }
 
@@ -213,7 +253,13 @@ public class SerialConnection extends AbstractSerialConnection {
 
     @Override
     public int readBytes(byte[] buffer, int bytesToRead) {
-        return serialPort == null ? 0 : serialPort.readBytes(buffer, bytesToRead);
+        if (serialPort == null) {
+            return 0;
+        }
+        if (inputBuffer != null) {
+            return inputBuffer.read(buffer, 0, bytesToRead, readTimeout);
+        }
+        return serialPort.readBytes(buffer, bytesToRead);
     }
 
     @Override
@@ -223,7 +269,18 @@ public class SerialConnection extends AbstractSerialConnection {
 
     @Override
     public int bytesAvailable() {
-        return serialPort == null ? 0 : serialPort.bytesAvailable();
+        if (serialPort == null) {
+            return 0;
+        }
+        return inputBuffer != null ? inputBuffer.available() : serialPort.bytesAvailable();
+    }
+
+    @Override
+    public boolean waitForBytesAvailable(long timeoutMicros) {
+        if (inputBuffer != null) {
+            return serialPort != null && inputBuffer.awaitData(timeoutMicros * 1000L);
+        }
+        return super.waitForBytesAvailable(timeoutMicros);
     }
 
     @Override
@@ -258,6 +315,7 @@ public class SerialConnection extends AbstractSerialConnection {
 
     @Override
     public void setComPortTimeouts(int newTimeoutMode, int newReadTimeout, int newWriteTimeout) {
+        readTimeout = (newTimeoutMode & (SerialPort.TIMEOUT_READ_BLOCKING | SerialPort.TIMEOUT_READ_SEMI_BLOCKING)) == 0 ? 0 : newReadTimeout;
         if (serialPort != null) {
             serialPort.setComPortTimeouts(newTimeoutMode, newReadTimeout, newWriteTimeout);
         }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ring buffer holding the bytes received by a serial port.
+ * <p>
+ * The buffer is filled in bulk by the data available events of the serial port
+ * and drained by the transport, which waits on a condition rather than
+ * spinning while it waits for the next character.
+ * <p>
+ * If the buffer fills up, the oldest bytes are discarded.
+ */
+final class SerialRingBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialRingBuffer.class);
+
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private int head;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a ring buffer
+     *
+     * @param capacity Number of bytes the buffer can hold
+     */
+    SerialRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Adds received bytes to the buffer and wakes up any waiting reader
+     *
+     * @param src Bytes received
+     * @param off Offset of the first byte
+     * @param len Number of bytes
+     */
+    void write(byte[] src, int off, int len) {
+        lock.lock();
+        try {
+            if (len > buffer.length) {
+                off += len - buffer.length;
+                len = buffer.length;
+            }
+            int overflow = count + len - buffer.length;
+            if (overflow > 0) {
+                logger.warn("Serial input buffer overflow - discarding {} bytes", overflow);
+                head = (head + overflow) % buffer.length;
+                count -= overflow;
+            }
+            int tail = (head + count) % buffer.length;
+            int first = Math.min(len, buffer.length - tail);
+            System.arraycopy(src, off, buffer, tail, first);
+            System.arraycopy(src, off + first, buffer, 0, len - first);
+            count += len;
+            dataAvailable.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads bytes from the buffer, waiting up to the timeout for all of them to
+     * arrive. If the timeout expires, the bytes that have arrived are returned.
+     *
+     * @param dest          Array to read into
+     * @param off           Offset in the array of the first byte
+     * @param len           Number of bytes to read
+     * @param timeoutMillis Maximum time to wait
+     * @return Number of bytes read
+     */
+    int read(byte[] dest, int off, int len, long timeoutMillis) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (count < len && !closed && remaining > 0) {
+                remaining = dataAvailable.awaitNanos(remaining);
+            }
+            int n = Math.min(len, count);
+            int first = Math.min(n, buffer.length - head);
+            System.arraycopy(buffer, head, dest, off, first);
+            System.arraycopy(buffer, 0, dest, off + first, n - first);
+            head = (head + n) % buffer.length;
+            count -= n;
+            return n;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for at least one byte to be available
+     *
+     * @param timeoutNanos Maximum time to wait
+     * @return True if there is data to read
+     */
+    boolean awaitData(long timeoutNanos) {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (count == 0 && !closed && remaining > 0) {
+                remaining = dataAvailable.awaitNanos(remaining);
+            }
+            return count > 0;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return count > 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes waiting to be read
+     *
+     * @return Number of bytes
+     */
+    int available() {
+        lock.lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards any buffered bytes and makes the buffer usable again after it has been closed
+     */
+    void clear() {
+        lock.lock();
+        try {
+            head = 0;
+            count = 0;
+            closed = false;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up any waiting reader, reads do not wait again until the buffer is cleared
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class TCPConnectionHandler implements Runnable {
     private final AbstractModbusListener listener;
 
     private final ScheduledExecutorService watchDog;
+    private final IdleConnectionTimer.Watch idleWatch;
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -59,6 +60,7 @@ public class TCPConnectionHandler implements Runnable {
         this.listener = listener;
         this.connection = connection;
         transport = this.connection.getModbusTransport();
+        idleWatch = null;
 
         if (maxIdleSeconds > 0) {
             watchDog = Executors.newSingleThreadScheduledExecutor();
@@ -85,6 +87,44 @@ public class TCPConnectionHandler implements Runnable {
         }
     }
 
+    /**
+     * Constructs a new <tt>TCPConnectionHandler</tt> instance whose connection is
+     * watched for inactivity by a timer shared with the other connections of the
+     * listener, rather than a watchdog thread of its own.
+     *
+     * @param listener   the listener that handled the incoming request
+     * @param connection an incoming connection.
+     * @param idleTimer  null or the timer that closes the connection when idle
+     */
+    TCPConnectionHandler(AbstractModbusListener listener, TCPSlaveConnection connection, IdleConnectionTimer idleTimer) {
+        this.listener = listener;
+        this.connection = connection;
+        transport = this.connection.getModbusTransport();
+        watchDog = null;
+        idleWatch = idleTimer == null ? null : idleTimer.watch(connection);
+    }
+
+    /**
+     * Closes the connection and stops the watchdog without handling any requests.
+     * This is used when the connection cannot be given a thread.
+     */
+    void close() {
+        stopWatching();
+        connection.close();
+    }
+
+    /**
+     * Stops checking the connection for inactivity
+     */
+    private void stopWatching() {
+        if (watchDog != null) {
+            watchDog.shutdown();
+        }
+        if (idleWatch != null) {
+            idleWatch.cancel();
+        }
+    }
+
     @Override
     public void run() {
         try {
@@ -98,6 +138,7 @@ public class TCPConnectionHandler implements Runnable {
             }
         }
         finally {
+            stopWatching();
             connection.close();
         }
     }
@@ -18,12 +18,14 @@ package com.ghgande.j2mod.modbus.net;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusRTUTCPTransport;
+import com.ghgande.j2mod.modbus.io.ModbusTCPPipeline;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.*;
 import java.util.Objects;
 
@@ -53,6 +55,9 @@ public class TCPMasterConnection {
 
     private boolean useRtuOverTcp = false;
 
+    private int pipelineWindow = 0;
+    private volatile ModbusTCPPipeline pipeline;
+
     /**
      * useUrgentData - sent a byte of urgent data when testing the TCP
      * connection.
@@ -146,6 +151,13 @@ public class TCPMasterConnection {
 
             prepareTransport(useRtuOverTcp);
             connected = true;
+
+            // Start the reader if we are pipelining requests
+
+            if (isPipelined()) {
+                pipeline = new ModbusTCPPipeline(this, transport, pipelineWindow);
+                pipeline.start();
+            }
         }
     }
 
@@ -197,10 +209,55 @@ public class TCPMasterConnection {
         return connected;
     }
 
+    /**
+     * Tests if an idle <tt>TCPMasterConnection</tt> can still be used, without
+     * sending anything to the slave. The connection is closed if the slave has
+     * closed its end or if there are unexpected bytes waiting to be read, which
+     * would otherwise be mistaken for the next response. Waits at most a
+     * millisecond for the socket.
+     *
+     * @return <tt>true</tt> if the connection can be used, <tt>false</tt> otherwise.
+     */
+    public synchronized boolean isAlive() {
+        if (!isConnected()) {
+            return false;
+        }
+
+        // The pipeline reader owns the input of a pipelined connection
+        if (pipeline != null) {
+            return pipeline.isRunning();
+        }
+        try {
+            InputStream in = socket.getInputStream();
+            if (in.available() == 0) {
+                socket.setSoTimeout(1);
+                try {
+                    in.read();
+                }
+                catch (SocketTimeoutException e) {
+                    return true;
+                }
+                finally {
+                    socket.setSoTimeout(timeout);
+                }
+            }
+            logger.debug("Connection to {}:{} has been closed by the slave or has unexpected input", address, port);
+        }
+        catch (IOException e) {
+            logger.debug("Connection to {}:{} has failed - {}", address, port, e.getMessage());
+        }
+        close();
+        return false;
+    }
+
     /**
      * Closes this <tt>TCPMasterConnection</tt>.
      */
     public void close() {
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
         if (connected) {
             try {
                 transport.close();
@@ -233,6 +290,50 @@ public class TCPMasterConnection {
         transport = trans;
     }
 
+    /**
+     * Returns the pipeline used to send requests when pipelining is enabled
+     * and the connection is open
+     *
+     * @return Pipeline or null if not pipelining
+     */
+    public ModbusTCPPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Returns true if this connection keeps more than one transaction in flight
+     * using a <tt>ModbusTCPPipeline</tt>
+     *
+     * @return True if pipelining
+     */
+    public boolean isPipelined() {
+        return pipelineWindow > 0 && !useRtuOverTcp;
+    }
+
+    /**
+     * Returns the maximum number of transactions that can be in flight when pipelining
+     *
+     * @return Window size, 0 if pipelining is disabled
+     */
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * Sets the maximum number of transactions that can be in flight on this connection.
+     * A value of 0 (the default) disables pipelining so that each transaction is a
+     * strict write then read. The setting is applied the next time the connection is opened.
+     * Pipelining is not available for RTU over TCP.
+     *
+     * @param pipelineWindow Number of transactions allowed in flight
+     */
+    public void setPipelineWindow(int pipelineWindow) {
+        if (pipelineWindow < 0) {
+            throw new IllegalArgumentException("Pipeline window must be positive");
+        }
+        this.pipelineWindow = pipelineWindow;
+    }
+
     /**
      * Returns the timeout (msec) for this <tt>TCPMasterConnection</tt>.
      *
@@ -251,7 +352,7 @@ public class TCPMasterConnection {
     public synchronized void setTimeout(int timeout) {
         try {
             this.timeout = timeout;
-            if (socket != null) {
+            if (socket != null && pipeline == null) {
                 socket.setSoTimeout(timeout);
             }
         }
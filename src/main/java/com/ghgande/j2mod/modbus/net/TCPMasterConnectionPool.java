@@ -0,0 +1,464 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of open connections to TCP slaves, keyed by address and port.
+ * <p>
+ * A connection is lent to one transaction at a time and is kept open when it
+ * is returned, so that the next transaction to the same slave does not pay for
+ * a new TCP handshake. Up to a fixed number of connections are lent out to each
+ * slave at the same time, because many devices only accept a few sockets.
+ * Borrowers wait for a connection to be returned when the limit is reached.
+ * <p>
+ * The most recently returned connection is lent first. A connection that has
+ * been idle for longer than the validation interval is checked with
+ * {@link TCPMasterConnection#isAlive()} before it is lent, and one that has been
+ * idle for longer than the maximum idle time is closed.
+ * <pre>
+ *     TCPMasterConnectionPool pool = new TCPMasterConnectionPool(4);
+ *     TCPMasterConnection connection = pool.borrow(address, 502);
+ *     try {
+ *         ...
+ *     }
+ *     finally {
+ *         pool.release(connection);
+ *     }
+ * </pre>
+ * Every borrowed connection must be given back once, with <tt>release</tt> if
+ * it can be used again or <tt>invalidate</tt> if not.
+ */
+public class TCPMasterConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TCPMasterConnectionPool.class);
+
+    /**
+     * Connections to one slave
+     */
+    private static class Endpoint {
+        final Semaphore permits;
+        final Deque<IdleConnection> idle = new ArrayDeque<IdleConnection>();
+
+        Endpoint(int maxConnections) {
+            permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    /**
+     * Connection waiting in the pool and when it was returned
+     */
+    private static class IdleConnection {
+        final TCPMasterConnection connection;
+        final long since;
+
+        IdleConnection(TCPMasterConnection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    private final int maxConnectionsPerEndpoint;
+    private final ConcurrentMap<InetSocketAddress, Endpoint> endpoints = new ConcurrentHashMap<InetSocketAddress, Endpoint>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private volatile int timeout = Modbus.DEFAULT_TIMEOUT;
+    private volatile int borrowTimeout = Modbus.DEFAULT_TIMEOUT;
+    private volatile long validationIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile long maxIdleNanos = TimeUnit.MINUTES.toNanos(1);
+    private volatile boolean useRtuOverTcp;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool
+     *
+     * @param maxConnectionsPerEndpoint Largest number of connections to lend to each slave at the same time
+     */
+    public TCPMasterConnectionPool(int maxConnectionsPerEndpoint) {
+        if (maxConnectionsPerEndpoint < 1) {
+            throw new IllegalArgumentException("Maximum connections per endpoint must be at least 1");
+        }
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+    }
+
+    /**
+     * Borrows a connection to a slave, opening one if none are idle
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @return Open connection
+     * @throws ModbusIOException If no connection becomes free in time or a new one cannot be opened
+     */
+    public TCPMasterConnection borrow(InetAddress address, int port) throws ModbusIOException {
+        if (closed) {
+            throw new ModbusIOException("Connection pool is closed");
+        }
+        Endpoint endpoint = getEndpoint(address, port);
+        try {
+            if (!endpoint.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ModbusIOException("No connection to %s:%d became free within %dms", address.getHostAddress(), port, borrowTimeout);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for a connection to %s:%d", address.getHostAddress(), port);
+        }
+        try {
+            evictIdle(endpoint, System.nanoTime());
+            TCPMasterConnection connection = takeIdle(endpoint);
+            if (connection != null) {
+                reused.increment();
+                return connection;
+            }
+            connection = createConnection(address, port);
+            connection.connect(useRtuOverTcp);
+            created.increment();
+            logger.debug("Opened pooled connection to {}:{}", address.getHostAddress(), port);
+            return connection;
+        }
+        catch (Exception e) {
+            endpoint.permits.release();
+            throw new ModbusIOException("Connection failed for %s:%d %s", address.getHostAddress(), port, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. It is closed instead if it is
+     * no longer connected or the pool has been closed.
+     *
+     * @param connection Connection to return
+     */
+    public void release(TCPMasterConnection connection) {
+        Endpoint endpoint = endpoints.get(new InetSocketAddress(connection.getAddress(), connection.getPort()));
+        if (endpoint == null) {
+            connection.close();
+            return;
+        }
+        boolean kept = false;
+        if (connection.isConnected()) {
+            synchronized (endpoint) {
+                if (!closed) {
+                    endpoint.idle.addFirst(new IdleConnection(connection, System.nanoTime()));
+                    kept = true;
+                }
+            }
+        }
+        if (!kept) {
+            discard(connection);
+        }
+        evictIdle(endpoint, System.nanoTime());
+        endpoint.permits.release();
+    }
+
+    /**
+     * Closes a borrowed connection that must not be used again, e.g. because a
+     * transaction on it failed part way through, and frees its place in the pool
+     *
+     * @param connection Connection to close
+     */
+    public void invalidate(TCPMasterConnection connection) {
+        discard(connection);
+        Endpoint endpoint = endpoints.get(new InetSocketAddress(connection.getAddress(), connection.getPort()));
+        if (endpoint != null) {
+            endpoint.permits.release();
+        }
+    }
+
+    /**
+     * Closes all the idle connections that have been idle for longer than the
+     * maximum idle time. The expired connections to a slave are also closed
+     * whenever a connection to it is borrowed or returned.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (Endpoint endpoint : endpoints.values()) {
+            evictIdle(endpoint, now);
+        }
+    }
+
+    /**
+     * Closes all the idle connections and stops lending any more. Connections
+     * that are lent out are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        for (Endpoint endpoint : endpoints.values()) {
+            while (true) {
+                IdleConnection idle;
+                synchronized (endpoint) {
+                    idle = endpoint.idle.pollFirst();
+                }
+                if (idle == null) {
+                    break;
+                }
+                discard(idle.connection);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of idle connections to a slave
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @return Number of idle connections
+     */
+    public int getIdleCount(InetAddress address, int port) {
+        Endpoint endpoint = endpoints.get(new InetSocketAddress(address, port));
+        if (endpoint == null) {
+            return 0;
+        }
+        synchronized (endpoint) {
+            return endpoint.idle.size();
+        }
+    }
+
+    /**
+     * Returns the number of connections to a slave that are lent out
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @return Number of borrowed connections
+     */
+    public int getActiveCount(InetAddress address, int port) {
+        Endpoint endpoint = endpoints.get(new InetSocketAddress(address, port));
+        return endpoint == null ? 0 : maxConnectionsPerEndpoint - endpoint.permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of connections that have been opened
+     *
+     * @return Number of connections opened
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * Returns the number of times an idle connection has been lent again
+     *
+     * @return Number of connections reused
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * Returns the number of connections that have been closed by the pool
+     * because they were dead, idle for too long or invalidated
+     *
+     * @return Number of connections closed
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * Returns the largest number of connections lent to each slave at the same time
+     *
+     * @return Maximum connections per slave
+     */
+    public int getMaxConnectionsPerEndpoint() {
+        return maxConnectionsPerEndpoint;
+    }
+
+    /**
+     * Returns the connect and transaction timeout of new connections
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the connect and transaction timeout of new connections
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns how long <tt>borrow</tt> waits for a connection to become free
+     *
+     * @return Time in milliseconds
+     */
+    public int getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * Sets how long <tt>borrow</tt> waits for a connection to become free
+     *
+     * @param borrowTimeout Time in milliseconds
+     */
+    public void setBorrowTimeout(int borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * Returns how long a connection can be idle before it is checked again before being lent
+     *
+     * @return Time in milliseconds
+     */
+    public long getValidationInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(validationIntervalNanos);
+    }
+
+    /**
+     * Sets how long a connection can be idle before it is checked again before being lent
+     *
+     * @param validationInterval Time in milliseconds, 0 to check every time
+     */
+    public void setValidationInterval(long validationInterval) {
+        validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationInterval);
+    }
+
+    /**
+     * Returns how long a connection can be idle before it is closed
+     *
+     * @return Time in milliseconds
+     */
+    public long getMaxIdleTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxIdleNanos);
+    }
+
+    /**
+     * Sets how long a connection can be idle before it is closed
+     *
+     * @param maxIdleTime Time in milliseconds
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTime);
+    }
+
+    /**
+     * Returns true if new connections use the RTU protocol over TCP
+     *
+     * @return True if RTU over TCP is used
+     */
+    public boolean isUseRtuOverTcp() {
+        return useRtuOverTcp;
+    }
+
+    /**
+     * Sets whether new connections use the RTU protocol over TCP
+     *
+     * @param useRtuOverTcp True to use RTU over TCP
+     */
+    public void setUseRtuOverTcp(boolean useRtuOverTcp) {
+        this.useRtuOverTcp = useRtuOverTcp;
+    }
+
+    /**
+     * Creates an unopened connection to a slave. Override to configure a
+     * proxy, network interface etc.
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @return New connection
+     */
+    protected TCPMasterConnection createConnection(InetAddress address, int port) {
+        TCPMasterConnection connection = new TCPMasterConnection(address);
+        connection.setPort(port);
+        connection.setTimeout(timeout);
+        return connection;
+    }
+
+    /**
+     * Takes the most recently returned connection that can still be used
+     *
+     * @param endpoint Endpoint to take from
+     * @return Connection or null if none are idle
+     */
+    private TCPMasterConnection takeIdle(Endpoint endpoint) {
+        while (true) {
+            IdleConnection idle;
+            synchronized (endpoint) {
+                idle = endpoint.idle.pollFirst();
+            }
+            if (idle == null) {
+                return null;
+            }
+            long idleNanos = System.nanoTime() - idle.since;
+            if (idleNanos > maxIdleNanos) {
+                discard(idle.connection);
+            }
+            else if (idleNanos < validationIntervalNanos ? idle.connection.isConnected() : idle.connection.isAlive()) {
+                return idle.connection;
+            }
+            else {
+                discard(idle.connection);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections to a slave that have been idle for longer than the
+     * maximum idle time. The oldest connections are at the end of the idle list.
+     *
+     * @param endpoint Endpoint to evict from
+     * @param now      Current <tt>System.nanoTime()</tt>
+     */
+    private void evictIdle(Endpoint endpoint, long now) {
+        while (true) {
+            IdleConnection idle;
+            synchronized (endpoint) {
+                idle = endpoint.idle.peekLast();
+                if (idle == null || now - idle.since <= maxIdleNanos) {
+                    break;
+                }
+                endpoint.idle.pollLast();
+            }
+            discard(idle.connection);
+        }
+    }
+
+    private Endpoint getEndpoint(InetAddress address, int port) {
+        InetSocketAddress key = new InetSocketAddress(address, port);
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Endpoint(maxConnectionsPerEndpoint);
+            Endpoint existing = endpoints.putIfAbsent(key, endpoint);
+            if (existing != null) {
+                endpoint = existing;
+            }
+        }
+        return endpoint;
+    }
+
+    private void discard(TCPMasterConnection connection) {
+        connection.close();
+        evicted.increment();
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class that represents a single slave serviced by a {@link TCPMasterEngine}.
+ * <p>
+ * Requests can be sent from any thread. They are queued and written by the
+ * engine's selector thread, up to the configured window of requests in flight,
+ * and responses are matched back using the MBAP transaction ID. The connection
+ * is opened on demand and re-opened after a failure.
+ * <p>
+ * A request object must not be modified or re-used until its future has completed.
+ */
+public class TCPMasterEndpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(TCPMasterEndpoint.class);
+
+    private enum State {
+        DISCONNECTED, CONNECTING, CONNECTED
+    }
+
+    private final TCPMasterEngine.SelectorThread selectorThread;
+    private final InetAddress address;
+    private final int port;
+    private volatile int timeout;
+    private volatile int retries = 0;
+    private volatile int window = 1;
+    private volatile boolean closed = false;
+
+    // Shared with callers
+    private final Queue<Exchange> queue = new ConcurrentLinkedQueue<Exchange>();
+
+    // Only touched by the selector thread
+    private final Map<Integer, Exchange> inFlight = new HashMap<Integer, Exchange>();
+    private final Deque<Exchange> retryQueue = new ArrayDeque<Exchange>();
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(ModbusTCPCodec.MAX_FRAME_LENGTH * 2);
+    private volatile State state = State.DISCONNECTED;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private long connectDeadline;
+    private long lastReadTimestamp;
+    private int nextTransactionID = Modbus.DEFAULT_TRANSACTION_ID;
+
+    /**
+     * Constructs an endpoint serviced by the given selector thread
+     *
+     * @param selectorThread Selector thread that owns the endpoint
+     * @param address        Address of the slave
+     * @param port           Port of the slave
+     * @param timeout        Timeout in milliseconds
+     */
+    TCPMasterEndpoint(TCPMasterEngine.SelectorThread selectorThread, InetAddress address, int port, int timeout) {
+        this.selectorThread = selectorThread;
+        this.address = address;
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Queues the request for sending to the slave
+     *
+     * @param request Request to send
+     *
+     * @return Future that is completed with the response or a <tt>ModbusIOException</tt>
+     */
+    public CompletableFuture<ModbusResponse> execute(ModbusRequest request) {
+        Exchange exchange = new Exchange(request, System.nanoTime() + timeout * 1000000L);
+        if (closed || !selectorThread.isRunning()) {
+            exchange.future.completeExceptionally(new ModbusIOException("Endpoint %s:%d is closed", address.toString(), port));
+        }
+        else {
+            queue.add(exchange);
+            selectorThread.schedule(this);
+
+            // The engine may have drained the queue for the last time while we were adding to it
+            if ((closed || !selectorThread.isRunning()) && queue.remove(exchange)) {
+                exchange.future.completeExceptionally(new ModbusIOException("Endpoint %s:%d is closed", address.toString(), port));
+            }
+        }
+        return exchange.future;
+    }
+
+    /**
+     * Closes the connection and fails any outstanding requests. The endpoint
+     * cannot be used again.
+     */
+    public void close() {
+        closed = true;
+        selectorThread.schedule(this);
+    }
+
+    /**
+     * Returns true if the endpoint has an open connection to the slave
+     *
+     * @return True if connected
+     */
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    /**
+     * Returns the address of the slave
+     *
+     * @return Address
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the port of the slave
+     *
+     * @return Port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the timeout for connecting and for each response
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout for connecting and for each response. A request that cannot
+     * be sent within this time of being queued is also failed.
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of times a request is re-sent after a timeout or connection failure
+     *
+     * @return Number of retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a request is re-sent after a timeout or connection failure
+     *
+     * @param retries Number of retries, 0 to fail immediately
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Returns the number of requests that can be in flight at the same time
+     *
+     * @return Window size
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the number of requests that can be in flight at the same time. Many
+     * devices only process one request at a time which is the default.
+     *
+     * @param window Window size
+     */
+    public void setWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1");
+        }
+        this.window = window;
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent
+     *
+     * @return Number of queued requests
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Services the endpoint after new work has been queued. Called on the selector thread.
+     */
+    void service() {
+        if (closed) {
+            shutdown(new ModbusIOException("Endpoint %s:%d is closed", address.toString(), port));
+            selectorThread.endpoints.remove(this);
+        }
+        else if (state == State.DISCONNECTED) {
+            if (!queue.isEmpty() || !retryQueue.isEmpty()) {
+                connect();
+            }
+        }
+        else if (state == State.CONNECTED) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Handles a ready key. Called on the selector thread.
+     *
+     * @param key Selected key
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isConnectable()) {
+                finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Connection to {}:{} failed - {}", address, port, e.getMessage());
+            disconnect(new ModbusIOException("Connection to %s:%d failed - %s", address.toString(), port, e.getMessage()));
+        }
+        catch (ModbusIOException e) {
+            logger.debug("Invalid frame from {}:{} - {}", address, port, e.getMessage());
+            disconnect(e);
+        }
+    }
+
+    /**
+     * Fails any requests that have run out of time. Called on the selector thread.
+     *
+     * @param now Current <tt>System.nanoTime()</tt>
+     */
+    void sweep(long now) {
+        if (state == State.CONNECTING && now - connectDeadline >= 0) {
+            failConnect(new ModbusIOException("Timeout connecting to %s:%d", address.toString(), port));
+        }
+
+        // Requests that have been waiting too long to be sent or re-sent
+        expire(queue.iterator(), now);
+        expire(retryQueue.iterator(), now);
+
+        // Requests that have been waiting too long for a response
+        boolean stalled = false;
+        Iterator<Exchange> sent = inFlight.values().iterator();
+        while (sent.hasNext()) {
+            Exchange exchange = sent.next();
+            if (now - exchange.deadline >= 0) {
+                sent.remove();
+                stalled |= lastReadTimestamp - exchange.sentTimestamp < 0;
+                retryOrFail(exchange, new ModbusIOException("Timeout waiting for response to transaction %d from %s:%d", exchange.transactionID, address.toString(), port));
+            }
+        }
+        if (stalled) {
+            disconnect(new ModbusIOException("No response from %s:%d", address.toString(), port));
+        }
+        else if (state == State.CONNECTED) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Fails the waiting requests that have passed their deadline
+     *
+     * @param it  Requests waiting to be sent
+     * @param now Current <tt>System.nanoTime()</tt>
+     */
+    private void expire(Iterator<Exchange> it, long now) {
+        while (it.hasNext()) {
+            Exchange exchange = it.next();
+            if (now - exchange.deadline >= 0) {
+                it.remove();
+                exchange.future.completeExceptionally(new ModbusIOException("Timeout waiting to send to %s:%d", address.toString(), port));
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and fails everything. Called on the selector thread.
+     *
+     * @param ex Failure to report
+     */
+    void shutdown(ModbusIOException ex) {
+        closed = true;
+        disconnect(ex);
+        Exchange exchange;
+        while ((exchange = retryQueue.poll()) != null) {
+            exchange.future.completeExceptionally(ex);
+        }
+        while ((exchange = queue.poll()) != null) {
+            exchange.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Starts a non-blocking connection to the slave
+     */
+    private void connect() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            state = State.CONNECTING;
+            connectDeadline = System.nanoTime() + timeout * 1000000L;
+            if (channel.connect(new InetSocketAddress(address, port))) {
+                key = channel.register(selectorThread.selector, SelectionKey.OP_READ, this);
+                connected();
+            }
+            else {
+                key = channel.register(selectorThread.selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+        catch (IOException e) {
+            failConnect(new ModbusIOException("Connection failed for %s:%d %s", address.toString(), port, e.getMessage()));
+        }
+    }
+
+    /**
+     * Completes a pending connection
+     *
+     * @throws IOException If the connection was refused
+     */
+    private void finishConnect() throws IOException {
+        try {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                connected();
+            }
+        }
+        catch (IOException e) {
+            failConnect(new ModbusIOException("Connection failed for %s:%d %s", address.toString(), port, e.getMessage()));
+        }
+    }
+
+    /**
+     * Marks the endpoint as connected and starts sending
+     */
+    private void connected() {
+        logger.debug("Connected to {}:{}", address, port);
+        state = State.CONNECTED;
+        lastReadTimestamp = System.nanoTime();
+        dispatch();
+    }
+
+    /**
+     * Counts a failed connection as an attempt for every waiting request, retrying
+     * those that have retries left and failing the rest
+     *
+     * @param ex Failure to report
+     */
+    private void failConnect(ModbusIOException ex) {
+        List<Exchange> waiting = new ArrayList<Exchange>(retryQueue);
+        retryQueue.clear();
+        Exchange exchange;
+        while ((exchange = queue.poll()) != null) {
+            waiting.add(exchange);
+        }
+        for (Exchange failed : waiting) {
+            if (!failed.future.isDone()) {
+                failed.attempts++;
+                retryOrFail(failed, ex);
+            }
+        }
+        disconnect(ex);
+    }
+
+    /**
+     * Moves queued requests onto the wire while there is room in the window
+     */
+    private void dispatch() {
+        long now = System.nanoTime();
+        while (inFlight.size() < window) {
+            Exchange exchange = retryQueue.poll();
+            if (exchange == null) {
+                exchange = queue.poll();
+            }
+            if (exchange == null) {
+                break;
+            }
+            if (exchange.future.isDone()) {
+                continue;
+            }
+            exchange.transactionID = allocateTransactionID();
+            exchange.request.setTransactionID(exchange.transactionID);
+            try {
+                writeQueue.add(ByteBuffer.wrap(selectorThread.codec.encode(exchange.request)));
+            }
+            catch (ModbusIOException e) {
+                exchange.future.completeExceptionally(e);
+                continue;
+            }
+            exchange.attempts++;
+            exchange.sentTimestamp = now;
+            exchange.deadline = now + timeout * 1000000L;
+            inFlight.put(exchange.transactionID, exchange);
+        }
+        try {
+            write();
+        }
+        catch (IOException e) {
+            disconnect(new ModbusIOException("I/O socket exception - failed to write to %s:%d - %s", address.toString(), port, e.getMessage()));
+        }
+    }
+
+    /**
+     * Writes as much of the write queue as the socket will take
+     *
+     * @throws IOException If the write fails
+     */
+    private void write() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            writeQueue.poll();
+        }
+        if (key != null && key.isValid()) {
+            key.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Reads whatever is available and completes any whole responses
+     *
+     * @throws IOException       If the read fails or the slave closes the connection
+     * @throws ModbusIOException If the slave sends a frame that cannot be decoded
+     */
+    private void read() throws IOException, ModbusIOException {
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            throw new IOException("Connection closed by slave");
+        }
+        lastReadTimestamp = System.nanoTime();
+        byte[] buffer = readBuffer.array();
+        while (true) {
+            int length = ModbusTCPCodec.getFrameLength(buffer, 0, readBuffer.position());
+            if (length < 0 || readBuffer.position() < length) {
+                break;
+            }
+            ModbusResponse response = selectorThread.codec.decodeResponse(buffer, length);
+
+            // Drop the frame from the front of the buffer
+            readBuffer.flip();
+            readBuffer.position(length);
+            readBuffer.compact();
+
+            Exchange exchange = inFlight.remove(response.getTransactionID());
+            if (exchange == null) {
+                logger.debug("Discarding response for unknown or expired transaction ID {} from {}:{}", response.getTransactionID(), address, port);
+            }
+            else {
+                exchange.future.complete(response);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Closes the socket and re-queues or fails the requests that were in flight
+     *
+     * @param ex Failure to report
+     */
+    private void disconnect(ModbusIOException ex) {
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close connection to {}:{}", address, port, e);
+            }
+            channel = null;
+        }
+        state = State.DISCONNECTED;
+        readBuffer.clear();
+        writeQueue.clear();
+        for (Exchange exchange : inFlight.values()) {
+            retryOrFail(exchange, ex);
+        }
+        inFlight.clear();
+
+        // Reconnect straight away if there is still work to do
+        if (!closed && (!retryQueue.isEmpty() || !queue.isEmpty())) {
+            selectorThread.schedule(this);
+        }
+    }
+
+    /**
+     * Re-queues the request if it has retries left, otherwise fails it
+     *
+     * @param exchange Request that failed
+     * @param ex       Failure to report if there are no retries left
+     */
+    private void retryOrFail(Exchange exchange, ModbusIOException ex) {
+        if (!closed && exchange.attempts <= retries) {
+            logger.debug("Retrying transaction {} to {}:{} (try: {})", exchange.transactionID, address, port, exchange.attempts);
+            exchange.deadline = System.nanoTime() + timeout * 1000000L;
+            retryQueue.add(exchange);
+        }
+        else {
+            exchange.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Returns the next transaction ID that is not in flight
+     *
+     * @return Transaction ID
+     */
+    private int allocateTransactionID() {
+        do {
+            if (nextTransactionID >= Modbus.MAX_TRANSACTION_ID) {
+                nextTransactionID = Modbus.DEFAULT_TRANSACTION_ID;
+            }
+            nextTransactionID++;
+        } while (inFlight.containsKey(nextTransactionID));
+        return nextTransactionID;
+    }
+
+    /**
+     * A request and the state of its progress
+     */
+    private static class Exchange {
+        final ModbusRequest request;
+        final CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+        int transactionID;
+        int attempts;
+        long sentTimestamp;
+        volatile long deadline;
+
+        Exchange(ModbusRequest request, long deadline) {
+            this.request = request;
+            this.deadline = deadline;
+        }
+    }
+}
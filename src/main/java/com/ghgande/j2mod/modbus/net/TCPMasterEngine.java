@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that drives many Modbus/TCP slave connections from a small number of
+ * selector threads using non-blocking <tt>SocketChannel</tt>s.
+ * <p>
+ * Each slave is represented by a {@link TCPMasterEndpoint} obtained from
+ * {@link #createEndpoint(InetAddress, int)}. Endpoints are spread evenly over the
+ * selector threads and all socket I/O, framing, timeouts and retries for an
+ * endpoint happen on its selector thread, so polling thousands of devices does not
+ * need a thread per device.
+ * <p>
+ * Futures returned by the endpoints are completed on the selector threads so any
+ * lengthy work should be chained using the <tt>*Async</tt> methods of
+ * <tt>CompletableFuture</tt>.
+ */
+public class TCPMasterEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(TCPMasterEngine.class);
+
+    /**
+     * Interval at which the selector threads check for timed out requests (=<tt>50</tt>ms)
+     */
+    static final int SWEEP_INTERVAL = 50;
+
+    private final SelectorThread[] selectors;
+    private final AtomicInteger nextSelector = new AtomicInteger();
+    private volatile boolean running = false;
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+
+    /**
+     * Constructs an engine with one selector thread per processor, up to a maximum of 4
+     */
+    public TCPMasterEngine() {
+        this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Constructs an engine with the given number of selector threads
+     *
+     * @param selectorCount Number of selector threads
+     */
+    public TCPMasterEngine(int selectorCount) {
+        if (selectorCount < 1) {
+            throw new IllegalArgumentException("Selector count must be at least 1");
+        }
+        selectors = new SelectorThread[selectorCount];
+    }
+
+    /**
+     * Opens the selectors and starts the selector threads
+     *
+     * @throws IOException If a selector cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (!running) {
+            for (int i = 0; i < selectors.length; i++) {
+                selectors[i] = new SelectorThread(Selector.open(), String.format("Modbus TCP Master Engine %d", i));
+            }
+            running = true;
+            for (SelectorThread selector : selectors) {
+                selector.thread.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the selector threads, closing every endpoint and failing any
+     * outstanding requests
+     */
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            for (SelectorThread selector : selectors) {
+                selector.selector.wakeup();
+            }
+            for (SelectorThread selector : selectors) {
+                try {
+                    selector.thread.join(timeout);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the selector threads are running
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of selector threads
+     *
+     * @return Number of selector threads
+     */
+    public int getSelectorCount() {
+        return selectors.length;
+    }
+
+    /**
+     * Returns the default timeout given to new endpoints
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the default timeout given to new endpoints
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates an endpoint for the slave at the given address. The connection
+     * is not opened until the first request is sent.
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     *
+     * @return Endpoint to send requests to
+     */
+    public TCPMasterEndpoint createEndpoint(InetAddress address, int port) {
+        if (!running) {
+            throw new IllegalStateException("Engine is not running");
+        }
+        SelectorThread selector = selectors[(nextSelector.getAndIncrement() & Integer.MAX_VALUE) % selectors.length];
+        TCPMasterEndpoint endpoint = new TCPMasterEndpoint(selector, address, port, timeout);
+        selector.endpoints.add(endpoint);
+        return endpoint;
+    }
+
+    /**
+     * A selector and the thread that services it along with the endpoints assigned to it
+     */
+    final class SelectorThread implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final ModbusTCPCodec codec = new ModbusTCPCodec();
+        final Set<TCPMasterEndpoint> endpoints = Collections.newSetFromMap(new ConcurrentHashMap<TCPMasterEndpoint, Boolean>());
+        private final Queue<TCPMasterEndpoint> dirty = new ConcurrentLinkedQueue<TCPMasterEndpoint>();
+
+        SelectorThread(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Asks the selector thread to service the endpoint as soon as possible
+         *
+         * @param endpoint Endpoint with new work
+         */
+        void schedule(TCPMasterEndpoint endpoint) {
+            dirty.add(endpoint);
+            selector.wakeup();
+        }
+
+        /**
+         * Returns true if the engine is still running
+         *
+         * @return True if running
+         */
+        boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public void run() {
+            logger.debug("{} started", thread.getName());
+            long nextSweep = System.nanoTime();
+            while (running) {
+                try {
+                    selector.select(SWEEP_INTERVAL);
+
+                    TCPMasterEndpoint endpoint;
+                    while ((endpoint = dirty.poll()) != null) {
+                        endpoint.service();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((TCPMasterEndpoint)key.attachment()).handle(key);
+                    }
+
+                    long now = System.nanoTime();
+                    if (now - nextSweep >= 0) {
+                        for (TCPMasterEndpoint ep : endpoints) {
+                            ep.sweep(now);
+                        }
+                        nextSweep = now + SWEEP_INTERVAL * 1000000L;
+                    }
+                }
+                catch (Exception e) {
+                    logger.error("Unexpected error in {}", thread.getName(), e);
+                }
+            }
+            for (TCPMasterEndpoint endpoint : endpoints) {
+                endpoint.shutdown(new ModbusIOException("Engine stopped"));
+            }
+            endpoints.clear();
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close selector", e);
+            }
+            logger.debug("{} stopped", thread.getName());
+        }
+    }
+}
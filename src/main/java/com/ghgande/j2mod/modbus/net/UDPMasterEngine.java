@@ -0,0 +1,434 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that sends Modbus/UDP requests to many slaves from a single datagram
+ * socket without waiting for each response before sending the next request.
+ * <p>
+ * Requests can be sent from any thread and are written straight to the socket.
+ * A single reader thread matches each response back to its request using the
+ * address it came from and the transaction ID, so the same transaction ID can
+ * be in use with several slaves at once. Timeouts and retries are driven by a
+ * single timer shared by all engines so no thread waits on an individual
+ * response.
+ * <p>
+ * Futures are completed on the reader thread or the timer thread so any lengthy
+ * work should be chained using the <tt>*Async</tt> methods of <tt>CompletableFuture</tt>.
+ * A request object must not be modified or re-used until its future has completed.
+ */
+public class UDPMasterEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(UDPMasterEngine.class);
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    private final ConcurrentHashMap<PendingKey, PendingRequest> pending = new ConcurrentHashMap<PendingKey, PendingRequest>();
+    private final AtomicInteger nextTransactionID = new AtomicInteger(Modbus.DEFAULT_TRANSACTION_ID);
+    private final ModbusTCPCodec sendCodec = new ModbusTCPCodec();
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(ModbusTCPCodec.MAX_FRAME_LENGTH);
+    private volatile boolean running = false;
+    private volatile DatagramChannel channel;
+    private Thread reader;
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private int retries = 0;
+    private int receiveBufferSize = 65536;
+
+    /**
+     * Creates the timer used for request timeouts
+     *
+     * @return Timer with a single daemon thread
+     */
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Modbus UDP Master Engine Timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Opens the socket on an ephemeral port and starts the reader thread
+     *
+     * @throws IOException If the socket cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (!running) {
+            channel = DatagramChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                channel.bind(new InetSocketAddress(0));
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            running = true;
+            reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readResponses();
+                }
+            }, String.format("Modbus UDP Master Engine [port:%d]", getLocalPort()));
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Closes the socket, stops the reader thread and fails any requests that
+     * are still waiting for a response
+     */
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            try {
+                channel.close();
+                reader.join(timeout);
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close channel", e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ModbusIOException ex = new ModbusIOException("Engine stopped");
+            for (PendingKey key : pending.keySet()) {
+                PendingRequest entry = pending.remove(key);
+                if (entry != null) {
+                    entry.complete(null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the reader thread is running
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the local port of the socket, or -1 if the engine is not running
+     *
+     * @return Local port
+     */
+    public int getLocalPort() {
+        DatagramChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch.socket().getLocalPort();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the time to wait for each response
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time to wait for each response
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of times a request is re-sent after a timeout
+     *
+     * @return Number of retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a request is re-sent after a timeout.
+     * Each retry is given a new transaction ID.
+     *
+     * @param retries Number of retries
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Sets the size of the socket receive buffer. This must be set before the
+     * engine is started.
+     *
+     * @param receiveBufferSize Size in bytes
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if (receiveBufferSize <= 0) {
+            throw new IllegalArgumentException("receiveBufferSize must be > 0: " + receiveBufferSize);
+        }
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Returns the number of requests currently awaiting a response
+     *
+     * @return Number of requests in flight
+     */
+    public int getInFlightCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the request to the slave without waiting for the response
+     *
+     * @param address Address of the slave
+     * @param port    Port of the slave
+     * @param request Request to send
+     *
+     * @return Future that is completed with the response or a <tt>ModbusIOException</tt>
+     */
+    public CompletableFuture<ModbusResponse> execute(InetAddress address, int port, ModbusRequest request) {
+        PendingRequest entry = new PendingRequest(new InetSocketAddress(address, port), request, retries + 1);
+        if (!running) {
+            entry.future.completeExceptionally(new ModbusIOException("Engine is not running"));
+        }
+        else {
+            send(entry);
+        }
+        return entry.future;
+    }
+
+    /**
+     * Registers the request under a free transaction ID, arms its timeout and
+     * writes it to the socket
+     *
+     * @param entry Request to send
+     */
+    private void send(final PendingRequest entry) {
+        PendingKey key = register(entry);
+        entry.attempts++;
+        entry.timeoutTask = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expire(entry);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        try {
+            synchronized (sendBuffer) {
+                sendBuffer.clear();
+                sendCodec.encode(entry.request, sendBuffer);
+                sendBuffer.flip();
+                channel.send(sendBuffer, entry.address);
+            }
+        }
+        catch (ModbusIOException e) {
+            if (pending.remove(key, entry)) {
+                entry.complete(null, e);
+            }
+        }
+        catch (IOException e) {
+            if (pending.remove(key, entry)) {
+                entry.complete(null, new ModbusIOException("Cannot send request to %s - %s", entry.address, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Finds a transaction ID that is not in use with the slave and registers the
+     * entry against it
+     *
+     * @param entry Entry to register
+     *
+     * @return Key the entry was registered with
+     */
+    private PendingKey register(PendingRequest entry) {
+        while (true) {
+            int id = nextTransactionID.getAndIncrement();
+            if (id >= Modbus.MAX_TRANSACTION_ID) {
+                nextTransactionID.set(Modbus.DEFAULT_TRANSACTION_ID);
+                id = nextTransactionID.getAndIncrement();
+            }
+            PendingKey key = new PendingKey(entry.address, id);
+            if (pending.putIfAbsent(key, entry) == null) {
+                entry.key = key;
+                entry.request.setTransactionID(id);
+                return key;
+            }
+        }
+    }
+
+    /**
+     * Re-sends or fails a request that has run out of time
+     *
+     * @param entry Request that has timed out
+     */
+    private void expire(PendingRequest entry) {
+        if (!pending.remove(entry.key, entry)) {
+            return;
+        }
+        if (running && entry.attempts < entry.tries) {
+            logger.debug("Timeout waiting for transaction {} from {} (try: {}) - retrying", entry.key.transactionID, entry.address, entry.attempts);
+            send(entry);
+        }
+        else {
+            ModbusIOException timeoutException = new ModbusIOException("Timeout waiting for response to transaction %d from %s (tried %d times)", entry.key.transactionID, entry.address, entry.attempts);
+            timeoutException.setTimeout(true);
+            entry.complete(null, timeoutException);
+        }
+    }
+
+    /**
+     * Reads responses from the socket until the engine is stopped
+     */
+    private void readResponses() {
+        ModbusTCPCodec codec = new ModbusTCPCodec();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ModbusTCPCodec.MAX_FRAME_LENGTH);
+        byte[] frame = new byte[ModbusTCPCodec.MAX_FRAME_LENGTH];
+        logger.debug("UDP master engine reader started on port {}", getLocalPort());
+        while (running) {
+            SocketAddress sender = null;
+            try {
+                buffer.clear();
+                sender = channel.receive(buffer);
+                buffer.flip();
+                int length = buffer.remaining();
+                buffer.get(frame, 0, length);
+                int frameLength = ModbusTCPCodec.getFrameLength(frame, 0, length);
+                if (frameLength < 0 || frameLength > length) {
+                    logger.debug("Discarding incomplete datagram of {} bytes from {}", length, sender);
+                    continue;
+                }
+                // Decode before claiming the request so that a bad frame leaves it to time out or be retried
+                ModbusResponse response = codec.decodeResponse(frame, frameLength);
+                PendingRequest entry = pending.remove(new PendingKey(sender, response.getTransactionID()));
+                if (entry == null) {
+                    logger.debug("Discarding response from {} for unknown or expired transaction ID {}", sender, response.getTransactionID());
+                }
+                else {
+                    entry.complete(response, null);
+                }
+            }
+            catch (ClosedChannelException e) {
+                break;
+            }
+            catch (ModbusIOException e) {
+                logger.debug("Invalid response from {} - {}", sender, e.getMessage());
+            }
+            catch (IOException e) {
+                if (running) {
+                    logger.debug("Problem reading UDP socket - {}", e.getMessage());
+                }
+            }
+        }
+        logger.debug("UDP master engine reader stopped");
+    }
+
+    /**
+     * Identifies a request by the slave it was sent to and its transaction ID
+     */
+    private static final class PendingKey {
+        final SocketAddress address;
+        final int transactionID;
+
+        PendingKey(SocketAddress address, int transactionID) {
+            this.address = address;
+            this.transactionID = transactionID;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PendingKey)) {
+                return false;
+            }
+            PendingKey other = (PendingKey)obj;
+            return transactionID == other.transactionID && address.equals(other.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * address.hashCode() + transactionID;
+        }
+    }
+
+    /**
+     * A request that is waiting for its response
+     */
+    private static class PendingRequest {
+        final InetSocketAddress address;
+        final ModbusRequest request;
+        final int tries;
+        final CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+        volatile PendingKey key;
+        volatile int attempts;
+        volatile ScheduledFuture<?> timeoutTask;
+
+        PendingRequest(InetSocketAddress address, ModbusRequest request, int tries) {
+            this.address = address;
+            this.request = request;
+            this.tries = tries;
+        }
+
+        /**
+         * Completes the future and disarms the timeout
+         *
+         * @param response Response or null if failed
+         * @param ex       Failure or null if successful
+         */
+        void complete(ModbusResponse response, Throwable ex) {
+            ScheduledFuture<?> task = timeoutTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            if (ex == null) {
+                future.complete(response);
+            }
+            else {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
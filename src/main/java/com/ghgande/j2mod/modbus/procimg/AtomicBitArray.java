@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size table of bits, e.g. coils, that many threads can read and write
+ * without taking a monitor.
+ * <p>
+ * Bits are packed 64 to a <tt>long</tt> of an <tt>AtomicLongArray</tt>. A single
+ * bit is read with one volatile read. Writes take a striped sequence lock
+ * covering 512 bits and range reads are optimistic, in the same way as
+ * {@link AtomicRegisterArray}, so a range read never sees part of a range write.
+ */
+public final class AtomicBitArray {
+
+    private static final int STRIPE_SHIFT = 9;
+
+    private final int length;
+    private final AtomicLongArray words;
+    private final StripedSequenceLock lock;
+
+    /**
+     * Creates a table with all the bits clear
+     *
+     * @param length Number of bits
+     */
+    public AtomicBitArray(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Length cannot be negative: " + length);
+        }
+        this.length = length;
+        words = new AtomicLongArray((length + 63) >>> 6);
+        lock = new StripedSequenceLock((length + (1 << STRIPE_SHIFT) - 1) >>> STRIPE_SHIFT);
+    }
+
+    /**
+     * Returns the number of bits
+     *
+     * @return Length of the table
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the state of a bit
+     *
+     * @param index Index of the bit
+     * @return True if set
+     */
+    public boolean get(int index) {
+        checkRange(index, 1);
+        return bit(index);
+    }
+
+    /**
+     * Sets the state of a bit
+     *
+     * @param index Index of the bit
+     * @param value True to set
+     */
+    public void set(int index, boolean value) {
+        checkRange(index, 1);
+        int stripe = index >>> STRIPE_SHIFT;
+        lock.lock(stripe, stripe);
+        try {
+            store(index, value);
+        }
+        finally {
+            lock.unlock(stripe, stripe);
+        }
+    }
+
+    /**
+     * Packs a consistent snapshot of a range of bits into a buffer, the first
+     * bit in the least significant bit of the first byte as used by Modbus
+     *
+     * @param ref    Index of the first bit
+     * @param count  Number of bits
+     * @param dest   Buffer to pack into
+     * @param offset Offset in the buffer of the first byte
+     */
+    public void read(int ref, int count, byte[] dest, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        for (int attempt = 0; attempt < StripedSequenceLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.beginRead(first, last);
+            if (stamp >= 0) {
+                pack(ref, count, dest, offset);
+                if (lock.validate(first, last, stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        lock.lock(first, last);
+        try {
+            pack(ref, count, dest, offset);
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    /**
+     * Sets a range of bits from a packed buffer, the first bit in the least
+     * significant bit of the first byte as used by Modbus. Range reads see
+     * either none or all of the new values.
+     *
+     * @param ref    Index of the first bit
+     * @param count  Number of bits
+     * @param src    Buffer to unpack from
+     * @param offset Offset in the buffer of the first byte
+     */
+    public void write(int ref, int count, byte[] src, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        lock.lock(first, last);
+        try {
+            for (int bit = 0; bit < count; bit++) {
+                store(ref + bit, (src[offset + (bit >>> 3)] & (1 << (bit & 7))) != 0);
+            }
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    private boolean bit(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Stores a bit, the caller must hold its stripe
+     *
+     * @param index Index of the bit
+     * @param value True to set
+     */
+    private void store(int index, boolean value) {
+        int slot = index >>> 6;
+        long word = words.get(slot);
+        words.set(slot, value ? word | (1L << index) : word & ~(1L << index));
+    }
+
+    private void pack(int ref, int count, byte[] dest, int offset) {
+        int byteCount = (count + 7) >>> 3;
+        for (int i = 0; i < byteCount; i++) {
+            int value = 0;
+            int first = i << 3;
+            int last = Math.min(count, first + 8);
+            for (int bit = first; bit < last; bit++) {
+                if (bit(ref + bit)) {
+                    value |= 1 << (bit - first);
+                }
+            }
+            dest[offset + i] = (byte)value;
+        }
+    }
+
+    private void checkRange(int ref, int count) {
+        if (ref < 0 || count < 0 || ref + count > length) {
+            throw new IndexOutOfBoundsException(String.format("Range %d+%d is outside a table of %d bits", ref, count, length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AtomicBitArray[%d]", length);
+    }
+}
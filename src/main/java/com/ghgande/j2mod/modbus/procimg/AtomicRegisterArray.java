@@ -0,0 +1,262 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed size table of 16 bit registers that many threads can read and write
+ * without taking a monitor.
+ * <p>
+ * Registers are packed two to an <tt>int</tt> of an <tt>AtomicIntegerArray</tt>,
+ * so a table costs two bytes per register. A single register is read with one
+ * volatile read. Writes take a striped sequence lock covering 64 registers, so
+ * writers only wait for writers of the same stripes. Range reads are
+ * optimistic: they copy the values and retry if a writer touched any of their
+ * stripes meanwhile, so a range read never sees part of a range write, e.g.
+ * half of a 32 bit value. Only a read that keeps being overtaken by writers
+ * locks its stripes and so holds up writers.
+ */
+public final class AtomicRegisterArray {
+
+    private static final int STRIPE_SHIFT = 6;
+
+    private final int length;
+    private final AtomicIntegerArray values;
+    private final StripedSequenceLock lock;
+
+    /**
+     * Creates a table with all the registers set to zero
+     *
+     * @param length Number of registers
+     */
+    public AtomicRegisterArray(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Length cannot be negative: " + length);
+        }
+        this.length = length;
+        values = new AtomicIntegerArray((length + 1) >>> 1);
+        lock = new StripedSequenceLock((length + (1 << STRIPE_SHIFT) - 1) >>> STRIPE_SHIFT);
+    }
+
+    /**
+     * Returns the number of registers
+     *
+     * @return Length of the table
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the value of a register
+     *
+     * @param index Index of the register
+     * @return Unsigned value between 0 and 65535
+     */
+    public int get(int index) {
+        checkRange(index, 1);
+        return value(index);
+    }
+
+    /**
+     * Sets the value of a register
+     *
+     * @param index Index of the register
+     * @param value Value, only the low 16 bits are used
+     */
+    public void set(int index, int value) {
+        checkRange(index, 1);
+        int stripe = index >>> STRIPE_SHIFT;
+        lock.lock(stripe, stripe);
+        try {
+            store(index, value);
+        }
+        finally {
+            lock.unlock(stripe, stripe);
+        }
+    }
+
+    /**
+     * Copies a consistent snapshot of a range of registers into an array
+     *
+     * @param ref    Index of the first register
+     * @param count  Number of registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first register
+     */
+    public void read(int ref, int count, short[] dest, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        for (int attempt = 0; attempt < StripedSequenceLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.beginRead(first, last);
+            if (stamp >= 0) {
+                for (int i = 0; i < count; i++) {
+                    dest[offset + i] = (short)value(ref + i);
+                }
+                if (lock.validate(first, last, stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        lock.lock(first, last);
+        try {
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = (short)value(ref + i);
+            }
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    /**
+     * Copies a consistent snapshot of a range of registers into a buffer,
+     * high byte first
+     *
+     * @param ref    Index of the first register
+     * @param count  Number of registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     */
+    public void read(int ref, int count, byte[] dest, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        for (int attempt = 0; attempt < StripedSequenceLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.beginRead(first, last);
+            if (stamp >= 0) {
+                copyToBytes(ref, count, dest, offset);
+                if (lock.validate(first, last, stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        lock.lock(first, last);
+        try {
+            copyToBytes(ref, count, dest, offset);
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    /**
+     * Sets a range of registers from an array. Range reads see either none or
+     * all of the new values.
+     *
+     * @param ref    Index of the first register
+     * @param count  Number of registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first register
+     */
+    public void write(int ref, int count, short[] src, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        lock.lock(first, last);
+        try {
+            for (int i = 0; i < count; i++) {
+                store(ref + i, src[offset + i]);
+            }
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    /**
+     * Sets a range of registers from a buffer, high byte first. Range reads see
+     * either none or all of the new values.
+     *
+     * @param ref    Index of the first register
+     * @param count  Number of registers
+     * @param src    Buffer to copy from
+     * @param offset Offset in the buffer of the first byte
+     */
+    public void write(int ref, int count, byte[] src, int offset) {
+        checkRange(ref, count);
+        if (count == 0) {
+            return;
+        }
+        int first = ref >>> STRIPE_SHIFT;
+        int last = (ref + count - 1) >>> STRIPE_SHIFT;
+        lock.lock(first, last);
+        try {
+            for (int i = 0; i < count; i++) {
+                store(ref + i, (src[offset] << 8) | (src[offset + 1] & 0xFF));
+                offset += 2;
+            }
+        }
+        finally {
+            lock.unlock(first, last);
+        }
+    }
+
+    private int value(int index) {
+        int pair = values.get(index >>> 1);
+        return ((index & 1) == 0 ? pair >>> 16 : pair) & 0xFFFF;
+    }
+
+    /**
+     * Stores a register, the caller must hold its stripe
+     *
+     * @param index Index of the register
+     * @param value Value, only the low 16 bits are used
+     */
+    private void store(int index, int value) {
+        int slot = index >>> 1;
+        int pair = values.get(slot);
+        if ((index & 1) == 0) {
+            pair = (pair & 0xFFFF) | (value << 16);
+        }
+        else {
+            pair = (pair & 0xFFFF0000) | (value & 0xFFFF);
+        }
+        values.set(slot, pair);
+    }
+
+    private void copyToBytes(int ref, int count, byte[] dest, int offset) {
+        for (int i = 0; i < count; i++) {
+            int value = value(ref + i);
+            dest[offset++] = (byte)(value >> 8);
+            dest[offset++] = (byte)value;
+        }
+    }
+
+    private void checkRange(int ref, int count) {
+        if (ref < 0 || count < 0 || ref + count > length) {
+            throw new IndexOutOfBoundsException(String.format("Range %d+%d is outside a table of %d registers", ref, count, length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AtomicRegisterArray[%d]", length);
+    }
+}
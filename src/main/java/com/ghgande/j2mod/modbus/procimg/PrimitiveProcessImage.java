@@ -0,0 +1,648 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+/**
+ * Class implementing a process image whose coils, discrete inputs, input
+ * registers and holding registers are held in primitive arrays.
+ * <p>
+ * Registers are stored in an {@link AtomicRegisterArray} and bits in an
+ * {@link AtomicBitArray}, so a full map of 65536 registers costs 128KB rather
+ * than an object per register, and no monitor is taken to read or write them.
+ * The slave copies ranges straight between these arrays and the message
+ * buffers using the bulk methods, such as {@link #readRegisters(int, int, byte[], int)},
+ * without creating any objects.
+ * <p>
+ * For compatibility with the rest of the <tt>ProcessImage</tt> API, methods such
+ * as {@link #getRegister(int)} return lightweight views that read and write the
+ * arrays. The views are only created when asked for. Setting or adding a
+ * register, input register, coil or discrete input at a reference copies its
+ * current value into the image. The image has a fixed size so objects cannot be
+ * appended or removed. Files and FIFOs are held as in <tt>SimpleProcessImage</tt>.
+ * <p>
+ * Individual values are read and written atomically. The bulk methods read
+ * consistent snapshots of ranges and write ranges atomically, so a request
+ * never sees half of a value spread over several registers. Range reads are
+ * optimistic and only lock the stripes they cover, holding up writers of those
+ * stripes, if writers keep changing them during several attempts in a row.
+ */
+public class PrimitiveProcessImage extends SimpleProcessImage {
+
+    private final AtomicBitArray coils;
+    private final AtomicBitArray discreteInputs;
+    private final AtomicRegisterArray inputRegisterValues;
+    private final AtomicRegisterArray registerValues;
+
+    /**
+     * Constructs a new <tt>PrimitiveProcessImage</tt> with all values set to zero
+     *
+     * @param coilCount          Number of coils
+     * @param discreteInputCount Number of discrete inputs
+     * @param inputRegisterCount Number of input registers
+     * @param registerCount      Number of holding registers
+     */
+    public PrimitiveProcessImage(int coilCount, int discreteInputCount, int inputRegisterCount, int registerCount) {
+        this(0, coilCount, discreteInputCount, inputRegisterCount, registerCount);
+    }
+
+    /**
+     * Constructs a new <tt>PrimitiveProcessImage</tt> with all values set to zero
+     *
+     * @param unit               Unit ID of this image
+     * @param coilCount          Number of coils
+     * @param discreteInputCount Number of discrete inputs
+     * @param inputRegisterCount Number of input registers
+     * @param registerCount      Number of holding registers
+     */
+    public PrimitiveProcessImage(int unit, int coilCount, int discreteInputCount, int inputRegisterCount, int registerCount) {
+        super(unit);
+        checkSize(coilCount);
+        checkSize(discreteInputCount);
+        checkSize(inputRegisterCount);
+        checkSize(registerCount);
+        coils = new AtomicBitArray(coilCount);
+        discreteInputs = new AtomicBitArray(discreteInputCount);
+        inputRegisterValues = new AtomicRegisterArray(inputRegisterCount);
+        registerValues = new AtomicRegisterArray(registerCount);
+    }
+
+    // ------------------------------------------------------------------------
+    // Single values
+
+    /**
+     * Returns the state of a coil
+     *
+     * @param ref Reference of the coil
+     * @return True if set
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public boolean getCoil(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, coils.length());
+        return coils.get(ref);
+    }
+
+    /**
+     * Sets the state of a coil
+     *
+     * @param ref   Reference of the coil
+     * @param value True to set
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public void setCoil(int ref, boolean value) throws IllegalAddressException {
+        checkRange(ref, 1, coils.length());
+        coils.set(ref, value);
+    }
+
+    /**
+     * Returns the state of a discrete input
+     *
+     * @param ref Reference of the discrete input
+     * @return True if set
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public boolean getDiscreteInput(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, discreteInputs.length());
+        return discreteInputs.get(ref);
+    }
+
+    /**
+     * Sets the state of a discrete input
+     *
+     * @param ref   Reference of the discrete input
+     * @param value True to set
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public void setDiscreteInput(int ref, boolean value) throws IllegalAddressException {
+        checkRange(ref, 1, discreteInputs.length());
+        discreteInputs.set(ref, value);
+    }
+
+    /**
+     * Returns the value of an input register as an unsigned short
+     *
+     * @param ref Reference of the input register
+     * @return Value between 0 and 65535
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public int getInputRegisterValue(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisterValues.length());
+        return inputRegisterValues.get(ref);
+    }
+
+    /**
+     * Sets the value of an input register
+     *
+     * @param ref   Reference of the input register
+     * @param value Value, only the low 16 bits are used
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public void setInputRegisterValue(int ref, int value) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisterValues.length());
+        inputRegisterValues.set(ref, value);
+    }
+
+    /**
+     * Returns the value of a holding register as an unsigned short
+     *
+     * @param ref Reference of the register
+     * @return Value between 0 and 65535
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public int getRegisterValue(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, registerValues.length());
+        return registerValues.get(ref);
+    }
+
+    /**
+     * Sets the value of a holding register
+     *
+     * @param ref   Reference of the register
+     * @param value Value, only the low 16 bits are used
+     * @throws IllegalAddressException If the reference is out of range
+     */
+    public void setRegisterValue(int ref, int value) throws IllegalAddressException {
+        checkRange(ref, 1, registerValues.length());
+        registerValues.set(ref, value);
+    }
+
+    // ------------------------------------------------------------------------
+    // Bulk access
+
+    /**
+     * Copies a range of holding registers into a buffer, high byte first
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, registerValues.length());
+        registerValues.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Copies a range of holding registers into an array
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, registerValues.length());
+        registerValues.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Sets a range of holding registers from a buffer, high byte first
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Buffer to copy from
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void writeRegisters(int ref, int count, byte[] src, int offset) throws IllegalAddressException {
+        checkRange(ref, count, registerValues.length());
+        registerValues.write(ref, count, src, offset);
+    }
+
+    /**
+     * Sets a range of holding registers from an array
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void writeRegisters(int ref, int count, short[] src, int offset) throws IllegalAddressException {
+        checkRange(ref, count, registerValues.length());
+        registerValues.write(ref, count, src, offset);
+    }
+
+    /**
+     * Copies a range of input registers into a buffer, high byte first
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readInputRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, inputRegisterValues.length());
+        inputRegisterValues.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Copies a range of input registers into an array
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first input register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readInputRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, inputRegisterValues.length());
+        inputRegisterValues.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Sets a range of input registers from an array
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first input register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void writeInputRegisters(int ref, int count, short[] src, int offset) throws IllegalAddressException {
+        checkRange(ref, count, inputRegisterValues.length());
+        inputRegisterValues.write(ref, count, src, offset);
+    }
+
+    /**
+     * Packs a range of coils into a buffer, the first coil in the least
+     * significant bit of the first byte as used by Modbus
+     *
+     * @param ref    Reference of the first coil
+     * @param count  Number of coils
+     * @param dest   Buffer to pack into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    public void readCoils(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, coils.length());
+        coils.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Sets a range of coils from a packed buffer, the first coil in the least
+     * significant bit of the first byte as used by Modbus
+     *
+     * @param ref    Reference of the first coil
+     * @param count  Number of coils
+     * @param src    Buffer to unpack from
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    public void writeCoils(int ref, int count, byte[] src, int offset) throws IllegalAddressException {
+        checkRange(ref, count, coils.length());
+        coils.write(ref, count, src, offset);
+    }
+
+    /**
+     * Packs a range of discrete inputs into a buffer, the first input in the
+     * least significant bit of the first byte as used by Modbus
+     *
+     * @param ref    Reference of the first discrete input
+     * @param count  Number of discrete inputs
+     * @param dest   Buffer to pack into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    public void readDiscreteInputs(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        checkRange(ref, count, discreteInputs.length());
+        discreteInputs.read(ref, count, dest, offset);
+    }
+
+    /**
+     * Sets a range of discrete inputs from a packed buffer, the first input in
+     * the least significant bit of the first byte as used by Modbus
+     *
+     * @param ref    Reference of the first discrete input
+     * @param count  Number of discrete inputs
+     * @param src    Buffer to unpack from
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    public void writeDiscreteInputs(int ref, int count, byte[] src, int offset) throws IllegalAddressException {
+        checkRange(ref, count, discreteInputs.length());
+        discreteInputs.write(ref, count, src, offset);
+    }
+
+    // ------------------------------------------------------------------------
+    // ProcessImage
+
+    @Override
+    public DigitalOut[] getDigitalOutRange(int ref, int count) {
+        checkRange(ref, count, coils.length());
+        DigitalOut[] douts = new DigitalOut[count];
+        for (int i = 0; i < count; i++) {
+            douts[i] = new CoilView(ref + i);
+        }
+        return douts;
+    }
+
+    @Override
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, coils.length());
+        return new CoilView(ref);
+    }
+
+    @Override
+    public int getDigitalOutCount() {
+        return coils.length();
+    }
+
+    @Override
+    public DigitalIn[] getDigitalInRange(int ref, int count) {
+        checkRange(ref, count, discreteInputs.length());
+        DigitalIn[] dins = new DigitalIn[count];
+        for (int i = 0; i < count; i++) {
+            dins[i] = new DiscreteInputView(ref + i);
+        }
+        return dins;
+    }
+
+    @Override
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, discreteInputs.length());
+        return new DiscreteInputView(ref);
+    }
+
+    @Override
+    public int getDigitalInCount() {
+        return discreteInputs.length();
+    }
+
+    @Override
+    public InputRegister[] getInputRegisterRange(int ref, int count) {
+        checkRange(ref, count, inputRegisterValues.length());
+        InputRegister[] iregs = new InputRegister[count];
+        for (int i = 0; i < count; i++) {
+            iregs[i] = new RegisterView(inputRegisterValues, ref + i);
+        }
+        return iregs;
+    }
+
+    @Override
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisterValues.length());
+        return new RegisterView(inputRegisterValues, ref);
+    }
+
+    @Override
+    public int getInputRegisterCount() {
+        return inputRegisterValues.length();
+    }
+
+    @Override
+    public Register[] getRegisterRange(int ref, int count) {
+        checkRange(ref, count, registerValues.length());
+        Register[] regs = new Register[count];
+        for (int i = 0; i < count; i++) {
+            regs[i] = new RegisterView(registerValues, ref + i);
+        }
+        return regs;
+    }
+
+    @Override
+    public Register getRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, registerValues.length());
+        return new RegisterView(registerValues, ref);
+    }
+
+    @Override
+    public int getRegisterCount() {
+        return registerValues.length();
+    }
+
+    // ------------------------------------------------------------------------
+    // ProcessImageImplementation
+
+    @Override
+    public void setDigitalOut(int ref, DigitalOut out) throws IllegalAddressException {
+        if (!isLocked()) {
+            setCoil(ref, out != null && out.isSet());
+        }
+    }
+
+    @Override
+    public void addDigitalOut(DigitalOut out) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void addDigitalOut(int ref, DigitalOut dout) {
+        setDigitalOut(ref, dout);
+    }
+
+    @Override
+    public void removeDigitalOut(DigitalOut out) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void setDigitalIn(int ref, DigitalIn di) throws IllegalAddressException {
+        if (!isLocked()) {
+            setDiscreteInput(ref, di != null && di.isSet());
+        }
+    }
+
+    @Override
+    public void addDigitalIn(DigitalIn di) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void addDigitalIn(int ref, DigitalIn di) {
+        setDigitalIn(ref, di);
+    }
+
+    @Override
+    public void removeDigitalIn(DigitalIn di) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void setInputRegister(int ref, InputRegister reg) throws IllegalAddressException {
+        if (!isLocked()) {
+            setInputRegisterValue(ref, reg == null ? 0 : reg.getValue());
+        }
+    }
+
+    @Override
+    public void addInputRegister(InputRegister reg) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void addInputRegister(int ref, InputRegister reg) {
+        setInputRegister(ref, reg);
+    }
+
+    @Override
+    public void removeInputRegister(InputRegister reg) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void setRegister(int ref, Register reg) throws IllegalAddressException {
+        if (!isLocked()) {
+            setRegisterValue(ref, reg == null ? 0 : reg.getValue());
+        }
+    }
+
+    @Override
+    public void addRegister(Register reg) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    @Override
+    public void addRegister(int ref, Register reg) {
+        setRegister(ref, reg);
+    }
+
+    @Override
+    public void removeRegister(Register reg) {
+        throw new UnsupportedOperationException("The size of a PrimitiveProcessImage is fixed");
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+
+    /**
+     * Checks the size of a table is within the Modbus address space
+     *
+     * @param size Number of entries
+     */
+    private static void checkSize(int size) {
+        if (size < 0 || size > 65536) {
+            throw new IllegalArgumentException("Size must be between 0 and 65536: " + size);
+        }
+    }
+
+    /**
+     * Checks that a range of references lies within a table
+     *
+     * @param ref   First reference
+     * @param count Number of entries
+     * @param size  Size of the table
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    private static void checkRange(int ref, int count, int size) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }
+
+    /**
+     * View of an entry in one of the register arrays
+     */
+    private static final class RegisterView implements Register {
+        private final AtomicRegisterArray values;
+        private final int ref;
+
+        private RegisterView(AtomicRegisterArray values, int ref) {
+            this.values = values;
+            this.ref = ref;
+        }
+
+        @Override
+        public int getValue() {
+            return values.get(ref);
+        }
+
+        @Override
+        public int toUnsignedShort() {
+            return values.get(ref);
+        }
+
+        @Override
+        public short toShort() {
+            return (short)values.get(ref);
+        }
+
+        @Override
+        public byte[] toBytes() {
+            int value = values.get(ref);
+            return new byte[]{(byte)(value >> 8), (byte)value};
+        }
+
+        @Override
+        public void setValue(int v) {
+            values.set(ref, v);
+        }
+
+        @Override
+        public void setValue(short s) {
+            values.set(ref, s);
+        }
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            values.set(ref, (bytes[0] << 8) | (bytes[1] & 0xFF));
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getValue());
+        }
+    }
+
+    /**
+     * View of a coil
+     */
+    private final class CoilView implements DigitalOut {
+        private final int ref;
+
+        private CoilView(int ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean isSet() {
+            return coils.get(ref);
+        }
+
+        @Override
+        public void set(boolean b) {
+            coils.set(ref, b);
+        }
+    }
+
+    /**
+     * View of a discrete input
+     */
+    private final class DiscreteInputView implements DigitalIn {
+        private final int ref;
+
+        private DiscreteInputView(int ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean isSet() {
+            return discreteInputs.get(ref);
+        }
+    }
+}
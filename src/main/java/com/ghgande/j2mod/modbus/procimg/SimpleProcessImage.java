@@ -26,12 +26,21 @@ import java.util.Vector;
  * objects. Holes may be created by adding a object with a reference after the
  * last object reference of that type.
  *
+ * <p>
+ * Ranges of holding and input registers can be read as consistent snapshots
+ * and holding registers written as one change using the {@link SnapshotProcessImage}
+ * methods such as {@link #readRegisters(int, int, byte[], int)}, which the
+ * request handlers for function codes 3, 4, 16 and 23 use. The guarantee only
+ * covers ranges written by those methods. Values set one register at a time,
+ * by function codes 6 and 22 or directly on a <tt>Register</tt>, are not part
+ * of any change.
+ *
  * @author Dieter Wimberger
  * @author Julie Added support for files of records.
  * @author Steve O'Hara (4NG)
  * @version 2.0 (March 2016)
  */
-public class SimpleProcessImage implements ProcessImageImplementation {
+public class SimpleProcessImage implements ProcessImageImplementation, SnapshotProcessImage {
 
     // instance attributes
     protected final Vector<DigitalIn> digitalIns = new Vector<DigitalIn>();
@@ -42,6 +51,8 @@ public class SimpleProcessImage implements ProcessImageImplementation {
     protected final Vector<FIFO> fifos = new Vector<FIFO>();
     protected boolean locked = false;
     protected int unitID = 0;
+    private final VersionedLock registerLock = new VersionedLock();
+    private final VersionedLock inputRegisterLock = new VersionedLock();
 
     /**
      * Constructs a new <tt>SimpleProcessImage</tt> instance.
@@ -232,6 +243,221 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         return registers.size();
     }
 
+    /**
+     * Copies a consistent snapshot of a range of holding registers into a
+     * buffer, high byte first. The values are never a mix of before and after
+     * a call to {@link #writeRegisters(int, int, short[], int)}, and readers
+     * only hold up writers if they keep colliding with changes.
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        for (int attempt = 0; attempt < VersionedLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = registerLock.beginRead();
+            if (stamp >= 0) {
+                copyToBytes(getRegisterRange(ref, count), dest, offset);
+                if (registerLock.validate(stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        registerLock.lockRead();
+        try {
+            copyToBytes(getRegisterRange(ref, count), dest, offset);
+        }
+        finally {
+            registerLock.unlockRead();
+        }
+    }
+
+    /**
+     * Copies a consistent snapshot of a range of holding registers into an
+     * array. The values are never a mix of before and after a call to
+     * {@link #writeRegisters(int, int, short[], int)}, and readers only
+     * hold up writers if they keep colliding with changes.
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException {
+        for (int attempt = 0; attempt < VersionedLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = registerLock.beginRead();
+            if (stamp >= 0) {
+                copyToShorts(getRegisterRange(ref, count), dest, offset);
+                if (registerLock.validate(stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        registerLock.lockRead();
+        try {
+            copyToShorts(getRegisterRange(ref, count), dest, offset);
+        }
+        finally {
+            registerLock.unlockRead();
+        }
+    }
+
+    /**
+     * Sets a range of holding registers from a buffer, high byte first, as one
+     * change that snapshot readers see all or none of. Values set directly on
+     * the <tt>Register</tt> objects are not part of any change.
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Buffer to copy from
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void writeRegisters(int ref, int count, byte[] src, int offset) throws IllegalAddressException {
+        registerLock.lockWrite();
+        try {
+            Register[] regs = getRegisterRange(ref, count);
+            for (Register reg : regs) {
+                reg.setValue(((src[offset] & 0xFF) << 8) | (src[offset + 1] & 0xFF));
+                offset += 2;
+            }
+        }
+        finally {
+            registerLock.unlockWrite();
+        }
+    }
+
+    /**
+     * Sets a range of holding registers from an array as one change that
+     * snapshot readers see all or none of, e.g. to update a 32 or 64 bit value.
+     * Values set directly on the <tt>Register</tt> objects are not part of any
+     * change.
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void writeRegisters(int ref, int count, short[] src, int offset) throws IllegalAddressException {
+        registerLock.lockWrite();
+        try {
+            Register[] regs = getRegisterRange(ref, count);
+            for (int i = 0; i < regs.length; i++) {
+                regs[i].setValue(src[offset + i] & 0xFFFF);
+            }
+        }
+        finally {
+            registerLock.unlockWrite();
+        }
+    }
+
+    /**
+     * Copies a consistent snapshot of a range of input registers into a
+     * buffer, high byte first. The values are never a mix of before and after
+     * a call to {@link #writeInputRegisters(int, int, short[], int)}, and
+     * readers only hold up writers if they keep colliding with changes.
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readInputRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException {
+        for (int attempt = 0; attempt < VersionedLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = inputRegisterLock.beginRead();
+            if (stamp >= 0) {
+                copyToBytes(getInputRegisterRange(ref, count), dest, offset);
+                if (inputRegisterLock.validate(stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        inputRegisterLock.lockRead();
+        try {
+            copyToBytes(getInputRegisterRange(ref, count), dest, offset);
+        }
+        finally {
+            inputRegisterLock.unlockRead();
+        }
+    }
+
+    /**
+     * Copies a consistent snapshot of a range of input registers into an
+     * array. The values are never a mix of before and after a call to
+     * {@link #writeInputRegisters(int, int, short[], int)}, and readers only
+     * hold up writers if they keep colliding with changes.
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first input register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    @Override
+    public void readInputRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException {
+        for (int attempt = 0; attempt < VersionedLock.OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = inputRegisterLock.beginRead();
+            if (stamp >= 0) {
+                copyToShorts(getInputRegisterRange(ref, count), dest, offset);
+                if (inputRegisterLock.validate(stamp)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        inputRegisterLock.lockRead();
+        try {
+            copyToShorts(getInputRegisterRange(ref, count), dest, offset);
+        }
+        finally {
+            inputRegisterLock.unlockRead();
+        }
+    }
+
+    /**
+     * Sets a range of input registers from an array as one change that
+     * snapshot readers see all or none of. This is for the application that
+     * owns the image, input registers cannot be written by Modbus requests.
+     * The input registers must also be writable <tt>Register</tt> objects, as
+     * <tt>SimpleInputRegister</tt> is.
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first input register
+     * @throws IllegalAddressException If the range is out of bounds or an input register is not writable
+     */
+    public void writeInputRegisters(int ref, int count, short[] src, int offset) throws IllegalAddressException {
+        inputRegisterLock.lockWrite();
+        try {
+            InputRegister[] iregs = getInputRegisterRange(ref, count);
+            for (InputRegister ireg : iregs) {
+                if (!(ireg instanceof Register)) {
+                    throw new IllegalAddressException(String.format("Input register %d is not writable", ref));
+                }
+            }
+            for (int i = 0; i < iregs.length; i++) {
+                ((Register)iregs[i]).setValue(src[offset + i]);
+            }
+        }
+        finally {
+            inputRegisterLock.unlockWrite();
+        }
+    }
+
     @Override
     public File getFile(int fileNumber) {
         try {
@@ -590,4 +816,17 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         }
     }
 
+    private static void copyToBytes(InputRegister[] regs, byte[] dest, int offset) {
+        for (InputRegister reg : regs) {
+            int value = reg.getValue();
+            dest[offset++] = (byte)(value >> 8);
+            dest[offset++] = (byte)value;
+        }
+    }
+
+    private static void copyToShorts(InputRegister[] regs, short[] dest, int offset) {
+        for (int i = 0; i < regs.length; i++) {
+            dest[offset + i] = (short)regs[i].getValue();
+        }
+    }
 }
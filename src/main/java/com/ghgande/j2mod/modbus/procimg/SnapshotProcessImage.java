@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+/**
+ * Interface for a process image that can copy ranges of holding and input
+ * registers in and out in one operation.
+ * <p>
+ * The request handlers for function codes 3, 4, 16 and 23 use these methods
+ * instead of the <tt>Register</tt> objects when the image implements this
+ * interface. A range written by one of the <tt>writeRegisters</tt> methods is
+ * seen by the read methods either completely or not at all. Values that are
+ * set one register at a time, for example by function codes 6 and 22 or
+ * directly on a <tt>Register</tt>, are not part of any range so a read can
+ * see some but not all of a series of such writes.
+ * <p>
+ * <tt>SimpleProcessImage</tt> and so <tt>PrimitiveProcessImage</tt> implement
+ * this interface.
+ */
+public interface SnapshotProcessImage extends ProcessImage {
+
+    /**
+     * Copies a consistent snapshot of a range of holding registers into a
+     * buffer, high byte first
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void readRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException;
+
+    /**
+     * Copies a consistent snapshot of a range of holding registers into an array
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void readRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException;
+
+    /**
+     * Sets a range of holding registers from a buffer, high byte first, as one change
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Buffer to copy from
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void writeRegisters(int ref, int count, byte[] src, int offset) throws IllegalAddressException;
+
+    /**
+     * Sets a range of holding registers from an array as one change
+     *
+     * @param ref    Reference of the first register
+     * @param count  Number of registers
+     * @param src    Array to copy from
+     * @param offset Index in the array of the first register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void writeRegisters(int ref, int count, short[] src, int offset) throws IllegalAddressException;
+
+    /**
+     * Copies a consistent snapshot of a range of input registers into a
+     * buffer, high byte first
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Buffer to copy into
+     * @param offset Offset in the buffer of the first byte
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void readInputRegisters(int ref, int count, byte[] dest, int offset) throws IllegalAddressException;
+
+    /**
+     * Copies a consistent snapshot of a range of input registers into an array
+     *
+     * @param ref    Reference of the first input register
+     * @param count  Number of input registers
+     * @param dest   Array to copy into
+     * @param offset Index in the array of the first input register
+     * @throws IllegalAddressException If the range is out of bounds
+     */
+    void readInputRegisters(int ref, int count, short[] dest, int offset) throws IllegalAddressException;
+}
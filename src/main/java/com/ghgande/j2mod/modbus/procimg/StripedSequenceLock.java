@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Sequence locks for the stripes of a table of values.
+ * <p>
+ * Each stripe has a counter that is odd while a writer holds the stripe and
+ * is incremented again when the writer lets go. Writers take the stripes of a
+ * range in ascending order, spinning on a CAS, so they exclude each other per
+ * stripe and can never deadlock. Readers do not take anything: they note the
+ * counters of their stripes, copy the values and check that no counter moved.
+ * Because counters only ever go up, comparing the sums of the counters before
+ * and after is enough. Readers only write to the stripes themselves if their
+ * optimistic attempts keep being overtaken by writers.
+ */
+final class StripedSequenceLock {
+
+    /**
+     * Number of optimistic attempts a reader makes before locking the stripes
+     */
+    static final int OPTIMISTIC_ATTEMPTS = 8;
+
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final AtomicIntegerArray sequences;
+
+    /**
+     * Creates the locks
+     *
+     * @param stripeCount Number of stripes
+     */
+    StripedSequenceLock(int stripeCount) {
+        sequences = new AtomicIntegerArray(Math.max(1, stripeCount));
+    }
+
+    /**
+     * Starts an optimistic read of a range of stripes
+     *
+     * @param first First stripe
+     * @param last  Last stripe (inclusive)
+     * @return Stamp to validate the read with, or -1 if a writer holds one of the stripes
+     */
+    long beginRead(int first, int last) {
+        long stamp = 0;
+        for (int stripe = first; stripe <= last; stripe++) {
+            int sequence = sequences.get(stripe);
+            if ((sequence & 1) != 0) {
+                return -1;
+            }
+            stamp += sequence & 0xFFFFFFFFL;
+        }
+        return stamp;
+    }
+
+    /**
+     * Checks that no writer has taken any of the stripes since the read began
+     *
+     * @param first First stripe
+     * @param last  Last stripe (inclusive)
+     * @param stamp Stamp returned by {@link #beginRead(int, int)}
+     * @return True if the values read are consistent
+     */
+    boolean validate(int first, int last, long stamp) {
+        return stamp >= 0 && stamp == beginRead(first, last);
+    }
+
+    /**
+     * Takes a range of stripes for writing, waiting for other writers
+     *
+     * @param first First stripe
+     * @param last  Last stripe (inclusive)
+     */
+    void lock(int first, int last) {
+        for (int stripe = first; stripe <= last; stripe++) {
+            int spins = 0;
+            while (true) {
+                int sequence = sequences.get(stripe);
+                if ((sequence & 1) == 0 && sequences.compareAndSet(stripe, sequence, sequence + 1)) {
+                    break;
+                }
+                if (++spins >= SPINS_BEFORE_YIELD) {
+                    spins = 0;
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets go of a range of stripes taken by {@link #lock(int, int)}
+     *
+     * @param first First stripe
+     * @param last  Last stripe (inclusive)
+     */
+    void unlock(int first, int last) {
+        for (int stripe = first; stripe <= last; stripe++) {
+            sequences.incrementAndGet(stripe);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock that lets readers copy a group of values, normally without blocking writers.
+ * <p>
+ * Writers hold a reentrant lock and bump a version number before and after
+ * their changes, so the version is odd while a change is in progress. Readers
+ * note the version, copy the values and check the version has not moved,
+ * retrying a few times before taking the writers' lock themselves. The lock
+ * is reentrant so that a listener called during a change, e.g. an observer of
+ * a register, can read the values on the same thread.
+ */
+final class VersionedLock {
+
+    /**
+     * Number of optimistic attempts a reader makes before taking the lock
+     */
+    static final int OPTIMISTIC_ATTEMPTS = 8;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long version;
+
+    /**
+     * Starts an optimistic read
+     *
+     * @return Stamp to validate the read with, or -1 if a change is in progress
+     */
+    long beginRead() {
+        long current = version;
+        return (current & 1) == 0 ? current : -1;
+    }
+
+    /**
+     * Checks that no change has started since the read began
+     *
+     * @param stamp Stamp returned by {@link #beginRead()}
+     * @return True if the values read are consistent
+     */
+    boolean validate(long stamp) {
+        return stamp >= 0 && stamp == version;
+    }
+
+    /**
+     * Starts a change, waiting for any other writer
+     */
+    void lockWrite() {
+        lock.lock();
+        if (lock.getHoldCount() == 1) {
+            version++;
+        }
+    }
+
+    /**
+     * Completes a change started by {@link #lockWrite()}
+     */
+    void unlockWrite() {
+        if (lock.getHoldCount() == 1) {
+            version++;
+        }
+        lock.unlock();
+    }
+
+    /**
+     * Excludes writers for a reader that has given up reading optimistically
+     */
+    void lockRead() {
+        lock.lock();
+    }
+
+    /**
+     * Lets writers back in after {@link #lockRead()}
+     */
+    void unlockRead() {
+        lock.unlock();
+    }
+}
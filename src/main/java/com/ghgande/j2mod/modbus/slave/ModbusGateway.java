@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.slave;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that forwards requests received by a {@link ModbusSlave} to slaves on
+ * serial buses, e.g. to bridge Modbus/TCP clients onto RS-485 lines.
+ * <p>
+ * Each unit ID is routed to a {@link ModbusGatewayBus}. Requests for a unit ID
+ * that has a route are forwarded to its bus, all others are answered from the
+ * process images of the slave as usual. The gateway is attached to a slave with
+ * {@link ModbusSlave#setGateway(ModbusGateway)} and its buses are opened and
+ * closed along with the slave.
+ */
+public class ModbusGateway {
+
+    private final Map<Integer, ModbusGatewayBus> routes = new ConcurrentHashMap<Integer, ModbusGatewayBus>();
+
+    /**
+     * Routes requests for the unit ID to the bus
+     *
+     * @param unitId Unit ID of the slave on the bus
+     * @param bus    Bus the slave is on
+     * @return Bus previously routed to, or null
+     */
+    public ModbusGatewayBus addRoute(int unitId, ModbusGatewayBus bus) {
+        if (bus == null) {
+            throw new IllegalArgumentException("Bus cannot be null");
+        }
+        return routes.put(unitId, bus);
+    }
+
+    /**
+     * Removes the route for the unit ID
+     *
+     * @param unitId Unit ID
+     * @return Bus that was routed to, or null
+     */
+    public ModbusGatewayBus removeRoute(int unitId) {
+        return routes.remove(unitId);
+    }
+
+    /**
+     * Returns the bus that requests for the unit ID are forwarded to
+     *
+     * @param unitId Unit ID
+     * @return Bus or null if the unit ID is not routed
+     */
+    public ModbusGatewayBus getBus(int unitId) {
+        return routes.get(unitId);
+    }
+
+    /**
+     * Returns the distinct buses used by the routes
+     *
+     * @return Buses
+     */
+    public Set<ModbusGatewayBus> getBuses() {
+        Set<ModbusGatewayBus> buses = Collections.newSetFromMap(new IdentityHashMap<ModbusGatewayBus, Boolean>());
+        buses.addAll(routes.values());
+        return buses;
+    }
+
+    /**
+     * Forwards the request to the bus its unit ID is routed to
+     *
+     * @param request Request to forward
+     * @return Response to return to the client, or null if the unit ID is not routed
+     */
+    public ModbusResponse forward(ModbusRequest request) {
+        ModbusGatewayBus bus = routes.get(request.getUnitID());
+        return bus == null ? null : bus.forward(request);
+    }
+
+    /**
+     * Opens all the buses
+     *
+     * @throws ModbusException If a bus cannot be opened
+     */
+    public void open() throws ModbusException {
+        for (ModbusGatewayBus bus : getBuses()) {
+            bus.open();
+        }
+    }
+
+    /**
+     * Closes all the buses
+     */
+    public void close() {
+        for (ModbusGatewayBus bus : getBuses()) {
+            bus.close();
+        }
+    }
+}
@@ -0,0 +1,910 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.slave;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPCodec;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.net.AbstractSerialConnection;
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class that represents a serial bus behind a {@link ModbusGateway}.
+ * <p>
+ * Requests forwarded to the bus are queued and sent one at a time by a single
+ * thread that owns the serial port. Writes are sent before any waiting reads and
+ * reads are queued separately for each unit ID and served in turn, so one busy
+ * slave cannot starve the others on the bus. The gap between frames is enforced
+ * by the serial transaction.
+ * <p>
+ * Identical reads (function codes 1 to 4) from different clients that arrive
+ * whilst one is already waiting or in progress share its exchange with the slave
+ * rather than being sent again. The results of reads can also be served from a
+ * short lived cache that is configured for each unit ID and function code with
+ * {@link #setCacheTime(int, int, int)}. The cache of a unit is cleared whenever a
+ * write is sent to it.
+ * <p>
+ * Rather than leaving the TCP client to time out, a request is answered with a
+ * <tt>Gateway Path Unavailable</tt> exception if the queue is full and with a
+ * <tt>Gateway Target Failed To Respond</tt> exception if it is not answered by
+ * the slave within the maximum wait time.
+ */
+public class ModbusGatewayBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusGatewayBus.class);
+
+    /**
+     * Default number of requests that can be queued for the bus (=<tt>32</tt>)
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    /**
+     * Default time a request can take, including the time spent in the
+     * queue, before the gateway answers for the slave (=<tt>2000</tt>ms)
+     */
+    public static final int DEFAULT_MAX_WAIT_TIME = 2000;
+
+    private final AbstractSerialConnection connection;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<Exchange> writes = new ArrayDeque<Exchange>();
+    private final LinkedHashMap<Integer, ArrayDeque<Exchange>> reads = new LinkedHashMap<Integer, ArrayDeque<Exchange>>();
+    private final ConcurrentHashMap<ReadKey, Exchange> inFlightReads = new ConcurrentHashMap<ReadKey, Exchange>();
+    private final ConcurrentHashMap<ReadKey, CachedFrame> cache = new ConcurrentHashMap<ReadKey, CachedFrame>();
+    private final ConcurrentHashMap<Integer, Integer> cacheTimes = new ConcurrentHashMap<Integer, Integer>();
+    private final ThreadLocal<ModbusTCPCodec> codecs = new ThreadLocal<ModbusTCPCodec>() {
+        @Override
+        protected ModbusTCPCodec initialValue() {
+            return new ModbusTCPCodec();
+        }
+    };
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong noResponseCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private volatile boolean collapseReads = true;
+    private int queued;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxWaitTime = DEFAULT_MAX_WAIT_TIME;
+    private int transDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
+    private int retries = 1;
+    private volatile boolean running;
+    private ModbusSerialTransaction transaction;
+    private Thread worker;
+
+    /**
+     * Constructs a bus on a serial port that will be opened when the bus is opened
+     *
+     * @param parameters Parameters of the serial port
+     */
+    public ModbusGatewayBus(SerialParameters parameters) {
+        this(new SerialConnection(parameters));
+    }
+
+    /**
+     * Constructs a bus on the given connection
+     *
+     * @param connection Connection to the serial port
+     */
+    public ModbusGatewayBus(AbstractSerialConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Returns the connection to the serial port
+     *
+     * @return Connection
+     */
+    public AbstractSerialConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the maximum number of requests that can be queued
+     *
+     * @return Queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of requests that can be queued. Further requests
+     * are answered with a <tt>Gateway Path Unavailable</tt> exception.
+     *
+     * @param queueCapacity Queue capacity
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the time a request can take before the gateway answers for the slave
+     *
+     * @return Time in milliseconds
+     */
+    public int getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Sets the time a request can take, including the time spent in the queue,
+     * before it is answered with a <tt>Gateway Target Failed To Respond</tt>
+     * exception. This should be less than the timeout used by the TCP clients.
+     *
+     * @param maxWaitTime Time in milliseconds
+     */
+    public void setMaxWaitTime(int maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    /**
+     * Returns the fixed delay between frames
+     *
+     * @return Delay in milliseconds, 0 if calculated from the baud rate
+     */
+    public int getTransDelayMS() {
+        return transDelayMS;
+    }
+
+    /**
+     * Sets a fixed delay between frames. If 0, the delay of 3.5 characters is
+     * calculated from the baud rate. This must be set before the bus is opened.
+     *
+     * @param transDelayMS Delay in milliseconds
+     */
+    public void setTransDelayMS(int transDelayMS) {
+        this.transDelayMS = transDelayMS;
+    }
+
+    /**
+     * Returns the number of times a request is sent to the slave
+     *
+     * @return Number of tries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a request is sent to the slave before giving up.
+     * This must be set before the bus is opened.
+     *
+     * @param retries Number of tries
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(1, retries);
+    }
+
+    /**
+     * Returns true if identical reads that are waiting or in progress share one exchange
+     *
+     * @return True if collapsing reads
+     */
+    public boolean isCollapseReads() {
+        return collapseReads;
+    }
+
+    /**
+     * Sets whether identical reads (function codes 1 to 4) from different clients
+     * share one exchange with the slave whilst it is waiting or in progress
+     *
+     * @param collapseReads True to collapse reads
+     */
+    public void setCollapseReads(boolean collapseReads) {
+        this.collapseReads = collapseReads;
+    }
+
+    /**
+     * Returns how long the results of a read are served from the cache
+     *
+     * @param unitId       Unit ID
+     * @param functionCode Function code of the read
+     *
+     * @return Time in milliseconds, 0 if not cached
+     */
+    public int getCacheTime(int unitId, int functionCode) {
+        Integer time = cacheTimes.get(cacheTimeKey(unitId, functionCode));
+        return time == null ? 0 : time;
+    }
+
+    /**
+     * Sets how long the results of a read are served from the cache rather than
+     * being read from the slave again. Only reads with function codes 1 to 4 can
+     * be cached and exception responses are never cached.
+     *
+     * @param unitId       Unit ID
+     * @param functionCode Function code of the read
+     * @param cacheTime    Time in milliseconds, 0 to disable
+     */
+    public void setCacheTime(int unitId, int functionCode, int cacheTime) {
+        if (!isCacheable(functionCode)) {
+            throw new IllegalArgumentException("Only function codes 1 to 4 can be cached: " + functionCode);
+        }
+        if (cacheTime > 0) {
+            cacheTimes.put(cacheTimeKey(unitId, functionCode), cacheTime);
+        }
+        else {
+            cacheTimes.remove(cacheTimeKey(unitId, functionCode));
+            invalidate(unitId);
+        }
+    }
+
+    /**
+     * Removes the cached results of every read from the unit
+     *
+     * @param unitId Unit ID
+     */
+    public void invalidate(int unitId) {
+        for (ReadKey key : cache.keySet()) {
+            if (key.unitId == unitId) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of reads that shared an exchange already waiting or in progress
+     *
+     * @return Number of reads
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    /**
+     * Returns the number of reads that were answered from the cache
+     *
+     * @return Number of reads
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent
+     *
+     * @return Number of requests
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests that were rejected because the queue was full
+     *
+     * @return Number of requests
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of requests that were not answered by the slave in time
+     *
+     * @return Number of requests
+     */
+    public long getNoResponseCount() {
+        return noResponseCount.get();
+    }
+
+    /**
+     * Returns true if the bus is open
+     *
+     * @return True if open
+     */
+    public boolean isOpen() {
+        return running;
+    }
+
+    /**
+     * Opens the serial port and starts the thread that sends the requests
+     *
+     * @throws ModbusException If the port cannot be opened
+     */
+    public synchronized void open() throws ModbusException {
+        if (!running) {
+            openConnection();
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serviceRequests();
+                }
+            }, String.format("Modbus Gateway Bus [%s]", connection.getPortName()));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the thread, fails any queued requests and closes the serial port
+     */
+    public synchronized void close() {
+        if (running) {
+            running = false;
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+            try {
+                worker.join(maxWaitTime);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Exchange exchange;
+            while ((exchange = next(false)) != null) {
+                exchange.future.complete(null);
+            }
+            inFlightReads.clear();
+            cache.clear();
+            closeConnection();
+        }
+    }
+
+    /**
+     * Sends the request to the slave on this bus and waits for the response.
+     * If the request cannot be sent or is not answered in time, an exception
+     * response from the gateway is returned instead.
+     *
+     * @param request Request to send
+     *
+     * @return Response to return to the client
+     */
+    public ModbusResponse forward(ModbusRequest request) {
+        int transactionID = request.getTransactionID();
+        int protocolID = request.getProtocolID();
+        int unitID = request.getUnitID();
+        ReadKey key = isCacheable(request.getFunctionCode()) ? new ReadKey(request) : null;
+        if (key != null) {
+            CachedFrame cached = cache.get(key);
+            if (cached != null) {
+                if (System.nanoTime() - cached.expiry < 0) {
+                    cacheHitCount.incrementAndGet();
+                    return copy(cached.frame, transactionID, protocolID, unitID);
+                }
+                cache.remove(key, cached);
+            }
+        }
+        Exchange exchange = join(key);
+        if (exchange == null) {
+            Exchange created = new Exchange(request, key);
+            exchange = register(key, created);
+            if (exchange == created && !offer(exchange)) {
+                if (key != null) {
+                    inFlightReads.remove(key, exchange);
+                }
+
+                // Fail the exchange so that clients which joined it are rejected straight away too
+                exchange.rejected = true;
+                exchange.future.completeExceptionally(new ModbusIOException("Queue for %s is full", connection.getPortName()));
+            }
+        }
+        ModbusResponse response = null;
+        try {
+            response = exchange.future.get(maxWaitTime, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            if (exchange.rejected) {
+                rejectedCount.incrementAndGet();
+                logger.debug("Queue for {} is full - rejecting request for unit {}", connection.getPortName(), unitID);
+                return exceptionResponse(request, transactionID, Modbus.GATEWAY_PATH_UNAVAILABLE);
+            }
+            logger.debug("Request for unit {} on {} failed - {}", unitID, connection.getPortName(), e.getCause().getMessage());
+        }
+        catch (TimeoutException e) {
+            if (exchange.leave()) {
+                remove(exchange);
+                if (key != null) {
+                    inFlightReads.remove(key, exchange);
+                }
+            }
+            logger.debug("Request for unit {} on {} timed out", unitID, connection.getPortName());
+        }
+        if (response == null) {
+            noResponseCount.incrementAndGet();
+            return exceptionResponse(request, transactionID, Modbus.GATEWAY_TARGET_NO_RESPONSE);
+        }
+        if (exchange.frame != null) {
+            return copy(exchange.frame, transactionID, protocolID, unitID);
+        }
+        response.setTransactionID(transactionID);
+        response.setProtocolID(protocolID);
+        response.setUnitID(unitID);
+        return response;
+    }
+
+    /**
+     * Joins an identical read that is waiting or in progress
+     *
+     * @param key Key of the read or null if the request is not a read
+     *
+     * @return Exchange that was joined or null if there isn't one
+     */
+    private Exchange join(ReadKey key) {
+        if (key == null || !collapseReads) {
+            return null;
+        }
+        Exchange exchange = inFlightReads.get(key);
+        if (exchange != null && exchange.join()) {
+            collapsedCount.incrementAndGet();
+            return exchange;
+        }
+        return null;
+    }
+
+    /**
+     * Registers a new read so that identical reads can join it. If another client
+     * registered the same read first, that read is joined instead.
+     *
+     * @param key      Key of the read or null if the request is not a read
+     * @param exchange New exchange
+     *
+     * @return Exchange to wait for, which is the new one unless another was joined
+     */
+    private Exchange register(ReadKey key, Exchange exchange) {
+        if (key == null || !collapseReads) {
+            return exchange;
+        }
+        while (true) {
+            Exchange existing = inFlightReads.putIfAbsent(key, exchange);
+            if (existing == null) {
+                return exchange;
+            }
+            if (existing.join()) {
+                collapsedCount.incrementAndGet();
+                return existing;
+            }
+
+            // Every client of the other read has given up, so take its place
+            if (inFlightReads.replace(key, existing, exchange)) {
+                return exchange;
+            }
+        }
+    }
+
+    /**
+     * Decodes a separate copy of an encoded response for one client
+     *
+     * @param frame         Encoded response
+     * @param transactionID Transaction ID of the client's request
+     * @param protocolID    Protocol ID of the client's request
+     * @param unitID        Unit ID of the client's request
+     *
+     * @return Response
+     */
+    private ModbusResponse copy(byte[] frame, int transactionID, int protocolID, int unitID) {
+        try {
+            ModbusResponse response = codecs.get().decodeResponse(frame, frame.length);
+            response.setTransactionID(transactionID);
+            response.setProtocolID(protocolID);
+            response.setUnitID(unitID);
+            return response;
+        }
+        catch (ModbusException e) {
+            throw new IllegalStateException("Cannot decode a response that was encoded by the gateway", e);
+        }
+    }
+
+    /**
+     * Sends a request to the slave and returns its response. Exception responses
+     * from the slave are returned rather than thrown so that they can be passed
+     * back to the client. This is only called by the bus thread.
+     *
+     * @param request Request to send
+     *
+     * @return Response from the slave
+     *
+     * @throws ModbusException If the slave did not answer
+     */
+    protected ModbusResponse transmit(ModbusRequest request) throws ModbusException {
+        transaction.setRequest(request);
+        try {
+            transaction.execute();
+        }
+        catch (ModbusSlaveException e) {
+            logger.debug("Unit {} returned exception {}", request.getUnitID(), e.getType());
+        }
+        return transaction.getResponse();
+    }
+
+    /**
+     * Opens the serial port and creates the transaction used to talk to the slaves
+     *
+     * @throws ModbusException If the port cannot be opened
+     */
+    protected void openConnection() throws ModbusException {
+        try {
+            if (!connection.isOpen()) {
+                connection.open();
+            }
+        }
+        catch (Exception e) {
+            throw new ModbusException("Cannot open serial port %s - %s", connection.getPortName(), e.getMessage());
+        }
+        transaction = (ModbusSerialTransaction)connection.getModbusTransport().createTransaction();
+        transaction.setTransDelayMS(transDelayMS);
+        transaction.setRetries(retries);
+    }
+
+    /**
+     * Closes the serial port
+     */
+    protected void closeConnection() {
+        if (connection.isOpen()) {
+            connection.close();
+        }
+        transaction = null;
+    }
+
+    /**
+     * Returns true if the function code modifies the slave
+     *
+     * @param functionCode Function code
+     *
+     * @return True if a write
+     */
+    static boolean isWrite(int functionCode) {
+        switch (functionCode) {
+            case Modbus.WRITE_COIL:
+            case Modbus.WRITE_SINGLE_REGISTER:
+            case Modbus.WRITE_MULTIPLE_COILS:
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+            case Modbus.WRITE_FILE_RECORD:
+            case Modbus.MASK_WRITE_REGISTER:
+            case Modbus.READ_WRITE_MULTIPLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if the function code is a read that can be collapsed and cached
+     *
+     * @param functionCode Function code
+     *
+     * @return True if a read of coils, discretes or registers
+     */
+    static boolean isCacheable(int functionCode) {
+        return functionCode >= Modbus.READ_COILS && functionCode <= Modbus.READ_INPUT_REGISTERS;
+    }
+
+    /**
+     * Returns the key of the cache time for a unit ID and function code
+     *
+     * @param unitId       Unit ID
+     * @param functionCode Function code
+     *
+     * @return Key
+     */
+    private static int cacheTimeKey(int unitId, int functionCode) {
+        return (unitId << 8) | functionCode;
+    }
+
+    /**
+     * Creates an exception response from the gateway
+     *
+     * @param request       Request to answer
+     * @param transactionID Transaction ID the request arrived with
+     * @param code          Exception code
+     *
+     * @return Exception response
+     */
+    private static ModbusResponse exceptionResponse(ModbusRequest request, int transactionID, int code) {
+        ModbusResponse response = request.createExceptionResponse(code);
+        response.setTransactionID(transactionID);
+        return response;
+    }
+
+    /**
+     * Adds the exchange to the queue if there is room
+     *
+     * @param exchange Exchange to add
+     *
+     * @return True if queued
+     */
+    private boolean offer(Exchange exchange) {
+        lock.lock();
+        try {
+            if (!running || queued >= queueCapacity) {
+                return false;
+            }
+            if (isWrite(exchange.request.getFunctionCode())) {
+                writes.add(exchange);
+            }
+            else {
+                int unitID = exchange.request.getUnitID();
+                ArrayDeque<Exchange> queue = reads.get(unitID);
+                if (queue == null) {
+                    queue = new ArrayDeque<Exchange>();
+                    reads.put(unitID, queue);
+                }
+                queue.add(exchange);
+            }
+            queued++;
+            notEmpty.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an exchange that is still waiting in the queue
+     *
+     * @param exchange Exchange to remove
+     */
+    private void remove(Exchange exchange) {
+        lock.lock();
+        try {
+            boolean removed = writes.remove(exchange);
+            if (!removed) {
+                ArrayDeque<Exchange> queue = reads.get(exchange.request.getUnitID());
+                if (queue != null) {
+                    removed = queue.remove(exchange);
+                    if (queue.isEmpty()) {
+                        reads.remove(exchange.request.getUnitID());
+                    }
+                }
+            }
+            if (removed) {
+                queued--;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next exchange to send. Writes go first, then the unit IDs with
+     * reads waiting are served in turn.
+     *
+     * @param wait True to wait for an exchange whilst the bus is running
+     *
+     * @return Next exchange or null if there is none
+     */
+    private Exchange next(boolean wait) {
+        lock.lock();
+        try {
+            while (wait && running && queued == 0) {
+                notEmpty.awaitUninterruptibly();
+            }
+            Exchange exchange = writes.poll();
+            if (exchange == null) {
+                Iterator<Map.Entry<Integer, ArrayDeque<Exchange>>> iterator = reads.entrySet().iterator();
+                if (iterator.hasNext()) {
+                    Map.Entry<Integer, ArrayDeque<Exchange>> entry = iterator.next();
+                    exchange = entry.getValue().poll();
+
+                    // Move the unit to the back of the rotation
+                    iterator.remove();
+                    if (!entry.getValue().isEmpty()) {
+                        reads.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            if (exchange != null) {
+                queued--;
+            }
+            return exchange;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the queued requests until the bus is closed
+     */
+    private void serviceRequests() {
+        logger.debug("Gateway bus {} started", connection.getPortName());
+        while (running) {
+            Exchange exchange = next(true);
+            if (exchange == null || exchange.cancelled) {
+                continue;
+            }
+            try {
+                ModbusResponse response;
+                try {
+                    response = transmit(exchange.request);
+                }
+                finally {
+
+                    // The slave may have applied a write even if its response was lost
+                    if (isWrite(exchange.request.getFunctionCode())) {
+                        invalidate(exchange.request.getUnitID());
+                    }
+                }
+                if (exchange.key != null) {
+                    publish(exchange, response);
+                }
+                exchange.future.complete(response);
+            }
+            catch (ModbusException e) {
+                release(exchange);
+                exchange.future.completeExceptionally(e);
+            }
+            catch (Exception e) {
+                logger.error("Unexpected error on gateway bus {}", connection.getPortName(), e);
+                release(exchange);
+                exchange.future.completeExceptionally(e);
+            }
+        }
+        logger.debug("Gateway bus {} stopped", connection.getPortName());
+    }
+
+    /**
+     * Encodes the response to a read so that each waiting client can have its own
+     * copy, caches it if required and lets new reads go to the slave again
+     *
+     * @param exchange Exchange of the read
+     * @param response Response from the slave
+     *
+     * @throws ModbusException If the response cannot be encoded
+     */
+    private void publish(Exchange exchange, ModbusResponse response) throws ModbusException {
+        if (response != null) {
+            exchange.frame = codecs.get().encode(response);
+            int cacheTime = getCacheTime(exchange.key.unitId, exchange.key.functionCode);
+            if (cacheTime > 0 && !(response instanceof ExceptionResponse)) {
+                cache.put(exchange.key, new CachedFrame(exchange.frame, System.nanoTime() + cacheTime * 1000000L));
+            }
+        }
+        release(exchange);
+    }
+
+    /**
+     * Stops new reads from joining the exchange
+     *
+     * @param exchange Exchange that has finished
+     */
+    private void release(Exchange exchange) {
+        if (exchange.key != null) {
+            inFlightReads.remove(exchange.key, exchange);
+        }
+    }
+
+    /**
+     * A request waiting to be sent along with the future for its response
+     */
+    private static class Exchange {
+        final ModbusRequest request;
+        final ReadKey key;
+        final CompletableFuture<ModbusResponse> future = new CompletableFuture<ModbusResponse>();
+        volatile boolean cancelled;
+        volatile boolean rejected;
+        volatile byte[] frame;
+        private int waiters = 1;
+
+        Exchange(ModbusRequest request, ReadKey key) {
+            this.request = request;
+            this.key = key;
+        }
+
+        /**
+         * Adds a client waiting for the response
+         *
+         * @return False if every client has already given up on the exchange
+         */
+        synchronized boolean join() {
+            if (cancelled) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Removes a client that has given up waiting, cancelling the exchange
+         * if it was the last one
+         *
+         * @return True if the exchange was cancelled
+         */
+        synchronized boolean leave() {
+            if (--waiters == 0) {
+                cancelled = true;
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Identifies a read by its unit ID, function code and data
+     */
+    private static final class ReadKey {
+        final int unitId;
+        final int functionCode;
+        final byte[] data;
+
+        ReadKey(ModbusRequest request) {
+            unitId = request.getUnitID();
+            functionCode = request.getFunctionCode();
+            data = request.getMessage();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey)obj;
+            return unitId == other.unitId && functionCode == other.functionCode && Arrays.equals(data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * unitId + functionCode) * 31 + Arrays.hashCode(data);
+        }
+    }
+
+    /**
+     * Encoded response to a read and the time it expires
+     */
+    private static final class CachedFrame {
+        final byte[] frame;
+        final long expiry;
+
+        CachedFrame(byte[] frame, long expiry) {
+            this.frame = frame;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.slave;
 
 import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.metrics.ModbusMetrics;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
 import com.ghgande.j2mod.modbus.net.ModbusSerialListener;
 import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
@@ -46,6 +47,7 @@ public class ModbusSlave {
     private final AbstractModbusListener listener;
     private boolean isRunning;
     private Thread listenerThread;
+    private volatile ModbusGateway gateway;
 
     private final Map<Integer, ProcessImage> processImages = new HashMap<Integer, ProcessImage>();
 
@@ -107,6 +109,24 @@ public class ModbusSlave {
         this(ModbusSlaveType.SERIAL, null, 0, 0, serialParams, false, 0);
     }
 
+    /**
+     * Creates a modbus slave around a listener that has already been created
+     *
+     * @param type     Type of slave
+     * @param listener Listener that will service the requests
+     * @param address  IP address to listen on
+     * @param port     Port to listen on if IP type
+     */
+    protected ModbusSlave(ModbusSlaveType type, AbstractModbusListener listener, InetAddress address, int port) {
+        this.type = type == null ? ModbusSlaveType.TCP : type;
+        this.port = port;
+        this.serialParams = null;
+        this.listener = listener;
+        listener.setAddress(address);
+        listener.setPort(port);
+        listener.setTimeout(0);
+    }
+
     /**
      * Creates an appropriate type of listener
      *
@@ -192,6 +212,45 @@ public class ModbusSlave {
         return processImages.put(unitId, processImage);
     }
 
+    /**
+     * Returns the gateway that forwards requests for routed unit IDs
+     *
+     * @return Gateway or null if there isn't one
+     */
+    public ModbusGateway getGateway() {
+        return gateway;
+    }
+
+    /**
+     * Sets the gateway that forwards requests for routed unit IDs to serial buses.
+     * Requests for unit IDs with a route are forwarded rather than answered from a
+     * process image. The buses of the gateway are opened and closed with the slave.
+     *
+     * @param gateway Gateway or null to remove it
+     */
+    public void setGateway(ModbusGateway gateway) {
+        this.gateway = gateway;
+    }
+
+    /**
+     * Returns the metrics that the requests handled by this slave are reported to
+     *
+     * @return Metrics or null if not reporting
+     */
+    public ModbusMetrics getMetrics() {
+        return listener.getMetrics();
+    }
+
+    /**
+     * Sets the metrics that the requests handled by this slave are reported to,
+     * e.g. a <tt>ModbusStatistics</tt> that has been registered with JMX
+     *
+     * @param metrics Metrics to use or null to stop reporting
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        listener.setMetrics(metrics);
+    }
+
     /**
      * Returns the serial parameters of this slave if it is a Serial type
      *
@@ -211,6 +270,9 @@ public class ModbusSlave {
         // Start the listener if it isn't already running
         if (!isRunning) {
             try {
+                if (gateway != null) {
+                    gateway.open();
+                }
                 listenerThread = new Thread(listener);
                 listenerThread.start();
 
@@ -277,6 +339,9 @@ public class ModbusSlave {
             }
             listenerThread = null;
         }
+        if (gateway != null) {
+            gateway.close();
+        }
         isRunning = false;
     }
 
@@ -17,6 +17,10 @@ package com.ghgande.j2mod.modbus.slave;
 
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.net.ModbusNIOTCPListener;
+import com.ghgande.j2mod.modbus.net.ModbusNIOUDPListener;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.ModbusUDPListener;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import com.ghgande.j2mod.modbus.util.SerialParameters;
 
@@ -104,6 +108,94 @@ public class ModbusSlaveFactory {
         }
     }
 
+    /**
+     * Creates a TCP modbus slave or returns the one already allocated to this port.
+     * At most <tt>queueCapacity</tt> connections can wait for a free thread, any further
+     * connections are rejected and closed straight away.
+     *
+     * @param address        IP address to listen on
+     * @param port           Port to listen on
+     * @param poolSize       Pool size of listener threads
+     * @param queueCapacity  Number of connections that can wait for a free thread
+     * @param useRtuOverTcp  True if the RTU protocol should be used over TCP
+     * @param maxIdleSeconds Maximum idle seconds for TCP connection
+     * @return new or existing TCP modbus slave associated with the port
+     * @throws ModbusException If a problem occurs e.g. port already in use
+     */
+    public static synchronized ModbusSlave createTCPSlave(InetAddress address, int port, int poolSize, int queueCapacity, boolean useRtuOverTcp, int maxIdleSeconds) throws ModbusException {
+        String key = makeKey(address, port, ModbusSlaveType.TCP);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            ModbusTCPListener listener = new ModbusTCPListener(poolSize, queueCapacity, address, useRtuOverTcp);
+            listener.setMaxIdleSeconds(maxIdleSeconds);
+            ModbusSlave slave = new ModbusSlave(ModbusSlaveType.TCP, listener, address, port);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
+    /**
+     * Creates a TCP modbus slave or returns the one already allocated to this port.
+     * If <tt>useVirtualThreads</tt> is true, each connection is handled on its own
+     * virtual thread (JDK 21 or later) and the pool size is ignored, so the number of
+     * concurrent clients is not limited by the pool.
+     *
+     * @param address           IP address to listen on
+     * @param port              Port to listen on
+     * @param poolSize          Pool size of listener threads
+     * @param useRtuOverTcp     True if the RTU protocol should be used over TCP
+     * @param maxIdleSeconds    Maximum idle seconds for TCP connection
+     * @param useVirtualThreads True to handle each connection on a virtual thread
+     * @return new or existing TCP modbus slave associated with the port
+     * @throws ModbusException If a problem occurs e.g. port already in use
+     */
+    public static synchronized ModbusSlave createTCPSlave(InetAddress address, int port, int poolSize, boolean useRtuOverTcp, int maxIdleSeconds, boolean useVirtualThreads) throws ModbusException {
+        if (!useVirtualThreads) {
+            return createTCPSlave(address, port, poolSize, useRtuOverTcp, maxIdleSeconds);
+        }
+        String key = makeKey(address, port, ModbusSlaveType.TCP);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            ModbusTCPListener listener = new ModbusTCPListener(poolSize, useRtuOverTcp);
+            listener.setMaxIdleSeconds(maxIdleSeconds);
+            listener.setUseVirtualThreads(true);
+            ModbusSlave slave = new ModbusSlave(ModbusSlaveType.TCP, listener, address, port);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
+    /**
+     * Creates a TCP modbus slave that uses a non-blocking listener, or returns the
+     * one already allocated to this port. The connections are serviced by a single
+     * selector thread and requests are processed by a pool of worker threads, so the
+     * number of clients is not limited by the pool size. RTU over TCP is not supported.
+     *
+     * @param address        IP address to listen on
+     * @param port           Port to listen on
+     * @param poolSize       Number of worker threads used to process requests
+     * @param maxIdleSeconds Maximum idle seconds for TCP connection
+     * @return new or existing TCP modbus slave associated with the port
+     * @throws ModbusException If a problem occurs e.g. port already in use
+     */
+    public static synchronized ModbusSlave createNIOTCPSlave(InetAddress address, int port, int poolSize, int maxIdleSeconds) throws ModbusException {
+        String key = makeKey(address, port, ModbusSlaveType.TCP);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            ModbusNIOTCPListener listener = new ModbusNIOTCPListener(poolSize);
+            listener.setMaxIdleSeconds(maxIdleSeconds);
+            ModbusSlave slave = new ModbusSlave(ModbusSlaveType.TCP, listener, address, port);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
     private static String makeKey(InetAddress address, int port, ModbusSlaveType t) {
         String key =t.getKey(port);
         if (address != null) {
@@ -143,6 +235,60 @@ public class ModbusSlaveFactory {
         }
     }
 
+    /**
+     * Creates a UDP modbus slave or returns the one already allocated to this port.
+     * If <tt>useVirtualThreads</tt> is true, each request is processed on its own
+     * virtual thread (JDK 21 or later).
+     *
+     * @param address           IP address to listen on
+     * @param port              Port to listen on
+     * @param useVirtualThreads True to process each request on a virtual thread
+     * @return new or existing UDP modbus slave associated with the port
+     * @throws ModbusException If a problem occurs e.g. port already in use
+     */
+    public static synchronized ModbusSlave createUDPSlave(InetAddress address, int port, boolean useVirtualThreads) throws ModbusException {
+        if (!useVirtualThreads) {
+            return createUDPSlave(address, port);
+        }
+        String key = makeKey(address, port, ModbusSlaveType.UDP);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            ModbusUDPListener listener = new ModbusUDPListener();
+            listener.setUseVirtualThreads(true);
+            ModbusSlave slave = new ModbusSlave(ModbusSlaveType.UDP, listener, address, port);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
+    /**
+     * Creates a UDP modbus slave that receives on a <tt>DatagramChannel</tt>, or returns
+     * the one already allocated to this port. Requests are processed by a pool of worker
+     * threads and each response is sent back to the address the request came from.
+     *
+     * @param address           IP address to listen on
+     * @param port              Port to listen on
+     * @param poolSize          Number of worker threads used to process requests
+     * @param receiveBufferSize Size of the socket receive buffer in bytes
+     * @return new or existing UDP modbus slave associated with the port
+     * @throws ModbusException If a problem occurs e.g. port already in use
+     */
+    public static synchronized ModbusSlave createNIOUDPSlave(InetAddress address, int port, int poolSize, int receiveBufferSize) throws ModbusException {
+        String key = makeKey(address, port, ModbusSlaveType.UDP);
+        if (slaves.containsKey(key)) {
+            return slaves.get(key);
+        }
+        else {
+            ModbusNIOUDPListener listener = new ModbusNIOUDPListener(poolSize);
+            listener.setReceiveBufferSize(receiveBufferSize);
+            ModbusSlave slave = new ModbusSlave(ModbusSlaveType.UDP, listener, address, port);
+            slaves.put(key, slave);
+            return slave;
+        }
+    }
+
     /**
      * Creates a serial modbus slave or returns the one already allocated to this port
      *
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Modbus RTU CRC16 (polynomial <tt>0xA001</tt>, initial value <tt>0xFFFF</tt>).
+ * <p>
+ * The static methods work on a running CRC held as an <tt>int</tt> so that a
+ * frame can be checked as its bytes arrive without allocating anything. Blocks
+ * of 8 bytes are processed at a time using slicing-by-8 tables.
+ * <p>
+ * On the wire the low byte of the CRC is sent first, i.e.
+ * <tt>crc &amp; 0xFF</tt> followed by <tt>crc &gt;&gt;&gt; 8</tt>.
+ * <p>
+ * An instance can also be used as a <tt>java.util.zip.Checksum</tt>.
+ */
+public final class CRC16 implements Checksum {
+
+    /**
+     * Value of the CRC before any bytes have been added
+     */
+    public static final int INITIAL_VALUE = 0xFFFF;
+
+    private static final int POLYNOMIAL = 0xA001;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            for (int k = 1; k < TABLES.length; k++) {
+                int previous = TABLES[k - 1][n];
+                TABLES[k][n] = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+            }
+        }
+    }
+
+    private int value = INITIAL_VALUE;
+
+    /**
+     * Calculates the CRC of a block of bytes
+     *
+     * @param data   Bytes to use
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     * @return CRC
+     */
+    public static int calculate(byte[] data, int offset, int length) {
+        return update(INITIAL_VALUE, data, offset, length);
+    }
+
+    /**
+     * Adds a byte to a running CRC
+     *
+     * @param crc Current CRC
+     * @param b   Byte to add
+     * @return Updated CRC
+     */
+    public static int update(int crc, int b) {
+        return (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    /**
+     * Adds a block of bytes to a running CRC
+     *
+     * @param crc    Current CRC
+     * @param data   Bytes to add
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     * @return Updated CRC
+     */
+    public static int update(int crc, byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException(String.format("Offset %d and length %d are outside an array of %d bytes", offset, length, data.length));
+        }
+        int[] t0 = TABLES[0];
+        int[] t1 = TABLES[1];
+        int[] t2 = TABLES[2];
+        int[] t3 = TABLES[3];
+        int[] t4 = TABLES[4];
+        int[] t5 = TABLES[5];
+        int[] t6 = TABLES[6];
+        int[] t7 = TABLES[7];
+        int i = offset;
+        int end = offset + length;
+        for (int blockEnd = end - 7; i < blockEnd; i += 8) {
+            crc = t7[(data[i] ^ crc) & 0xFF] ^
+                  t6[(data[i + 1] ^ (crc >>> 8)) & 0xFF] ^
+                  t5[data[i + 2] & 0xFF] ^
+                  t4[data[i + 3] & 0xFF] ^
+                  t3[data[i + 4] & 0xFF] ^
+                  t2[data[i + 5] & 0xFF] ^
+                  t1[data[i + 6] & 0xFF] ^
+                  t0[data[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Adds the remaining bytes of a buffer to a running CRC. The position of the
+     * buffer is advanced to its limit.
+     *
+     * @param crc    Current CRC
+     * @param buffer Bytes to add
+     * @return Updated CRC
+     */
+    public static int update(int crc, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int length = buffer.remaining();
+            crc = update(crc, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return crc;
+        }
+        int[] t0 = TABLES[0];
+        while (buffer.hasRemaining()) {
+            crc = (crc >>> 8) ^ t0[(crc ^ buffer.get()) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Returns true if the last two bytes of a frame hold the CRC of the bytes before them
+     *
+     * @param frame  Frame including its CRC
+     * @param offset Offset of the frame
+     * @param length Length of the frame including the two CRC bytes
+     * @return True if the CRC matches
+     */
+    public static boolean check(byte[] frame, int offset, int length) {
+        if (length < 2) {
+            return false;
+        }
+        int crc = calculate(frame, offset, length - 2);
+        return (frame[offset + length - 2] & 0xFF) == (crc & 0xFF) && (frame[offset + length - 1] & 0xFF) == crc >>> 8;
+    }
+
+    @Override
+    public void update(int b) {
+        value = update(value, b);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        value = update(value, b, off, len);
+    }
+
+    /**
+     * Adds the remaining bytes of a buffer to the CRC
+     *
+     * @param buffer Bytes to add
+     */
+    public void update(ByteBuffer buffer) {
+        value = update(value, buffer);
+    }
+
+    @Override
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        value = INITIAL_VALUE;
+    }
+}
@@ -57,6 +57,7 @@ public class SerialParameters {
     private boolean rs485RxDuringTx;
     private int rs485DelayBeforeTxMicroseconds;
     private int rs485DelayAfterTxMicroseconds;
+    private boolean eventDriven;
 
     /**
      * Constructs a new <tt>SerialParameters</tt> instance with
@@ -193,6 +194,7 @@ public class SerialParameters {
         setRs485TxEnableActiveHigh("true".equals(props.getProperty(prefix + "rs485TxEnableActiveHigh", Boolean.toString(DEFAULT_RS485_TX_ENABLE_ACTIVE_HIGH))));
         setRs485DelayBeforeTxMicroseconds(props.getProperty(prefix + "rs485DelayBeforeTxMicroseconds", Integer.toString(DEFAULT_RS485_DELAY_BEFORE_TX_MICROSECONDS)));
         setRs485DelayAfterTxMicroseconds(props.getProperty(prefix + "rs485DelayAfterTxMicroseconds", Integer.toString(DEFAULT_RS485_DELAY_AFTER_TX_MICROSECONDS)));
+        setEventDriven("true".equals(props.getProperty(prefix + "eventDriven")));
     }
 
     /**
@@ -578,6 +580,27 @@ public class SerialParameters {
         echo = newEcho;
     }
 
+    /**
+     * Returns true if the connection reads the port when it is told data has
+     * arrived, rather than the transport polling it.
+     *
+     * @return true if event driven
+     */
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Sets whether the connection reads the port when it is told data has
+     * arrived. The received bytes are read in bulk into a buffer and the
+     * transport waits to be notified of them instead of polling the port.
+     *
+     * @param eventDriven true to read the port when data arrives
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
     /**
      * Converts a <tt>String</tt> describing a flow control type to the
      * <tt>int</tt> which is defined in SerialPort.
@@ -917,6 +940,7 @@ public class SerialParameters {
                 ", rs485RxDuringTx" + rs485RxDuringTx +
                 ", rs485DelayBeforeTxMicroseconds=" + rs485DelayBeforeTxMicroseconds +
                 ", rs485DelayAfterTxMicroseconds=" + rs485DelayAfterTxMicroseconds +
+                ", eventDriven=" + eventDriven +
                 '}';
     }
 }
@@ -18,12 +18,20 @@ package com.ghgande.j2mod.modbus.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class implementing a simple thread pool.
+ * Class implementing a fixed size thread pool with a bounded queue.
+ * <p>
+ * Tasks that cannot be queued because the queue is full, or because the pool
+ * is not running, are rejected with a <tt>RejectedExecutionException</tt> so
+ * that the caller can shed the load, e.g. by closing the new connection,
+ * rather than let the backlog grow while clients time out.
+ * <p>
+ * The pool can be closed and initialised again, which allows a listener to
+ * be stopped and restarted.
  *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4NG)
@@ -33,19 +41,40 @@ public class ThreadPool {
 
     private static final Logger logger = LoggerFactory.getLogger(ThreadPool.class);
 
-    private final LinkedBlockingQueue<Runnable> taskPool;
-    private final List<PoolThread> threadPool = new ArrayList<PoolThread>();
+    /**
+     * Default number of tasks that can wait for a free thread (=<tt>1024</tt>)
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
     private final int size;
-    private boolean running;
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile ThreadPoolExecutor executor;
 
     /**
-     * Constructs a new <tt>ThreadPool</tt> instance.
+     * Constructs a new <tt>ThreadPool</tt> instance with the default queue capacity.
      *
      * @param size the size of the thread pool.
      */
     public ThreadPool(int size) {
+        this(size, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a new <tt>ThreadPool</tt> instance.
+     *
+     * @param size          the size of the thread pool.
+     * @param queueCapacity the number of tasks that can wait for a free thread.
+     */
+    public ThreadPool(int size, int queueCapacity) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must be >= 0");
+        }
         this.size = size;
-        taskPool = new LinkedBlockingQueue<Runnable>();
+        this.queueCapacity = queueCapacity;
     }
 
     /**
@@ -53,16 +82,15 @@ public class ThreadPool {
      * through a thread in this <tt>ThreadPool</tt>.
      *
      * @param task the <tt>Runnable</tt> to be executed.
+     * @throws RejectedExecutionException if the pool is not running or the queue is full
      */
-    public synchronized void execute(Runnable task) {
-        if (running) {
-            try {
-                taskPool.put(task);
-            }
-            catch (InterruptedException ex) {
-                //FIXME: Handle!?
-            }
+    public void execute(Runnable task) {
+        ThreadPoolExecutor exec = executor;
+        if (exec == null) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Thread pool is not running");
         }
+        exec.execute(task);
     }
 
     /**
@@ -70,59 +98,109 @@ public class ThreadPool {
      * n started threads.
      * @param name Name to give each thread
      */
-    public void initPool(String name) {
-        running = true;
-        for (int i = size; --i >= 0; ) {
-            PoolThread thread = new PoolThread();
-            threadPool.add(thread);
-            thread.setName(String.format("%s Handler", name));
-            thread.start();
+    public synchronized void initPool(final String name) {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<Runnable>(queueCapacity) : new SynchronousQueue<Runnable>();
+            ThreadPoolExecutor exec = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, String.format("%s Handler %d", name, count.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor exec) {
+                    rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException(exec.isShutdown() ? "Thread pool is closed" : "Thread pool queue is full");
+                }
+            });
+            exec.prestartAllCoreThreads();
+            executor = exec;
+            logger.debug("Started pool of {} threads with a queue of {}", size, queueCapacity);
         }
     }
 
     /**
      * Shutdown the pool of threads
      */
-    public void close() {
-        if (running) {
-            taskPool.clear();
-            running = false;
-            for (PoolThread thread : threadPool) {
-                thread.interrupt();
-            }
+    public synchronized void close() {
+        ThreadPoolExecutor exec = executor;
+        if (exec != null) {
+            executor = null;
+            exec.shutdownNow();
         }
     }
 
     /**
-     * Inner class implementing a thread that can be
-     * run in a <tt>ThreadPool</tt>.
+     * Returns true if the pool has been initialised and not closed
      *
-     * @author Dieter Wimberger
-     * @version 1.2rc1 (09/11/2004)
+     * @return True if running
      */
-    private class PoolThread extends Thread {
-
-        /**
-         * Runs the <tt>PoolThread</tt>.
-         * <p>
-         * This method will infinitely loop, picking
-         * up available tasks from the <tt>LinkedQueue</tt>.
-         */
-        @Override
-        public void run() {
-            logger.debug("Running PoolThread");
-            do {
-                try {
-                    logger.debug("{}", this);
-                    taskPool.take().run();
-                }
-                catch (Exception ex) {
-                    if (running) {
-                        logger.error("Problem starting receiver thread", ex);
-                    }
-                }
-            } while (running);
-        }
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Returns the number of threads in the pool
+     *
+     * @return Pool size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of tasks that can wait for a free thread
+     *
+     * @return Queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the approximate number of threads that are running tasks
+     *
+     * @return Active thread count
+     */
+    public int getActiveCount() {
+        ThreadPoolExecutor exec = executor;
+        return exec == null ? 0 : exec.getActiveCount();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a free thread
+     *
+     * @return Queued task count
+     */
+    public int getQueuedCount() {
+        ThreadPoolExecutor exec = executor;
+        return exec == null ? 0 : exec.getQueue().size();
+    }
+
+    /**
+     * Returns the number of tasks that have been rejected since the pool was created
+     *
+     * @return Rejected task count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
     }
 
+    /**
+     * Returns the approximate number of tasks completed since the pool was last initialised
+     *
+     * @return Completed task count
+     */
+    public long getCompletedCount() {
+        ThreadPoolExecutor exec = executor;
+        return exec == null ? 0 : exec.getCompletedTaskCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ThreadPool[size=%d, active=%d, queued=%d/%d, rejected=%d]", size, getActiveCount(), getQueuedCount(), queueCapacity, getRejectedCount());
+    }
 }
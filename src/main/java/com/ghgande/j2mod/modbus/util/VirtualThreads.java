@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class giving access to virtual threads when running on JDK 21 or later.
+ * <p>
+ * The library is compiled for Java 8 so the virtual thread API is looked up
+ * reflectively. When it is not available, the methods fall back to daemon
+ * platform threads so callers do not need to check the runtime version.
+ */
+public final class VirtualThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        }
+        catch (Exception e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    /**
+     * Prevent instantiation
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns true if the runtime supports virtual threads
+     *
+     * @return True if virtual threads are available
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory that creates threads named <tt>name</tt> followed by a
+     * sequence number. The threads are virtual if supported, otherwise they are
+     * daemon platform threads.
+     *
+     * @param name Prefix for the thread names
+     * @return Thread factory
+     */
+    public static ThreadFactory newThreadFactory(final String name) {
+        if (isSupported()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + " ", 0L);
+                return (ThreadFactory)BUILDER_FACTORY.invoke(builder);
+            }
+            catch (Exception e) {
+                logger.warn("Cannot create virtual thread factory - using platform threads", e);
+            }
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, String.format("%s %d", name, count.getAndIncrement()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for every task. If virtual
+     * threads are not supported, an unbounded cached pool of platform threads is used.
+     * <p>
+     * Shutting down the executor with <tt>shutdownNow()</tt> interrupts the running
+     * tasks, which for virtual threads blocked on a socket also closes the socket.
+     *
+     * @param name Prefix for the thread names
+     * @return Executor service
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        ThreadFactory factory = newThreadFactory(name);
+        if (isSupported()) {
+            try {
+                return (ExecutorService)NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            }
+            catch (Exception e) {
+                logger.warn("Cannot create virtual thread executor - using platform threads", e);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+}
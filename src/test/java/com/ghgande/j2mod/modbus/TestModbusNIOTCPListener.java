@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the non-blocking TCP listener with more clients than worker threads
+ */
+public class TestModbusNIOTCPListener extends AbstractTestModbus {
+
+    private static final int NIO_PORT = PORT + 10;
+    private static ModbusSlave nioSlave;
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        nioSlave = ModbusSlaveFactory.createNIOTCPSlave(null, NIO_PORT, 2, 0);
+        nioSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        nioSlave.open();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (nioSlave != null) {
+            nioSlave.close();
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, NIO_PORT);
+        try {
+            master.connect();
+            assertEquals("Incorrect value for register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertTrue("Incorrect status for coil 0", master.readCoils(UNIT_ID, 0, 1).getBit(0));
+            assertEquals("Incorrect write status for register 1", 1111, master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(1111)));
+            try {
+                master.readCoils(UNIT_ID, 3, 1);
+                fail("Invalid address not thrown");
+            }
+            catch (ModbusSlaveException e) {
+                assertTrue("Expected illegal address", e.isType(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+            }
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+
+    @Test
+    public void testMoreClientsThanWorkers() throws Exception {
+        List<ModbusTCPMaster> masters = new ArrayList<ModbusTCPMaster>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, NIO_PORT);
+                master.connect();
+                masters.add(master);
+            }
+            for (int round = 0; round < 5; round++) {
+                for (ModbusTCPMaster master : masters) {
+                    assertEquals("Incorrect value for register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+                }
+            }
+        }
+        finally {
+            for (ModbusTCPMaster master : masters) {
+                master.disconnect();
+            }
+        }
+    }
+}
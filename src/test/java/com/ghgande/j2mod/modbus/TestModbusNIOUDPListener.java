@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the UDP listener that runs on a datagram channel
+ */
+public class TestModbusNIOUDPListener extends AbstractTestModbus {
+
+    private static final int NIO_PORT = PORT + 15;
+    private static ModbusSlave nioSlave;
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        nioSlave = ModbusSlaveFactory.createNIOUDPSlave(null, NIO_PORT, 4, 256 * 1024);
+        nioSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        nioSlave.open();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (nioSlave != null) {
+            nioSlave.close();
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        ModbusUDPMaster master = new ModbusUDPMaster(LOCALHOST, NIO_PORT);
+        try {
+            master.connect();
+            assertEquals("Incorrect value for register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertEquals("Incorrect value for input register 1", 9999, master.readInputRegisters(UNIT_ID, 1, 1)[0].getValue());
+            assertTrue("Incorrect status for coil 0", master.readCoils(UNIT_ID, 0, 1).getBit(0));
+            assertEquals("Incorrect write status for register 1", 1111, master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(1111)));
+            try {
+                master.readCoils(UNIT_ID, 3, 1);
+                fail("Invalid address not thrown");
+            }
+            catch (ModbusSlaveException e) {
+                assertTrue("Expected illegal address", e.isType(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+            }
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+
+    @Test
+    public void testClientsWithSameTransactionID() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(readRegisterRepeatedly(1, 1111));
+            Future<Integer> second = executor.submit(readRegisterRepeatedly(3, 3333));
+            assertEquals(200, (int)first.get(20, TimeUnit.SECONDS));
+            assertEquals(200, (int)second.get(20, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a task that reads a holding register 200 times from its own socket,
+     * always using transaction ID 7, and counts the correct answers
+     *
+     * @param ref      Register to read
+     * @param expected Value the register should have
+     * @return Task returning the number of correct answers
+     */
+    private static Callable<Integer> readRegisterRepeatedly(final int ref, final int expected) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                byte[] request = {0, 7, 0, 0, 0, 6, UNIT_ID, 3, 0, (byte)ref, 0, 1};
+                byte[] response = new byte[64];
+                int correct = 0;
+                DatagramSocket socket = new DatagramSocket();
+                try {
+                    socket.setSoTimeout(2000);
+                    InetAddress slave = InetAddress.getByName(LOCALHOST);
+                    for (int i = 0; i < 200; i++) {
+                        socket.send(new DatagramPacket(request, request.length, slave, NIO_PORT));
+                        DatagramPacket packet = new DatagramPacket(response, response.length);
+                        socket.receive(packet);
+                        assertEquals("Incorrect response length", 11, packet.getLength());
+                        assertEquals("Incorrect transaction ID", 7, response[1]);
+                        if (((response[9] & 0xFF) << 8 | (response[10] & 0xFF)) == expected) {
+                            correct++;
+                        }
+                    }
+                }
+                finally {
+                    socket.close();
+                }
+                return correct;
+            }
+        };
+    }
+}
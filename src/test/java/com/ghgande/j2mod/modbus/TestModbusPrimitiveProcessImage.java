@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests a slave serving a process image held in primitive arrays
+ */
+public class TestModbusPrimitiveProcessImage extends AbstractTestModbus {
+
+    private static final int IMAGE_PORT = PORT + 13;
+    private static ModbusSlave imageSlave;
+    private static PrimitiveProcessImage image;
+    private static ModbusTCPMaster imageMaster;
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        image = new PrimitiveProcessImage(100, 100, 100, 65536);
+        for (int i = 0; i < 100; i++) {
+            image.setInputRegisterValue(i, 1000 + i);
+            image.setRegisterValue(i, 2000 + i);
+            image.setCoil(i, i % 3 == 0);
+            image.setDiscreteInput(i, i % 2 == 0);
+        }
+        image.setRegisterValue(65535, 0xFFFF);
+        imageSlave = ModbusSlaveFactory.createTCPSlave(IMAGE_PORT, 5);
+        imageSlave.addProcessImage(UNIT_ID, image);
+        imageSlave.open();
+        imageMaster = new ModbusTCPMaster(LOCALHOST, IMAGE_PORT);
+        imageMaster.connect();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (imageMaster != null) {
+            imageMaster.disconnect();
+        }
+        if (imageSlave != null) {
+            imageSlave.close();
+        }
+    }
+
+    @Test
+    public void testReadRegisters() throws Exception {
+        Register[] registers = imageMaster.readMultipleRegisters(UNIT_ID, 10, 125);
+        assertEquals(125, registers.length);
+        for (int i = 0; i < 90; i++) {
+            assertEquals("Incorrect value for register " + (10 + i), 2010 + i, registers[i].getValue());
+        }
+        assertEquals("Incorrect value for last register", 0xFFFF, imageMaster.readMultipleRegisters(UNIT_ID, 65535, 1)[0].getValue());
+        InputRegister[] inputs = imageMaster.readInputRegisters(UNIT_ID, 0, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Incorrect value for input register " + i, 1000 + i, inputs[i].getValue());
+        }
+    }
+
+    @Test
+    public void testReadBits() throws Exception {
+        BitVector coils = imageMaster.readCoils(UNIT_ID, 1, 20);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Incorrect status for coil " + (i + 1), (i + 1) % 3 == 0, coils.getBit(i));
+        }
+        BitVector discretes = imageMaster.readInputDiscretes(UNIT_ID, 3, 17);
+        for (int i = 0; i < 17; i++) {
+            assertEquals("Incorrect status for discrete " + (i + 3), (i + 3) % 2 == 0, discretes.getBit(i));
+        }
+    }
+
+    @Test
+    public void testWrites() throws Exception {
+        imageMaster.writeMultipleRegisters(UNIT_ID, 200, new Register[]{new SimpleRegister(7), new SimpleRegister(-1)});
+        assertEquals(7, image.getRegisterValue(200));
+        assertEquals(0xFFFF, image.getRegisterValue(201));
+        imageMaster.writeSingleRegister(UNIT_ID, 202, new SimpleRegister(42));
+        assertEquals(42, image.getRegisterValue(202));
+
+        BitVector bits = new BitVector(10);
+        bits.setBit(0, true);
+        bits.setBit(9, true);
+        imageMaster.writeMultipleCoils(UNIT_ID, 50, bits);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Incorrect status for coil " + (50 + i), i == 0 || i == 9, image.getCoil(50 + i));
+        }
+        imageMaster.writeCoil(UNIT_ID, 51, true);
+        assertTrue(image.getCoil(51));
+    }
+
+    @Test
+    public void testIllegalAddress() throws Exception {
+        try {
+            imageMaster.readInputRegisters(UNIT_ID, 90, 11);
+            fail("Invalid address not thrown");
+        }
+        catch (ModbusSlaveException e) {
+            assertTrue("Expected illegal address", e.isType(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+        }
+    }
+
+    @Test
+    public void testViews() {
+        Register register = image.getRegister(300);
+        register.setValue(1234);
+        assertEquals(1234, image.getRegisterValue(300));
+        short[] values = new short[2];
+        image.readRegisters(299, 2, values, 0);
+        assertEquals(1234, values[1]);
+        image.getDigitalOut(99).set(true);
+        assertTrue(image.getCoil(99));
+    }
+}
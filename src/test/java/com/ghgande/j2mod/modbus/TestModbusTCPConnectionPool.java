@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPPooledTransaction;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnectionPool;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests transactions that share a pool of TCP connections
+ */
+public class TestModbusTCPConnectionPool extends AbstractTestModbusTCPMaster {
+
+    private static final int POOL_PORT = PORT + 14;
+
+    @Test
+    public void testConcurrentTransactionsShareConnections() throws Exception {
+        final TCPMasterConnectionPool pool = new TCPMasterConnectionPool(2);
+        final InetAddress address = InetAddress.getByName(LOCALHOST);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ModbusTCPPooledTransaction transaction = new ModbusTCPPooledTransaction(pool, address, PORT);
+                        for (int j = 0; j < 10; j++) {
+                            ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, 2);
+                            request.setUnitID(UNIT_ID);
+                            transaction.setRequest(request);
+                            transaction.execute();
+                            ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)transaction.getResponse();
+                            assertEquals(1111, response.getRegisterValue(1));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertTrue("Too many connections opened", pool.getCreatedCount() <= 2);
+        assertEquals(40, pool.getCreatedCount() + pool.getReusedCount());
+        assertEquals(0, pool.getActiveCount(address, PORT));
+        assertEquals(pool.getCreatedCount(), pool.getIdleCount(address, PORT));
+        pool.close();
+        assertEquals(0, pool.getIdleCount(address, PORT));
+    }
+
+    @Test
+    public void testBorrowWaitsForLimit() throws Exception {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool(1);
+        pool.setBorrowTimeout(100);
+        InetAddress address = InetAddress.getByName(LOCALHOST);
+        try {
+            TCPMasterConnection connection = pool.borrow(address, PORT);
+            assertTrue(connection.isConnected());
+            try {
+                pool.borrow(address, PORT);
+                fail("Only one connection should be lent");
+            }
+            catch (ModbusIOException e) {
+                // expected
+            }
+            pool.release(connection);
+            assertSame(connection, pool.borrow(address, PORT));
+            assertEquals(1, pool.getReusedCount());
+            pool.invalidate(connection);
+            assertFalse(connection.isConnected());
+            assertEquals(0, pool.getActiveCount(address, PORT));
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testClosedConnectionIsReplaced() throws Exception {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool(1);
+        pool.setValidationInterval(0);
+        InetAddress address = InetAddress.getByName(LOCALHOST);
+        ServerSocket server = new ServerSocket(POOL_PORT, 5, address);
+        try {
+            TCPMasterConnection connection = pool.borrow(address, POOL_PORT);
+            pool.release(connection);
+            assertSame(connection, pool.borrow(address, POOL_PORT));
+            pool.release(connection);
+
+            // The far end goes away while the connection is idle
+            Socket accepted = server.accept();
+            accepted.close();
+            Thread.sleep(100);
+            TCPMasterConnection replacement = pool.borrow(address, POOL_PORT);
+            assertNotSame(connection, replacement);
+            assertFalse(connection.isConnected());
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(1, pool.getEvictedCount());
+            pool.release(replacement);
+        }
+        finally {
+            pool.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testExpiredConnectionIsEvictedOnRelease() throws Exception {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool(2);
+        pool.setMaxIdleTime(50);
+        InetAddress address = InetAddress.getByName(LOCALHOST);
+        try {
+            TCPMasterConnection first = pool.borrow(address, PORT);
+            TCPMasterConnection second = pool.borrow(address, PORT);
+            pool.release(first);
+            Thread.sleep(100);
+
+            // Returning the second connection closes the first, which has been idle too long
+            pool.release(second);
+            assertFalse(first.isConnected());
+            assertEquals(1, pool.getEvictedCount());
+            assertEquals(1, pool.getIdleCount(address, PORT));
+        }
+        finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusGateway;
+import com.ghgande.j2mod.modbus.slave.ModbusGatewayBus;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests forwarding requests from a TCP slave through a gateway
+ */
+public class TestModbusTCPGateway extends AbstractTestModbus {
+
+    private static final int GATEWAY_PORT = PORT + 19;
+    private static final int SERIAL_UNIT_ID = 20;
+    private static final int DEAD_UNIT_ID = 21;
+    private static ModbusSlave gatewaySlave;
+
+    /**
+     * Bus that answers register reads for its unit without a serial port and never
+     * gets an answer from any other unit
+     */
+    private static class LoopbackBus extends ModbusGatewayBus {
+        LoopbackBus() {
+            super(new SerialParameters());
+        }
+
+        @Override
+        protected void openConnection() {
+        }
+
+        @Override
+        protected void closeConnection() {
+        }
+
+        @Override
+        protected ModbusResponse transmit(ModbusRequest request) throws ModbusException {
+            if (request.getUnitID() != SERIAL_UNIT_ID) {
+                throw new ModbusIOException("No response from unit %d", request.getUnitID());
+            }
+            ReadMultipleRegistersRequest read = (ReadMultipleRegistersRequest)request;
+            Register[] registers = new Register[read.getWordCount()];
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = new SimpleRegister(100 + read.getReference() + i);
+            }
+            ReadMultipleRegistersResponse response = new ReadMultipleRegistersResponse(registers);
+            response.setUnitID(request.getUnitID());
+            return response;
+        }
+    }
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        gatewaySlave = ModbusSlaveFactory.createTCPSlave(GATEWAY_PORT, 5);
+        gatewaySlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        ModbusGatewayBus bus = new LoopbackBus();
+        bus.setMaxWaitTime(500);
+        ModbusGateway gateway = new ModbusGateway();
+        gateway.addRoute(SERIAL_UNIT_ID, bus);
+        gateway.addRoute(DEAD_UNIT_ID, bus);
+        gatewaySlave.setGateway(gateway);
+        gatewaySlave.open();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (gatewaySlave != null) {
+            gatewaySlave.close();
+        }
+    }
+
+    @Test
+    public void testForwarding() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, GATEWAY_PORT);
+        try {
+            master.connect();
+            Register[] registers = master.readMultipleRegisters(SERIAL_UNIT_ID, 2, 3);
+            assertEquals(3, registers.length);
+            assertEquals("Incorrect value for forwarded register 2", 102, registers[0].getValue());
+            assertEquals("Incorrect value for forwarded register 4", 104, registers[2].getValue());
+            assertEquals("Local unit should use its process image", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            try {
+                master.readMultipleRegisters(DEAD_UNIT_ID, 0, 1);
+                fail("Gateway exception not thrown");
+            }
+            catch (ModbusSlaveException e) {
+                assertTrue("Expected gateway target failed to respond", e.isType(Modbus.GATEWAY_TARGET_NO_RESPONSE));
+            }
+            assertTrue(gatewaySlave.getGateway().getBus(SERIAL_UNIT_ID).isOpen());
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests that idle connections are closed by the listener's shared idle timer
+ */
+public class TestModbusTCPIdleTimeout extends AbstractTestModbus {
+
+    private static final int IDLE_PORT = PORT + 12;
+    private static ModbusSlave idleSlave;
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        idleSlave = ModbusSlaveFactory.createTCPSlave(null, IDLE_PORT, 5, false, 1);
+        idleSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        idleSlave.open();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (idleSlave != null) {
+            idleSlave.close();
+        }
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        Socket socket = new Socket(LOCALHOST, IDLE_PORT);
+        try {
+            socket.setSoTimeout(5000);
+            InputStream in = socket.getInputStream();
+            long start = System.currentTimeMillis();
+            assertEquals("Connection should have been closed", -1, in.read());
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("Connection closed too early " + elapsed, elapsed >= 900);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testActiveConnectionIsKeptOpen() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, IDLE_PORT);
+        try {
+            master.connect();
+            for (int i = 0; i < 8; i++) {
+                assertEquals("Incorrect value for register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+                Thread.sleep(300);
+            }
+            assertTrue("Master should still be connected", master.isConnected());
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+}
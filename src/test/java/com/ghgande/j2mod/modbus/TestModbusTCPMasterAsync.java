@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the asynchronous methods of the TCP master facade
+ */
+public class TestModbusTCPMasterAsync extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testReadAsync() throws Exception {
+        assertTrue("Incorrect status for coil 0", master.readCoilsAsync(UNIT_ID, 0, 1).get(5, TimeUnit.SECONDS).getBit(0));
+        assertTrue("Incorrect status for discrete 2", master.readInputDiscretesAsync(UNIT_ID, 1, 1).get(5, TimeUnit.SECONDS).getBit(0));
+        assertEquals("Incorrect value for input register 0", 45, master.readInputRegistersAsync(UNIT_ID, 0, 1).get(5, TimeUnit.SECONDS)[0].getValue());
+        assertEquals("Incorrect value for register 0", 251, master.readMultipleRegistersAsync(UNIT_ID, 0, 1).get(5, TimeUnit.SECONDS)[0].getValue());
+    }
+
+    @Test
+    public void testWriteAsync() throws Exception {
+        assertEquals("Incorrect write status for register 1", 1111, (int)master.writeSingleRegisterAsync(UNIT_ID, 1, new SimpleRegister(1111)).get(5, TimeUnit.SECONDS));
+        assertEquals("Incorrect write count", 1, (int)master.writeMultipleRegistersAsync(UNIT_ID, 2, new Register[]{new SimpleRegister(2222)}).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadInvalidCoilAsync() throws Exception {
+        try {
+            master.readCoilsAsync(UNIT_ID, 3, 1).get(5, TimeUnit.SECONDS);
+            fail("Invalid address not thrown");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Expected a slave exception", e.getCause() instanceof ModbusSlaveException);
+        }
+    }
+
+    @Test
+    public void testPipelinedReadsAsync() throws Exception {
+        ModbusTCPMaster pipelinedMaster = new ModbusTCPMaster(LOCALHOST, PORT);
+        pipelinedMaster.setPipelineWindow(16);
+        pipelinedMaster.connect();
+        try {
+            List<CompletableFuture<Register[]>> results = new ArrayList<CompletableFuture<Register[]>>();
+            for (int i = 0; i < 100; i++) {
+                results.add(pipelinedMaster.readMultipleRegistersAsync(UNIT_ID, 0, 1));
+            }
+            for (CompletableFuture<Register[]> result : results) {
+                assertEquals("Incorrect value for register 0", 251, result.get(10, TimeUnit.SECONDS)[0].getValue());
+            }
+            try {
+                pipelinedMaster.readCoilsAsync(UNIT_ID, 3, 1).get(5, TimeUnit.SECONDS);
+                fail("Invalid address not thrown");
+            }
+            catch (ExecutionException e) {
+                assertTrue("Expected a slave exception", e.getCause() instanceof ModbusSlaveException);
+            }
+        }
+        finally {
+            pipelinedMaster.disconnect();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.TCPMasterEndpoint;
+import com.ghgande.j2mod.modbus.net.TCPMasterEngine;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the selector based TCP master engine
+ */
+public class TestModbusTCPMasterEngine extends AbstractTestModbusTCPMaster {
+
+    private static TCPMasterEngine engine;
+
+    @BeforeClass
+    public static void startEngine() throws Exception {
+        engine = new TCPMasterEngine(2);
+        engine.setTimeout(2000);
+        engine.start();
+    }
+
+    @AfterClass
+    public static void stopEngine() {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void testManyEndpoints() throws Exception {
+        List<TCPMasterEndpoint> endpoints = new ArrayList<TCPMasterEndpoint>();
+        for (int i = 0; i < 4; i++) {
+            TCPMasterEndpoint endpoint = engine.createEndpoint(InetAddress.getByName(LOCALHOST), PORT);
+            endpoint.setWindow(4);
+            endpoints.add(endpoint);
+        }
+        try {
+            List<CompletableFuture<ModbusResponse>> results = new ArrayList<CompletableFuture<ModbusResponse>>();
+            for (int i = 0; i < 200; i++) {
+                ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, 1);
+                request.setUnitID(UNIT_ID);
+                results.add(endpoints.get(i % endpoints.size()).execute(request));
+            }
+            for (CompletableFuture<ModbusResponse> result : results) {
+                ModbusResponse response = result.get(10, TimeUnit.SECONDS);
+                assertTrue("Unexpected response type", response instanceof ReadMultipleRegistersResponse);
+                assertEquals("Incorrect value for register 0", 251, ((ReadMultipleRegistersResponse)response).getRegisterValue(0));
+            }
+            for (TCPMasterEndpoint endpoint : endpoints) {
+                assertTrue("Endpoint should be connected", endpoint.isConnected());
+            }
+        }
+        finally {
+            for (TCPMasterEndpoint endpoint : endpoints) {
+                endpoint.close();
+            }
+        }
+    }
+
+    @Test
+    public void testExceptionResponse() throws Exception {
+        TCPMasterEndpoint endpoint = engine.createEndpoint(InetAddress.getByName(LOCALHOST), PORT);
+        try {
+            ReadCoilsRequest request = new ReadCoilsRequest(3, 1);
+            request.setUnitID(UNIT_ID);
+            ModbusResponse response = endpoint.execute(request).get(5, TimeUnit.SECONDS);
+            assertTrue("Expected an exception response", response instanceof ExceptionResponse);
+            assertEquals("Incorrect exception code", Modbus.ILLEGAL_ADDRESS_EXCEPTION, ((ExceptionResponse)response).getExceptionCode());
+        }
+        finally {
+            endpoint.close();
+        }
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        TCPMasterEndpoint endpoint = engine.createEndpoint(InetAddress.getByName(LOCALHOST), 1);
+        try {
+            endpoint.execute(new ReadMultipleRegistersRequest(0, 1)).get(5, TimeUnit.SECONDS);
+            fail("Connection should have been refused");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Expected an I/O exception", e.getCause() instanceof ModbusIOException);
+        }
+        finally {
+            endpoint.close();
+        }
+    }
+
+    @Test
+    public void testConnectionRefusedIsRetried() throws Exception {
+        TCPMasterEndpoint endpoint = engine.createEndpoint(InetAddress.getByName(LOCALHOST), 1);
+        endpoint.setRetries(2);
+        try {
+            endpoint.execute(new ReadMultipleRegistersRequest(0, 1)).get(5, TimeUnit.SECONDS);
+            fail("Connection should have been refused");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Expected an I/O exception", e.getCause() instanceof ModbusIOException);
+            assertEquals("Request should not be left queued", 0, endpoint.getQueuedCount());
+        }
+        finally {
+            endpoint.close();
+        }
+    }
+
+    @Test
+    public void testExecuteAfterStop() throws Exception {
+        TCPMasterEngine stopped = new TCPMasterEngine(1);
+        stopped.start();
+        TCPMasterEndpoint endpoint = stopped.createEndpoint(InetAddress.getByName(LOCALHOST), PORT);
+        stopped.stop();
+        try {
+            endpoint.execute(new ReadMultipleRegistersRequest(0, 1)).get(1, TimeUnit.SECONDS);
+            fail("Engine is stopped");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Expected an I/O exception", e.getCause() instanceof ModbusIOException);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPPipelinedTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the pipelined TCP master connection where many transactions
+ * share the same socket
+ */
+public class TestModbusTCPMasterPipelined extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testPipelinedReads() throws Exception {
+        final TCPMasterConnection connection = new TCPMasterConnection(InetAddress.getByName(LOCALHOST));
+        connection.setPort(PORT);
+        connection.setPipelineWindow(8);
+        connection.connect();
+        assertTrue("Connection should be pipelined", connection.isPipelined());
+        assertNotNull("Pipeline should be running", connection.getPipeline());
+        assertTrue("Transport should create pipelined transactions", connection.getModbusTransport().createTransaction() instanceof ModbusTCPPipelinedTransaction);
+
+        ExecutorService execService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 200; i++) {
+                results.add(execService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        ModbusTransaction trans = new ModbusTCPPipelinedTransaction(connection, new ReadMultipleRegistersRequest(0, 1));
+                        trans.getRequest().setUnitID(UNIT_ID);
+                        trans.execute();
+                        return ((ReadMultipleRegistersResponse)trans.getResponse()).getRegisterValue(0);
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals("Incorrect value for register 0", 251, (int)result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals("All requests should have completed", 0, connection.getPipeline().getInFlightCount());
+        }
+        finally {
+            execService.shutdown();
+            connection.close();
+        }
+        assertNull("Pipeline should be removed on close", connection.getPipeline());
+    }
+
+    @Test
+    public void testRtuOverTcpIsNotPipelined() throws Exception {
+        TCPMasterConnection connection = new TCPMasterConnection(InetAddress.getByName(LOCALHOST));
+        connection.setPipelineWindow(4);
+        connection.setUseRtuOverTcp(true);
+        assertFalse("RTU over TCP cannot be pipelined", connection.isPipelined());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.*;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests polling points through the TCP master
+ */
+public class TestModbusTCPMasterPolling extends AbstractTestModbusTCPMaster {
+
+    private static class RecordingListener extends AbstractPollingListener {
+        final Map<PollingPoint, Integer> values = new ConcurrentHashMap<PollingPoint, Integer>();
+        final CountDownLatch cycles = new CountDownLatch(3);
+        volatile ModbusException failure;
+
+        @Override
+        public void pointRead(PollingPoint point, int[] blockValues, int offset) {
+            int value = 0;
+            for (int i = 0; i < point.getCount(); i++) {
+                value = (value << 16) | blockValues[offset + i];
+            }
+            values.put(point, value);
+        }
+
+        @Override
+        public void blockFailed(PollingBlock block, ModbusException e) {
+            failure = e;
+        }
+
+        @Override
+        public void cycleCompleted(PollingGroup group) {
+            cycles.countDown();
+        }
+    }
+
+    @Test
+    public void testPointsArePolled() throws Exception {
+        PollingPoint holding1 = new PollingPoint(UNIT_ID, PollingPointType.HOLDING_REGISTER, 1);
+        PollingPoint holding3 = new PollingPoint(UNIT_ID, PollingPointType.HOLDING_REGISTER, 3);
+        PollingPoint input = new PollingPoint("pair", UNIT_ID, PollingPointType.INPUT_REGISTER, 1, 2);
+        PollingPoint coil = new PollingPoint(UNIT_ID, PollingPointType.COIL, 0);
+        PollingPoint discrete = new PollingPoint(UNIT_ID, PollingPointType.DISCRETE_INPUT, 3);
+
+        RecordingListener listener = new RecordingListener();
+        PollingScheduler scheduler = new PollingScheduler(master, 1);
+        PollingGroup group = scheduler.addGroup("test", Arrays.asList(holding1, holding3, input, coil, discrete), 20, TimeUnit.MILLISECONDS, listener);
+        assertEquals(4, scheduler.getRequestCount());
+        scheduler.start();
+        try {
+            assertTrue("Group was not polled", listener.cycles.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            scheduler.stop();
+        }
+        assertNull(listener.failure);
+        assertTrue(group.getCycleCount() >= 3);
+        assertEquals(0, group.getFailedRequestCount());
+        assertEquals(1111, (int)listener.values.get(holding1));
+        assertEquals(3333, (int)listener.values.get(holding3));
+        assertEquals((9999 << 16) | 8888, (int)listener.values.get(input));
+        assertEquals(1, (int)listener.values.get(coil));
+        assertEquals(1, (int)listener.values.get(discrete));
+    }
+
+    @Test
+    public void testFailedBlockIsReported() {
+        RecordingListener listener = new RecordingListener();
+        PollingPlan plan = new PollingPlan(Arrays.asList(
+                new PollingPoint(UNIT_ID, PollingPointType.COIL, 1),
+                new PollingPoint(UNIT_ID, PollingPointType.COIL, 3)), 2);
+        assertEquals(1, plan.execute(master, listener));
+        assertNotNull(listener.failure);
+        assertTrue(listener.values.isEmpty());
+    }
+}
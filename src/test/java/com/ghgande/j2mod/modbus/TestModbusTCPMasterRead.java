@@ -21,6 +21,8 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+
 import static junit.framework.TestCase.assertFalse;
 import static org.junit.Assert.*;
 
@@ -160,6 +162,44 @@ public class TestModbusTCPMasterRead extends AbstractTestModbusTCPMaster {
         }
     }
 
+    @Test
+    public void testReadMultipleHoldingRegisterValues() {
+        try {
+            short[] values = new short[6];
+            assertEquals("Incorrect number of registers read", 5, master.readMultipleRegisters(UNIT_ID, 0, 5, values, 1));
+            assertArrayEquals("Incorrect register values", new short[]{0, 251, 1111, 2222, 3333, 4444}, values);
+
+            int[] unsigned = new int[5];
+            assertEquals("Incorrect number of registers read", 5, master.readMultipleRegisters(UNIT_ID, 0, 5, unsigned, 0));
+            assertArrayEquals("Incorrect register values", new int[]{251, 1111, 2222, 3333, 4444}, unsigned);
+
+            ByteBuffer buffer = ByteBuffer.allocate(10);
+            assertEquals("Incorrect number of registers read", 5, master.readMultipleRegisters(UNIT_ID, 0, 5, buffer));
+            buffer.flip();
+            assertEquals("Incorrect value for holding register 1", 251, buffer.getShort(0));
+            assertEquals("Incorrect value for holding register 5", 4444, buffer.getShort(8));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadMultipleInputRegisterValues() {
+        try {
+            int[] values = new int[5];
+            assertEquals("Incorrect number of registers read", 5, master.readInputRegisters(UNIT_ID, 0, 5, values, 0));
+            assertArrayEquals("Incorrect register values", new int[]{45, 9999, 8888, 7777, 6666}, values);
+
+            ByteBuffer buffer = ByteBuffer.allocate(2);
+            assertEquals("Incorrect number of registers read", 1, master.readInputRegisters(UNIT_ID, 0, 1, buffer));
+            assertEquals("Incorrect value for input register 1", 45, buffer.getShort(0));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
     @Test
     public void testBadUnitIdRequest() {
         try {
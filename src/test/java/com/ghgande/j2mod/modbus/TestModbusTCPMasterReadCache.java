@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusReadCache;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests reading through a cache with the TCP master
+ */
+public class TestModbusTCPMasterReadCache extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testWritesInvalidateCachedRegisters() throws Exception {
+        ModbusReadCache cache = new ModbusReadCache(master, 1, TimeUnit.HOURS);
+        assertArrayEquals(new int[]{251, 1111, 2222}, cache.readMultipleRegisters(UNIT_ID, 0, 3));
+        assertArrayEquals(new int[]{251, 1111, 2222}, cache.readMultipleRegisters(UNIT_ID, 0, 3));
+        assertArrayEquals(new int[]{3333, 4444}, cache.readMultipleRegisters(UNIT_ID, 3, 2));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        try {
+            cache.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(1234));
+            assertArrayEquals(new int[]{251, 1234, 2222}, cache.readMultipleRegisters(UNIT_ID, 0, 3));
+
+            // The range that does not overlap the write is still cached
+            assertArrayEquals(new int[]{3333, 4444}, cache.readMultipleRegisters(UNIT_ID, 3, 2));
+            assertEquals(3, cache.getMissCount());
+        }
+        finally {
+            master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(1111));
+        }
+    }
+
+    @Test
+    public void testFailedReadIsNotCached() throws Exception {
+        ModbusReadCache cache = new ModbusReadCache(master, 1, TimeUnit.HOURS);
+        assertTrue(cache.readCoils(UNIT_ID, 0, 1).getBit(0));
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.readCoils(UNIT_ID, 3, 1);
+                fail("Coil 3 should not be readable");
+            }
+            catch (ModbusSlaveException e) {
+                // expected
+            }
+        }
+        assertEquals(3, cache.getMissCount());
+        assertTrue(cache.readCoils(UNIT_ID, 0, 1).getBit(0));
+        assertEquals(1, cache.getHitCount());
+    }
+}
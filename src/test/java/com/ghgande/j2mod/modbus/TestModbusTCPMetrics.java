@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.metrics.ModbusStatistics;
+import com.ghgande.j2mod.modbus.metrics.RequestStatistics;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the metrics reported by the TCP master and slave
+ */
+public class TestModbusTCPMetrics extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testMasterAndSlaveStatistics() throws Exception {
+        ModbusStatistics masterStatistics = new ModbusStatistics();
+        ModbusStatistics slaveStatistics = new ModbusStatistics();
+        master.setMetrics(masterStatistics);
+        slave.setMetrics(slaveStatistics);
+        try {
+            for (int i = 0; i < 10; i++) {
+                master.readMultipleRegisters(UNIT_ID, 0, 5);
+            }
+            try {
+                master.readCoils(UNIT_ID, 3, 1);
+                fail("Invalid address not thrown");
+            }
+            catch (ModbusSlaveException e) {
+                // expected
+            }
+
+            RequestStatistics total = masterStatistics.getTotal();
+            assertEquals(11, total.getRequestCount());
+            assertEquals(1, total.getExceptionResponseCount());
+            assertEquals(0, total.getFailureCount());
+            assertTrue(total.getMaxLatencyMicros() >= total.getMedianLatencyMicros());
+            assertEquals(10, masterStatistics.getFunctionCode(Modbus.READ_MULTIPLE_REGISTERS).getRequestCount());
+            assertEquals(11, masterStatistics.getUnit(UNIT_ID).getRequestCount());
+            assertArrayEquals(new int[]{UNIT_ID}, masterStatistics.getSlowestUnits());
+
+            // The slave reports after it has written the response
+            long end = System.currentTimeMillis() + 2000;
+            while ((slaveStatistics.getTotal().getRequestCount() < 11 || slaveStatistics.getTotal().getExceptionResponseCount() < 1) && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(11, slaveStatistics.getTotal().getRequestCount());
+            assertEquals(1, slaveStatistics.getFunctionCode(Modbus.READ_COILS).getExceptionResponseCount());
+        }
+        finally {
+            master.setMetrics(null);
+            slave.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void testStatisticsArePublishedToJmx() throws Exception {
+        ModbusStatistics statistics = new ModbusStatistics();
+        ObjectName name = statistics.registerMBean("Master", "test " + PORT);
+        master.setMetrics(statistics);
+        try {
+            master.readInputRegisters(UNIT_ID, 0, 2);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            CompositeData total = (CompositeData)server.getAttribute(name, "Total");
+            assertEquals(1L, total.get("requestCount"));
+            assertNotNull(server.getAttribute(name, "Units"));
+        }
+        finally {
+            master.setMetrics(null);
+            statistics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
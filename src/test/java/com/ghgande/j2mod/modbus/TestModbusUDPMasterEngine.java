@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.UDPMasterEngine;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the UDP master engine with many requests in flight to more than one slave
+ */
+public class TestModbusUDPMasterEngine extends AbstractTestModbus {
+
+    private static final int FIRST_PORT = PORT + 16;
+    private static final int SECOND_PORT = PORT + 17;
+    private static final int SILENT_PORT = PORT + 18;
+    private static final int MALFORMED_PORT = PORT + 19;
+    private static ModbusSlave firstSlave;
+    private static ModbusSlave secondSlave;
+    private static UDPMasterEngine engine;
+
+    @BeforeClass
+    public static void setUpSlaves() throws Exception {
+        firstSlave = ModbusSlaveFactory.createNIOUDPSlave(null, FIRST_PORT, 2, 65536);
+        firstSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        firstSlave.open();
+        secondSlave = ModbusSlaveFactory.createNIOUDPSlave(null, SECOND_PORT, 2, 65536);
+        secondSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        secondSlave.open();
+        engine = new UDPMasterEngine();
+        engine.setTimeout(2000);
+        engine.start();
+    }
+
+    @AfterClass
+    public static void tearDownSlaves() {
+        if (engine != null) {
+            engine.stop();
+        }
+        if (firstSlave != null) {
+            firstSlave.close();
+        }
+        if (secondSlave != null) {
+            secondSlave.close();
+        }
+    }
+
+    @Test
+    public void testManyRequestsInFlight() throws Exception {
+        InetAddress address = InetAddress.getByName(LOCALHOST);
+        List<CompletableFuture<ModbusResponse>> results = new ArrayList<CompletableFuture<ModbusResponse>>();
+        for (int i = 0; i < 200; i++) {
+            ReadInputRegistersRequest request = new ReadInputRegistersRequest(i % 5, 1);
+            request.setUnitID(UNIT_ID);
+            results.add(engine.execute(address, i % 2 == 0 ? FIRST_PORT : SECOND_PORT, request));
+        }
+        int[] expected = {45, 9999, 8888, 7777, 6666};
+        for (int i = 0; i < results.size(); i++) {
+            ModbusResponse response = results.get(i).get(10, TimeUnit.SECONDS);
+            assertTrue("Unexpected response type", response instanceof ReadInputRegistersResponse);
+            assertEquals("Incorrect value for input register " + i % 5, expected[i % 5], ((ReadInputRegistersResponse)response).getRegisterValue(0));
+        }
+        assertEquals(0, engine.getInFlightCount());
+    }
+
+    @Test
+    public void testExceptionResponse() throws Exception {
+        ReadCoilsRequest request = new ReadCoilsRequest(3, 1);
+        request.setUnitID(UNIT_ID);
+        ModbusResponse response = engine.execute(InetAddress.getByName(LOCALHOST), FIRST_PORT, request).get(10, TimeUnit.SECONDS);
+        assertTrue("Expected an exception response", response instanceof ExceptionResponse);
+        assertEquals(Modbus.ILLEGAL_ADDRESS_EXCEPTION, ((ExceptionResponse)response).getExceptionCode());
+    }
+
+    @Test
+    public void testTimeoutWithRetry() throws Exception {
+        UDPMasterEngine shortEngine = new UDPMasterEngine();
+        shortEngine.setTimeout(200);
+        shortEngine.setRetries(1);
+        shortEngine.start();
+        try {
+            ReadCoilsRequest request = new ReadCoilsRequest(0, 1);
+            request.setUnitID(UNIT_ID);
+            long start = System.nanoTime();
+            CompletableFuture<ModbusResponse> result = shortEngine.execute(InetAddress.getByName(LOCALHOST), SILENT_PORT, request);
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("Timeout not thrown");
+            }
+            catch (ExecutionException e) {
+                assertTrue("Expected a ModbusIOException", e.getCause() instanceof ModbusIOException);
+                assertTrue("Expected a timeout", ((ModbusIOException)e.getCause()).isTimeout());
+            }
+            assertTrue("Request was not retried", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(380));
+            assertEquals(0, shortEngine.getInFlightCount());
+        }
+        finally {
+            shortEngine.stop();
+        }
+    }
+
+    @Test
+    public void testMalformedResponse() throws Exception {
+        final DatagramSocket slave = new DatagramSocket(MALFORMED_PORT, InetAddress.getByName(LOCALHOST));
+        Thread responder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] buffer = new byte[256];
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    slave.receive(packet);
+
+                    // Echo the transaction ID but claim more register bytes than the frame holds
+                    byte[] reply = {buffer[0], buffer[1], 0, 0, 0, 4, (byte)UNIT_ID, Modbus.READ_MULTIPLE_REGISTERS, 10, 1};
+                    slave.send(new DatagramPacket(reply, reply.length, packet.getSocketAddress()));
+                }
+                catch (Exception e) {
+                    // Socket closed by the test
+                }
+            }
+        });
+        responder.start();
+        UDPMasterEngine shortEngine = new UDPMasterEngine();
+        shortEngine.setTimeout(200);
+        shortEngine.start();
+        try {
+            ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, 5);
+            request.setUnitID(UNIT_ID);
+            CompletableFuture<ModbusResponse> result = shortEngine.execute(InetAddress.getByName(LOCALHOST), MALFORMED_PORT, request);
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("Malformed response was accepted");
+            }
+            catch (ExecutionException e) {
+                assertTrue("Expected a ModbusIOException", e.getCause() instanceof ModbusIOException);
+            }
+            assertEquals(0, shortEngine.getInFlightCount());
+        }
+        finally {
+            shortEngine.stop();
+            slave.close();
+            responder.join(1000);
+        }
+    }
+}
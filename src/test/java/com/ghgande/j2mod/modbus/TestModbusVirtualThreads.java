@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the virtual thread mode of the TCP listener and masters.
+ * On runtimes without virtual threads the same code runs on platform threads.
+ */
+public class TestModbusVirtualThreads extends AbstractTestModbus {
+
+    private static final int VT_PORT = PORT + 11;
+    private static ModbusSlave vtSlave;
+
+    @BeforeClass
+    public static void setUpSlave() throws Exception {
+        // The pool size is ignored with virtual threads, so even 0 is accepted
+        vtSlave = ModbusSlaveFactory.createTCPSlave(null, VT_PORT, 0, false, 0, true);
+        vtSlave.addProcessImage(UNIT_ID, getSimpleProcessImage());
+        vtSlave.open();
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (vtSlave != null) {
+            vtSlave.close();
+        }
+    }
+
+    @Test
+    public void testMoreClientsThanPoolSize() throws Exception {
+        List<ModbusTCPMaster> masters = new ArrayList<ModbusTCPMaster>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, VT_PORT);
+                master.connect();
+                masters.add(master);
+            }
+            for (ModbusTCPMaster master : masters) {
+                assertEquals("Incorrect value for register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            }
+        }
+        finally {
+            for (ModbusTCPMaster master : masters) {
+                master.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testAsyncMasterOnVirtualThread() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, VT_PORT);
+        master.setUseVirtualThreads(true);
+        assertTrue("Virtual threads should be enabled", master.isUseVirtualThreads());
+        try {
+            master.connect();
+            List<CompletableFuture<InputRegister[]>> results = new ArrayList<CompletableFuture<InputRegister[]>>();
+            for (int i = 0; i < 20; i++) {
+                results.add(master.readInputRegistersAsync(UNIT_ID, 0, 1));
+            }
+            for (CompletableFuture<InputRegister[]> result : results) {
+                assertEquals("Incorrect value for input register 0", 45, result.get(5, TimeUnit.SECONDS)[0].getValue());
+            }
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ModbusReadCacheTest {
+
+    /**
+     * Master whose holding register N has the value N plus an offset, that
+     * counts its reads and can be held up
+     */
+    private static class StubMaster extends AbstractModbusMaster {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile CountDownLatch gate;
+        volatile int base;
+
+        @Override
+        public int readMultipleRegisters(int unitId, int ref, int count, int[] values, int offset) throws ModbusException {
+            reads.incrementAndGet();
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    latch.await();
+                }
+                catch (InterruptedException e) {
+                    throw new ModbusException("Interrupted");
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                values[offset + i] = base + ref + i;
+            }
+            return count;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public AbstractModbusTransport getTransport() {
+            return null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsAreCollapsed() throws Exception {
+        final StubMaster master = new StubMaster();
+        master.gate = new CountDownLatch(1);
+        final ModbusReadCache cache = new ModbusReadCache(master, 0, TimeUnit.MILLISECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() throws Exception {
+                        return cache.readMultipleRegisters(1, 10, 3);
+                    }
+                }));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getCollapsedCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            master.gate.countDown();
+            for (Future<int[]> result : results) {
+                assertArrayEquals(new int[]{10, 11, 12}, result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, master.reads.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getCollapsedCount());
+
+        // Nothing is kept without a time to live
+        master.gate = null;
+        cache.readMultipleRegisters(1, 10, 3);
+        assertEquals(2, master.reads.get());
+    }
+
+    @Test
+    public void testSubscribersSeeChanges() throws Exception {
+        StubMaster master = new StubMaster();
+        ModbusReadCache cache = new ModbusReadCache(master, 1, TimeUnit.HOURS);
+        final List<int[]> changes = new ArrayList<int[]>();
+        cache.subscribe(new PollingPoint("pair", 1, PollingPointType.HOLDING_REGISTER, 4, 2), new AbstractReadCacheListener() {
+            @Override
+            public void valuesChanged(PollingPoint point, int[] values) {
+                changes.add(values);
+            }
+        });
+
+        // Only part of the range is read at first
+        cache.readMultipleRegisters(1, 0, 5);
+        cache.readMultipleRegisters(1, 0, 5);
+        assertEquals(1, master.reads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{4, -1}, changes.get(0));
+
+        // Unchanged values are not reported again
+        cache.readMultipleRegisters(1, 4, 2);
+        cache.invalidate(1, PollingPointType.HOLDING_REGISTER, 5, 1);
+        cache.readMultipleRegisters(1, 4, 2);
+        assertEquals(3, master.reads.get());
+        assertEquals(2, changes.size());
+        assertArrayEquals(new int[]{4, 5}, changes.get(1));
+
+        // Other tables and units are not affected by an invalidation
+        master.base = 100;
+        cache.invalidate(2, PollingPointType.HOLDING_REGISTER, 0, 10);
+        cache.invalidate(1, PollingPointType.INPUT_REGISTER, 0, 10);
+        assertArrayEquals(new int[]{4, 5}, cache.readMultipleRegisters(1, 4, 2));
+        cache.invalidateAll();
+        assertArrayEquals(new int[]{104, 105}, cache.readMultipleRegisters(1, 4, 2));
+        assertEquals(3, changes.size());
+        assertArrayEquals(new int[]{104, 105}, changes.get(2));
+    }
+}
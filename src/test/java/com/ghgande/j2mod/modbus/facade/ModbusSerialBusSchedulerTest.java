@@ -0,0 +1,223 @@
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersResponse;
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ModbusSerialBusSchedulerTest {
+
+    private static final int DEAD_UNIT = 9;
+
+    /**
+     * Scheduler without a serial port that records the requests sent. Requests
+     * for the dead unit time out and the first request is held until released.
+     */
+    private static class StubScheduler extends ModbusSerialBusScheduler {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean transmitting;
+        volatile boolean closedWhilstTransmitting;
+
+        StubScheduler() {
+            super(new SerialConnection(new SerialParameters()), 100);
+        }
+
+        @Override
+        protected void openConnection() {
+        }
+
+        @Override
+        protected void closeConnection() {
+            closedWhilstTransmitting |= transmitting;
+        }
+
+        @Override
+        protected ModbusResponse transmit(ModbusRequest request, int timeout) throws ModbusException {
+            transmitting = true;
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                Thread.sleep(2);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                transmitting = false;
+            }
+            int reference = ((ReadInputRegistersRequest)request).getReference();
+            sent.add(request.getUnitID() + ":" + reference);
+            if (request.getUnitID() == DEAD_UNIT) {
+                ModbusIOException timeoutException = new ModbusIOException("No response");
+                timeoutException.setTimeout(true);
+                throw timeoutException;
+            }
+            ReadInputRegistersResponse response = new ReadInputRegistersResponse();
+            response.setRegisters(new InputRegister[]{new SimpleInputRegister(reference)});
+            return response;
+        }
+    }
+
+    private StubScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.release.countDown();
+            scheduler.close();
+        }
+    }
+
+    private static ReadInputRegistersRequest read(int unitId, int reference) {
+        ReadInputRegistersRequest request = new ReadInputRegistersRequest(reference, 1);
+        request.setUnitID(unitId);
+        return request;
+    }
+
+    @Test
+    public void testPriorityThenDeadlineOrder() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.open();
+        Future<ModbusResponse> first = scheduler.submit(read(1, 0));
+        assertTrue(scheduler.started.await(5, TimeUnit.SECONDS));
+
+        List<Future<ModbusResponse>> futures = new ArrayList<Future<ModbusResponse>>();
+        futures.add(scheduler.submit(read(1, 1), 0, 5000));
+        futures.add(scheduler.submit(read(2, 2), 0, 1000));
+        futures.add(scheduler.submit(read(3, 3), 5, 5000));
+        futures.add(scheduler.submit(read(1, 4), 0, 2000));
+        assertEquals(4, scheduler.getQueuedCount());
+        scheduler.release.countDown();
+
+        assertEquals(0, ((ReadInputRegistersResponse)first.get(5, TimeUnit.SECONDS)).getRegisterValue(0));
+        for (Future<ModbusResponse> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("1:0", "3:3", "2:2", "1:4", "1:1"), scheduler.sent);
+        assertTrue(scheduler.getUtilization() > 0);
+    }
+
+    @Test
+    public void testDeadlinePassesWhilstWaiting() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.open();
+        scheduler.submit(read(1, 0));
+        assertTrue(scheduler.started.await(5, TimeUnit.SECONDS));
+        Future<ModbusResponse> late = scheduler.submit(read(2, 1), 0, 20);
+
+        // The bus is busy until after the deadline
+        Thread.sleep(50);
+        scheduler.release.countDown();
+        try {
+            late.get(5, TimeUnit.SECONDS);
+            fail("Request should have missed its deadline");
+        }
+        catch (ExecutionException e) {
+            assertTrue(((ModbusIOException)e.getCause()).isTimeout());
+        }
+        assertFalse(scheduler.sent.contains("2:1"));
+    }
+
+    @Test
+    public void testDeadSlaveIsBackedOff() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.setBackoff(10000, 20000);
+        scheduler.release.countDown();
+        scheduler.open();
+        try {
+            scheduler.execute(read(DEAD_UNIT, 0));
+            fail("Dead unit should not respond");
+        }
+        catch (ModbusIOException e) {
+            assertTrue(e.isTimeout());
+        }
+        assertTrue(scheduler.isBackedOff(DEAD_UNIT));
+
+        // Fails without being sent as the deadline is before the end of the back off
+        Future<ModbusResponse> skipped = scheduler.submit(read(DEAD_UNIT, 1), 0, 1000);
+        ModbusResponse response = scheduler.execute(read(1, 2));
+        assertEquals(2, ((ReadInputRegistersResponse)response).getRegisterValue(0));
+        try {
+            skipped.get(5, TimeUnit.SECONDS);
+            fail("Request for a backed off unit should fail");
+        }
+        catch (ExecutionException e) {
+            assertTrue(((ModbusIOException)e.getCause()).isTimeout());
+        }
+        assertEquals(Arrays.asList(DEAD_UNIT + ":0", "1:2"), scheduler.sent);
+        assertFalse(scheduler.isBackedOff(1));
+        assertTrue(scheduler.getAverageResponseTime(1) > 0);
+    }
+
+    @Test
+    public void testWaitingRequestsAge() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.setAgingInterval(10);
+        scheduler.open();
+        scheduler.submit(read(1, 0));
+        assertTrue(scheduler.started.await(5, TimeUnit.SECONDS));
+
+        // The low priority request has waited long enough to go before the newer ones
+        Future<ModbusResponse> low = scheduler.submit(read(2, 1), 0, 5000);
+        Thread.sleep(50);
+        Future<ModbusResponse> high = scheduler.submit(read(1, 2), 1, 5000);
+        scheduler.release.countDown();
+        low.get(5, TimeUnit.SECONDS);
+        high.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("1:0", "2:1", "1:2"), scheduler.sent);
+    }
+
+    @Test
+    public void testWaitingRequestsAgeWithinSlave() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.setAgingInterval(10);
+        scheduler.open();
+        scheduler.submit(read(1, 0));
+        assertTrue(scheduler.started.await(5, TimeUnit.SECONDS));
+
+        // The low priority request must not be starved by the higher priority
+        // requests that keep arriving for the same slave
+        Future<ModbusResponse> low = scheduler.submit(read(1, 1), 0, 5000);
+        Thread.sleep(50);
+        List<Future<ModbusResponse>> high = new ArrayList<Future<ModbusResponse>>();
+        for (int i = 0; i < 20; i++) {
+            high.add(scheduler.submit(read(1, 100 + i), 2, 5000));
+        }
+        scheduler.release.countDown();
+        low.get(5, TimeUnit.SECONDS);
+        for (Future<ModbusResponse> future : high) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals("1:1", scheduler.sent.get(1));
+        assertEquals("1:100", scheduler.sent.get(2));
+    }
+
+    @Test
+    public void testCloseWaitsForTransmit() throws Exception {
+        scheduler = new StubScheduler();
+        scheduler.open();
+        Future<ModbusResponse> pending = scheduler.submit(read(1, 0));
+        assertTrue(scheduler.started.await(5, TimeUnit.SECONDS));
+        scheduler.close();
+        assertFalse("Port closed whilst a request was being sent", scheduler.closedWhilstTransmitting);
+        assertTrue(pending.isDone());
+    }
+}
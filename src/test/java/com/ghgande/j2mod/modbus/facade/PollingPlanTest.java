@@ -0,0 +1,58 @@
+package com.ghgande.j2mod.modbus.facade;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PollingPlanTest {
+
+    @Test
+    public void testScatteredPointsAreMerged() {
+        List<PollingPoint> points = new ArrayList<PollingPoint>();
+        for (int address = 0; address < 1000; address += 4) {
+            points.add(new PollingPoint(1, PollingPointType.HOLDING_REGISTER, address));
+        }
+        PollingPlan plan = new PollingPlan(points, 3);
+        assertEquals(250, plan.getPointCount());
+
+        // Up to 125 registers per request, each ending on a point
+        assertEquals(8, plan.getBlocks().size());
+        PollingBlock first = plan.getBlocks().get(0);
+        assertEquals(0, first.getAddress());
+        assertEquals(125, first.getCount());
+        assertEquals(32, first.getPoints().size());
+        for (PollingBlock block : plan.getBlocks()) {
+            assertTrue(block.getCount() <= 125);
+        }
+
+        // Without a gap every point is a request
+        assertEquals(250, new PollingPlan(points).getBlocks().size());
+    }
+
+    @Test
+    public void testUnitsAndTablesAreNotMixed() {
+        PollingPlan plan = new PollingPlan(Arrays.asList(
+                new PollingPoint(2, PollingPointType.HOLDING_REGISTER, 1),
+                new PollingPoint(1, PollingPointType.HOLDING_REGISTER, 0),
+                new PollingPoint(1, PollingPointType.INPUT_REGISTER, 1),
+                new PollingPoint(1, PollingPointType.HOLDING_REGISTER, 1),
+                new PollingPoint("long", 1, PollingPointType.HOLDING_REGISTER, 2, 2),
+                new PollingPoint(1, PollingPointType.COIL, 0),
+                new PollingPoint(1, PollingPointType.COIL, 1999),
+                new PollingPoint(1, PollingPointType.COIL, 2000)), 5000);
+
+        List<PollingBlock> blocks = plan.getBlocks();
+        assertEquals(5, blocks.size());
+        assertEquals("[COIL unit 1 0-1999 (2 points), COIL unit 1 2000-2000 (1 points), HOLDING_REGISTER unit 1 0-3 (3 points), " +
+                "INPUT_REGISTER unit 1 1-1 (1 points), HOLDING_REGISTER unit 2 1-1 (1 points)]", blocks.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPointLargerThanARequestIsRejected() {
+        new PollingPoint("too big", 1, PollingPointType.INPUT_REGISTER, 0, 126);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.AbstractSerialConnection;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ModbusASCIITransportTest {
+
+    /**
+     * Connection that plays back a fixed input and counts the reads
+     */
+    private static class PlaybackConnection extends AbstractSerialConnection {
+        private final byte[] input;
+        private int position;
+        private int reads;
+
+        PlaybackConnection(String input) {
+            this.input = input.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public AbstractModbusTransport getModbusTransport() {
+            return null;
+        }
+
+        @Override
+        public int readBytes(byte[] buffer, int bytesToRead) {
+            reads++;
+            int count = Math.min(bytesToRead, input.length - position);
+            System.arraycopy(input, position, buffer, 0, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int writeBytes(byte[] buffer, int bytesToWrite) {
+            return bytesToWrite;
+        }
+
+        @Override
+        public int bytesAvailable() {
+            return input.length - position;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int getBaudRate() {
+            return 19200;
+        }
+
+        @Override
+        public int getNumDataBits() {
+            return 8;
+        }
+
+        @Override
+        public int getNumStopBits() {
+            return 1;
+        }
+
+        @Override
+        public int getParity() {
+            return NO_PARITY;
+        }
+
+        @Override
+        public String getPortName() {
+            return "playback";
+        }
+
+        @Override
+        public String getDescriptivePortName() {
+            return "playback";
+        }
+
+        @Override
+        public void setComPortTimeouts(int newTimeoutMode, int newReadTimeout, int newWriteTimeout) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public int getTimeout() {
+            return 0;
+        }
+
+        @Override
+        public void setTimeout(int timeout) {
+        }
+
+        @Override
+        public Set<String> getCommPorts() {
+            return Collections.emptySet();
+        }
+    }
+
+    @Test
+    public void testResponseIsDecodedFromOneRead() throws Exception {
+        PlaybackConnection connection = new PlaybackConnection(":01030400FB115C90\r\n");
+        ModbusASCIITransport transport = new ModbusASCIITransport();
+        transport.setCommPort(connection);
+
+        ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)transport.readResponse();
+        assertEquals(2, response.getWordCount());
+        assertEquals(251, response.getRegisterValue(0));
+        assertEquals(0x115C, response.getRegisterValue(1));
+        assertEquals("Frame should be read from the port in one go", 1, connection.reads);
+    }
+
+    @Test
+    public void testEchoIncludesBytesReadAhead() throws Exception {
+        PlaybackConnection connection = new PlaybackConnection(":01030400FB115C90\r\nECHO");
+        ModbusASCIITransport transport = new ModbusASCIITransport();
+        transport.setCommPort(connection);
+        transport.readResponse();
+
+        // The line feed and the echo were read ahead with the frame
+        transport.readEcho(5);
+        assertEquals(0, connection.bytesAvailable());
+        try {
+            transport.readEcho(1);
+            fail("Echo should not be available");
+        }
+        catch (Exception e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSilenceIsATimeout() throws Exception {
+        ModbusASCIITransport transport = new ModbusASCIITransport();
+        transport.setCommPort(new PlaybackConnection(""));
+        try {
+            transport.readResponse();
+            fail("Nothing was received");
+        }
+        catch (ModbusIOException e) {
+            assertTrue("Silence should be reported as a timeout", e.isTimeout());
+        }
+    }
+
+    @Test
+    public void testTruncatedFrameIsNotATimeout() throws Exception {
+        ModbusASCIITransport transport = new ModbusASCIITransport();
+        transport.setCommPort(new PlaybackConnection(":010304"));
+        try {
+            transport.readResponse();
+            fail("Frame was truncated");
+        }
+        catch (ModbusIOException e) {
+            assertFalse("A truncated frame should not be reported as a timeout", e.isTimeout());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ModbusTCPCodecTest {
+
+    private static Register[] registers(int count) {
+        Register[] registers = new Register[count];
+        for (int i = 0; i < count; i++) {
+            registers[i] = new SimpleRegister(i * 257 + 0x8000);
+        }
+        return registers;
+    }
+
+    private static void assertFrame(ModbusMessage msg) throws Exception {
+        byte[] frame = new ModbusTCPCodec().encode(msg);
+        byte[] message = msg.getMessage();
+
+        assertEquals(ModbusTCPCodec.HEADER_LENGTH + 2 + message.length, frame.length);
+        assertEquals(message.length + 2, ((frame[4] & 0xff) << 8) | (frame[5] & 0xff));
+        assertEquals(msg.getUnitID(), frame[6] & 0xff);
+        assertEquals(msg.getFunctionCode(), frame[7] & 0xff);
+        assertArrayEquals(message, Arrays.copyOfRange(frame, ModbusTCPCodec.HEADER_LENGTH + 2, frame.length));
+    }
+
+    @Test
+    public void testEncodeRegisterResponses() throws Exception {
+        ReadMultipleRegistersResponse holding = new ReadMultipleRegistersResponse(registers(125));
+        holding.setUnitID(15);
+        holding.setTransactionID(7);
+        assertFrame(holding);
+
+        ReadInputRegistersResponse input = new ReadInputRegistersResponse(registers(3));
+        input.setUnitID(15);
+        assertFrame(input);
+
+        ReadWriteMultipleResponse readWrite = new ReadWriteMultipleResponse(registers(4));
+        assertFrame(readWrite);
+    }
+
+    @Test
+    public void testEncodeRequests() throws Exception {
+        assertFrame(new WriteMultipleRegistersRequest(10, registers(5)));
+
+        ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(15, 1, 2, 3, 3);
+        readWrite.getRegister(2).setValue(0xFFFF);
+        assertFrame(readWrite);
+
+        ReadCoilsResponse coils = new ReadCoilsResponse(12);
+        coils.setCoilStatus(0, true);
+        coils.setCoilStatus(11, true);
+        assertFrame(coils);
+
+        BitVector bits = new BitVector(10);
+        bits.setBit(9, true);
+        assertFrame(new WriteMultipleCoilsRequest(3, bits));
+    }
+
+    @Test
+    public void testWriteShortAt() throws Exception {
+        BytesOutputStream out = new BytesOutputStream(8);
+        out.writeShort(0);
+        out.writeByte(1);
+        out.writeShortAt(0, 0xABCD);
+        assertArrayEquals(new byte[]{(byte)0xAB, (byte)0xCD, 1}, out.toByteArray());
+        try {
+            out.writeShortAt(2, 0);
+            fail("Should not be able to write past the bytes written");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
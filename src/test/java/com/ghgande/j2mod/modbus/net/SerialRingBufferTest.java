@@ -0,0 +1,90 @@
+package com.ghgande.j2mod.modbus.net;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SerialRingBufferTest {
+
+    @Test
+    public void testReadWrapsAround() {
+        SerialRingBuffer buffer = new SerialRingBuffer(8);
+        byte[] data = new byte[8];
+        buffer.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(4, buffer.read(data, 0, 4, 0));
+        buffer.write(new byte[]{7, 8, 9, 10, 11}, 0, 5);
+        assertEquals(7, buffer.available());
+        assertEquals(7, buffer.read(data, 0, 7, 0));
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 10, 11, 0}, data);
+        assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void testOverflowDiscardsOldest() {
+        SerialRingBuffer buffer = new SerialRingBuffer(4);
+        buffer.write(new byte[]{1, 2, 3}, 0, 3);
+        buffer.write(new byte[]{4, 5, 6}, 0, 3);
+        byte[] data = new byte[4];
+        assertEquals(4, buffer.read(data, 0, 4, 0));
+        assertArrayEquals(new byte[]{3, 4, 5, 6}, data);
+    }
+
+    @Test
+    public void testReadReturnsWhatArrivedOnTimeout() {
+        SerialRingBuffer buffer = new SerialRingBuffer(16);
+        buffer.write(new byte[]{1, 2}, 0, 2);
+        long start = System.nanoTime();
+        assertEquals(2, buffer.read(new byte[4], 0, 4, 50));
+        assertTrue("Read did not wait for the timeout", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertFalse(buffer.awaitData(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testReaderIsWokenByData() throws Exception {
+        final SerialRingBuffer buffer = new SerialRingBuffer(16);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                buffer.write(new byte[]{1, 2, 3}, 0, 3);
+            }
+        });
+        writer.start();
+        byte[] data = new byte[3];
+        assertEquals(3, buffer.read(data, 0, 3, 5000));
+        assertArrayEquals(new byte[]{1, 2, 3}, data);
+        writer.join();
+    }
+
+    @Test
+    public void testCloseWakesReader() throws Exception {
+        final SerialRingBuffer buffer = new SerialRingBuffer(16);
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                buffer.close();
+            }
+        });
+        closer.start();
+        long start = System.nanoTime();
+        assertEquals(0, buffer.read(new byte[1], 0, 1, 5000));
+        assertTrue("Close did not wake the reader", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        closer.join();
+        buffer.clear();
+        buffer.write(new byte[]{9}, 0, 1);
+        assertTrue(buffer.awaitData(0));
+    }
+}
@@ -0,0 +1,94 @@
+package com.ghgande.j2mod.modbus.procimg;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AtomicRegisterArrayTest {
+
+    @Test
+    public void testValuesArePacked() {
+        AtomicRegisterArray registers = new AtomicRegisterArray(5);
+        registers.set(0, 0xFFFF);
+        registers.set(1, 0x1234);
+        registers.set(4, 0x10001);
+        assertEquals(0xFFFF, registers.get(0));
+        assertEquals(0x1234, registers.get(1));
+        assertEquals(0, registers.get(3));
+        assertEquals(1, registers.get(4));
+
+        registers.write(1, 3, new byte[]{(byte)0xAB, (byte)0xCD, 0, 1, (byte)0x80, 0}, 0);
+        byte[] bytes = new byte[10];
+        registers.read(0, 5, bytes, 0);
+        assertArrayEquals(new byte[]{(byte)0xFF, (byte)0xFF, (byte)0xAB, (byte)0xCD, 0, 1, (byte)0x80, 0, 0, 1}, bytes);
+        short[] values = new short[2];
+        registers.read(2, 2, values, 0);
+        assertArrayEquals(new short[]{1, (short)0x8000}, values);
+        try {
+            registers.read(4, 2, values, 0);
+            fail("Range should be out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBitsArePacked() {
+        AtomicBitArray bits = new AtomicBitArray(600);
+        bits.set(0, true);
+        bits.set(599, true);
+        bits.write(510, 10, new byte[]{(byte)0x81, 0x02}, 0);
+        assertTrue(bits.get(510));
+        assertFalse(bits.get(511));
+        assertTrue(bits.get(517));
+        assertTrue(bits.get(519));
+        byte[] packed = new byte[2];
+        bits.read(590, 10, packed, 0);
+        assertArrayEquals(new byte[]{0, 2}, packed);
+    }
+
+    @Test
+    public void testRangeReadsAreNotTorn() throws Exception {
+        final AtomicRegisterArray registers = new AtomicRegisterArray(256);
+        final AtomicBitArray bits = new AtomicBitArray(4096);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short[] values = new short[130];
+                byte[] packed = new byte[200];
+                for (int i = 0; running.get(); i++) {
+                    Arrays.fill(values, (short)i);
+                    registers.write(60, values.length, values, 0);
+                    Arrays.fill(packed, (byte)((i & 1) == 0 ? 0 : 0xFF));
+                    bits.write(500, packed.length * 8, packed, 0);
+                }
+            }
+        });
+        writer.start();
+        try {
+            short[] values = new short[130];
+            byte[] packed = new byte[200];
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+            while (System.nanoTime() < end) {
+                registers.read(60, values.length, values, 0);
+                for (short value : values) {
+                    assertEquals("Torn register range", values[0], value);
+                }
+                bits.read(500, packed.length * 8, packed, 0);
+                for (byte value : packed) {
+                    assertEquals("Torn bit range", packed[0], value);
+                }
+            }
+        }
+        finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
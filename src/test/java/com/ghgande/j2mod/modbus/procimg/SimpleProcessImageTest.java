@@ -0,0 +1,139 @@
+package com.ghgande.j2mod.modbus.procimg;
+
+import com.ghgande.j2mod.modbus.util.Observable;
+import com.ghgande.j2mod.modbus.util.Observer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SimpleProcessImageTest {
+
+    @Test
+    public void testSnapshotsAreNotTorn() throws Exception {
+        final SimpleProcessImage image = new SimpleProcessImage();
+        for (int i = 0; i < 8; i++) {
+            image.addRegister(new SimpleRegister(0));
+            image.addInputRegister(new SimpleInputRegister(0));
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short[] values = new short[4];
+                for (short i = 0; running.get(); i++) {
+                    values[0] = values[1] = values[2] = values[3] = i;
+                    image.writeRegisters(2, 4, values, 0);
+                    image.writeInputRegisters(4, 4, values, 0);
+                }
+            }
+        });
+        writer.start();
+        try {
+            byte[] bytes = new byte[8];
+            short[] values = new short[4];
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+            while (System.nanoTime() < end) {
+                image.readRegisters(2, 4, bytes, 0);
+                for (int i = 2; i < bytes.length; i += 2) {
+                    assertEquals("Torn registers", bytes[0], bytes[i]);
+                    assertEquals("Torn registers", bytes[1], bytes[i + 1]);
+                }
+                image.readInputRegisters(4, 4, values, 0);
+                for (short value : values) {
+                    assertEquals("Torn input registers", values[0], value);
+                }
+            }
+        }
+        finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testReadOnlyInputRegisterIsNotWritten() {
+        SimpleProcessImage image = new SimpleProcessImage();
+        SimpleInputRegister writable = new SimpleInputRegister(1);
+        image.addInputRegister(writable);
+        image.addInputRegister(new InputRegister() {
+            @Override
+            public int getValue() {
+                return 2;
+            }
+
+            @Override
+            public int toUnsignedShort() {
+                return 2;
+            }
+
+            @Override
+            public short toShort() {
+                return 2;
+            }
+
+            @Override
+            public byte[] toBytes() {
+                return new byte[]{0, 2};
+            }
+        });
+        try {
+            image.writeInputRegisters(0, 2, new short[]{5, 6}, 0);
+            fail("Read only input register should not be written");
+        }
+        catch (IllegalAddressException e) {
+            // expected
+        }
+        assertEquals(1, writable.getValue());
+    }
+
+    @Test
+    public void testRangeWritesUseUnsignedValues() {
+        ProcessImage image = new SimpleProcessImage();
+        final int[] set = new int[2];
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            ((SimpleProcessImage)image).addRegister(new SimpleRegister(0) {
+                @Override
+                public void setValue(int v) {
+                    set[index] = v;
+                    super.setValue(v);
+                }
+            });
+        }
+
+        // Request handlers write through the snapshot methods, which should call
+        // the same setter with the same values as writing the registers directly
+        assertTrue(image instanceof SnapshotProcessImage);
+        ((SnapshotProcessImage)image).writeRegisters(0, 2, new byte[]{(byte)0xFF, (byte)0xFE, 0, 1}, 0);
+        assertArrayEquals(new int[]{0xFFFE, 1}, set);
+        ((SnapshotProcessImage)image).writeRegisters(0, 2, new short[]{(short)0x8000, 2}, 0);
+        assertArrayEquals(new int[]{0x8000, 2}, set);
+    }
+
+    @Test(timeout = 5000)
+    public void testObserverCanReadDuringCommit() {
+        final SimpleProcessImage image = new SimpleProcessImage();
+        final short[] seen = new short[2];
+        ObservableRegister observed = new ObservableRegister();
+        observed.addObserver(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                image.readRegisters(0, 2, seen, 0);
+            }
+        });
+        image.addRegister(new SimpleRegister(0));
+        image.addRegister(observed);
+        image.writeRegisters(0, 2, new byte[]{0, 1, 0, 2}, 0);
+        assertArrayEquals(new short[]{1, 2}, seen);
+        try {
+            image.readRegisters(1, 2, seen, 0);
+            fail("Range should be out of bounds");
+        }
+        catch (IllegalAddressException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.ghgande.j2mod.modbus.slave;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ModbusGatewayBusTest {
+
+    /**
+     * Bus without a serial port that answers register reads and records the order
+     * in which requests were sent. It holds the first request until released.
+     */
+    private static class StubBus extends ModbusGatewayBus {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean failWrites;
+
+        StubBus() {
+            super(new SerialParameters());
+        }
+
+        @Override
+        protected void openConnection() {
+        }
+
+        @Override
+        protected void closeConnection() {
+        }
+
+        @Override
+        protected ModbusResponse transmit(ModbusRequest request) throws ModbusException {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.add(request.getFunctionCode() + ":" + request.getUnitID());
+            if (failWrites && ModbusGatewayBus.isWrite(request.getFunctionCode())) {
+                throw new ModbusIOException("No response");
+            }
+            ReadMultipleRegistersResponse response = new ReadMultipleRegistersResponse(new Register[]{new SimpleRegister(1234)});
+            response.setUnitID(request.getUnitID());
+            return response;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private StubBus bus;
+
+    @After
+    public void tearDown() {
+        if (bus != null) {
+            bus.release.countDown();
+            bus.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private Future<ModbusResponse> forward(final ModbusRequest request, int expectedQueued) throws InterruptedException {
+        Future<ModbusResponse> result = executor.submit(new Callable<ModbusResponse>() {
+            @Override
+            public ModbusResponse call() {
+                return bus.forward(request);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bus.getQueuedCount() < expectedQueued && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return result;
+    }
+
+    private static ModbusRequest read(int unitId) {
+        ModbusRequest request = new ReadMultipleRegistersRequest(0, 1);
+        request.setUnitID(unitId);
+        request.setTransactionID(77);
+        return request;
+    }
+
+    @Test
+    public void testWritesFirstThenUnitsInTurn() throws Exception {
+        bus = new StubBus();
+        bus.setCollapseReads(false);
+        bus.open();
+        List<Future<ModbusResponse>> results = new ArrayList<Future<ModbusResponse>>();
+        results.add(forward(read(1), 0));
+        assertTrue(bus.started.await(5, TimeUnit.SECONDS));
+        results.add(forward(read(1), 1));
+        results.add(forward(read(1), 2));
+        results.add(forward(read(2), 3));
+        WriteSingleRegisterRequest write = new WriteSingleRegisterRequest(0, new SimpleRegister(1));
+        write.setUnitID(1);
+        write.setTransactionID(77);
+        results.add(forward(write, 4));
+        bus.release.countDown();
+        for (Future<ModbusResponse> result : results) {
+            ModbusResponse response = result.get(5, TimeUnit.SECONDS);
+            assertEquals("Transaction ID of the client should be kept", 77, response.getTransactionID());
+        }
+        assertEquals(Arrays.asList("3:1", "6:1", "3:1", "3:2", "3:1"), bus.sent);
+    }
+
+    @Test
+    public void testOverloadAndNoResponse() throws Exception {
+        bus = new StubBus();
+        bus.setQueueCapacity(1);
+        bus.setMaxWaitTime(200);
+        bus.open();
+        Future<ModbusResponse> inProgress = forward(read(1), 0);
+        assertTrue(bus.started.await(5, TimeUnit.SECONDS));
+        Future<ModbusResponse> queued = forward(read(2), 1);
+
+        ModbusResponse rejected = bus.forward(read(3));
+        assertTrue("Expected an exception response", rejected instanceof ExceptionResponse);
+        assertEquals(Modbus.GATEWAY_PATH_UNAVAILABLE, ((ExceptionResponse)rejected).getExceptionCode());
+        assertEquals(77, rejected.getTransactionID());
+        assertEquals(1, bus.getRejectedCount());
+
+        for (Future<ModbusResponse> result : Arrays.asList(inProgress, queued)) {
+            ModbusResponse response = result.get(5, TimeUnit.SECONDS);
+            assertTrue("Expected an exception response", response instanceof ExceptionResponse);
+            assertEquals(Modbus.GATEWAY_TARGET_NO_RESPONSE, ((ExceptionResponse)response).getExceptionCode());
+        }
+        assertEquals(2, bus.getNoResponseCount());
+        assertEquals("Timed out request should leave the queue", 0, bus.getQueuedCount());
+    }
+
+    @Test
+    public void testJoinedReadsAreRejectedTogether() throws Exception {
+        bus = new StubBus();
+        bus.setQueueCapacity(1);
+        bus.setMaxWaitTime(5000);
+        bus.open();
+        forward(read(1), 0);
+        assertTrue(bus.started.await(5, TimeUnit.SECONDS));
+        forward(read(2), 1);
+
+        // Identical reads that arrive together join the first, which the full queue rejects
+        final CyclicBarrier barrier = new CyclicBarrier(8);
+        List<Future<ModbusResponse>> results = new ArrayList<Future<ModbusResponse>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<ModbusResponse>() {
+                @Override
+                public ModbusResponse call() throws Exception {
+                    barrier.await();
+                    return bus.forward(read(3));
+                }
+            }));
+        }
+        for (Future<ModbusResponse> result : results) {
+            ModbusResponse response = result.get(1, TimeUnit.SECONDS);
+            assertTrue("Expected an exception response", response instanceof ExceptionResponse);
+            assertEquals(Modbus.GATEWAY_PATH_UNAVAILABLE, ((ExceptionResponse)response).getExceptionCode());
+        }
+        assertEquals(8, bus.getRejectedCount());
+        assertEquals(0, bus.getNoResponseCount());
+    }
+
+    @Test
+    public void testIdenticalReadsShareOneExchange() throws Exception {
+        bus = new StubBus();
+        bus.open();
+        List<Future<ModbusResponse>> results = new ArrayList<Future<ModbusResponse>>();
+        results.add(forward(read(1), 0));
+        assertTrue(bus.started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            results.add(forward(read(1), 0));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bus.getCollapsedCount() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        bus.release.countDown();
+        List<ModbusResponse> responses = new ArrayList<ModbusResponse>();
+        for (Future<ModbusResponse> result : results) {
+            ModbusResponse response = result.get(5, TimeUnit.SECONDS);
+            assertEquals(1234, ((ReadMultipleRegistersResponse)response).getRegisterValue(0));
+            assertEquals(77, response.getTransactionID());
+            for (ModbusResponse other : responses) {
+                assertNotSame("Each client should have its own response", other, response);
+            }
+            responses.add(response);
+        }
+        assertEquals(3, bus.getCollapsedCount());
+        assertEquals(Collections.singletonList("3:1"), bus.sent);
+    }
+
+    @Test
+    public void testCacheIsClearedByWrite() throws Exception {
+        bus = new StubBus();
+        bus.setCacheTime(1, Modbus.READ_MULTIPLE_REGISTERS, 10000);
+        bus.release.countDown();
+        bus.open();
+        assertEquals(1234, ((ReadMultipleRegistersResponse)bus.forward(read(1))).getRegisterValue(0));
+        assertEquals(1234, ((ReadMultipleRegistersResponse)bus.forward(read(1))).getRegisterValue(0));
+        bus.forward(read(2));
+        bus.forward(read(2));
+        assertEquals(1, bus.getCacheHitCount());
+
+        WriteSingleRegisterRequest write = new WriteSingleRegisterRequest(0, new SimpleRegister(1));
+        write.setUnitID(1);
+        bus.forward(write);
+        bus.forward(read(1));
+        assertEquals(Arrays.asList("3:1", "3:2", "3:2", "6:1", "3:1"), bus.sent);
+        assertEquals(1, bus.getCacheHitCount());
+
+        // A write that gets no response may still have been applied
+        bus.failWrites = true;
+        assertEquals(Modbus.GATEWAY_TARGET_NO_RESPONSE, ((ExceptionResponse)bus.forward(write)).getExceptionCode());
+        bus.forward(read(1));
+        assertEquals(Arrays.asList("3:1", "3:2", "3:2", "6:1", "3:1", "6:1", "3:1"), bus.sent);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ghgande.j2mod.modbus.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CRC16Test {
+
+    private static int bitwiseCRC(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    @Test
+    public void testKnownValues() {
+        assertEquals(0x4B37, CRC16.calculate("123456789".getBytes(StandardCharsets.US_ASCII), 0, 9));
+
+        // Read holding register 0 from unit 1 is sent as 84 0A
+        byte[] frame = {0x01, 0x03, 0x00, 0x00, 0x00, 0x01, (byte)0x84, 0x0A};
+        assertEquals(0x0A84, CRC16.calculate(frame, 0, 6));
+        assertTrue(CRC16.check(frame, 0, frame.length));
+        frame[3] = 1;
+        assertFalse(CRC16.check(frame, 0, frame.length));
+    }
+
+    @Test
+    public void testMatchesBitwiseCalculation() {
+        Random random = new Random(42);
+        byte[] data = new byte[300];
+        random.nextBytes(data);
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length <= data.length - offset; length += 1 + length / 8) {
+                assertEquals("Offset " + offset + " length " + length, bitwiseCRC(data, offset, length), CRC16.calculate(data, offset, length));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        Random random = new Random(7);
+        byte[] data = new byte[256];
+        random.nextBytes(data);
+        int expected = CRC16.calculate(data, 0, data.length);
+
+        int crc = CRC16.INITIAL_VALUE;
+        for (byte b : data) {
+            crc = CRC16.update(crc, b);
+        }
+        assertEquals(expected, crc);
+
+        CRC16 checksum = new CRC16();
+        checksum.update(data, 0, 13);
+        checksum.update(ByteBuffer.wrap(data, 13, 100));
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length - 113);
+        direct.put(data, 113, data.length - 113).flip();
+        checksum.update(direct);
+        assertEquals(expected, checksum.getValue());
+        assertFalse(direct.hasRemaining());
+
+        checksum.reset();
+        assertEquals(CRC16.INITIAL_VALUE, checksum.getValue());
+    }
+
+    @Test
+    public void testLegacyCalculateCRC() {
+        byte[] frame = {0x01, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00};
+        assertArrayEquals(new int[]{0x84, 0x0A}, ModbusUtil.calculateCRC(frame, 0, 6));
+
+        // The third argument is an end index
+        assertArrayEquals(ModbusUtil.calculateCRC(new byte[]{0x03, 0x00}, 0, 2), ModbusUtil.calculateCRC(frame, 1, 3));
+        assertArrayEquals(new int[]{0xFF, 0xFF}, ModbusUtil.calculateCRC(frame, 4, 2));
+    }
+}
@@ -0,0 +1,89 @@
+package com.ghgande.j2mod.modbus.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ThreadPoolTest {
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        ThreadPool pool = new ThreadPool(1, 2);
+        pool.initPool("Test");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            pool.execute(blocker);
+            assertTrue("Task did not start", started.await(5, TimeUnit.SECONDS));
+            pool.execute(blocker);
+            pool.execute(blocker);
+            assertEquals(1, pool.getActiveCount());
+            assertEquals(2, pool.getQueuedCount());
+            try {
+                pool.execute(blocker);
+                fail("Task should have been rejected");
+            }
+            catch (RejectedExecutionException e) {
+                assertEquals(1, pool.getRejectedCount());
+            }
+        }
+        finally {
+            release.countDown();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenNotRunning() {
+        ThreadPool pool = new ThreadPool(1);
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("Task should have been rejected");
+        }
+        catch (RejectedExecutionException e) {
+            assertEquals(1, pool.getRejectedCount());
+        }
+        assertFalse(pool.isRunning());
+    }
+
+    @Test
+    public void testRestartAfterClose() throws Exception {
+        ThreadPool pool = new ThreadPool(2);
+        pool.initPool("Test");
+        pool.close();
+        pool.initPool("Test");
+        final CountDownLatch done = new CountDownLatch(1);
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue("Task did not run after restart", done.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.close();
+        }
+    }
+}